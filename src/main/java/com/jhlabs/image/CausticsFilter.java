@@ -16,8 +16,9 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import com.jhlabs.math.Noise;
 import pixelitor.ThreadPool;
+import pixelitor.utils.noise.PerlinNoise;
+import pixelitor.utils.noise.SeededNoise;
 
 import java.awt.Rectangle;
 import java.util.Random;
@@ -36,6 +37,7 @@ public class CausticsFilter extends WholeImageFilter {
     private float turbulence = 1.0f;
     private float dispersion = 0.0f;
     private float time = 0.0f;
+    private SeededNoise noise = new PerlinNoise(System.nanoTime());
     private int samples = 2;
     private int bgColor = 0xff799fff;
 
@@ -175,6 +177,14 @@ public class CausticsFilter extends WholeImageFilter {
         return time;
     }
 
+    /**
+     * Sets the noise generator used by this filter.
+     * By default every filter instance has its own generator.
+     */
+    public void setNoise(SeededNoise noise) {
+        this.noise = noise;
+    }
+
     /**
      * Set the number of samples per pixel. More samples means better quality, but slower rendering.
      *
@@ -379,7 +389,7 @@ public class CausticsFilter extends WholeImageFilter {
         return 0xff000000 | (r << 16) | (g << 8) | b;
     }
 
-    private static float turbulence2(float x, float y, float time, float octaves) {
+    private float turbulence2(float x, float y, float time, float octaves) {
         float value = 0.0f;
         float remainder;
         float lacunarity = 2.0f;
@@ -391,7 +401,7 @@ public class CausticsFilter extends WholeImageFilter {
         y += 529;
 
         for (i = 0; i < (int) octaves; i++) {
-            value += Noise.noise3(x, y, time) / f;
+            value += noise.noise3(x, y, time) / f;
             x *= lacunarity;
             y *= lacunarity;
             f *= 2;
@@ -399,7 +409,7 @@ public class CausticsFilter extends WholeImageFilter {
 
         remainder = octaves - (int) octaves;
         if (remainder != 0) {
-            value += remainder * Noise.noise3(x, y, time) / f;
+            value += remainder * noise.noise3(x, y, time) / f;
         }
 
         return value;
@@ -408,7 +418,7 @@ public class CausticsFilter extends WholeImageFilter {
     private float evaluate(float x, float y) {
         float xt = s * x + c * time;
         float tt = c * x - c * time;
-        float f = turbulence == 0.0 ? Noise.noise3(xt, y, tt) : turbulence2(xt, y, tt, turbulence);
+        float f = turbulence == 0.0 ? noise.noise3(xt, y, tt) : turbulence2(xt, y, tt, turbulence);
         return f;
     }
 
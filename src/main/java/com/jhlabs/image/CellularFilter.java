@@ -20,6 +20,7 @@ import com.jhlabs.math.Function2D;
 import com.jhlabs.math.Noise;
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.CachedFloatRandom;
 
 import java.awt.Rectangle;
@@ -609,7 +610,7 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
 //		max = minmax[1];
 
         pt = createProgressTracker(height);
-        int[] outPixels = new int[width * height];
+        int[] outPixels = BufferPool.leaseInts(width * height);
 
         Future<?>[] futures = new Future[height];
         for (int y = 0; y < height; y++) {
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -192,19 +194,22 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (premultiplyAlpha) {
-            ImageMath.premultiply(inPixels, 0, inPixels.length);
+            ImageMath.premultiply(inPixels, 0, width * height);
         }
         convolve(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         if (premultiplyAlpha) {
-            ImageMath.unpremultiply(outPixels, 0, outPixels.length);
+            ImageMath.unpremultiply(outPixels, 0, width * height);
         }
 
         setRGB(dst, 0, 0, width, height, outPixels);
+
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
         return dst;
     }
 
@@ -265,6 +270,8 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         } else if (kernel.getWidth() == 1) {
             convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+        } else if (FFTConvolver.isFasterFor(kernel)) {
+            convolveFFT(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         } else {
             convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         }
@@ -282,61 +289,115 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param edgeAction what to do at the edges
      */
     public void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-        int index = 0;
         float[] matrix = kernel.getKernelData(null);
         int rows = kernel.getHeight();
         int cols = kernel.getWidth();
-        int rows2 = rows / 2;
-        int cols2 = cols / 2;
 
         pt = createProgressTracker(height);
 
         for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                float r = 0, g = 0, b = 0, a = 0;
+            convolveHVRow(matrix, rows, cols, inPixels, outPixels, width, height, y, 0, width, alpha, edgeAction);
+            pt.unitDone();
+        }
+        finishProgressTracker();
+    }
 
-                for (int row = -rows2; row <= rows2; row++) {
-                    int iy = y + row;
-                    int ioffset;
-                    if (0 <= iy && iy < height) {
-                        ioffset = iy * width;
-                    } else if (edgeAction == CLAMP_EDGES) {
-                        ioffset = y * width;
-                    } else if (edgeAction == WRAP_EDGES) {
-                        ioffset = ((iy + height) % height) * width;
-                    } else {
-                        continue;
-                    }
-                    int moffset = cols * (row + rows2) + cols2;
-                    for (int col = -cols2; col <= cols2; col++) {
-                        float f = matrix[moffset + col];
-
-                        if (f != 0) {
-                            int ix = x + col;
-                            if (!(0 <= ix && ix < width)) {
-                                if (edgeAction == CLAMP_EDGES) {
-                                    ix = x;
-                                } else if (edgeAction == WRAP_EDGES) {
-                                    ix = (x + width) % width;
-                                } else {
-                                    continue;
-                                }
+    /**
+     * Convolve a part of a row with a 2D kernel.
+     */
+    private static void convolveHVRow(float[] matrix, int rows, int cols, int[] inPixels, int[] outPixels, int width, int height, int y, int fromX, int toX, boolean alpha, int edgeAction) {
+        int rows2 = rows / 2;
+        int cols2 = cols / 2;
+        int index = y * width + fromX;
+
+        for (int x = fromX; x < toX; x++) {
+            float r = 0, g = 0, b = 0, a = 0;
+
+            for (int row = -rows2; row <= rows2; row++) {
+                int iy = y + row;
+                int ioffset;
+                if (0 <= iy && iy < height) {
+                    ioffset = iy * width;
+                } else if (edgeAction == CLAMP_EDGES) {
+                    ioffset = y * width;
+                } else if (edgeAction == WRAP_EDGES) {
+                    ioffset = ((iy + height) % height) * width;
+                } else {
+                    continue;
+                }
+                int moffset = cols * (row + rows2) + cols2;
+                for (int col = -cols2; col <= cols2; col++) {
+                    float f = matrix[moffset + col];
+
+                    if (f != 0) {
+                        int ix = x + col;
+                        if (!(0 <= ix && ix < width)) {
+                            if (edgeAction == CLAMP_EDGES) {
+                                ix = x;
+                            } else if (edgeAction == WRAP_EDGES) {
+                                ix = (x + width) % width;
+                            } else {
+                                continue;
                             }
-                            int rgb = inPixels[ioffset + ix];
-                            a += f * ((rgb >> 24) & 0xff);
-                            r += f * ((rgb >> 16) & 0xff);
-                            g += f * ((rgb >> 8) & 0xff);
-                            b += f * (rgb & 0xff);
                         }
+                        int rgb = inPixels[ioffset + ix];
+                        a += f * ((rgb >> 24) & 0xff);
+                        r += f * ((rgb >> 16) & 0xff);
+                        g += f * ((rgb >> 8) & 0xff);
+                        b += f * (rgb & 0xff);
                     }
                 }
-                int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
-                int ir = PixelUtils.clamp((int) (r + 0.5));
-                int ig = PixelUtils.clamp((int) (g + 0.5));
-                int ib = PixelUtils.clamp((int) (b + 0.5));
-                outPixels[index++] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
             }
-            pt.unitDone();
+            int ia = alpha ? PixelUtils.clamp((int) (a + 0.5)) : 0xff;
+            int ir = PixelUtils.clamp((int) (r + 0.5));
+            int ig = PixelUtils.clamp((int) (g + 0.5));
+            int ib = PixelUtils.clamp((int) (b + 0.5));
+            outPixels[index++] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+        }
+    }
+
+    /**
+     * Convolve with a 2D kernel using FFT. The result can differ from
+     * the result of convolveHV by one in each channel (rounding errors),
+     * but it is much faster for large kernels.
+     *
+     * @param kernel     the kernel
+     * @param inPixels   the input pixels
+     * @param outPixels  the output pixels
+     * @param width      the width
+     * @param height     the height
+     * @param alpha      include alpha channel
+     * @param edgeAction what to do at the edges
+     */
+    public void convolveFFT(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
+        int rows2 = kernel.getHeight() / 2;
+        int cols2 = kernel.getWidth() / 2;
+        if (edgeAction != ZERO_EDGES && (width <= 2 * cols2 || height <= 2 * rows2)) {
+            // all pixels are edge pixels
+            convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+            return;
+        }
+
+        FFTConvolver convolver = new FFTConvolver(kernel, width, height);
+        pt = createProgressTracker(convolver.getNumWorkUnits());
+
+        // the FFT treats the pixels outside the image as zero
+        convolver.convolve(inPixels, outPixels, alpha, pt);
+
+        if (edgeAction != ZERO_EDGES) {
+            // recalculate the pixels near the edges, where
+            // the kernel reaches outside the image
+            float[] matrix = kernel.getKernelData(null);
+            int rows = kernel.getHeight();
+            int cols = kernel.getWidth();
+            for (int y = 0; y < height; y++) {
+                if (y < rows2 || y >= height - rows2) {
+                    convolveHVRow(matrix, rows, cols, inPixels, outPixels, width, height, y, 0, width, alpha, edgeAction);
+                } else {
+                    convolveHVRow(matrix, rows, cols, inPixels, outPixels, width, height, y, 0, cols2, alpha, edgeAction);
+                    convolveHVRow(matrix, rows, cols, inPixels, outPixels, width, height, y, width - cols2, width, alpha, edgeAction);
+                }
+            }
         }
         finishProgressTracker();
     }
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 
 /**
@@ -94,7 +96,7 @@ public class EdgeFilter extends WholeImageFilter {
         pt = createProgressTracker(height);
 
 		int index = 0;
-		int[] outPixels = new int[width * height];
+		int[] outPixels = BufferPool.leaseInts(width * height);
 
 		for (int y = 0; y < height; y++) {
 			for (int x = 0; x < width; x++) {
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 
 /**
@@ -70,15 +72,15 @@ public class EmbossFilter extends WholeImageFilter {
         pt = createProgressTracker(height);
 
         int index = 0;
-        int[] outPixels = new int[width * height];
+        int[] outPixels = BufferPool.leaseInts(width * height);
 
         int[] bumpPixels;
         int bumpMapWidth, bumpMapHeight;
 
         bumpMapWidth = width;
         bumpMapHeight = height;
-        bumpPixels = new int[bumpMapWidth * bumpMapHeight];
-        for (int i = 0; i < inPixels.length; i++) {
+        bumpPixels = BufferPool.leaseInts(bumpMapWidth * bumpMapHeight);
+        for (int i = 0, numPixels = width * height; i < numPixels; i++) {
             bumpPixels[i] = PixelUtils.brightness(inPixels[i]);
         }
 
@@ -135,6 +137,7 @@ public class EmbossFilter extends WholeImageFilter {
             pt.unitDone();
         }
         finishProgressTracker();
+        BufferPool.returnInts(bumpPixels);
 
         return outPixels;
     }
@@ -17,6 +17,7 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
@@ -26,10 +27,17 @@ import java.util.concurrent.Future;
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
  * which simply creates a kernel with a Gaussian distribution for blurring.
+ * For large radii a recursive approximation is used instead of the kernel.
  *
  * @author Jerry Huxtable
  */
 public class GaussianFilter extends ConvolveFilter {
+    /**
+     * From this radius the blur is calculated with a {@link RecursiveGaussian},
+     * whose cost doesn't depend on the radius, and whose error is
+     * already negligible compared to the 8-bit quantization.
+     */
+    public static final float MIN_RECURSIVE_RADIUS = 50;
 
     /**
      * The blur radius.
@@ -41,6 +49,11 @@ public class GaussianFilter extends ConvolveFilter {
      */
     protected Kernel kernel;
 
+    /**
+     * The recursive approximation for large radii, or null.
+     */
+    protected RecursiveGaussian recursiveGaussian;
+
     /**
      * Construct a Gaussian filter.
      */
@@ -59,7 +72,8 @@ public class GaussianFilter extends ConvolveFilter {
     }
 
     /**
-     * Set the radius of the kernel, and hence the amount of blur. The bigger the radius, the longer this filter will take.
+     * Set the radius of the kernel, and hence the amount of blur. The bigger the radius, the longer this filter will take,
+     * up to {@link #MIN_RECURSIVE_RADIUS}.
      *
      * @param radius the radius of the blur in pixels.
      * @min-value 0
@@ -69,6 +83,12 @@ public class GaussianFilter extends ConvolveFilter {
     public void setRadius(float radius) {
         this.radius = radius;
         kernel = makeKernel(radius);
+        if (radius >= MIN_RECURSIVE_RADIUS) {
+            // the kernel is cut at 3 sigma
+            recursiveGaussian = new RecursiveGaussian(radius / 3);
+        } else {
+            recursiveGaussian = null;
+        }
     }
 
     /**
@@ -92,26 +112,44 @@ public class GaussianFilter extends ConvolveFilter {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
 
 //        src.getRGB(0, 0, width, height, inPixels, 0, width);
 //        int[] inPixels = ImageUtils.getPixelsAsArray( src);
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, outPixels, width, height, pt);
         }
 
 //        dst.setRGB(0, 0, width, height, inPixels, 0, width);
         setRGB(dst, 0, 0, width, height, inPixels);
 
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+
         finishProgressTracker();
 
         return dst;
     }
 
+    /**
+     * Blurs the pixels horizontally and then vertically, either with the
+     * exact kernel or with the recursive approximation, depending on the radius.
+     * The result is in inPixels, outPixels is used as a temporary buffer.
+     */
+    protected void blur(int[] inPixels, int[] outPixels, int width, int height, ProgressTracker pt) {
+        boolean premultiply = alpha && premultiplyAlpha;
+        if (recursiveGaussian != null) {
+            recursiveGaussian.blurAndTranspose(inPixels, outPixels, width, height, alpha, premultiply, false, pt);
+            recursiveGaussian.blurAndTranspose(outPixels, inPixels, height, width, alpha, false, premultiply, pt);
+        } else {
+            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, false, CLAMP_EDGES, pt);
+            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, premultiply, CLAMP_EDGES, pt);
+        }
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      *
@@ -378,6 +378,66 @@ public class ImageMath {
         return (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
     }
 
+    /**
+     * Bicubic interpolation with the Catmull-Rom spline.
+     *
+     * @param x         the X interpolation parameter 0..1
+     * @param y         the y interpolation parameter 0..1
+     * @param neighbors the 4x4 neighborhood of ARGB pixels in row-major order,
+     *                  the interpolation is between the pixels 5, 6, 9 and 10
+     * @return the interpolated value
+     */
+    public static int bicubicInterpolate(float x, float y, int[] neighbors) {
+        float wx0 = catmullRom(x + 1);
+        float wx1 = catmullRom(x);
+        float wx2 = catmullRom(1 - x);
+        float wx3 = catmullRom(2 - x);
+        float wy0 = catmullRom(y + 1);
+        float wy1 = catmullRom(y);
+        float wy2 = catmullRom(1 - y);
+        float wy3 = catmullRom(2 - y);
+
+        float a = 0, r = 0, g = 0, b = 0;
+        for (int row = 0; row < 4; row++) {
+            float wy = row == 0 ? wy0 : row == 1 ? wy1 : row == 2 ? wy2 : wy3;
+            int i = row * 4;
+            int p0 = neighbors[i];
+            int p1 = neighbors[i + 1];
+            int p2 = neighbors[i + 2];
+            int p3 = neighbors[i + 3];
+
+            a += wy * (wx0 * (p0 >>> 24) + wx1 * (p1 >>> 24) + wx2 * (p2 >>> 24) + wx3 * (p3 >>> 24));
+            r += wy * (wx0 * ((p0 >> 16) & 0xff) + wx1 * ((p1 >> 16) & 0xff) + wx2 * ((p2 >> 16) & 0xff) + wx3 * ((p3 >> 16) & 0xff));
+            g += wy * (wx0 * ((p0 >> 8) & 0xff) + wx1 * ((p1 >> 8) & 0xff) + wx2 * ((p2 >> 8) & 0xff) + wx3 * ((p3 >> 8) & 0xff));
+            b += wy * (wx0 * (p0 & 0xff) + wx1 * (p1 & 0xff) + wx2 * (p2 & 0xff) + wx3 * (p3 & 0xff));
+        }
+
+        // the Catmull-Rom spline can overshoot
+        int ia = PixelUtils.clamp((int) (a + 0.5f));
+        int ir = PixelUtils.clamp((int) (r + 0.5f));
+        int ig = PixelUtils.clamp((int) (g + 0.5f));
+        int ib = PixelUtils.clamp((int) (b + 0.5f));
+
+        return (ia << 24) | (ir << 16) | (ig << 8) | ib;
+    }
+
+    /**
+     * The Catmull-Rom kernel (the Keys kernel with a = -0.5)
+     * at the given distance
+     */
+    private static float catmullRom(float t) {
+        if (t < 0) {
+            t = -t;
+        }
+        if (t < 1) {
+            return (1.5f * t - 2.5f) * t * t + 1;
+        }
+        if (t < 2) {
+            return ((-0.5f * t + 2.5f) * t - 4) * t + 2;
+        }
+        return 0;
+    }
+
     /**
      * Bilinear interpolation of ARGB values.
      *
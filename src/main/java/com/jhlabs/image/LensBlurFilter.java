@@ -18,8 +18,16 @@ package com.jhlabs.image;
 
 import com.jhlabs.math.FFT;
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * A filter which use FFTs to simulate lens blur on an image.
@@ -31,6 +39,20 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     private float bloomThreshold = 192;
     private float angle = 0;
     private int sides = 5;
+    private BufferedImage blurMask;
+
+    // the number of blur radii used with a blur mask
+    private static final int NUM_MASK_LEVELS = 3;
+
+    private static final int MAX_CACHED_SPECTRA = 4;
+
+    private static final Map<ApertureKey, float[][]> cachedSpectra =
+            new LinkedHashMap<ApertureKey, float[][]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ApertureKey, float[][]> eldest) {
+                    return size() > MAX_CACHED_SPECTRA;
+                }
+            };
 
     public LensBlurFilter(String filterName) {
         super(filterName);
@@ -117,51 +139,250 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
     }
 
 
+    /**
+     * Set an optional mask for a variable amount of blur.
+     * The mask must be a TYPE_BYTE_GRAY image with the same size
+     * as the filtered image. White pixels are blurred with the full
+     * radius, black pixels are not blurred at all.
+     *
+     * @param blurMask the mask, or null for a uniform blur
+     * @see #getBlurMask
+     */
+    public void setBlurMask(BufferedImage blurMask) {
+        assert blurMask == null || blurMask.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        this.blurMask = blurMask;
+    }
+
+    /**
+     * Get the mask for a variable amount of blur.
+     *
+     * @return the mask, or null
+     * @see #setBlurMask
+     */
+    public BufferedImage getBlurMask() {
+        return blurMask;
+    }
+
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dst) {
         int width = src.getWidth();
         int height = src.getHeight();
-        int rows = 1, cols = 1;
-        int log2rows = 0, log2cols = 0;
-        int iradius = (int) Math.ceil(radius);
-        int tileWidth = 128;
-        int tileHeight = tileWidth;
-
-//        int adjustedWidth = (int)(width + iradius*2);
-//        int adjustedHeight = (int)(height + iradius*2);
-
-        tileWidth = iradius < 32 ? Math.min(128, width + 2 * iradius) : Math.min(256, width + 2 * iradius);
-        tileHeight = iradius < 32 ? Math.min(128, height + 2 * iradius) : Math.min(256, height + 2 * iradius);
 
         if (dst == null) {
             dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         }
 
-        while (rows < tileHeight) {
-            rows *= 2;
-            log2rows++;
+        int numPixels = width * height;
+        int[] inPixels = BufferPool.leaseInts(numPixels);
+        int[] outPixels = BufferPool.leaseInts(numPixels);
+        getRGB(src, 0, 0, width, height, inPixels);
+
+        if (blurMask == null) {
+            TileGrid grid = new TileGrid(radius, width, height);
+            pt = createProgressTracker(grid.getNumTiles());
+            blur(inPixels, outPixels, width, height, radius, grid);
+        } else {
+            blurWithMask(inPixels, outPixels, width, height);
+        }
+        finishProgressTracker();
+
+        setRGB(dst, 0, 0, width, height, outPixels);
+
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+        return dst;
+    }
+
+    /**
+     * Blurs the image with a few increasing radii, and interpolates
+     * between these levels according to the blur mask.
+     */
+    private void blurWithMask(int[] inPixels, int[] outPixels, int width, int height) {
+        int numPixels = width * height;
+        byte[] mask = ((DataBufferByte) blurMask.getRaster().getDataBuffer()).getData();
+        assert mask.length == numPixels;
+
+        int maxMaskValue = 0;
+        for (int i = 0; i < numPixels; i++) {
+            maxMaskValue = Math.max(maxMaskValue, mask[i] & 0xFF);
+        }
+        // the levels above this are not needed
+        int maxLevel = (maxMaskValue * NUM_MASK_LEVELS + 254) / 255;
+
+        TileGrid[] grids = new TileGrid[maxLevel + 1];
+        int workUnits = 0;
+        for (int level = 1; level <= maxLevel; level++) {
+            grids[level] = new TileGrid(radius * level / NUM_MASK_LEVELS, width, height);
+            workUnits += grids[level].getNumTiles();
+        }
+        pt = createProgressTracker(workUnits);
+
+        // level 0 is the unblurred image
+        int[][] levels = new int[maxLevel + 1][];
+        levels[0] = inPixels;
+        for (int level = 1; level <= maxLevel; level++) {
+            levels[level] = BufferPool.leaseInts(numPixels);
+            blur(inPixels, levels[level], width, height,
+                    radius * level / NUM_MASK_LEVELS, grids[level]);
+        }
+
+        for (int i = 0; i < numPixels; i++) {
+            float t = (mask[i] & 0xFF) * NUM_MASK_LEVELS / 255.0f;
+            int lower = Math.min((int) t, maxLevel);
+            if (lower == maxLevel) {
+                outPixels[i] = levels[maxLevel][i];
+            } else {
+                outPixels[i] = ImageMath.mixColors(t - lower,
+                        levels[lower][i], levels[lower + 1][i]);
+            }
+        }
+
+        for (int level = 1; level <= maxLevel; level++) {
+            BufferPool.returnInts(levels[level]);
+        }
+    }
+
+    /**
+     * Blurs the whole image with the given radius.
+     * The tiles are processed in parallel.
+     */
+    private void blur(int[] inPixels, int[] outPixels, int width, int height,
+                      float blurRadius, TileGrid grid) {
+        float[][] spectrum = getApertureSpectrum(blurRadius, grid.fftWidth, grid.fftHeight);
+        FFT fft = new FFT(Math.max(log2(grid.fftWidth), log2(grid.fftHeight)));
+
+        List<Future<?>> futures = new ArrayList<>(grid.getNumTiles());
+        for (int tileY = -grid.iradius; tileY + grid.iradius < height; tileY += grid.stepY) {
+            for (int tileX = -grid.iradius; tileX + grid.iradius < width; tileX += grid.stepX) {
+                int tx = tileX;
+                int ty = tileY;
+                futures.add(ThreadPool.submit(() ->
+                        blurTile(inPixels, outPixels, width, height, tx, ty, grid, fft, spectrum)));
+            }
+        }
+        ThreadPool.waitForFutures(futures, pt);
+    }
+
+    private void blurTile(int[] inPixels, int[] outPixels, int width, int height,
+                          int tileX, int tileY, TileGrid grid, FFT fft, float[][] spectrum) {
+        int w = grid.fftWidth;
+        int h = grid.fftHeight;
+        int size = w * h;
+
+        // the FFT scratch buffers are reused by the next tiles
+        float[] arRe = BufferPool.leaseFloats(size);
+        float[] arIm = BufferPool.leaseFloats(size);
+        float[] gbRe = BufferPool.leaseFloats(size);
+        float[] gbIm = BufferPool.leaseFloats(size);
+
+        // Create a float array from the pixels. Any pixels off the edge of the source image get duplicated from the edge.
+        int i = 0;
+        for (int y = 0; y < h; y++) {
+            int imageY = ImageMath.clamp(y + tileY, 0, height - 1);
+            int rowOffset = imageY * width;
+            for (int x = 0; x < w; x++) {
+                int imageX = ImageMath.clamp(x + tileX, 0, width - 1);
+                int rgb = inPixels[rowOffset + imageX];
+
+                arRe[i] = ((rgb >> 24) & 0xff);
+                float r = ((rgb >> 16) & 0xff);
+                float g = ((rgb >> 8) & 0xff);
+                float b = (rgb & 0xff);
+
+                // Bloom...
+                if (r > bloomThreshold) {
+                    r *= bloom;
+                }
+                if (g > bloomThreshold) {
+                    g *= bloom;
+                }
+                if (b > bloomThreshold) {
+                    b *= bloom;
+                }
+
+                arIm[i] = r;
+                gbRe[i] = g;
+                gbIm[i] = b;
+                i++;
+            }
+        }
+
+        // Transform into frequency space
+        fft.transform2D(arRe, arIm, w, h, true);
+        fft.transform2D(gbRe, gbIm, w, h, true);
+
+        // Multiply the transformed pixels by the transformed kernel
+        float[] maskRe = spectrum[0];
+        float[] maskIm = spectrum[1];
+        for (i = 0; i < size; i++) {
+            float rem = maskRe[i];
+            float imm = maskIm[i];
+
+            float re = arRe[i];
+            float im = arIm[i];
+            arRe[i] = re * rem - im * imm;
+            arIm[i] = re * imm + im * rem;
+
+            re = gbRe[i];
+            im = gbIm[i];
+            gbRe[i] = re * rem - im * imm;
+            gbIm[i] = re * imm + im * rem;
         }
-        while (cols < tileWidth) {
-            cols *= 2;
-            log2cols++;
+
+        // Transform back
+        fft.transform2D(arRe, arIm, w, h, false);
+        fft.transform2D(gbRe, gbIm, w, h, false);
+
+        // Convert back to RGB pixels, with quadrant remapping,
+        // only in the inner part of the tile, inside the image
+        int rowFlip = h >> 1;
+        int colFlip = w >> 1;
+        int fromY = Math.max(grid.iradius, -tileY);
+        int toY = Math.min(h - grid.iradius, height - tileY);
+        int fromX = Math.max(grid.iradius, -tileX);
+        int toX = Math.min(w - grid.iradius, width - tileX);
+        for (int y = fromY; y < toY; y++) {
+            int fftRow = (y ^ rowFlip) * w;
+            int outIndex = (tileY + y) * width + tileX + fromX;
+            for (int x = fromX; x < toX; x++) {
+                int fftIndex = fftRow + (x ^ colFlip);
+
+                // clamp also the high pixels due to blooming
+                int a = PixelUtils.clamp((int) arRe[fftIndex]);
+                int r = PixelUtils.clamp((int) arIm[fftIndex]);
+                int g = PixelUtils.clamp((int) gbRe[fftIndex]);
+                int b = PixelUtils.clamp((int) gbIm[fftIndex]);
+
+                outPixels[outIndex++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
         }
-        int w = cols;
-        int h = rows;
 
-        tileWidth = w;
-        tileHeight = h;//FIXME-tileWidth, w, and cols are always all the same
+        BufferPool.returnFloats(arRe);
+        BufferPool.returnFloats(arIm);
+        BufferPool.returnFloats(gbRe);
+        BufferPool.returnFloats(gbIm);
+    }
 
-        FFT fft = new FFT(Math.max(log2rows, log2cols));
+    /**
+     * Returns the FFT of the aperture shape, which is cached,
+     * because it doesn't depend on the image or on the bloom settings
+     */
+    private float[][] getApertureSpectrum(float blurRadius, int w, int h) {
+        ApertureKey key = new ApertureKey(blurRadius, sides, angle, w, h);
+        synchronized (cachedSpectra) {
+            float[][] cached = cachedSpectra.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        int[] rgb = new int[w * h];
-        float[][] mask = new float[2][w * h];
-        float[][] gb = new float[2][w * h];
-        float[][] ar = new float[2][w * h];
+        float[] maskRe = new float[w * h];
+        float[] maskIm = new float[w * h];
 
         // Create the kernel
         double polyAngle = Math.PI / sides;
         double polyScale = 1.0f / FastMath.cos(polyAngle);
-        double r2 = radius * radius;
+        double r2 = blurRadius * blurRadius;
         double rangle = Math.toRadians(angle);
         float total = 0;
         int i = 0;
@@ -180,203 +401,111 @@ public class LensBlurFilter extends AbstractBufferedImageOp {
                     } else {
                         f = 1;
                     }
-                    f = f * r < radius ? 1 : 0;
+                    f = f * r < blurRadius ? 1 : 0;
                 }
                 total += (float) f;
 
-                mask[0][i] = (float) f;
-                mask[1][i] = 0;
+                maskRe[i] = (float) f;
                 i++;
             }
         }
 
         // Normalize the kernel
-        i = 0;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                mask[0][i] /= total;
-                i++;
-            }
+        for (i = 0; i < maskRe.length; i++) {
+            maskRe[i] /= total;
         }
 
-        fft.transform2D(mask[0], mask[1], w, h, true);
+        FFT fft = new FFT(Math.max(log2(w), log2(h)));
+        fft.transform2D(maskRe, maskIm, w, h, true);
+        float[][] spectrum = {maskRe, maskIm};
 
-        int workUnits = 0;
-        // count the work units the same was as the code does...
-        for (int tileY = -iradius; tileY < height; tileY += tileHeight - 2 * iradius) {
-            workUnits++;
+        synchronized (cachedSpectra) {
+            cachedSpectra.put(key, spectrum);
         }
-        pt = createProgressTracker(workUnits);
+        return spectrum;
+    }
 
-        for (int tileY = -iradius; tileY < height; tileY += tileHeight - 2 * iradius) {
-            for (int tileX = -iradius; tileX < width; tileX += tileWidth - 2 * iradius) {
-//                System.out.println("Tile: "+tileX+" "+tileY+" "+tileWidth+" "+tileHeight);
-
-                // Clip the tile to the image bounds
-                int tx = tileX, ty = tileY, tw = tileWidth, th = tileHeight;
-                int fx = 0, fy = 0;
-                if (tx < 0) {
-                    tw += tx;
-                    fx -= tx;
-                    tx = 0;
-                }
-                if (ty < 0) {
-                    th += ty;
-                    fy -= ty;
-                    ty = 0;
-                }
-                if (tx + tw > width) {
-                    tw = width - tx;
-                }
-                if (ty + th > height) {
-                    th = height - ty;
-                }
-                src.getRGB(tx, ty, tw, th, rgb, fy * w + fx, w);
-                // getRGB(src, tx, ty, tw, th, rgb);
-
-                // Create a float array from the pixels. Any pixels off the edge of the source image get duplicated from the edge.
-                i = 0;
-                for (int y = 0; y < h; y++) {
-                    int imageY = y + tileY;
-                    int j;
-                    if (imageY < 0) {
-                        j = fy;
-                    } else if (imageY > height) {
-                        j = fy + th - 1;
-                    } else {
-                        j = y;
-                    }
-                    j *= w;
-                    for (int x = 0; x < w; x++) {
-                        int imageX = x + tileX;
-                        int k;
-                        if (imageX < 0) {
-                            k = fx;
-                        } else if (imageX > width) {
-                            k = fx + tw - 1;
-                        } else {
-                            k = x;
-                        }
-                        k += j;
-
-                        ar[0][i] = ((rgb[k] >> 24) & 0xff);
-                        float r = ((rgb[k] >> 16) & 0xff);
-                        float g = ((rgb[k] >> 8) & 0xff);
-                        float b = (rgb[k] & 0xff);
-
-                        // Bloom...
-                        if (r > bloomThreshold) {
-                            r *= bloom;
-                        }
-//							r = bloomThreshold + (r-bloomThreshold) * bloom;
-                        if (g > bloomThreshold) {
-                            g *= bloom;
-                        }
-//							g = bloomThreshold + (g-bloomThreshold) * bloom;
-                        if (b > bloomThreshold) {
-                            b *= bloom;
-                        }
-//							b = bloomThreshold + (b-bloomThreshold) * bloom;
-
-                        ar[1][i] = r;
-                        gb[0][i] = g;
-                        gb[1][i] = b;
-
-                        i++;
-                        k++;
-                    }
-                }
+    private static int log2(int n) {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
 
-                // Transform into frequency space
-                fft.transform2D(ar[0], ar[1], cols, rows, true);
-                fft.transform2D(gb[0], gb[1], cols, rows, true);
-
-                // Multiply the transformed pixels by the transformed kernel
-                i = 0;
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        float re = ar[0][i];
-                        float im = ar[1][i];
-                        float rem = mask[0][i];
-                        float imm = mask[1][i];
-                        ar[0][i] = re * rem - im * imm;
-                        ar[1][i] = re * imm + im * rem;
-
-                        re = gb[0][i];
-                        im = gb[1][i];
-                        gb[0][i] = re * rem - im * imm;
-                        gb[1][i] = re * imm + im * rem;
-                        i++;
-                    }
-                }
+    /**
+     * The FFT tile size and the tile positions for a given blur radius
+     */
+    private static class TileGrid {
+        final int iradius;
+        final int fftWidth;
+        final int fftHeight;
+
+        // the distance between the tiles, which overlap by 2 * iradius
+        final int stepX;
+        final int stepY;
+
+        private final int numTiles;
+
+        TileGrid(float blurRadius, int width, int height) {
+            iradius = (int) Math.ceil(blurRadius);
+            int tileSize = iradius < 32 ? 128 : 256;
+            // at least half of each tile should be output
+            while (tileSize < 4 * iradius) {
+                tileSize *= 2;
+            }
+            fftWidth = nextPowerOfTwo(Math.min(tileSize, width + 2 * iradius));
+            fftHeight = nextPowerOfTwo(Math.min(tileSize, height + 2 * iradius));
+            stepX = fftWidth - 2 * iradius;
+            stepY = fftHeight - 2 * iradius;
+
+            int numTilesX = (width + stepX - 1) / stepX;
+            int numTilesY = (height + stepY - 1) / stepY;
+            numTiles = numTilesX * numTilesY;
+        }
 
-                // Transform back
-                fft.transform2D(ar[0], ar[1], cols, rows, false);
-                fft.transform2D(gb[0], gb[1], cols, rows, false);
-
-                // Convert back to RGB pixels, with quadrant remapping
-                int row_flip = w >> 1;
-                int col_flip = h >> 1;
-                int index = 0;
-
-                int workaroundMax = w * h - 1;
-
-                //FIXME-don't bother converting pixels off image edges
-                for (int y = 0; y < w; y++) {
-                    int ym = y ^ row_flip;
-                    int yi = ym * cols;
-                    for (int x = 0; x < w; x++) {
-                        int xm = yi + (x ^ col_flip);
-
-                        // Laszlo: not sure what is happening here, but for certain small images
-                        // with unusual image proportions (for example for any 100*20 input image)
-                        // we get an ArrayIndexOutOfBoundsException
-                        // This break does not result in a good-looking image, but at least
-                        // it avoids the exceptions during the automatic tests
-                        if (xm > workaroundMax) {
-                            break;
-                        }
-
-                        int a = (int) ar[0][xm];
-                        int r = (int) ar[1][xm];
-                        int g = (int) gb[0][xm];
-                        int b = (int) gb[1][xm];
-
-                        // Clamp high pixels due to blooming
-                        if (r > 255) {
-                            r = 255;
-                        }
-                        if (g > 255) {
-                            g = 255;
-                        }
-                        if (b > 255) {
-                            b = 255;
-                        }
-                        int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                        rgb[index++] = argb;
-                    }
-                }
+        int getNumTiles() {
+            return numTiles;
+        }
 
-                // Clip to the output image
-                tx = tileX + iradius;
-                ty = tileY + iradius;
-                tw = tileWidth - 2 * iradius;
-                th = tileHeight - 2 * iradius;
-                if (tx + tw > width) {
-                    tw = width - tx;
-                }
-                if (ty + th > height) {
-                    th = height - ty;
-                }
+        private static int nextPowerOfTwo(int n) {
+            int size = 1;
+            while (size < n) {
+                size <<= 1;
+            }
+            return size;
+        }
+    }
+
+    private static class ApertureKey {
+        private final float radius;
+        private final int sides;
+        private final float angle;
+        private final int w;
+        private final int h;
+
+        ApertureKey(float radius, int sides, float angle, int w, int h) {
+            this.radius = radius;
+            this.sides = sides;
+            this.angle = angle;
+            this.w = w;
+            this.h = h;
+        }
 
-                dst.setRGB(tx, ty, tw, th, rgb, iradius * w + iradius, w );
-                // setRGB(dst, tx, ty, tw, th, rgb);
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ApertureKey)) {
+                return false;
             }
-            pt.unitDone();
+            ApertureKey other = (ApertureKey) o;
+            return radius == other.radius && sides == other.sides
+                    && angle == other.angle && w == other.w && h == other.h;
         }
-        finishProgressTracker();
 
-        return dst;
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(radius);
+            result = 31 * result + sides;
+            result = 31 * result + Float.floatToIntBits(angle);
+            result = 31 * result + w;
+            return 31 * result + h;
+        }
     }
 
 	public String toString() {
@@ -16,7 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import com.jhlabs.math.Noise;
+import pixelitor.utils.noise.PerlinNoise;
+import pixelitor.utils.noise.SeededNoise;
 
 import java.awt.image.BufferedImage;
 
@@ -30,6 +31,7 @@ public class MarbleFilter extends TransformFilter {
     private float amount = 4;
     private float turbulence = 1;
     private float time;
+    private SeededNoise noise = new PerlinNoise(System.nanoTime());
 
     public MarbleFilter(String filterName) {
         super(filterName);
@@ -86,6 +88,14 @@ public class MarbleFilter extends TransformFilter {
         return turbulence;
     }
 
+    /**
+     * Sets the noise generator used by this filter.
+     * By default every filter instance has its own generator.
+     */
+    public void setNoise(SeededNoise noise) {
+        this.noise = noise;
+    }
+
     private void initialize() {
         sinTable = new float[256];
         cosTable = new float[256];
@@ -115,8 +125,8 @@ public class MarbleFilter extends TransformFilter {
     }
 
     private int displacementMap(int x, int y) {
-        float noise = Noise.noise3(x / scale, y / scale, time); // mostly between -1 and 1 but not distributed uniformly
-        return PixelUtils.clamp((int) (127 * (1 + noise)));
+        float n = noise.noise3(x / scale, y / scale, time); // mostly between -1 and 1 but not distributed uniformly
+        return PixelUtils.clamp((int) (127 * (1 + n)));
     }
 
     @Override
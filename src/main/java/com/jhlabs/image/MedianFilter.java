@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 
 /**
@@ -75,7 +77,7 @@ public class MedianFilter extends WholeImageFilter {
 		int[] r = new int[9];
 		int[] g = new int[9];
 		int[] b = new int[9];
-		int[] outPixels = new int[width * height];
+		int[] outPixels = BufferPool.leaseInts(width * height);
 
         pt = createProgressTracker(height);
 
@@ -19,6 +19,7 @@ package com.jhlabs.image;
 import net.jafama.DoubleWrapper;
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
@@ -253,8 +254,8 @@ public class MotionBlurFilter extends AbstractBufferedImageOp implements MotionB
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
         getRGB(src, 0, 0, width, height, inPixels);
 
 //		float sinAngle = (float)Math.sin(angle);
@@ -276,7 +277,7 @@ public class MotionBlurFilter extends AbstractBufferedImageOp implements MotionB
         int repetitions = (int) maxDistance;
 
         if (premultiplyAlpha) {
-            ImageMath.premultiply(inPixels, 0, inPixels.length);
+            ImageMath.premultiply(inPixels, 0, width * height);
         }
 
         Future<?>[] futures = new Future[height];
@@ -287,11 +288,14 @@ public class MotionBlurFilter extends AbstractBufferedImageOp implements MotionB
         }
         ThreadPool.waitForFutures(futures, pt);
         if (premultiplyAlpha) {
-            ImageMath.unpremultiply(outPixels, 0, inPixels.length);
+            ImageMath.unpremultiply(outPixels, 0, width * height);
         }
 
         setRGB(dst, 0, 0, width, height, outPixels);
 
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+
         finishProgressTracker();
 
         return dst;
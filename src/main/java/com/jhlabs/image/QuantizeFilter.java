@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 
 /**
@@ -195,7 +197,7 @@ public class QuantizeFilter extends WholeImageFilter {
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
-        int[] outPixels = new int[width * height];
+        int[] outPixels = BufferPool.leaseInts(width * height);
 
         quantize(inPixels, outPixels, width, height, numColors, dither, serpentine);
 
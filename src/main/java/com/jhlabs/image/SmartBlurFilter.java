@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
@@ -44,8 +45,8 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
         getRGB(src, 0, 0, width, height, inPixels);
 
         Kernel kernel = GaussianFilter.makeKernel(hRadius);
@@ -54,6 +55,9 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
 
         setRGB(dst, 0, 0, width, height, inPixels);
 
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+
         finishProgressTracker();
 
         return dst;
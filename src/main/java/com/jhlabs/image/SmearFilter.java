@@ -17,6 +17,7 @@ limitations under the License.
 package com.jhlabs.image;
 
 import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -109,7 +110,7 @@ public class SmearFilter extends WholeImageFilter {
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
-        int[] outPixels = new int[width * height];
+        int[] outPixels = BufferPool.leaseInts(width * height);
 
         int i = 0;
         for (int y = 0; y < height; y++) {
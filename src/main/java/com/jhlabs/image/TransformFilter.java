@@ -18,11 +18,19 @@ package com.jhlabs.image;
 
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 /**
@@ -72,6 +80,25 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     public final static int BILINEAR = 1;
     public final static int BILINEAR_OLD = 3;
 
+    /**
+     * Use bicubic (Catmull-Rom) interpolation.
+     */
+    public final static int BICUBIC = 4;
+
+    /**
+     * Use adaptive supersampling: the number of bilinear samples
+     * depends on the size of the pixel's footprint in the source
+     * image, so that strongly minified areas are not aliased.
+     */
+    public final static int SUPERSAMPLING = 5;
+
+    // the maximum number of supersamples along one side of the footprint,
+    // beyond this a smaller mip level of the source image is sampled
+    private static final int MAX_SAMPLES_PER_AXIS = 8;
+
+    // the number of rows calculated by one supersampling task
+    private static final int SUPERSAMPLING_BAND_HEIGHT = 16;
+
     /**
      * The action to take for pixels off the image edge.
      */
@@ -119,7 +146,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     /**
      * Set the type of interpolation to perform.
      *
-     * @param interpolation one of NEAREST_NEIGHBOUR or BILINEAR
+     * @param interpolation one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or SUPERSAMPLING
      * @see #getInterpolation
      */
     public void setInterpolation(int interpolation) {
@@ -129,7 +156,7 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
     /**
      * Get the type of interpolation to perform.
      *
-     * @return one of NEAREST_NEIGHBOUR or BILINEAR
+     * @return one of NEAREST_NEIGHBOUR, BILINEAR, BICUBIC or SUPERSAMPLING
      * @see #setInterpolation
      */
     public int getInterpolation() {
@@ -173,19 +200,29 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         }
 //		WritableRaster dstRaster = dst.getRaster();
 
-        int[] inPixels = getRGB(src, 0, 0, srcWidth, srcHeight, null);
+        int[] inPixels = getSourcePixels(src, dst);
 
         if (interpolation == BILINEAR) {
-            return filterPixelsBilinear(dst, srcWidth, srcHeight, inPixels);
+            dst = filterPixelsBilinear(dst, srcWidth, srcHeight, inPixels);
         } else if (interpolation == NEAREST_NEIGHBOUR) {
-            return filterPixelsNN(dst, srcWidth, srcHeight, inPixels);
+            dst = filterPixelsNN(dst, srcWidth, srcHeight, inPixels);
+        } else if (interpolation == BICUBIC) {
+            dst = filterPixelsBicubic(dst, srcWidth, srcHeight, inPixels);
+        } else if (interpolation == SUPERSAMPLING) {
+            dst = filterPixelsSupersampling(dst, srcWidth, srcHeight, inPixels);
         } else if (interpolation == BILINEAR_OLD) {
-            return filterPixelsBilinearOLD(dst, srcWidth, srcHeight, inPixels);
+            dst = filterPixelsBilinearOLD(dst, srcWidth, srcHeight, inPixels);
         } else if (interpolation == NEAREST_NEIGHBOUR_OLD) {
-            return filterPixelsNNOLD(dst, srcWidth, srcHeight, inPixels);
+            dst = filterPixelsNNOLD(dst, srcWidth, srcHeight, inPixels);
+        } else {
+            throw new IllegalStateException("should not get here");
         }
 
-        throw new IllegalStateException("should not get here");
+        if (!isBackedBy(src, inPixels)) {
+            // it was a copy of the source pixels
+            BufferPool.returnInts(inPixels);
+        }
+        return dst;
     }
 
     private BufferedImage filterPixelsBilinearOLD(BufferedImage dst, int width, int height, int[] inPixels) {
@@ -344,6 +381,335 @@ public abstract class TransformFilter extends AbstractBufferedImageOp {
         return dst;
     }
 
+    /**
+     * Returns the source pixels. The pixel array of the source image
+     * is used directly if possible, because it is only read, and
+     * the destination is written only after all lines are calculated.
+     */
+    private static int[] getSourcePixels(BufferedImage src, BufferedImage dst) {
+        int type = src.getType();
+        WritableRaster raster = src.getRaster();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE)
+                && src != dst
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == src.getWidth()) {
+            int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            if (pixels.length == src.getWidth() * src.getHeight()) {
+                return pixels;
+            }
+        }
+        int[] pixels = BufferPool.leaseInts(src.getWidth() * src.getHeight());
+        return getRGB(src, 0, 0, src.getWidth(), src.getHeight(), pixels);
+    }
+
+    private static boolean isBackedBy(BufferedImage img, int[] pixels) {
+        DataBuffer dataBuffer = img.getRaster().getDataBuffer();
+        return dataBuffer instanceof DataBufferInt
+                && ((DataBufferInt) dataBuffer).getData() == pixels;
+    }
+
+    private BufferedImage filterPixelsBicubic(BufferedImage dst, int width, int height, int[] inPixels) {
+        int srcWidth = width;
+        int srcHeight = height;
+        int outWidth = width;
+        int outHeight = height;
+
+        pt = createProgressTracker(outHeight);
+        List<Future<int[]>> resultLines = new ArrayList<>(outHeight);
+
+        for (int y = 0; y < outHeight; y++) {
+            float[] out = new float[2];
+            int finalY = y;
+            Callable<int[]> calculateLineTask = () -> {
+                int[] outPixels = new int[outWidth];
+                int[] neighbors = new int[16];
+                for (int x = 0; x < outWidth; x++) {
+                    transformInverse(x, finalY, out);
+                    outPixels[x] = sampleBicubic(inPixels, srcWidth, srcHeight, out[0], out[1], neighbors);
+                }
+                return outPixels;
+            };
+
+            resultLines.add(ThreadPool.submit2(calculateLineTask));
+        }
+        ThreadPool.waitForFutures2(resultLines, dst, width, pt);
+        finishProgressTracker();
+
+        return dst;
+    }
+
+    private int sampleBicubic(int[] pixels, int width, int height, float u, float v, int[] neighbors) {
+        int srcX = (int) FastMath.floor(u);
+        int srcY = (int) FastMath.floor(v);
+        float xWeight = u - srcX;
+        float yWeight = v - srcY;
+
+        if ((srcX >= 1) && (srcX < width - 2) && (srcY >= 1) && (srcY < height - 2)) {
+            // Easy case, all the 16 neighbors are in the image
+            int i = width * (srcY - 1) + srcX - 1;
+            for (int row = 0; row < 4; row++) {
+                System.arraycopy(pixels, i, neighbors, row * 4, 4);
+                i += width;
+            }
+        } else {
+            for (int row = 0; row < 4; row++) {
+                for (int col = 0; col < 4; col++) {
+                    neighbors[row * 4 + col] = getPixelBL(pixels,
+                            srcX - 1 + col, srcY - 1 + row, width, height);
+                }
+            }
+        }
+        return ImageMath.bicubicInterpolate(xWeight, yWeight, neighbors);
+    }
+
+    /**
+     * Renders the image with a per-pixel number of samples that depends on
+     * the local scale of the inverse transformation. The footprint of a
+     * destination pixel in the source image is estimated from the differences
+     * between the inverse transformed positions of the neighboring pixels
+     * (a finite difference approximation of the Jacobian), and the footprint
+     * parallelogram is sampled on a regular grid. Very large footprints are
+     * sampled in a downscaled version of the source image (mip level).
+     */
+    private BufferedImage filterPixelsSupersampling(BufferedImage dst, int width, int height, int[] inPixels) {
+        int outWidth = width;
+        int outHeight = height;
+
+        MipLevel[] mipLevels = MipLevel.createPyramid(inPixels, width, height);
+
+        int numBands = (outHeight + SUPERSAMPLING_BAND_HEIGHT - 1) / SUPERSAMPLING_BAND_HEIGHT;
+        pt = createProgressTracker(numBands);
+        List<Future<int[]>> resultBands = new ArrayList<>(numBands);
+
+        for (int band = 0; band < numBands; band++) {
+            int startY = band * SUPERSAMPLING_BAND_HEIGHT;
+            int endY = Math.min(outHeight, startY + SUPERSAMPLING_BAND_HEIGHT);
+            Callable<int[]> calculateBandTask = () ->
+                    calculateSupersampledBand(mipLevels, outWidth, startY, endY);
+            resultBands.add(ThreadPool.submit2(calculateBandTask));
+        }
+
+        try {
+            for (int band = 0; band < numBands; band++) {
+                int[] bandPixels = resultBands.get(band).get();
+                int startY = band * SUPERSAMPLING_BAND_HEIGHT;
+                int bandHeight = bandPixels.length / outWidth;
+                setRGB(dst, 0, startY, outWidth, bandHeight, bandPixels);
+                pt.unitDone();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+        finishProgressTracker();
+
+        return dst;
+    }
+
+    private int[] calculateSupersampledBand(MipLevel[] mipLevels, int outWidth, int startY, int endY) {
+        int[] bandPixels = new int[outWidth * (endY - startY)];
+
+        // the inverse transformed positions of the previous, current and next
+        // row, with an extra pixel on both sides, as interleaved x, y values
+        float[] prevRow = new float[2 * (outWidth + 2)];
+        float[] currRow = new float[2 * (outWidth + 2)];
+        float[] nextRow = new float[2 * (outWidth + 2)];
+        float[] out = new float[2];
+
+        mapRow(startY - 1, outWidth, prevRow, out);
+        mapRow(startY, outWidth, currRow, out);
+
+        MipLevel base = mipLevels[0];
+        int index = 0;
+        for (int y = startY; y < endY; y++) {
+            mapRow(y + 1, outWidth, nextRow, out);
+
+            for (int x = 0; x < outWidth; x++) {
+                int i = 2 * (x + 1);
+                float u = currRow[i];
+                float v = currRow[i + 1];
+
+                // the one-sided differences with the smaller length are
+                // used, so that the discontinuities of the transformation
+                // (for example at the edges of kaleidoscope segments)
+                // don't result in huge footprints
+                float dudx = smallerDiff(u - currRow[i - 2], currRow[i + 2] - u,
+                        v - currRow[i - 1], currRow[i + 3] - v, true);
+                float dvdx = smallerDiff(u - currRow[i - 2], currRow[i + 2] - u,
+                        v - currRow[i - 1], currRow[i + 3] - v, false);
+                float dudy = smallerDiff(u - prevRow[i], nextRow[i] - u,
+                        v - prevRow[i + 1], nextRow[i + 1] - v, true);
+                float dvdy = smallerDiff(u - prevRow[i], nextRow[i] - u,
+                        v - prevRow[i + 1], nextRow[i + 1] - v, false);
+
+                float lengthX = (float) Math.sqrt(dudx * dudx + dvdx * dvdx);
+                float lengthY = (float) Math.sqrt(dudy * dudy + dvdy * dvdy);
+
+                if (lengthX <= 1.0f && lengthY <= 1.0f) {
+                    // no minification, a single sample is enough
+                    bandPixels[index++] = sampleBilinear(base.pixels, base.width, base.height, u, v);
+                    continue;
+                }
+
+                // choose the mip level where the footprint can be
+                // covered with at most MAX_SAMPLES_PER_AXIS samples
+                int level = 0;
+                float scale = 1.0f;
+                float maxLength = Math.max(lengthX, lengthY);
+                while (maxLength * scale > MAX_SAMPLES_PER_AXIS && level < mipLevels.length - 1) {
+                    level++;
+                    scale *= 0.5f;
+                }
+                MipLevel mip = mipLevels[level];
+
+                int samplesX = Math.min(MAX_SAMPLES_PER_AXIS, Math.max(1, (int) Math.ceil(lengthX * scale)));
+                int samplesY = Math.min(MAX_SAMPLES_PER_AXIS, Math.max(1, (int) Math.ceil(lengthY * scale)));
+
+                // the center of the footprint and its axes in the coordinates of the mip level
+                float centerU = (u + 0.5f) * scale - 0.5f;
+                float centerV = (v + 0.5f) * scale - 0.5f;
+                float axisXU = dudx * scale;
+                float axisXV = dvdx * scale;
+                float axisYU = dudy * scale;
+                float axisYV = dvdy * scale;
+
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int sy = 0; sy < samplesY; sy++) {
+                    float fy = (sy + 0.5f) / samplesY - 0.5f;
+                    for (int sx = 0; sx < samplesX; sx++) {
+                        float fx = (sx + 0.5f) / samplesX - 0.5f;
+                        float sampleU = centerU + fx * axisXU + fy * axisYU;
+                        float sampleV = centerV + fx * axisXV + fy * axisYV;
+                        int rgb = sampleBilinear(mip.pixels, mip.width, mip.height, sampleU, sampleV);
+                        a += (rgb >>> 24);
+                        r += (rgb >> 16) & 0xff;
+                        g += (rgb >> 8) & 0xff;
+                        b += rgb & 0xff;
+                    }
+                }
+                int numSamples = samplesX * samplesY;
+                int half = numSamples / 2;
+                a = (a + half) / numSamples;
+                r = (r + half) / numSamples;
+                g = (g + half) / numSamples;
+                b = (b + half) / numSamples;
+                bandPixels[index++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+
+            float[] tmp = prevRow;
+            prevRow = currRow;
+            currRow = nextRow;
+            nextRow = tmp;
+        }
+        return bandPixels;
+    }
+
+    /**
+     * Inverse transforms the pixels of a row from x = -1 to x = width
+     */
+    private void mapRow(int y, int width, float[] row, float[] out) {
+        for (int x = -1; x <= width; x++) {
+            transformInverse(x, y, out);
+            int i = 2 * (x + 1);
+            row[i] = out[0];
+            row[i + 1] = out[1];
+        }
+    }
+
+    /**
+     * Returns the u or v component of the one-sided difference vector
+     * (backward or forward) that has the smaller length
+     */
+    private static float smallerDiff(float backU, float forwardU,
+                                     float backV, float forwardV, boolean returnU) {
+        boolean backIsSmaller = backU * backU + backV * backV
+                <= forwardU * forwardU + forwardV * forwardV;
+        if (returnU) {
+            return backIsSmaller ? backU : forwardU;
+        }
+        return backIsSmaller ? backV : forwardV;
+    }
+
+    private int sampleBilinear(int[] pixels, int width, int height, float u, float v) {
+        int srcX = (int) FastMath.floor(u);
+        int srcY = (int) FastMath.floor(v);
+        float xWeight = u - srcX;
+        float yWeight = v - srcY;
+        int nw, ne, sw, se;
+
+        if ((srcX >= 0) && (srcX < width - 1) && (srcY >= 0) && (srcY < height - 1)) {
+            int i = (width * srcY) + srcX;
+            nw = pixels[i];
+            ne = pixels[i + 1];
+            sw = pixels[i + width];
+            se = pixels[i + width + 1];
+        } else {
+            nw = getPixelBL(pixels, srcX, srcY, width, height);
+            ne = getPixelBL(pixels, srcX + 1, srcY, width, height);
+            sw = getPixelBL(pixels, srcX, srcY + 1, width, height);
+            se = getPixelBL(pixels, srcX + 1, srcY + 1, width, height);
+        }
+        return ImageMath.bilinearInterpolate(xWeight, yWeight, nw, ne, sw, se);
+    }
+
+    /**
+     * One level of a mip map pyramid: the source image
+     * downscaled by a power of two
+     */
+    private static class MipLevel {
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+
+        private MipLevel(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        static MipLevel[] createPyramid(int[] pixels, int width, int height) {
+            List<MipLevel> levels = new ArrayList<>();
+            MipLevel level = new MipLevel(pixels, width, height);
+            levels.add(level);
+            while (level.width > 1 || level.height > 1) {
+                level = level.halve();
+                levels.add(level);
+            }
+            return levels.toArray(new MipLevel[0]);
+        }
+
+        /**
+         * Returns the next level, where each pixel is the average of 2x2
+         * pixels (at odd sizes the last row or column is repeated)
+         */
+        private MipLevel halve() {
+            int newWidth = (width + 1) / 2;
+            int newHeight = (height + 1) / 2;
+            int[] newPixels = new int[newWidth * newHeight];
+            for (int y = 0; y < newHeight; y++) {
+                int y0 = 2 * y;
+                int y1 = Math.min(y0 + 1, height - 1);
+                for (int x = 0; x < newWidth; x++) {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(x0 + 1, width - 1);
+                    newPixels[y * newWidth + x] = average4(
+                            pixels[y0 * width + x0], pixels[y0 * width + x1],
+                            pixels[y1 * width + x0], pixels[y1 * width + x1]);
+                }
+            }
+            return new MipLevel(newPixels, newWidth, newHeight);
+        }
+
+        private static int average4(int p1, int p2, int p3, int p4) {
+            int a = ((p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + (p4 >>> 24) + 2) >> 2;
+            int r = (((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + ((p4 >> 16) & 0xff) + 2) >> 2;
+            int g = (((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + ((p4 >> 8) & 0xff) + 2) >> 2;
+            int b = ((p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + (p4 & 0xff) + 2) >> 2;
+            return (a << 24) | (r << 16) | (g << 8) | b;
+        }
+    }
+
     private int getPixelBL(int[] pixels, int x, int y, int width, int height) {
         if ((x < 0) || (x >= width)) {  // x out of range
             if ((y < 0) || (y >= height)) { // y also out of range {
@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.image.BufferedImage;
 
 /**
@@ -86,14 +88,13 @@ public class UnsharpFilter extends GaussianFilter {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
 //        src.getRGB(0, 0, width, height, inPixels, 0, width);
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, outPixels, width, height, pt);
         }
 
         // src.getRGB(0, 0, width, height, outPixels, 0, width);
@@ -132,6 +133,9 @@ public class UnsharpFilter extends GaussianFilter {
 
         dst.setRGB(0, 0, width, height, inPixels, 0, width);
 
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+
         finishProgressTracker();
 
         return dst;
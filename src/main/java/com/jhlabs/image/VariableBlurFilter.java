@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.Rectangle;
@@ -72,12 +73,12 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
             dst = createCompatibleDestImage(src, null);
         }
 
-        int[] inPixels = new int[width * height];
-        int[] outPixels = new int[width * height];
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        int[] outPixels = BufferPool.leaseInts(width * height);
         getRGB(src, 0, 0, width, height, inPixels);
 
 		if (premultiplyAlpha) {
-			ImageMath.premultiply(inPixels, 0, inPixels.length);
+			ImageMath.premultiply(inPixels, 0, width * height);
 		}
 
         for (int i = 0; i < iterations; i++) {
@@ -86,11 +87,14 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
         }
 
 		if (premultiplyAlpha) {
-			ImageMath.unpremultiply(inPixels, 0, inPixels.length);
+			ImageMath.unpremultiply(inPixels, 0, width * height);
 		}
 
         setRGB(dst, 0, 0, width, height, inPixels);
 
+        BufferPool.returnInts(inPixels);
+        BufferPool.returnInts(outPixels);
+
         finishProgressTracker();
 
         return dst;
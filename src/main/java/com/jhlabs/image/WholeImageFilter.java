@@ -16,6 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.BufferPool;
+
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
@@ -60,9 +62,17 @@ public abstract class WholeImageFilter extends AbstractBufferedImageOp {
         }
 //		WritableRaster dstRaster = dst.getRaster();
 
-        int[] inPixels = getRGB(src, 0, 0, width, height, null);
-        inPixels = filterPixels(width, height, inPixels, transformedSpace);
-        setRGB(dst, 0, 0, transformedSpace.width, transformedSpace.height, inPixels);
+        int[] inPixels = BufferPool.leaseInts(width * height);
+        getRGB(src, 0, 0, width, height, inPixels);
+        int[] outPixels = filterPixels(width, height, inPixels, transformedSpace);
+        setRGB(dst, 0, 0, transformedSpace.width, transformedSpace.height, outPixels);
+
+        // the subclasses don't keep references to the pixel arrays,
+        // so both can be reused by the next filter run
+        BufferPool.returnInts(inPixels);
+        if (outPixels != inPixels) {
+            BufferPool.returnInts(outPixels);
+        }
 
         return dst;
     }
@@ -76,7 +86,8 @@ public abstract class WholeImageFilter extends AbstractBufferedImageOp {
     }
 
     /**
-     * Actually filter the pixels.
+     * Actually filter the pixels. The input array can be
+     * longer than width * height, and it can be modified.
      *
      * @param width            the image width
      * @param height           the image height
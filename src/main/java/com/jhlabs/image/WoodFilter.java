@@ -16,7 +16,8 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import com.jhlabs.math.Noise;
+import pixelitor.utils.noise.PerlinNoise;
+import pixelitor.utils.noise.SeededNoise;
 
 /**
  * A filter which produces a simulated wood texture. This is a bit of a hack, but might be usefult to some people.
@@ -35,6 +36,7 @@ public class WoodFilter extends PointFilter {
 	private float m10 = 0.0f;
 	private float m11 = 1.0f;
 	private Colormap colormap = new LinearColormap( 0xffe5c494, 0xff987b51 );
+	private SeededNoise noise = new PerlinNoise(System.nanoTime());
 
 	/**
      * Construct a WoodFilter.
@@ -205,6 +207,14 @@ public class WoodFilter extends PointFilter {
 	public Colormap getColormap() {
 		return colormap;
 	}
+
+	/**
+	 * Sets the noise generator used by this filter.
+	 * By default every filter instance has its own generator.
+	 */
+	public void setNoise(SeededNoise noise) {
+		this.noise = noise;
+	}
 	
 	@Override
     public int filterRGB(int x, int y, int rgb) {
@@ -212,15 +222,15 @@ public class WoodFilter extends PointFilter {
 		float ny = m10*x + m11*y;
 		nx /= scale;
 		ny /= scale * stretch;
-		float f = Noise.noise2(nx, ny);
-        f += 0.1f*turbulence * Noise.noise2(nx*0.05f, ny*20);
+		float f = noise.noise2(nx, ny);
+        f += 0.1f*turbulence * noise.noise2(nx*0.05f, ny*20);
 		f = (f * 0.5f) + 0.5f;
 
         f *= rings*50;
         f = f-(int)f;
         f *= 1-ImageMath.smoothStep(gain, 1.0f, f);
 
-        f += fibres*Noise.noise2(nx*scale, ny*50);
+        f += fibres*noise.noise2(nx*scale, ny*50);
 
 		// TODO happened during robot tests
         if (Float.isNaN(f)) {
@@ -0,0 +1,555 @@
+package pd;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Encodes an animated GIF file like {@link AnimatedGifEncoder}, but
+ * the frames are quantized and LZW-compressed in parallel on the
+ * {@link ThreadPool}, and they are written in order as soon as they are ready.
+ * <p>
+ * Only the bounding rectangle of the pixels that changed since the
+ * previous frame is written, and the unchanged pixels inside it are
+ * transparent, so that the previous frame (which is not disposed)
+ * shows through. This makes the runs of the LZW compression longer.
+ * <p>
+ * By default every frame is quantized with its own local palette.
+ * If all the frames are known in advance, a global palette can
+ * be trained on some of them with {@link #setGlobalPalette(List)},
+ * which is faster, and avoids the color flickering between the frames.
+ * Palettes that are trained on at most 256 distinct colors are exact.
+ * <p>
+ * The frames must be added from a single thread.
+ */
+public class ParallelGifEncoder {
+    private static final int DISPOSE_DO_NOT_DISPOSE = 1;
+    private static final int COLOR_DEPTH = 8;
+    private static final int PALETTE_SIZE = 1 << COLOR_DEPTH;
+    private static final int NO_TRANSPARENCY = -1;
+
+    // the sampling factor of the NeuQuant training (1 = best, 30 = fastest)
+    private static final int QUANTIZER_SAMPLE = 10;
+
+    // limits for the training data of the global palette
+    private static final int MAX_PALETTE_SAMPLE_FRAMES = 8;
+    private static final int MAX_PALETTE_SAMPLE_PIXELS = 1 << 20;
+
+    private final File file;
+    private OutputStream out;
+    private boolean finished = false;
+
+    private int width; // the size of the first frame
+    private int height;
+    private int delay = 0; // hundredths of a second
+    private int repeat = -1; // no repeat
+
+    private Palette globalPalette;
+    private int[] prevPixels;
+
+    // the frames that are encoded (or wait for encoding) in the pool
+    private final Deque<Future<byte[]>> pendingFrames = new ArrayDeque<>();
+    private final int maxPendingFrames = 2 * ThreadPool.getNumThreads();
+
+    /**
+     * The file is opened when the first frame is added
+     */
+    public ParallelGifEncoder(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the delay time for the subsequently added frames in milliseconds
+     */
+    public void setDelay(int ms) {
+        delay = Math.round(ms / 10.0f);
+    }
+
+    /**
+     * Sets the number of times the animation should be played:
+     * 0 means repeat forever, and -1 (the default) means play once
+     */
+    public void setRepeat(int repeat) {
+        this.repeat = repeat;
+    }
+
+    /**
+     * Trains a palette shared by all frames on up to
+     * {@link #MAX_PALETTE_SAMPLE_FRAMES} evenly spaced frames
+     * of the given list. It must be called before the first frame is added.
+     */
+    public void setGlobalPalette(List<BufferedImage> frames) {
+        if (out != null) {
+            throw new IllegalStateException("already started");
+        }
+        int numFrames = frames.size();
+        if (numFrames == 0) {
+            return;
+        }
+        int numSamples = Math.min(numFrames, MAX_PALETTE_SAMPLE_FRAMES);
+        long totalPixels = 0;
+        for (int i = 0; i < numSamples; i++) {
+            BufferedImage frame = frames.get(i * numFrames / numSamples);
+            totalPixels += (long) frame.getWidth() * frame.getHeight();
+        }
+        int pixelStep = (int) ((totalPixels + MAX_PALETTE_SAMPLE_PIXELS - 1) / MAX_PALETTE_SAMPLE_PIXELS);
+
+        byte[] bgr = new byte[(int) (3 * ((totalPixels + pixelStep - 1) / pixelStep + numSamples))];
+        int length = 0;
+        for (int i = 0; i < numSamples; i++) {
+            BufferedImage frame = frames.get(i * numFrames / numSamples);
+            int[] pixels = getRGBPixels(frame, frame.getWidth(), frame.getHeight());
+            for (int j = 0; j < pixels.length; j += pixelStep) {
+                length = putBGR(pixels[j], bgr, length);
+            }
+        }
+        globalPalette = new Palette(bgr, length);
+    }
+
+    /**
+     * Adds a frame to the animation. The frame is copied, so the given
+     * image can be changed after this method returns. If the frame's size
+     * is different from the size of the first frame, it is cropped or extended.
+     */
+    public void addFrame(BufferedImage image) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("already finished");
+        }
+        if (out == null) {
+            start(image.getWidth(), image.getHeight());
+        }
+
+        int[] pixels = getRGBPixels(image, width, height);
+        int[] prev = prevPixels;
+        prevPixels = pixels;
+
+        int frameDelay = delay;
+        Palette palette = globalPalette;
+        pendingFrames.add(ThreadPool.submit2(() ->
+                encodeFrame(pixels, prev, palette, frameDelay)));
+
+        // don't keep too many frames in the memory
+        while (pendingFrames.size() > maxPendingFrames) {
+            writeNextFrame();
+        }
+    }
+
+    /**
+     * Writes the remaining frames and closes the file
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (out == null) { // no frames were added
+            return;
+        }
+        try {
+            while (!pendingFrames.isEmpty()) {
+                writeNextFrame();
+            }
+            out.write(0x3b); // gif trailer
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Stops the encoding and deletes the partially written file
+     */
+    public void cancel() {
+        finished = true;
+        for (Future<byte[]> future : pendingFrames) {
+            future.cancel(false);
+        }
+        pendingFrames.clear();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // ignore, the file is deleted anyway
+            }
+            file.delete();
+        }
+    }
+
+    private void start(int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        out = new BufferedOutputStream(new FileOutputStream(file));
+
+        writeString(out, "GIF89a");
+        writeLSD();
+        if (globalPalette != null) {
+            out.write(globalPalette.colorTab);
+        }
+        if (repeat >= 0) {
+            writeNetscapeExt();
+        }
+    }
+
+    /**
+     * Writes Logical Screen Descriptor
+     */
+    private void writeLSD() throws IOException {
+        writeShort(out, width);
+        writeShort(out, height);
+        int gctFlag = globalPalette != null ? 0x80 : 0;
+        out.write(gctFlag | // 1 : global color table flag
+                0x70 | // 2-4 : color resolution = 7
+                0x00 | // 5 : gct sort flag = 0
+                (COLOR_DEPTH - 1)); // 6-8 : gct size
+        out.write(0); // background color index
+        out.write(0); // pixel aspect ratio - assume 1:1
+    }
+
+    /**
+     * Writes Netscape application extension to define repeat count.
+     */
+    private void writeNetscapeExt() throws IOException {
+        out.write(0x21); // extension introducer
+        out.write(0xff); // app extension label
+        out.write(11); // block size
+        writeString(out, "NETSCAPE2.0"); // app id + auth code
+        out.write(3); // sub-block size
+        out.write(1); // loop sub-block id
+        writeShort(out, repeat); // loop count (0 = repeat forever)
+        out.write(0); // block terminator
+    }
+
+    private void writeNextFrame() throws IOException {
+        Future<byte[]> future = pendingFrames.removeFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Creates the complete data of a frame (graphic control extension,
+     * image descriptor, local color table and the LZW-compressed pixels).
+     * The previous pixels are null for the first frame.
+     */
+    private byte[] encodeFrame(int[] pixels, int[] prev,
+                               Palette globalPalette, int frameDelay) throws IOException {
+        // find the bounding rectangle of the changed pixels
+        int minX = 0, minY = 0, maxX = width - 1, maxY = height - 1;
+        if (prev != null) {
+            minX = width;
+            minY = height;
+            maxX = -1;
+            maxY = -1;
+            for (int y = 0; y < height; y++) {
+                int rowStart = y * width;
+                int x = 0;
+                while (x < width && pixels[rowStart + x] == prev[rowStart + x]) {
+                    x++;
+                }
+                if (x == width) { // nothing changed in this row
+                    continue;
+                }
+                int lastX = width - 1;
+                while (pixels[rowStart + lastX] == prev[rowStart + lastX]) {
+                    lastX--;
+                }
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, lastX);
+                if (maxY < 0) {
+                    minY = y;
+                }
+                maxY = y;
+            }
+            if (maxY < 0) {
+                // identical frame: a single transparent pixel is written
+                minX = minY = maxX = maxY = 0;
+            }
+        }
+        int rectWidth = maxX - minX + 1;
+        int rectHeight = maxY - minY + 1;
+        int numPixels = rectWidth * rectHeight;
+
+        // a pixel is changed if it is different from the previous frame
+        boolean[] changed = new boolean[numPixels];
+        byte[] bgr = new byte[3 * numPixels];
+        int bgrLength = 0;
+        for (int y = 0, i = 0; y < rectHeight; y++) {
+            int offset = (minY + y) * width + minX;
+            for (int x = 0; x < rectWidth; x++, i++) {
+                int rgb = pixels[offset + x];
+                if (prev == null || rgb != prev[offset + x]) {
+                    changed[i] = true;
+                    bgrLength = putBGR(rgb, bgr, bgrLength);
+                }
+            }
+        }
+
+        Palette palette = globalPalette;
+        boolean localPalette = palette == null;
+        if (localPalette && bgrLength > 0) {
+            palette = new Palette(bgr, bgrLength);
+        }
+
+        // map the changed pixels to the palette
+        byte[] indexedPixels = new byte[numPixels];
+        int[] usage = new int[PALETTE_SIZE];
+        if (palette != null) {
+            int lastRGB = 0;
+            int lastIndex = -1;
+            for (int i = 0, k = 0; i < numPixels; i++) {
+                if (!changed[i]) {
+                    continue;
+                }
+                int b = bgr[k++] & 0xFF;
+                int g = bgr[k++] & 0xFF;
+                int r = bgr[k++] & 0xFF;
+                int rgb = (r << 16) | (g << 8) | b;
+                // neighboring pixels often have the same color
+                if (rgb != lastRGB || lastIndex < 0) {
+                    lastIndex = palette.map(b, g, r);
+                    lastRGB = rgb;
+                }
+                indexedPixels[i] = (byte) lastIndex;
+                usage[lastIndex]++;
+            }
+        }
+
+        int transIndex = NO_TRANSPARENCY;
+        if (prev != null) {
+            byte[] colorTab = palette != null ? palette.colorTab : null;
+            transIndex = reserveTransparentIndex(indexedPixels, usage, colorTab);
+            for (int i = 0; i < numPixels; i++) {
+                if (!changed[i]) {
+                    indexedPixels[i] = (byte) transIndex;
+                }
+            }
+        }
+
+        ByteArrayOutputStream frameOut = new ByteArrayOutputStream(
+                PALETTE_SIZE * 3 + numPixels / 2 + 64);
+        writeGraphicCtrlExt(frameOut, frameDelay, transIndex);
+        writeImageDesc(frameOut, minX, minY, rectWidth, rectHeight, localPalette);
+        if (localPalette) {
+            if (palette != null) {
+                frameOut.write(palette.colorTab);
+            } else {
+                frameOut.write(new byte[3 * PALETTE_SIZE]);
+            }
+        }
+        new LZWEncoder(rectWidth, rectHeight, indexedPixels, COLOR_DEPTH).encode(frameOut);
+        return frameOut.toByteArray();
+    }
+
+    /**
+     * Returns a palette index that can be used for the transparent pixels.
+     * If all the palette entries are used, then the least used one
+     * is merged into the most similar other entry.
+     */
+    private static int reserveTransparentIndex(byte[] indexedPixels, int[] usage, byte[] colorTab) {
+        int leastUsed = 0;
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            if (usage[i] == 0) {
+                return i;
+            }
+            if (usage[i] < usage[leastUsed]) {
+                leastUsed = i;
+            }
+        }
+
+        int r = colorTab[3 * leastUsed] & 0xFF;
+        int g = colorTab[3 * leastUsed + 1] & 0xFF;
+        int b = colorTab[3 * leastUsed + 2] & 0xFF;
+        int nearest = -1;
+        int minDist = Integer.MAX_VALUE;
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            if (i == leastUsed) {
+                continue;
+            }
+            int dr = r - (colorTab[3 * i] & 0xFF);
+            int dg = g - (colorTab[3 * i + 1] & 0xFF);
+            int db = b - (colorTab[3 * i + 2] & 0xFF);
+            int dist = dr * dr + dg * dg + db * db;
+            if (dist < minDist) {
+                minDist = dist;
+                nearest = i;
+            }
+        }
+
+        byte from = (byte) leastUsed;
+        byte to = (byte) nearest;
+        for (int i = 0; i < indexedPixels.length; i++) {
+            if (indexedPixels[i] == from) {
+                indexedPixels[i] = to;
+            }
+        }
+        return leastUsed;
+    }
+
+    /**
+     * Writes Graphic Control Extension
+     */
+    private static void writeGraphicCtrlExt(OutputStream os, int frameDelay,
+                                            int transIndex) throws IOException {
+        os.write(0x21); // extension introducer
+        os.write(0xf9); // GCE label
+        os.write(4); // data block size
+        int transp = transIndex == NO_TRANSPARENCY ? 0 : 1;
+        // the frame is left in place, because the next frame only
+        // contains the pixels that changed
+        int disp = DISPOSE_DO_NOT_DISPOSE << 2;
+        os.write(disp | transp); // packed fields
+        writeShort(os, frameDelay); // delay x 1/100 sec
+        os.write(transp == 0 ? 0 : transIndex); // transparent color index
+        os.write(0); // block terminator
+    }
+
+    /**
+     * Writes Image Descriptor
+     */
+    private static void writeImageDesc(OutputStream os, int x, int y,
+                                       int w, int h, boolean localPalette) throws IOException {
+        os.write(0x2c); // image separator
+        writeShort(os, x); // image position
+        writeShort(os, y);
+        writeShort(os, w); // image size
+        writeShort(os, h);
+        if (localPalette) {
+            os.write(0x80 | // 1 local color table 1=yes
+                    (COLOR_DEPTH - 1)); // 6-8 size of color table
+        } else {
+            os.write(0); // the global color table is used
+        }
+    }
+
+    /**
+     * Returns the pixels of the given image in RGB format, drawn
+     * on a black background (as in {@link AnimatedGifEncoder})
+     */
+    private static int[] getRGBPixels(BufferedImage image, int width, int height) {
+        BufferedImage rgbImage = new BufferedImage(width, height, TYPE_INT_RGB);
+        Graphics2D g = rgbImage.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return ((DataBufferInt) rgbImage.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int putBGR(int rgb, byte[] bgr, int index) {
+        bgr[index++] = (byte) rgb;
+        bgr[index++] = (byte) (rgb >>> 8);
+        bgr[index++] = (byte) (rgb >>> 16);
+        return index;
+    }
+
+    /**
+     * Write 16-bit value to output stream, LSB first
+     */
+    private static void writeShort(OutputStream os, int value) throws IOException {
+        os.write(value & 0xff);
+        os.write((value >> 8) & 0xff);
+    }
+
+    private static void writeString(OutputStream os, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            os.write((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * An RGB color table with the mapping of the colors to its entries.
+     * If the training data has at most {@link #PALETTE_SIZE} distinct
+     * colors, then they are used exactly, otherwise they are quantized
+     * by a trained NeuQuant network. (NeuQuant is not exact even for
+     * a few colors, especially if it is trained on the small changed
+     * rectangle of a frame.) After the training the palette is only
+     * read, so it can be shared between the threads encoding the frames.
+     */
+    private static class Palette {
+        private final NeuQuant quant;
+        private final Map<Integer, Integer> exactIndices;
+        private final byte[] colorTab;
+
+        Palette(byte[] bgr, int length) {
+            Map<Integer, Integer> indices = new HashMap<>();
+            for (int i = 0; i < length && indices.size() <= PALETTE_SIZE; i += 3) {
+                int rgb = ((bgr[i + 2] & 0xFF) << 16) | ((bgr[i + 1] & 0xFF) << 8) | (bgr[i] & 0xFF);
+                indices.putIfAbsent(rgb, indices.size());
+            }
+
+            if (indices.size() <= PALETTE_SIZE) {
+                quant = null;
+                exactIndices = indices;
+                colorTab = new byte[3 * PALETTE_SIZE];
+                for (Map.Entry<Integer, Integer> entry : indices.entrySet()) {
+                    int rgb = entry.getKey();
+                    int i = 3 * entry.getValue();
+                    colorTab[i] = (byte) (rgb >>> 16);
+                    colorTab[i + 1] = (byte) (rgb >>> 8);
+                    colorTab[i + 2] = (byte) rgb;
+                }
+                return;
+            }
+
+            quant = new NeuQuant(bgr, length, QUANTIZER_SAMPLE);
+            exactIndices = null;
+            byte[] tab = quant.process();
+            // convert from BGR to RGB
+            for (int i = 0; i < tab.length; i += 3) {
+                byte tmp = tab[i];
+                tab[i] = tab[i + 2];
+                tab[i + 2] = tmp;
+            }
+            colorTab = tab;
+        }
+
+        /**
+         * Returns the index of the palette entry that is the closest to the given color
+         */
+        int map(int b, int g, int r) {
+            if (quant != null) {
+                return quant.map(b, g, r);
+            }
+            Integer index = exactIndices.get((r << 16) | (g << 8) | b);
+            if (index != null) {
+                return index;
+            }
+
+            // a global palette might not have seen all the colors
+            int nearest = 0;
+            int minDist = Integer.MAX_VALUE;
+            for (int i = 0; i < exactIndices.size(); i++) {
+                int dr = r - (colorTab[3 * i] & 0xFF);
+                int dg = g - (colorTab[3 * i + 1] & 0xFF);
+                int db = b - (colorTab[3 * i + 2] & 0xFF);
+                int dist = dr * dr + dg * dg + db * db;
+                if (dist < minDist) {
+                    minDist = dist;
+                    nearest = i;
+                }
+            }
+            return nearest;
+        }
+    }
+}
@@ -32,6 +32,7 @@ public enum Build {
     };
 
     private static boolean testing = false;
+    private static boolean headless = false;
 
     public static final boolean enableAdjLayers = false;
 
@@ -68,6 +69,18 @@ public enum Build {
         return testing;
     }
 
+    /**
+     * Returns true if Pixelitor is used through the headless API,
+     * and no GUI objects should be created
+     */
+    public static synchronized boolean isHeadless() {
+        return headless;
+    }
+
+    public static synchronized void setHeadlessMode() {
+        headless = true;
+    }
+
     public static void setTestingMode() {
         testing = true;
         Utils.makeSureAssertionsAreEnabled();
@@ -18,6 +18,7 @@
 package pixelitor;
 
 import pixelitor.gui.ImageComponent;
+import pixelitor.selection.SelectionMask;
 import pixelitor.tools.Symmetry;
 
 import java.awt.Dimension;
@@ -137,6 +138,9 @@ public class Canvas implements Serializable {
     }
 
     public Shape invertShape(Shape shape) {
+        if (SelectionMask.shouldUseMask(shape)) {
+            return SelectionMask.invertShape(shape, getImBounds());
+        }
         Area area = new Area(shape);
         Area fullArea = new Area(getImBounds());
         fullArea.subtract(area);
@@ -146,6 +150,9 @@ public class Canvas implements Serializable {
     public Shape clipShapeToBounds(Shape shape) {
         assert shape != null;
 
+        if (SelectionMask.shouldUseMask(shape)) {
+            return SelectionMask.clipShape(shape, getImBounds());
+        }
         Area compBounds = new Area(getImBounds());
         Area result = new Area(shape);
         result.intersect(compBounds);
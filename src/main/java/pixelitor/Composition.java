@@ -749,7 +749,8 @@ public class Composition implements Serializable {
         compositeImage.invalidate();
         if (ic != null) { // during reload image it can be null
             ic.updateRegion(start, end, thickness);
-            ic.updateNavigator(false);
+            ic.scheduleNavigatorUpdate();
+            ic.scheduleHistogramUpdate();
         }
     }
 
@@ -757,7 +758,21 @@ public class Composition implements Serializable {
         compositeImage.invalidate();
         if (ic != null) { // during reload image it can be null
             ic.updateRegion(area);
-            ic.updateNavigator(false);
+            ic.scheduleNavigatorUpdate();
+            ic.scheduleHistogramUpdate();
+        }
+    }
+
+    /**
+     * Like imageChanged(REPAINT), but the repaint is coalesced
+     * with the other requests in the same display frame.
+     * Used for the continuous updates during mouse drags.
+     */
+    public void imageChangedWhileDragging() {
+        compositeImage.invalidate();
+        if (ic != null) {
+            ic.scheduleRepaint();
+            ic.scheduleNavigatorUpdate();
         }
     }
 
@@ -1011,7 +1026,7 @@ public class Composition implements Serializable {
         }
 
         if (actions.histogramChanged()) {
-            HistogramsPanel.INSTANCE.updateFromCompIfShown(this);
+            HistogramsPanel.updateFromCompIfShown(this);
         }
     }
 
@@ -27,6 +27,7 @@ import pixelitor.gui.ImageComponents;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.GUIUtils;
+import pixelitor.headless.BatchRunner;
 import pixelitor.io.IOThread;
 import pixelitor.io.OpenSave;
 import pixelitor.layers.AddLayerMaskAction;
@@ -35,10 +36,12 @@ import pixelitor.layers.Layer;
 import pixelitor.layers.LayerMaskAddType;
 import pixelitor.layers.MaskViewMode;
 import pixelitor.tools.Tools;
+import pixelitor.tools.gui.ToolSettingsPanelContainer;
 import pixelitor.tools.pen.Path;
 import pixelitor.utils.AppPreferences;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Shapes;
+import pixelitor.utils.StartupTimeline;
 import pixelitor.utils.Utils;
 
 import javax.swing.*;
@@ -64,6 +67,8 @@ public class Pixelitor {
     }
 
     public static void main(String[] args) {
+        StartupTimeline.start();
+
         // the app can be put into development mode by
         // adding -Dpixelitor.development=true to the command line
         if ("true".equals(System.getProperty("pixelitor.development"))) {
@@ -71,20 +76,22 @@ public class Pixelitor {
             Build.CURRENT = Build.DEVELOPMENT;
         }
 
+        if (GraphicsEnvironment.isHeadless()) {
+            // without a GUI the arguments describe a batch job
+            BatchRunner.main(args);
+            return;
+        }
+
         System.setProperty("com.apple.mrj.application.apple.menu.about.name", "Pixelitor");
 
         if (JVM.isLinux) {
             // doesn't seem to pick up good defaults
             System.setProperty("awt.useSystemAAFontSettings", "lcd");
             System.setProperty("swing.aatext", "true");
-
-            if (GraphicsEnvironment.isHeadless()) {
-                System.err.println("Pixelitor cannot be used in headless mode");
-                System.exit(1);
-            }
         }
 
         ExceptionHandler.INSTANCE.initialize();
+        StartupTimeline.phaseFinished("main method");
         EventQueue.invokeLater(() -> {
             try {
                 createAndShowGUI(args);
@@ -103,6 +110,7 @@ public class Pixelitor {
         assert EventQueue.isDispatchThread() : "not EDT thread";
 
         setLookAndFeel();
+        StartupTimeline.phaseFinished("look and feel");
 
         PixelitorWindow pw = PixelitorWindow.getInstance();
         Dialogs.setMainWindowInitialized(true);
@@ -114,6 +122,10 @@ public class Pixelitor {
 
         TipsOfTheDay.showTips(pw, false);
 
+        // the settings panels of the other tools are not
+        // needed for the first paint, so they are built later
+        ToolSettingsPanelContainer.INSTANCE.addRemainingPanelsLater();
+
         // The IO-intensive pre-loading of fonts is scheduled
         // to run after all the files have been opened,
         // and on the same IO thread
@@ -21,12 +21,15 @@ import com.jhlabs.image.AbstractBufferedImageOp;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A thread pool for parallel execution on multiple CPU cores
@@ -34,27 +37,62 @@ import java.util.concurrent.Future;
 public class ThreadPool {
     private static final int NUM_AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
 
+    private static final AtomicInteger workerCount = new AtomicInteger();
+
     private static final ExecutorService executorService =
-            Executors.newFixedThreadPool(NUM_AVAILABLE_PROCESSORS);
+            Executors.newFixedThreadPool(NUM_AVAILABLE_PROCESSORS,
+                    r -> new Worker(r, workerCount.incrementAndGet()));
 
     private ThreadPool() {
     }
 
     /**
-     * Submits a task that doesn't return anything
+     * Returns true if the current thread is one of the pool's threads.
+     * Code running in the pool should not submit new tasks
+     * and wait for them, because this could deadlock if all
+     * the threads are waiting. It should do the work itself instead.
+     */
+    public static boolean isWorkerThread() {
+        return Thread.currentThread() instanceof Worker;
+    }
+
+    public static int getNumThreads() {
+        return NUM_AVAILABLE_PROCESSORS;
+    }
+
+    /**
+     * Submits a task that doesn't return anything.
+     * If called from a pool thread, the task is executed
+     * immediately in the calling thread (see {@link #isWorkerThread()})
      */
     public static Future<?> submit(Runnable task) {
+        if (isWorkerThread()) {
+            return runInCurrentThread(new FutureTask<>(task, null));
+        }
         return executorService.submit(task);
     }
 
     /**
      * Submits a task that returns something, such as
-     * the calculated pixels in a line
+     * the calculated pixels in a line.
+     * If called from a pool thread, the task is executed
+     * immediately in the calling thread (see {@link #isWorkerThread()})
      */
     public static <T> Future<T> submit2(Callable<T> task) {
+        if (isWorkerThread()) {
+            return runInCurrentThread(new FutureTask<>(task));
+        }
         return executorService.submit(task);
     }
 
+    private static <T> Future<T> runInCurrentThread(FutureTask<T> future) {
+        // this way filters can run on the pool threads (for example
+        // while rendering multiple animation frames in parallel)
+        // without waiting for tasks that can't start
+        future.run();
+        return future;
+    }
+
     /**
      * Waits until all the given futures complete their
      * computation, and updates the given
@@ -112,7 +150,29 @@ public class ThreadPool {
         }
     }
 
+    // same as the above, but with list argument
+    public static void waitForFutures2(List<Future<int[]>> futures, BufferedImage dst, int width, ProgressTracker pt) {
+        assert pt != null;
+
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                int[] linePixels = futures.get(i).get();
+                AbstractBufferedImageOp.setRGB(dst, 0, i, width, 1, linePixels);
+
+                pt.unitDone();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static Executor getExecutor() {
         return executorService;
     }
+
+    private static class Worker extends Thread {
+        Worker(Runnable r, int index) {
+            super(r, "[pool worker " + index + "]");
+        }
+    }
 }
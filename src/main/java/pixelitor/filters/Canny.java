@@ -17,20 +17,27 @@
 
 package pixelitor.filters;
 
-import pd.CannyEdgeDetector;
 import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.EnumParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.impl.CannyFilter;
+import pixelitor.filters.impl.CannyFilter.GradientOperator;
 import pixelitor.utils.MemoryInfo;
 import pixelitor.utils.Messages;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
 
 /**
  * Canny edge detector - see http://en.wikipedia.org/wiki/Canny_edge_detector
  * based on CannyEdgeDetector by Tom Gibara - http://www.tomgibara.com/computer-vision/canny-edge-detector
  */
 public class Canny extends ParametrizedFilter {
+    public static final String NAME = "Canny";
+
     private final RangeParam lowThreshold = new RangeParam(
             "Low Threshold", 1, 250, 1000);
     private final RangeParam highThreshold = new RangeParam(
@@ -41,6 +48,12 @@ public class Canny extends ParametrizedFilter {
             "Gaussian Kernel Radius", 1, 2, 10);
     private final BooleanParam contrastNormalized = new BooleanParam(
             "Contrast Normalized", false);
+    private final EnumParam<GradientOperator> gradientOperator = new EnumParam<>(
+            "Gradient Operator", GradientOperator.class);
+
+    // the detector keeps its scratch buffers between the runs,
+    // but they can be reclaimed if the memory is needed elsewhere
+    private SoftReference<CannyFilter> filterRef;
 
     public Canny() {
         super(ShowOriginal.YES);
@@ -50,6 +63,7 @@ public class Canny extends ParametrizedFilter {
                 highThreshold,
                 gaussianKernelWidth,
                 gaussianKernelRadius,
+                gradientOperator,
                 contrastNormalized
         );
     }
@@ -67,19 +81,23 @@ public class Canny extends ParametrizedFilter {
             return dest;
         }
 
-        // do not cache this object because it holds a lot of memory!
-        CannyEdgeDetector detector = new CannyEdgeDetector();
-
-        detector.setLowThreshold(lowThreshold.getValueAsPercentage());
-        detector.setHighThreshold(highThreshold.getValueAsPercentage());
-        detector.setContrastNormalized(contrastNormalized.isChecked());
-        detector.setGaussianKernelRadius(gaussianKernelRadius.getValueAsFloat());
-        detector.setGaussianKernelWidth(gaussianKernelWidth.getValue());
+        CannyFilter filter = filterRef == null ? null : filterRef.get();
+        if (filter == null) {
+            filter = new CannyFilter();
+            filterRef = new SoftReference<>(filter);
+        }
 
-        detector.setSourceImage(src);
+        filter.setLowThreshold(lowThreshold.getValueAsPercentage());
+        filter.setHighThreshold(highThreshold.getValueAsPercentage());
+        filter.setContrastNormalized(contrastNormalized.isChecked());
+        filter.setGaussianKernelRadius(gaussianKernelRadius.getValueAsFloat());
+        filter.setGaussianKernelWidth(gaussianKernelWidth.getValue());
+        filter.setGradientOperator(gradientOperator.getSelected());
 
-        detector.process();
-        dest = detector.getEdgesImage();
+        ProgressTracker pt = new StatusBarProgressTracker(NAME,
+                CannyFilter.getNumProgressUnits());
+        dest = filter.filter(src, null, pt);
+        pt.finish();
 
         return dest;
     }
@@ -98,15 +116,15 @@ public class Canny extends ParametrizedFilter {
         int width = src.getWidth();
         int height = src.getHeight();
         long numPixels = (long) width * height;
-        // 6 arrays with 4-byte data type
-        long estimatedMemoryMB = 6 * numPixels * 4 / MemoryInfo.ONE_MEGABYTE;
-        // 1.8 was found experimentally, this is still needed to prevent OutOfMemory errors
-        estimatedMemoryMB = (long) (estimatedMemoryMB * 1.8);
+        // 3 float arrays, 2 byte arrays and the result image
+        long estimatedMemoryMB = numPixels * (3 * 4 + 2 + 4) / MemoryInfo.ONE_MEGABYTE;
+        // some extra room to prevent OutOfMemory errors
+        estimatedMemoryMB = (long) (estimatedMemoryMB * 1.3);
         return estimatedMemoryMB;
     }
 
     @Override
     public boolean supportsGray() {
-        return false;
+        return true;
     }
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ import pixelitor.utils.test.RandomGUITest;
 import java.awt.Component;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 import static pixelitor.ChangeReason.FILTER_WITHOUT_DIALOG;
@@ -44,12 +45,17 @@ public abstract class Filter implements Serializable {
     private transient FilterAction filterAction;
 
     // used for making sure that there are no
-    // unnecessary filter executions triggered
-    public static long runCount = 0;
+    // unnecessary filter executions triggered.
+    // Atomic because filters can run on several threads at the same time
+    private static final AtomicLong runCount = new AtomicLong();
 
     protected Filter() {
     }
 
+    public static long getRunCount() {
+        return runCount.get();
+    }
+
     /**
      * The main functionality of a filter.
      */
@@ -157,13 +163,31 @@ public abstract class Filter implements Serializable {
             dest = ImageUtils.convertToGrayScaleImage(dest);
         }
 
-        runCount++;
+        runCount.incrementAndGet();
 
         assert dest != null : getName() + " returned null dest";
 
         return dest;
     }
 
+    /**
+     * Returns a new instance of this filter with the same settings,
+     * so that the copy and this filter can run in parallel, or null
+     * if this is not supported for this filter.
+     * Filters without settings are copied by calling their
+     * no-argument constructor.
+     * Must be called on the EDT, because some filter parameters
+     * create their GUI in their constructor.
+     */
+    public Filter copyForParallelRendering() {
+        try {
+            return getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            // the filter has no accessible no-arg constructor
+            return null;
+        }
+    }
+
     public void setFilterAction(FilterAction filterAction) {
         this.filterAction = filterAction;
     }
@@ -18,11 +18,19 @@
 package pixelitor.filters;
 
 import com.jhlabs.image.PointFilter;
+import pixelitor.filters.gui.FilterAction;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.lookup.ColorLUT3D;
+import pixelitor.io.FileChoosers;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
+import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Hue-Saturation (and Colorize) filter
@@ -46,14 +54,40 @@ public class HueSat extends ParametrizedFilter {
     private final RangeParam saturation = new RangeParam("Saturation", MIN_SAT, DEFAULT_SAT, MAX_SAT);
     private final RangeParam brightness = new RangeParam("Brightness", MIN_BRI, DEFAULT_BRI, MAX_BRI);
 
+    private final ColorLUT3D.Cache lutCache = new ColorLUT3D.Cache();
+
     public HueSat() {
         super(ShowOriginal.YES);
 
+        FilterAction exportAction = new FilterAction("Export as .cube File...",
+                e -> exportLUT(), "Save the current settings as a 3D LUT");
         setParams(
                 hue,
                 saturation,
                 brightness
-        );
+        ).withAction(exportAction);
+    }
+
+    private void exportLUT() {
+        File file = FileChoosers.selectNonImageFile(FileChoosers.cubeFilter, true);
+        if (file == null) {
+            return;
+        }
+        ColorLUT3D lut = ColorLUT3D.bake(createImpl(), ColorLUT3D.DEFAULT_SIZE);
+        try {
+            lut.writeCube(file, NAME);
+            Messages.showFileSavedMessage(file);
+        } catch (IOException e) {
+            Messages.showException(e);
+        }
+    }
+
+    private Impl createImpl() {
+        float satShift = saturation.getValueAsPercentage();
+        float briShift = brightness.getValueAsPercentage();
+        float hueShift = hue.getValueAsFloat() / 360.0f;
+
+        return new Impl(hueShift, satShift, briShift);
     }
 
     @Override
@@ -66,16 +100,21 @@ public class HueSat extends ParametrizedFilter {
             return src;
         }
 
-        float satShift = saturation.getValueAsPercentage();
-        float briShift = brightness.getValueAsPercentage();
-        float hueShift = hue.getValueAsFloat() / 360.0f;
+        Impl impl = createImpl();
+        if (!ImageUtils.hasPackedIntArray(src)) {
+            return impl.filter(src, dest);
+        }
 
-        dest = new Impl(hueShift, satShift, briShift).filter(src, dest);
+        // the HSB conversions are too slow to do them for every pixel
+        ColorLUT3D lut = lutCache.get(impl, impl.hueShift, impl.satShift, impl.briShift);
+        StatusBarProgressTracker pt = new StatusBarProgressTracker(NAME, src.getHeight());
+        lut.apply(src, dest, 1.0f, pt);
+        pt.finish();
 
         return dest;
     }
 
-    private static class Impl extends PointFilter {
+    private static class Impl extends PointFilter implements RGBPixelOp {
         private final float hueShift;
         private final float satShift;
         private final float briShift;
@@ -89,11 +128,16 @@ public class HueSat extends ParametrizedFilter {
 
         @Override
         public int filterRGB(int x, int y, int rgb) {
-            int a = rgb & 0xFF000000;
+            int a = (rgb >>> 24) & 0xFF;
             int r = (rgb >>> 16) & 0xFF;
             int g = (rgb >>> 8) & 0xFF;
             int b = (rgb) & 0xFF;
 
+            return changeRGB(a, r, g, b);
+        }
+
+        @Override
+        public int changeRGB(int a, int r, int g, int b) {
             // for the multithreaded performance it is better to
             // create this array here instead of reusing it as a class field
             float[] tmpHSBArray = {0.0f, 0.0f, 0.0f};
@@ -120,7 +164,7 @@ public class HueSat extends ParametrizedFilter {
 
             int newRGB = Color.HSBtoRGB(shiftedHue, shiftedSat, shiftedBri);  // alpha is 255 here
             newRGB &= 0x00FFFFFF;  // set alpha to 0
-            return a | newRGB; // add the real alpha
+            return (a << 24) | newRGB; // add the real alpha
         }
     }
 }
\ No newline at end of file
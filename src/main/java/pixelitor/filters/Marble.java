@@ -28,14 +28,14 @@ import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.noise.Fractal;
+import pixelitor.utils.noise.PerlinNoise;
+import pixelitor.utils.noise.SeededNoise;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 
 import static com.jhlabs.image.WaveType.wave;
-import static com.jhlabs.math.Noise.noise2;
-import static com.jhlabs.math.Noise.turbulence2;
-import static com.jhlabs.math.Noise.turbulence2B;
 import static net.jafama.FastMath.atan2;
 import static net.jafama.FastMath.cos;
 import static net.jafama.FastMath.pow;
@@ -75,6 +75,10 @@ public class Marble extends ParametrizedFilter {
                     new Color(235, 255, 251),
             });
 
+    // replaced (not modified) when reseeding, so that
+    // a running render always sees consistent tables
+    private volatile PerlinNoise noise = new PerlinNoise(System.nanoTime());
+
     private Impl filter;
 
     public Marble() {
@@ -93,7 +97,7 @@ public class Marble extends ParametrizedFilter {
                 details.setLinkable(false),
                 smoothDetails,
                 gradient
-        ).withAction(new ReseedNoiseFilterAction());
+        ).withAction(new ReseedNoiseFilterAction(e -> reseed()));
     }
 
     @Override
@@ -118,11 +122,21 @@ public class Marble extends ParametrizedFilter {
         filter.setColormap(gradient.getValue());
         filter.setSmoothDetails(smoothDetails.isChecked());
         filter.setTime(time.getValueAsFloat() / 5.0f);
-        
+        filter.setNoise(noise);
+
         dest = filter.filter(src, dest);
         return dest;
     }
 
+    private void reseed() {
+        noise = new PerlinNoise(System.nanoTime());
+    }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        ((Marble) copy).noise = noise;
+    }
+
     private static class Impl extends PointFilter {
         private static final int TYPE_LINES = 1;
         private static final int TYPE_GRID = 2;
@@ -138,6 +152,7 @@ public class Marble extends ParametrizedFilter {
         private float octaves;
         private int type;
         private Colormap colormap;
+        private SeededNoise noise;
         private float cx, cy;
         private int waveType;
         private boolean smoothDetails;
@@ -202,11 +217,11 @@ public class Marble extends ParametrizedFilter {
             ny /= zoom;
 
             float c;
-            float f = strength * noise2(nx * 0.1f, ny * 0.1f);
+            float f = strength * noise.noise2(nx * 0.1f, ny * 0.1f);
             if (smoothDetails) {
-                f += detailsStrength * turbulence2B(nx * 0.2f, ny * 0.2f, octaves);
+                f += detailsStrength * Fractal.smoothTurbulence2(noise, nx * 0.2f, ny * 0.2f, octaves);
             } else {
-                f += detailsStrength * turbulence2(nx * 0.2f, ny * 0.2f, octaves);
+                f += detailsStrength * Fractal.turbulence2(noise, nx * 0.2f, ny * 0.2f, octaves);
             }
             f += time;
 
@@ -215,11 +230,11 @@ public class Marble extends ParametrizedFilter {
                     c = (float) ((1 + wave((nx + f), waveType)) / 2);
                     break;
                 case TYPE_GRID:
-                    float f2 = strength * (noise2(ny * -0.1f, nx * -0.1f));
+                    float f2 = strength * (noise.noise2(ny * -0.1f, nx * -0.1f));
                     if (smoothDetails) {
-                        f2 += detailsStrength * turbulence2B(ny * -0.2f, nx * -0.2f, octaves);
+                        f2 += detailsStrength * Fractal.smoothTurbulence2(noise, ny * -0.2f, nx * -0.2f, octaves);
                     } else {
-                        f2 += detailsStrength * turbulence2(ny * -0.2f, nx * -0.2f, octaves);
+                        f2 += detailsStrength * Fractal.turbulence2(noise, ny * -0.2f, nx * -0.2f, octaves);
                     }
 
                     c = ((float) (2.0f + wave(nx + f, waveType) + wave(ny + f2, waveType))) / 4.0f;
@@ -249,6 +264,10 @@ public class Marble extends ParametrizedFilter {
         public void setTime(float time) {
             this.time = time;
         }
+
+        public void setNoise(SeededNoise noise) {
+            this.noise = noise;
+        }
     }
 
 }
\ No newline at end of file
@@ -106,6 +106,30 @@ public abstract class ParametrizedFilter extends FilterWithGUI {
         this.affectedAreaShapes = affectedAreaShapes;
     }
 
+    @Override
+    public ParametrizedFilter copyForParallelRendering() {
+        ParametrizedFilter copy;
+        try {
+            copy = getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            // the filter has no no-arg constructor
+            return null;
+        }
+        if (!copy.paramSet.copyValuesFrom(paramSet)) {
+            return null;
+        }
+        copyInternalStateTo(copy);
+        return copy;
+    }
+
+    /**
+     * Filters that have some internal state which is not stored in
+     * their parameters (such as a random seed) can override this
+     * in order to copy it into the given copy of themselves.
+     */
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+    }
+
     /**
      * Some filters cannot be animated well, they can return true
      * here in order to be excluded from the list of animation filters
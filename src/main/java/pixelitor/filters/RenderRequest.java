@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.Build;
+import pixelitor.filters.gui.ParamSet;
+import pixelitor.filters.gui.ParamSetState;
+import pixelitor.gui.utils.GUIUtils;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An immutable snapshot of a filter and its settings, which can be
+ * executed from any thread, even by several threads at the same time.
+ * <p>
+ * The filter used by the GUI (for example the one cached in a
+ * {@link FilterAction}) is never used for rendering: the request keeps
+ * a private copy of it as a prototype, and each execution runs
+ * on a separate instance taken from a pool of copies,
+ * so the concurrent executions share no mutable state.
+ * <p>
+ * The filters that can't be copied (see {@link Filter#copyForParallelRendering()})
+ * are executed one after the other on the EDT with the original
+ * filter instance, and in this case the settings are not snapshotted.
+ */
+public final class RenderRequest {
+    private final Filter original;
+    private final String filterName;
+
+    // the private copy, which is never changed or executed, or null
+    // if the filter can't be copied
+    private final Filter prototype;
+
+    // the state of the animatable parameters, applied before every
+    // execution, because the pooled instances are shared with
+    // the requests created by withState
+    private final ParamSetState state;
+
+    // the copies that are not running right now, or null
+    // if the filter can't be copied
+    private final Queue<Filter> idleInstances;
+
+    private RenderRequest(Filter original, Filter prototype,
+                          ParamSetState state, Queue<Filter> idleInstances) {
+        this.original = original;
+        this.filterName = original.getName();
+        this.prototype = prototype;
+        this.state = state;
+        this.idleInstances = idleInstances;
+    }
+
+    /**
+     * Snapshots the current settings of the given filter.
+     * Should be called on the EDT (or in headless mode), because
+     * this is where the GUI changes the filter settings.
+     */
+    public static RenderRequest of(Filter filter) {
+        Filter prototype = filter.copyForParallelRendering();
+        if (prototype == null) {
+            return new RenderRequest(filter, null, null, null);
+        }
+        ParamSetState state = null;
+        if (prototype instanceof ParametrizedFilter) {
+            ParamSet paramSet = ((ParametrizedFilter) prototype).getParamSet();
+            if (paramSet.canBeAnimated()) {
+                state = paramSet.copyState();
+            }
+        }
+        return new RenderRequest(filter, prototype, state, new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Returns a request that differs from this one only in the state
+     * of the animatable parameters, for example an intermediate state
+     * of a tween animation. The two requests share the pooled instances.
+     */
+    public RenderRequest withState(ParamSetState newState) {
+        if (!(original instanceof ParametrizedFilter)) {
+            throw new IllegalStateException(filterName + " has no parameters");
+        }
+        return new RenderRequest(original, prototype, newState, idleInstances);
+    }
+
+    /**
+     * Returns true if the executions of this request
+     * can really run in parallel
+     */
+    public boolean canRunInParallel() {
+        return prototype != null;
+    }
+
+    public String getFilterName() {
+        return filterName;
+    }
+
+    /**
+     * Runs the filter on the given source image,
+     * and returns the filtered image.
+     * Can be called from any thread.
+     */
+    public BufferedImage execute(BufferedImage src) {
+        if (prototype == null) {
+            return executeOnEDT(src);
+        }
+
+        Filter instance = idleInstances.poll();
+        if (instance == null) {
+            instance = createInstance();
+        }
+        try {
+            return run(instance, src);
+        } finally {
+            idleInstances.offer(instance);
+        }
+    }
+
+    private Filter createInstance() {
+        if (EventQueue.isDispatchThread() || Build.isHeadless()) {
+            return prototype.copyForParallelRendering();
+        }
+        // the prototype is never changed, but the
+        // new instances must be created on the EDT
+        return callOnEDT(prototype::copyForParallelRendering);
+    }
+
+    private BufferedImage executeOnEDT(BufferedImage src) {
+        // all sorts of problems can happen if filters
+        // that are not prepared for it run outside of EDT
+        if (EventQueue.isDispatchThread()) {
+            return run(original, src);
+        }
+        return callOnEDT(() -> run(original, src));
+    }
+
+    private BufferedImage run(Filter filter, BufferedImage src) {
+        if (state != null) {
+            ((ParametrizedFilter) filter).getParamSet().setState(state);
+        }
+        return filter.transformImage(src);
+    }
+
+    private static <T> T callOnEDT(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        GUIUtils.invokeAndWait(future);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RenderRequest[filter = " + filterName
+                + ", parallel = " + canRunInParallel() + "]";
+    }
+}
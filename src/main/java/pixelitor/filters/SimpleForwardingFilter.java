@@ -36,4 +36,9 @@ public class SimpleForwardingFilter extends Filter {
     protected BufferedImage transform(BufferedImage src, BufferedImage dest) {
         return delegate.filter(src, dest);
     }
+
+    @Override
+    public Filter copyForParallelRendering() {
+        return new SimpleForwardingFilter((AbstractBufferedImageOp) delegate.clone());
+    }
 }
@@ -25,10 +25,12 @@ import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
+import pixelitor.utils.noise.Fractal;
+import pixelitor.utils.noise.LatticeValueNoise;
+import pixelitor.utils.noise.SeededNoise;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.Random;
 import java.util.concurrent.Future;
 
 import static java.awt.Color.BLACK;
@@ -41,14 +43,9 @@ import static pixelitor.filters.gui.ColorParam.OpacitySetting.USER_ONLY_OPACITY;
 public class ValueNoise extends ParametrizedFilter {
     public static final String NAME = "Value Noise";
 
-    private static final Random rand = new Random();
-    private static int r1;
-    private static int r2;
-    private static int r3;
-
-    static {
-        reseed();
-    }
+    // replaced (not modified) when reseeding, so that
+    // a running render always sees consistent values
+    private volatile LatticeValueNoise noise = new LatticeValueNoise(System.nanoTime());
 
     private final RangeParam scale = new RangeParam("Zoom", 5, 100, 300);
     private final RangeParam details = new RangeParam("Octaves (Details)", 1, 5, 8);
@@ -86,15 +83,16 @@ public class ValueNoise extends ParametrizedFilter {
         float frequency = 1.0f / scale.getValueAsFloat();
 
         float persistence = 0.6f;
-        float amplitude = 1.0f;
 
         ProgressTracker pt = new StatusBarProgressTracker(NAME, height);
 
+        SeededNoise runNoise = noise;
+        int octaves = details.getValue();
         Future<?>[] futures = new Future[height];
         for (int y = 0; y < height; y++) {
             int finalY = y;
-            Runnable lineTask = () -> calculateLine(lookupTable, destData,
-                    width, frequency, persistence, amplitude, finalY);
+            Runnable lineTask = () -> calculateLine(runNoise, lookupTable, destData,
+                    width, octaves, frequency, persistence, finalY);
             futures[y] = ThreadPool.submit(lineTask);
         }
         ThreadPool.waitForFutures(futures, pt);
@@ -104,81 +102,55 @@ public class ValueNoise extends ParametrizedFilter {
         return dest;
     }
 
-    private void calculateLine(int[] lookupTable, int[] destData,
-                               int width, float frequency, float persistence,
-                               float amplitude, int y) {
-        for (int x = 0; x < width; x++) {
-            int octaves = details.getValue();
+    private static void calculateLine(SeededNoise noise,
+                                      int[] lookupTable, int[] destData,
+                                      int width, int octaves,
+                                      float frequency, float persistence,
+                                      int y) {
+        float[] values = new float[width];
+        generateValueNoise(noise, values, width, y,
+                octaves, frequency, persistence);
 
-            int noise = (int) (255 * generateValueNoise(x, y,
-                    octaves, frequency, persistence, amplitude));
-
-            int value = lookupTable[noise];
+        for (int x = 0; x < width; x++) {
+            int value = lookupTable[(int) (255 * values[x])];
             destData[x + y * width] = value;
         }
     }
 
     /**
-     * Returns a float between 0 and 1
+     * Fills the first width elements of the given row buffer with
+     * the value noise of the row at y, as floats between 0 and 1
      */
     @SuppressWarnings("WeakerAccess")
-    public static float generateValueNoise(int x, int y,
-                                           int octaves,
-                                           float frequency,
-                                           float persistence,
-                                           float amplitude) {
-        float total = 0.0f;
-
-        for (int lcv = 0; lcv < octaves; lcv++) {
-            total += smooth(x * frequency, y * frequency) * amplitude;
-            frequency *= 2;
-            amplitude *= persistence;
-        }
+    public static void generateValueNoise(SeededNoise noise,
+                                          float[] dest, int width, int y,
+                                          int octaves,
+                                          float frequency,
+                                          float persistence) {
+        float[] octaveValues = new float[width];
+        Fractal.fbm2Row(noise, dest, octaveValues, width,
+                0, frequency, y * frequency,
+                octaves, 2.0f, persistence);
 
-        if (total < 0) {
-            total = 0.0f;
-        }
-        if (total > 1) {
-            total = 1.0f;
+        for (int x = 0; x < width; x++) {
+            float total = dest[x];
+            if (total < 0) {
+                total = 0.0f;
+            }
+            if (total > 1) {
+                total = 1.0f;
+            }
+            dest[x] = total;
         }
-
-        return total;
     }
 
-    private static float smooth(float x, float y) {
-        float n1 = noise((int) x, (int) y);
-        float n2 = noise((int) x + 1, (int) y);
-        float n3 = noise((int) x, (int) y + 1);
-        float n4 = noise((int) x + 1, (int) y + 1);
-
-        float i1 = interpolate(n1, n2, x - (int) x);
-        float i2 = interpolate(n3, n4, x - (int) x);
-
-        return interpolate(i1, i2, y - (int) y);
-    }
-
-    public static void reseed() {
-        r1 = 1000 + rand.nextInt(90000);
-        r2 = 10000 + rand.nextInt(900000);
-        r3 = 100000 + rand.nextInt(1000000000);
+    private void reseed() {
+        noise = new LatticeValueNoise(System.nanoTime());
     }
 
-    private static float noise(int x, int y) {
-        int n = x + y * 57;
-        n = (n << 13) ^ n;
-
-        return (1.0f - ((n * (n * n * r1 + r2) + r3) & 0x7fffffff) / 1.07374182E+9f);
-    }
-
-    private static float interpolate(float x, float y, float a) {
-//        float val = (float) ((1 - FastMath.cos(a * Math.PI)) * 0.5);
-
-        // the smooth step is very similar but much faster than the cosine interpolation
-        // http://en.wikipedia.org/wiki/Smoothstep
-        // http://www.wolframalpha.com/input/?i=Plot[{3+*+a+*+a+-+2+*+a+*+a+*a%2C+%281+-+Cos[a+*+Pi]%29+*+0.5}%2C+{a%2C+0%2C+1}]
-        float val = a * a * (3 - 2 * a);
-
-        return x * (1 - val) + y * val;
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        ((ValueNoise) copy).noise = noise;
     }
 
     public void setDetails(int newDetails) {
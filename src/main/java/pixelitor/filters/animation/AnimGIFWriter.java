@@ -16,33 +16,38 @@
  */
 package pixelitor.filters.animation;
 
-import pd.AnimatedGifEncoder;
+import pd.ParallelGifEncoder;
+import pixelitor.utils.Messages;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * An {@link AnimationWriter} implementation
  * that writes an animated GIF file
  */
 public class AnimGIFWriter implements AnimationWriter {
-    private final AnimatedGifEncoder encoder;
+    private final ParallelGifEncoder encoder;
 
     public AnimGIFWriter(File file, int delayMillis) {
-        encoder = new AnimatedGifEncoder();
-        encoder.start(file);
+        encoder = new ParallelGifEncoder(file);
         encoder.setDelay(delayMillis);
         encoder.setRepeat(0);
     }
 
     @Override
-    public void addFrame(BufferedImage image) {
+    public void addFrame(BufferedImage image) throws IOException {
         encoder.addFrame(image);
     }
 
     @Override
     public void finish() {
-        encoder.finish();
+        try {
+            encoder.finish();
+        } catch (IOException e) {
+            Messages.showException(e);
+        }
     }
 
     @Override
@@ -32,11 +32,13 @@ import static java.lang.String.format;
  */
 public class PNGFileSequenceWriter implements AnimationWriter {
     private final File outputDir;
+    private final int compressionLevel;
     private int fileSequenceNumber;
     private int numWrittenImages = 0;
 
-    public PNGFileSequenceWriter(File outputDir) {
+    public PNGFileSequenceWriter(File outputDir, int compressionLevel) {
         this.outputDir = outputDir;
+        this.compressionLevel = compressionLevel;
     }
 
     @Override
@@ -45,7 +47,7 @@ public class PNGFileSequenceWriter implements AnimationWriter {
         fileSequenceNumber++;
         File outputFile = new File(outputDir, fileName);
 
-        TrackedIO.write(image, "PNG", outputFile);
+        TrackedIO.writePNG(image, outputFile, compressionLevel);
         numWrittenImages++;
     }
 
@@ -18,10 +18,6 @@
 package pixelitor.filters.animation;
 
 import pixelitor.Composition;
-import pixelitor.filters.Filter;
-import pixelitor.filters.ParametrizedFilter;
-import pixelitor.filters.gui.ParamSetState;
-import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.Drawable;
 import pixelitor.utils.Messages;
@@ -29,7 +25,17 @@ import pixelitor.utils.Messages;
 import javax.swing.*;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
-import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static java.lang.String.format;
 import static pixelitor.ChangeReason.TWEEN_PREVIEW;
@@ -38,6 +44,9 @@ import static pixelitor.ChangeReason.TWEEN_PREVIEW;
  * A SwingWorker for rendering the frames of a tween animation
  */
 class RenderTweenFramesTask extends SwingWorker<Void, Void> {
+    // the maximum number of rendered frames waiting to be written
+    private static final int MAX_PENDING_WRITES = 2;
+
     private final TweenAnimation animation;
     private final Drawable dr;
 
@@ -80,14 +89,14 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
 
     private void renderFrames() {
         int numFrames = animation.getNumFrames();
-        ParametrizedFilter filter = animation.getFilter();
 
         AnimationWriter animationWriter = animation.createAnimationWriter();
         boolean canceled = false;
 
-        PixelitorWindow busyCursorParent = PixelitorWindow.getInstance();
-
-        dr.tweenCalculatingStarted();
+        TweenFrameRenderer renderer = callOnEDT(() -> {
+            dr.tweenCalculatingStarted();
+            return new TweenFrameRenderer(animation, dr.getFilterSourceImage());
+        });
 
         int numTotalFrames = numFrames;
         boolean pingPong = animation.isPingPong() && numFrames > 2;
@@ -95,47 +104,75 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
             numTotalFrames = 2 * numFrames - 2;
         }
 
-        for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
-            if (isCancelled()) {
-                canceled = true;
-                break;
-            }
-            int percentProgress = (int) ((100.0 * frameNr) / numTotalFrames);
-            setProgress(percentProgress);
-
-            double time;
-            if (frameNr < numFrames) { // ping: normal animation forwards
-                time = ((double) frameNr) / numFrames;
-            } else { // pong: animating backwards
-                // TODO we are calculating the same frames again
-                // they could be cached somewhere
-                // perhaps in an array of soft references with the
-                // calculated frames or in the case of file sequence
-                // output one could simply make copies of the files.
-                int effectiveFrame = 2 * (numFrames - 1) - frameNr;
-                time = ((double) effectiveFrame) / numFrames;
-            }
+        // the frames of the "ping" half are rendered in parallel,
+        // and the rendered frames are reused in the "pong" half
+        // if they were not garbage collected in the meantime
+        Map<Integer, Future<BufferedImage>> renderedFrames = new HashMap<>();
+        Map<Integer, SoftReference<BufferedImage>> pongCache = new HashMap<>();
+        int nextFrameToStart = 0;
 
-            try {
-                // first render the frame...
-                BufferedImage image = renderFrame(filter, time, busyCursorParent);
-
-                // ...then write the file
-                GUIUtils.invokeAndWait(() -> {
-                    try {
-                        // TODO ideally while writing out the frame,
-                        // the rendering of the next frame should be
-                        // started on another thread
-                        animationWriter.addFrame(image);
-                    } catch (IOException e) {
-                        Messages.showException(e);
+        // the frames are written in order on a separate thread,
+        // while the next frames are rendered
+        ExecutorService writerThread = Executors.newSingleThreadExecutor(
+                r -> new Thread(r, "[animation writer]"));
+        Deque<Future<?>> pendingWrites = new ArrayDeque<>();
+
+        try {
+            for (int frameNr = 0; frameNr < numTotalFrames; frameNr++) {
+                if (isCancelled()) {
+                    canceled = true;
+                    break;
+                }
+                int percentProgress = (int) ((100.0 * frameNr) / numTotalFrames);
+                setProgress(percentProgress);
+
+                while (nextFrameToStart < numFrames
+                        && renderedFrames.size() < renderer.getMaxParallelFrames()) {
+                    double time = ((double) nextFrameToStart) / numFrames;
+                    renderedFrames.put(nextFrameToStart, renderer.startRendering(time));
+                    nextFrameToStart++;
+                }
+
+                BufferedImage frame;
+                if (frameNr < numFrames) { // ping: normal animation forwards
+                    BufferedImage filtered = renderedFrames.remove(frameNr).get();
+                    frame = showFrame(filtered, renderer.getFilterName());
+                    if (pingPong && frameNr > 0 && frameNr < numFrames - 1) {
+                        pongCache.put(frameNr, new SoftReference<>(frame));
                     }
-                });
-            } catch (Exception e) {
-                canceled = true;
-                Messages.showException(e);
-                break;
+                } else { // pong: animating backwards
+                    int effectiveFrame = 2 * (numFrames - 1) - frameNr;
+                    SoftReference<BufferedImage> cached = pongCache.remove(effectiveFrame);
+                    frame = cached == null ? null : cached.get();
+                    if (frame == null) {
+                        // the cached frame was garbage collected, render it again
+                        double time = ((double) effectiveFrame) / numFrames;
+                        BufferedImage filtered = renderer.startRendering(time).get();
+                        frame = showFrame(filtered, renderer.getFilterName());
+                    }
+                }
+
+                BufferedImage finalFrame = frame;
+                pendingWrites.add(writerThread.submit(() -> {
+                    animationWriter.addFrame(finalFrame);
+                    return null;
+                }));
+                // don't let the unwritten frames fill up the memory
+                while (pendingWrites.size() > MAX_PENDING_WRITES) {
+                    pendingWrites.removeFirst().get();
+                }
+            }
+            for (Future<?> write : pendingWrites) {
+                write.get();
             }
+        } catch (Exception e) {
+            canceled = true;
+            Messages.showException(e);
+        } finally {
+            for (Future<BufferedImage> future : renderedFrames.values()) {
+                future.cancel(false);
+            }
+            writerThread.shutdown();
         }
 
         setProgress(100);
@@ -151,27 +188,29 @@ class RenderTweenFramesTask extends SwingWorker<Void, Void> {
         });
     }
 
-    private BufferedImage renderFrame(ParametrizedFilter filter,
-                                      double time,
-                                      PixelitorWindow busyCursorParent) {
-
-        long runCountBefore = Filter.runCount;
-
-        ParamSetState intermediateState = animation.tween(time);
-        filter.getParamSet().setState(intermediateState);
-
-        // all sorts of problems can happen
-        // if filters run outside of EDT
-        Runnable filterRunTask = () -> filter.run(dr, TWEEN_PREVIEW, busyCursorParent);
-        GUIUtils.invokeAndWait(filterRunTask);
+    /**
+     * Shows the given filtered image as the preview of the drawable,
+     * and returns the resulting composite image
+     */
+    private BufferedImage showFrame(BufferedImage filtered, String filterName) {
+        return callOnEDT(() -> {
+            dr.changePreviewImage(filtered, filterName, TWEEN_PREVIEW);
 
-        long runCountAfter = Filter.runCount;
-        assert runCountAfter == runCountBefore + 1;
+            Composition comp = dr.getComp();
+            comp.repaint();
 
-        Composition comp = dr.getComp();
-        comp.repaint();
+            return comp.getCompositeImage();
+        });
+    }
 
-        return comp.getCompositeImage();
+    private static <T> T callOnEDT(Callable<T> task) {
+        FutureTask<T> futureTask = new FutureTask<>(task);
+        GUIUtils.invokeAndWait(futureTask);
+        try {
+            return futureTask.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Override
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.animation;
+
+import pixelitor.ThreadPool;
+import pixelitor.filters.RenderRequest;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Renders the filtered images of the frames of a tween animation.
+ * If the filter can be copied, then several frames are rendered
+ * in parallel on the {@link ThreadPool}, each with its own copy of
+ * the filter (see {@link RenderRequest}). Otherwise the frames are
+ * rendered one after the other on the EDT with the original filter.
+ */
+class TweenFrameRenderer {
+    private final TweenAnimation animation;
+    private final RenderRequest request;
+    private final BufferedImage src;
+    private final int maxParallelFrames;
+
+    /**
+     * Must be called on the EDT, because the
+     * filter settings are snapshotted here
+     */
+    TweenFrameRenderer(TweenAnimation animation, BufferedImage src) {
+        assert EventQueue.isDispatchThread() : "not EDT thread";
+
+        this.animation = animation;
+        this.request = RenderRequest.of(animation.getFilter());
+        this.src = src;
+
+        maxParallelFrames = request.canRunInParallel() ? ThreadPool.getNumThreads() : 1;
+    }
+
+    /**
+     * The number of frames that can be rendered at the same time
+     */
+    int getMaxParallelFrames() {
+        return maxParallelFrames;
+    }
+
+    /**
+     * Starts rendering the frame at the given animation time (0..1).
+     * Must be called from a background thread.
+     */
+    Future<BufferedImage> startRendering(double time) {
+        RenderRequest frameRequest = request.withState(animation.tween(time));
+        if (!request.canRunInParallel()) {
+            // the request runs the filter on the EDT anyway
+            FutureTask<BufferedImage> task = new FutureTask<>(
+                    () -> frameRequest.execute(src));
+            task.run();
+            return task;
+        }
+
+        return ThreadPool.submit2(() -> frameRequest.execute(src));
+    }
+
+    String getFilterName() {
+        return request.getFilterName();
+    }
+}
@@ -18,6 +18,7 @@
 package pixelitor.filters.animation;
 
 import pixelitor.io.FileChoosers;
+import pixelitor.io.SaveSettings;
 
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
@@ -31,7 +32,7 @@ public enum TweenOutputType {
     PNG_FILE_SEQUENCE("PNG File Sequence") {
         @Override
         AnimationWriter createAnimationWriter(File file, int delayMillis) {
-            return new PNGFileSequenceWriter(file);
+            return new PNGFileSequenceWriter(file, SaveSettings.getDefaultCompressionLevel());
         }
 
         @Override
@@ -66,6 +66,14 @@ public abstract class AbstractMultipleChoiceParam<E>
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean copyValueFrom(FilterParam other) {
+        // there is no adjustment listener in a copied filter,
+        // therefore this doesn't trigger the filter
+        setSelectedItem(((AbstractMultipleChoiceParam<?>) other).getSelectedItem());
+        return true;
+    }
+
     /**
      * Sets up the automatic enabling of another {@link FilterSetting}
      * depending on the selected item of this one.
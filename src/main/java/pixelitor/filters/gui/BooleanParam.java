@@ -166,6 +166,12 @@ public class BooleanParam extends AbstractFilterParam {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean copyValueFrom(FilterParam other) {
+        setValue(((BooleanParam) other).isChecked(), false, false);
+        return true;
+    }
+
     @Override
     public String toString() {
         return format("%s[name = '%s', currentValue = %s]",
@@ -96,6 +96,17 @@ public class DialogParam extends AbstractFilterParam {
         return false;
     }
 
+    @Override
+    public boolean copyValueFrom(FilterParam other) {
+        FilterParam[] otherChildren = ((DialogParam) other).children;
+        for (int i = 0; i < children.length; i++) {
+            if (!children[i].copyValueFrom(otherChildren[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public int getNumGridBagCols() {
         return 2;
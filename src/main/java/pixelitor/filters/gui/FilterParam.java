@@ -60,6 +60,21 @@ public interface FilterParam extends FilterSetting, Resettable {
      */
     boolean canBeAnimated();
 
+    /**
+     * Copies the value of the given parameter (which must be
+     * of the same type) into this one without triggering the filter.
+     * Used when a copy of a filter is created for parallel rendering.
+     *
+     * @return false if the value cannot be copied
+     */
+    default boolean copyValueFrom(FilterParam other) {
+        if (canBeAnimated()) {
+            setState(other.copyState());
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Whether a filter parameter was configured to be
      * affected when the user presses "Randomize"
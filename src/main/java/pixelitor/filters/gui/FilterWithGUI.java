@@ -38,6 +38,12 @@ public abstract class FilterWithGUI extends Filter {
 
     public abstract void randomizeSettings();
 
+    @Override
+    public Filter copyForParallelRendering() {
+        // the settings are not kept in a ParamSet, so they can't be copied
+        return null;
+    }
+
     @Override
     public void startOn(Drawable dr) {
         dr.startPreviewing();
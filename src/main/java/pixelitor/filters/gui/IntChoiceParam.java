@@ -203,6 +203,8 @@ public class IntChoiceParam extends AbstractMultipleChoiceParam<IntChoiceParam.V
     private static final IntChoiceParam.Value[] interpolationChoices = {
             new Value("Bilinear (Better)", TransformFilter.BILINEAR),
             new Value("Nearest Neighbour (Faster)", TransformFilter.NEAREST_NEIGHBOUR),
+            new Value("Bicubic (Sharper)", TransformFilter.BICUBIC),
+            new Value("Supersampling (Best, Slower)", TransformFilter.SUPERSAMPLING),
 //            new Value("Nearest Neighbour (OLD)", TransformFilter.NEAREST_NEIGHBOUR_OLD),
 //            new Value("Bilinear (OLD)", TransformFilter.BILINEAR_OLD),
     };
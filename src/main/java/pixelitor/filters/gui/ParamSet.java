@@ -129,12 +129,12 @@ public class ParamSet {
     }
 
     public void randomize() {
-        long before = Filter.runCount;
+        long before = Filter.getRunCount();
 
         paramList.forEach(FilterParam::randomize);
 
         // this call is not supposed to trigger the filter!
-        long after = Filter.runCount;
+        long after = Filter.getRunCount();
         assert before == after : "before = " + before + ", after = " + after;
     }
 
@@ -175,6 +175,24 @@ public class ParamSet {
                 });
     }
 
+    /**
+     * Copies the values of all parameters from the given
+     * {@link ParamSet}, which must belong to a filter of the same class.
+     *
+     * @return false if some parameter value could not be copied
+     */
+    public boolean copyValuesFrom(ParamSet other) {
+        if (paramList.size() != other.paramList.size()) {
+            return false;
+        }
+        for (int i = 0; i < paramList.size(); i++) {
+            if (!paramList.get(i).copyValueFrom(other.paramList.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A ParamSet can be animated if at least
      * one contained filter parameter can be
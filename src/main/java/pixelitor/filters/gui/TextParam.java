@@ -111,6 +111,14 @@ public class TextParam extends AbstractFilterParam {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean copyValueFrom(FilterParam other) {
+        trigger = false;
+        setValue(((TextParam) other).getValue());
+        trigger = true;
+        return true;
+    }
+
     @Override
     public String toString() {
         return format("%s[name = '%s', text = '%s']",
@@ -19,7 +19,7 @@ package pixelitor.filters.impl;
 
 import com.bric.image.transition.*;
 import com.jhlabs.image.AbstractBufferedImageOp;
-import pixelitor.utils.ImageUtils;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
@@ -78,7 +78,7 @@ public class BricTransitionFilter extends AbstractBufferedImageOp {
     @Override
     public BufferedImage filter(BufferedImage src, BufferedImage dest) {
         BufferedImage frameA = src;
-        BufferedImage frameB = ImageUtils.createImageWithSameCM(src);
+        BufferedImage frameB = BufferPool.leaseImageLike(src);
 
         Graphics2D g2 = dest.createGraphics();
         Transition transition;
@@ -214,6 +214,7 @@ public class BricTransitionFilter extends AbstractBufferedImageOp {
 
         transition.paint(g2, frameA, frameB, progress);
         g2.dispose();
+        BufferPool.returnImage(frameB);
 
         return dest;
     }
@@ -0,0 +1,595 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import pixelitor.ThreadPool;
+import pixelitor.filters.Canny;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * The implementation of the {@link Canny} filter.
+ * <p>
+ * The smoothing, the gradient calculation and the non-maximum
+ * suppression run in parallel on bands of rows, and the hysteresis
+ * follows the edges with an explicit stack instead of recursion.
+ * The scratch buffers are kept between the runs, so an instance
+ * should be reused while the filter settings are adjusted.
+ * The thresholds use the same scale as the original detector by
+ * Tom Gibara (http://www.tomgibara.com/computer-vision/canny-edge-detector).
+ */
+public class CannyFilter {
+    private static final float GAUSSIAN_CUT_OFF = 0.005f;
+
+    private static final byte NONE = 0;
+    private static final byte WEAK = 1;
+    private static final byte STRONG = 2;
+    private static final byte EDGE = 3;
+
+    // the directions of the quantized gradient
+    private static final byte DIR_HORIZONTAL = 0;
+    private static final byte DIR_DIAGONAL_DOWN = 1;
+    private static final byte DIR_VERTICAL = 2;
+    private static final byte DIR_DIAGONAL_UP = 3;
+
+    private static final float TAN_22_5 = 0.41421357f;
+    private static final float TAN_67_5 = 2.4142137f;
+
+    /**
+     * The 3x3 operators used for the gradient calculation. The results
+     * are scaled so that both give the same magnitude for a given edge.
+     */
+    public enum GradientOperator {
+        SOBEL("Sobel", 1, 2), SCHARR("Scharr", 3, 10);
+
+        private final String guiName;
+        private final float cornerWeight;
+        private final float centerWeight;
+        private final float scale;
+
+        GradientOperator(String guiName, float cornerWeight, float centerWeight) {
+            this.guiName = guiName;
+            this.cornerWeight = cornerWeight;
+            this.centerWeight = centerWeight;
+
+            // a central difference over two pixels, summed over the three rows
+            scale = 1.0f / (2 * (2 * cornerWeight + centerWeight));
+        }
+
+        @Override
+        public String toString() {
+            return guiName;
+        }
+    }
+
+    private float lowThreshold = 2.5f;
+    private float highThreshold = 7.5f;
+    private float gaussianKernelRadius = 2.0f;
+    private int gaussianKernelWidth = 16;
+    private boolean contrastNormalized = false;
+    private GradientOperator gradientOperator = GradientOperator.SOBEL;
+
+    // the scratch buffers, reused between the runs
+    private float[] lum;
+    private float[] tmp;
+    private float[] magnitude;
+    private byte[] directions;
+    private byte[] edges;
+    private int[] stack;
+
+    public void setLowThreshold(float lowThreshold) {
+        this.lowThreshold = lowThreshold;
+    }
+
+    public void setHighThreshold(float highThreshold) {
+        this.highThreshold = highThreshold;
+    }
+
+    public void setGaussianKernelRadius(float gaussianKernelRadius) {
+        this.gaussianKernelRadius = gaussianKernelRadius;
+    }
+
+    public void setGaussianKernelWidth(int gaussianKernelWidth) {
+        this.gaussianKernelWidth = gaussianKernelWidth;
+    }
+
+    public void setContrastNormalized(boolean contrastNormalized) {
+        this.contrastNormalized = contrastNormalized;
+    }
+
+    public void setGradientOperator(GradientOperator gradientOperator) {
+        this.gradientOperator = gradientOperator;
+    }
+
+    /**
+     * Returns an image where the edges are white and the rest is black.
+     * For a TYPE_BYTE_GRAY source the luminance is read directly
+     * and the result is also TYPE_BYTE_GRAY, otherwise it is TYPE_INT_ARGB.
+     */
+    public synchronized BufferedImage filter(BufferedImage src, BufferedImage dest, ProgressTracker pt) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        allocate(width * height);
+
+        readLuminance(src);
+        pt.unitDone();
+
+        detect(width, height, pt);
+
+        boolean gray = src.getType() == TYPE_BYTE_GRAY;
+        int destType = gray ? TYPE_BYTE_GRAY : TYPE_INT_ARGB;
+        if (dest == null || dest.getType() != destType
+                || dest.getWidth() != width || dest.getHeight() != height) {
+            dest = new BufferedImage(width, height, destType);
+        }
+        writeEdges(dest, gray);
+        pt.unitDone();
+
+        return dest;
+    }
+
+    /**
+     * Detects the edges in a luminance plane. The returned
+     * array contains 255 for the edges and 0 for the rest.
+     */
+    public synchronized byte[] detectEdges(byte[] luminance, int width, int height, ProgressTracker pt) {
+        int numPixels = width * height;
+        allocate(numPixels);
+        for (int i = 0; i < numPixels; i++) {
+            lum[i] = luminance[i] & 0xFF;
+        }
+        pt.unitDone();
+
+        detect(width, height, pt);
+
+        byte[] result = new byte[numPixels];
+        for (int i = 0; i < numPixels; i++) {
+            if (edges[i] == EDGE) {
+                result[i] = (byte) 0xFF;
+            }
+        }
+        pt.unitDone();
+        return result;
+    }
+
+    /**
+     * The number of progress units reported by the detection
+     */
+    public static int getNumProgressUnits() {
+        return 6;
+    }
+
+    private void allocate(int numPixels) {
+        if (lum == null || lum.length < numPixels) {
+            // release the old buffers before allocating the new ones
+            lum = null;
+            tmp = null;
+            magnitude = null;
+            directions = null;
+            edges = null;
+
+            lum = new float[numPixels];
+            tmp = new float[numPixels];
+            magnitude = new float[numPixels];
+            directions = new byte[numPixels];
+            edges = new byte[numPixels];
+        }
+    }
+
+    /**
+     * Releases the scratch buffers
+     */
+    public synchronized void freeMemory() {
+        lum = null;
+        tmp = null;
+        magnitude = null;
+        directions = null;
+        edges = null;
+        stack = null;
+    }
+
+    private void detect(int width, int height, ProgressTracker pt) {
+        if (contrastNormalized) {
+            normalizeContrast(width * height);
+        }
+
+        smooth(width, height);
+        pt.unitDone();
+
+        calcGradients(width, height);
+        pt.unitDone();
+
+        suppressNonMaxima(width, height);
+        pt.unitDone();
+
+        performHysteresis(width, height);
+        pt.unitDone();
+    }
+
+    private void readLuminance(BufferedImage src) {
+        int width = src.getWidth();
+        Raster raster = src.getRaster();
+        int type = src.getType();
+        float[] lum = this.lum;
+
+        forEachBand(src.getHeight(), (startY, endY) -> {
+            if (type == TYPE_BYTE_GRAY) {
+                byte[] row = new byte[width];
+                for (int y = startY; y < endY; y++) {
+                    raster.getDataElements(0, y, width, 1, row);
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        lum[offset + x] = row[x] & 0xFF;
+                    }
+                }
+                return;
+            }
+
+            int[] row = new int[width];
+            for (int y = startY; y < endY; y++) {
+                if (type == TYPE_INT_ARGB || type == TYPE_INT_RGB || type == TYPE_INT_ARGB_PRE) {
+                    raster.getDataElements(0, y, width, 1, row);
+                } else {
+                    src.getRGB(0, y, width, 1, row, 0, width);
+                }
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int p = row[x];
+                    int lumValue = luminance(p);
+                    if (type == TYPE_INT_ARGB_PRE) {
+                        lumValue = unPremultiply(lumValue, p >>> 24);
+                    }
+                    lum[offset + x] = lumValue;
+                }
+            }
+        });
+    }
+
+    private static int luminance(int rgb) {
+        int r = (rgb >>> 16) & 0xFF;
+        int g = (rgb >>> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return Math.round(0.299f * r + 0.587f * g + 0.114f * b);
+    }
+
+    private static int unPremultiply(int lum, int a) {
+        if (a == 255) {
+            return lum;
+        }
+        if (a == 0) {
+            return 0;
+        }
+        return Math.min(255, (int) (lum / (a / 255.0f)));
+    }
+
+    /**
+     * Linearizes the histogram of the luminance values
+     */
+    private void normalizeContrast(int numPixels) {
+        int[] histogram = new int[256];
+        for (int i = 0; i < numPixels; i++) {
+            histogram[(int) lum[i]]++;
+        }
+        int[] remap = new int[256];
+        int sum = 0;
+        int j = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            int target = (int) ((long) sum * 255 / numPixels);
+            for (int k = j + 1; k <= target; k++) {
+                remap[k] = i;
+            }
+            j = target;
+        }
+        for (int i = 0; i < numPixels; i++) {
+            lum[i] = remap[(int) lum[i]];
+        }
+    }
+
+    /**
+     * Returns the one-sided, normalized Gaussian kernel
+     * (the first element is the center)
+     */
+    private float[] createKernel() {
+        float radius = gaussianKernelRadius;
+        float[] kernel = new float[gaussianKernelWidth];
+        int kWidth;
+        for (kWidth = 0; kWidth < gaussianKernelWidth; kWidth++) {
+            float g1 = gaussian(kWidth, radius);
+            if (g1 <= GAUSSIAN_CUT_OFF && kWidth >= 2) {
+                break;
+            }
+            float g2 = gaussian(kWidth - 0.5f, radius);
+            float g3 = gaussian(kWidth + 0.5f, radius);
+            kernel[kWidth] = (g1 + g2 + g3) / 3.0f;
+        }
+        kernel = Arrays.copyOf(kernel, kWidth);
+
+        float sum = kernel[0];
+        for (int i = 1; i < kWidth; i++) {
+            sum += 2 * kernel[i];
+        }
+        for (int i = 0; i < kWidth; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    private static float gaussian(float x, float sigma) {
+        return (float) Math.exp(-(x * x) / (2.0f * sigma * sigma));
+    }
+
+    /**
+     * Separable Gaussian smoothing: horizontally from lum to tmp,
+     * and then vertically from tmp back to lum
+     */
+    private void smooth(int width, int height) {
+        float[] kernel = createKernel();
+        int kWidth = kernel.length;
+        float[] lum = this.lum;
+        float[] tmp = this.tmp;
+
+        forEachBand(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    float sum = kernel[0] * lum[offset + x];
+                    if (x >= kWidth - 1 && x < width - kWidth + 1) {
+                        for (int k = 1; k < kWidth; k++) {
+                            sum += kernel[k] * (lum[offset + x - k] + lum[offset + x + k]);
+                        }
+                    } else {
+                        // clamp at the edges
+                        for (int k = 1; k < kWidth; k++) {
+                            int left = Math.max(0, x - k);
+                            int right = Math.min(width - 1, x + k);
+                            sum += kernel[k] * (lum[offset + left] + lum[offset + right]);
+                        }
+                    }
+                    tmp[offset + x] = sum;
+                }
+            }
+        });
+
+        forEachBand(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    lum[offset + x] = kernel[0] * tmp[offset + x];
+                }
+                for (int k = 1; k < kWidth; k++) {
+                    int up = Math.max(0, y - k) * width;
+                    int down = Math.min(height - 1, y + k) * width;
+                    float weight = kernel[k];
+                    for (int x = 0; x < width; x++) {
+                        lum[offset + x] += weight * (tmp[up + x] + tmp[down + x]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates the gradient magnitudes and
+     * the quantized gradient directions
+     */
+    private void calcGradients(int width, int height) {
+        float corner = gradientOperator.cornerWeight;
+        float center = gradientOperator.centerWeight;
+        float scale = gradientOperator.scale;
+        float[] lum = this.lum;
+        float[] magnitude = this.magnitude;
+        byte[] directions = this.directions;
+
+        forEachBand(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int up = Math.max(0, y - 1) * width;
+                int mid = y * width;
+                int down = Math.min(height - 1, y + 1) * width;
+                for (int x = 0; x < width; x++) {
+                    int left = Math.max(0, x - 1);
+                    int right = Math.min(width - 1, x + 1);
+
+                    float gx = corner * (lum[up + right] - lum[up + left])
+                            + center * (lum[mid + right] - lum[mid + left])
+                            + corner * (lum[down + right] - lum[down + left]);
+                    float gy = corner * (lum[down + left] - lum[up + left])
+                            + center * (lum[down + x] - lum[up + x])
+                            + corner * (lum[down + right] - lum[up + right]);
+                    gx *= scale;
+                    gy *= scale;
+
+                    int index = mid + x;
+                    magnitude[index] = (float) Math.sqrt(gx * gx + gy * gy);
+
+                    float absX = Math.abs(gx);
+                    float absY = Math.abs(gy);
+                    byte dir;
+                    if (absY <= TAN_22_5 * absX) {
+                        dir = DIR_HORIZONTAL;
+                    } else if (absY >= TAN_67_5 * absX) {
+                        dir = DIR_VERTICAL;
+                    } else if ((gx > 0) == (gy > 0)) {
+                        // in image space the y axis points downwards
+                        dir = DIR_DIAGONAL_DOWN;
+                    } else {
+                        dir = DIR_DIAGONAL_UP;
+                    }
+                    directions[index] = dir;
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps only the pixels where the gradient magnitude is a local
+     * maximum along the gradient direction, and classifies them
+     * as strong or weak edge candidates
+     */
+    private void suppressNonMaxima(int width, int height) {
+        float low = lowThreshold;
+        float high = highThreshold;
+        float[] magnitude = this.magnitude;
+        byte[] directions = this.directions;
+        byte[] edges = this.edges;
+
+        forEachBand(height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int offset = y * width;
+                if (y == 0 || y == height - 1) {
+                    Arrays.fill(edges, offset, offset + width, NONE);
+                    continue;
+                }
+                edges[offset] = NONE;
+                edges[offset + width - 1] = NONE;
+                for (int x = 1; x < width - 1; x++) {
+                    int index = offset + x;
+                    float m = magnitude[index];
+                    if (m < low) {
+                        edges[index] = NONE;
+                        continue;
+                    }
+                    int step;
+                    switch (directions[index]) {
+                        case DIR_HORIZONTAL:
+                            step = 1;
+                            break;
+                        case DIR_VERTICAL:
+                            step = width;
+                            break;
+                        case DIR_DIAGONAL_DOWN:
+                            step = width + 1;
+                            break;
+                        default:
+                            step = width - 1;
+                            break;
+                    }
+                    // ties are broken asymmetrically, so that plateaus
+                    // still produce one pixel wide edges
+                    if (m >= magnitude[index - step] && m > magnitude[index + step]) {
+                        edges[index] = m >= high ? STRONG : WEAK;
+                    } else {
+                        edges[index] = NONE;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Starting from the strong pixels, follows the connected
+     * weak pixels, and marks all of them as edges
+     */
+    private void performHysteresis(int width, int height) {
+        byte[] edges = this.edges;
+        if (stack == null) {
+            stack = new int[1024];
+        }
+        int numPixels = width * height;
+        for (int start = 0; start < numPixels; start++) {
+            if (edges[start] != STRONG) {
+                continue;
+            }
+            edges[start] = EDGE;
+            int size = 0;
+            stack[size++] = start;
+            while (size > 0) {
+                int index = stack[--size];
+                int y = index / width;
+                int x = index - y * width;
+                int minY = Math.max(0, y - 1);
+                int maxY = Math.min(height - 1, y + 1);
+                int minX = Math.max(0, x - 1);
+                int maxX = Math.min(width - 1, x + 1);
+                for (int ny = minY; ny <= maxY; ny++) {
+                    for (int nx = minX; nx <= maxX; nx++) {
+                        int neighbor = ny * width + nx;
+                        byte value = edges[neighbor];
+                        if (value == WEAK || value == STRONG) {
+                            edges[neighbor] = EDGE;
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = neighbor;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeEdges(BufferedImage dest, boolean gray) {
+        int width = dest.getWidth();
+        WritableRaster raster = dest.getRaster();
+        byte[] edges = this.edges;
+
+        forEachBand(dest.getHeight(), (startY, endY) -> {
+            if (gray) {
+                byte[] row = new byte[width];
+                for (int y = startY; y < endY; y++) {
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        row[x] = edges[offset + x] == EDGE ? (byte) 0xFF : 0;
+                    }
+                    raster.setDataElements(0, y, width, 1, row);
+                }
+            } else {
+                int[] row = new int[width];
+                for (int y = startY; y < endY; y++) {
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        row[x] = edges[offset + x] == EDGE ? 0xFF_FF_FF_FF : 0xFF_00_00_00;
+                    }
+                    raster.setDataElements(0, y, width, 1, row);
+                }
+            }
+        });
+    }
+
+    private interface BandTask {
+        void run(int startY, int endY);
+    }
+
+    /**
+     * Runs the task on bands of rows in parallel
+     */
+    private static void forEachBand(int height, BandTask task) {
+        int numBands = Math.min(height, ThreadPool.getNumThreads() * 4);
+        if (numBands <= 1 || ThreadPool.isWorkerThread()) {
+            task.run(0, height);
+            return;
+        }
+        Future<?>[] futures = new Future<?>[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startY = (int) ((long) height * i / numBands);
+            int endY = (int) ((long) height * (i + 1) / numBands);
+            futures[i] = ThreadPool.submit(() -> task.run(startY, endY));
+        }
+        ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
+    }
+}
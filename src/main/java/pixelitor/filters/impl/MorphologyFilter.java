@@ -19,6 +19,7 @@ package pixelitor.filters.impl;
 
 import com.jhlabs.image.WholeImageFilter;
 import pixelitor.filters.Morphology;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Rectangle;
 
@@ -54,33 +55,22 @@ public class MorphologyFilter extends WholeImageFilter {
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
-        int[] outPixels = new int[width * height];
-        int numPixels = inPixels.length;
-        short[] inA = new short[numPixels];
-        short[] inR = new short[numPixels];
-        short[] inG = new short[numPixels];
-        short[] inB = new short[numPixels];
+        int numPixels = width * height;
+        int[] outPixels = BufferPool.leaseInts(numPixels);
 
         pt = createProgressTracker(iterations);
         for (int it = 0; it < iterations; it++) {
             if (it > 0) {
                 System.arraycopy(outPixels, 0, inPixels, 0, numPixels);
             }
-            for (int i = 0; i < numPixels; i++) {
-                int rgb = inPixels[i];
-                inA[i] = (short) ((rgb >> 24) & 0xff);
-                inR[i] = (short) ((rgb >> 16) & 0xff);
-                inG[i] = (short) ((rgb >> 8) & 0xff);
-                inB[i] = (short) (rgb & 0xff);
-            }
 
             int index = 0;
             for (int y = 0; y < height; y++) {
                 for (int x = 0; x < width; x++) {
-                    short a = 0xff;
-                    short r = 0xff;
-                    short g = 0xff;
-                    short b = 0xff;
+                    int a = 0xff;
+                    int r = 0xff;
+                    int g = 0xff;
+                    int b = 0xff;
 
                     if (op == OP_DILATE) {
                         r = 0;
@@ -104,18 +94,24 @@ public class MorphologyFilter extends WholeImageFilter {
 
                                 int ix = x + dx;
                                 if (0 <= ix && ix < width) {
-                                    int comparedIndex = xOffset + ix;
+                                    // the channels are compared directly in the
+                                    // packed pixels instead of separate planes
+                                    int rgb = inPixels[xOffset + ix];
+                                    int ca = rgb >>> 24;
+                                    int cr = (rgb >>> 16) & 0xff;
+                                    int cg = (rgb >>> 8) & 0xff;
+                                    int cb = rgb & 0xff;
 
                                     if (op == OP_ERODE) {
-                                        a = min(a, inA[comparedIndex]);
-                                        r = min(r, inR[comparedIndex]);
-                                        g = min(g, inG[comparedIndex]);
-                                        b = min(b, inB[comparedIndex]);
+                                        a = Math.min(a, ca);
+                                        r = Math.min(r, cr);
+                                        g = Math.min(g, cg);
+                                        b = Math.min(b, cb);
                                     } else {
-                                        a = max(a, inA[comparedIndex]);
-                                        r = max(r, inR[comparedIndex]);
-                                        g = max(g, inG[comparedIndex]);
-                                        b = max(b, inB[comparedIndex]);
+                                        a = Math.max(a, ca);
+                                        r = Math.max(r, cr);
+                                        g = Math.max(g, cg);
+                                        b = Math.max(b, cb);
                                     }
                                 }
                             }
@@ -130,14 +126,6 @@ public class MorphologyFilter extends WholeImageFilter {
         return outPixels;
     }
 
-    private static short min(short a, short b) {
-        return (a <= b) ? a : b;
-    }
-
-    private static short max(short a, short b) {
-        return (a >= b) ? a : b;
-    }
-
     @Override
     public String toString() {
         return "Blur/Minimum";
@@ -18,8 +18,11 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.PointFilter;
+import pixelitor.ThreadPool;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Metric;
+import pixelitor.utils.PointGrid;
+import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.ReseedSupport;
 
 import java.awt.Color;
@@ -27,6 +30,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
 import java.util.Random;
+import java.util.concurrent.Future;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
@@ -40,6 +44,7 @@ public class VoronoiFilter extends PointFilter {
     private int[] yCoords;
     private int[] colors;
     private Metric metric;
+    private PointGrid grid;
     private boolean useImageColors;
 
     private int aaRes = 2;
@@ -84,6 +89,8 @@ public class VoronoiFilter extends PointFilter {
                 colors[i] = 0xFF_00_00_00 | rand.nextInt(0xFF_FF_FF);
             }
         }
+        grid = new PointGrid(xCoords, yCoords, numPoints,
+                src.getWidth(), src.getHeight(), metric);
 
         return super.filter(src, dst);
     }
@@ -109,41 +116,7 @@ public class VoronoiFilter extends PointFilter {
 
     @Override
     public int filterRGB(int x, int y, int rgb) {
-        int closestPointIndex = 0;
-        double fromHereToClosestSoFar = metric.distanceInt(
-                xCoords[closestPointIndex], x,
-                yCoords[closestPointIndex], y);
-
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceInt(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
-            }
-        }
-
-        return colors[closestPointIndex];
-    }
-
-    /**
-     * Finds the nearest point with double precision. Used for AA
-     */
-    private int nearestSiteDouble(double x, double y) {
-        int closestPointIndex = 0;
-        double fromHereToClosestSoFar = metric.distanceDouble(
-                xCoords[closestPointIndex], x,
-                yCoords[closestPointIndex], y);
-
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceDouble(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
-            }
-        }
-        return closestPointIndex;
+        return colors[grid.nearest(x, y)];
     }
 
     /**
@@ -177,7 +150,7 @@ public class VoronoiFilter extends PointFilter {
             double yy = y + 1.0 / aaRes * i - 0.5;
             for (int j = 0; j < aaRes; j++) {
                 double xx = x + 1.0 / aaRes * j - 0.5;
-                int closestPointIndex = nearestSiteDouble(xx, yy);
+                int closestPointIndex = grid.nearest(xx, yy);
                 int color = colors[closestPointIndex];
                 r += (color >>> 16) & 0xFF;
                 g += (color >>> 8) & 0xFF;
@@ -194,6 +167,7 @@ public class VoronoiFilter extends PointFilter {
     public void antiAlias(BufferedImage imgSoFar) {
         assert aaRes != 0;
         int width = imgSoFar.getWidth();
+        int height = imgSoFar.getHeight();
         int[] pixels = ImageUtils.getPixelsAsArray(imgSoFar);
 
         // make a copy so that the original is inspected for edges
@@ -201,18 +175,25 @@ public class VoronoiFilter extends PointFilter {
         int[] pixelsCopy = new int[pixels.length];
         System.arraycopy(pixels, 0, pixelsCopy, 0, pixels.length);
 
-        for (int i = 0; i < pixels.length; i++) {
-            // only pixels at the edges are supersampled
-            boolean edge;
-            try {
-                edge = isEdge(pixelsCopy, i, width);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                edge = false;
-            }
-
-            if(edge) {
-                pixels[i] = calcSuperSampledColor(i, width);
-            }
+        Future<?>[] futures = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int lineStart = y * width;
+            futures[y] = ThreadPool.submit(() -> {
+                for (int i = lineStart; i < lineStart + width; i++) {
+                    // only pixels at the edges are supersampled
+                    boolean edge;
+                    try {
+                        edge = isEdge(pixelsCopy, i, width);
+                    } catch (ArrayIndexOutOfBoundsException e) {
+                        edge = false;
+                    }
+
+                    if (edge) {
+                        pixels[i] = calcSuperSampledColor(i, width);
+                    }
+                }
+            });
         }
+        ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
     }
 }
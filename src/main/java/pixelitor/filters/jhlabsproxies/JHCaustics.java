@@ -23,6 +23,7 @@ import pixelitor.filters.gui.ColorParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.noise.PerlinNoise;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
@@ -47,6 +48,10 @@ public class JHCaustics extends ParametrizedFilter {
     private final RangeParam samples = new RangeParam("Samples (Quality)", 1, 1, 10,
             true, BORDER, IGNORE_RANDOMIZE);
 
+    // replaced (not modified) when reseeding, so that
+    // a running render always sees consistent tables
+    private volatile PerlinNoise noise = new PerlinNoise(System.nanoTime());
+
     private CausticsFilter filter;
 
     public JHCaustics() {
@@ -61,7 +66,7 @@ public class JHCaustics extends ParametrizedFilter {
                 focus,
                 dispersion,
                 samples
-        ).withAction(new ReseedNoiseFilterAction());
+        ).withAction(new ReseedNoiseFilterAction(e -> reseed()));
     }
 
     @Override
@@ -78,8 +83,18 @@ public class JHCaustics extends ParametrizedFilter {
         filter.setScale(scale.getValueAsFloat());
         filter.setTime(time.getValueAsPercentage());
         filter.setTurbulence(turbulence.getValueAsFloat());
+        filter.setNoise(noise);
 
         dest = filter.filter(src, dest);
         return dest;
     }
+
+    private void reseed() {
+        noise = new PerlinNoise(System.nanoTime());
+    }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        ((JHCaustics) copy).noise = noise;
+    }
 }
\ No newline at end of file
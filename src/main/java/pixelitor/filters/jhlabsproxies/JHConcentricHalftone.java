@@ -22,7 +22,7 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.tools.gradient.paints.SpiralGradientPaint;
 import pixelitor.tools.util.ImDrag;
-import pixelitor.utils.ImageUtils;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -61,7 +61,7 @@ public class JHConcentricHalftone extends JHMaskedHalftone {
 
     @Override
     protected BufferedImage createMaskImage(BufferedImage src) {
-        BufferedImage stripes = ImageUtils.createImageWithSameCM(src);
+        BufferedImage stripes = BufferPool.leaseImageLike(src);
         Graphics2D g = stripes.createGraphics();
         float cx = src.getWidth() * center.getRelativeX();
         float cy = src.getHeight() * center.getRelativeY();
@@ -45,4 +45,9 @@ public class JHCustomHalftone extends JHMaskedHalftone {
         // this is selected as a random filter
         return ImageUtils.copyImage(src);
     }
+
+    @Override
+    protected void releaseMaskImage(BufferedImage mask) {
+        // the composite image of another composition can't be reused
+    }
 }
@@ -19,11 +19,17 @@ package pixelitor.filters.jhlabsproxies;
 import com.jhlabs.image.LensBlurFilter;
 import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.ImagePositionParam;
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
 /**
  * Lens Blur filter based on the JHLabs LensBlurFilter
@@ -36,6 +42,18 @@ public class JHLensBlur extends ParametrizedFilter {
     private final RangeParam bloomFactor = new RangeParam("Bloom Factor", 1, 1, 8);
     private final RangeParam bloomThreshold = new RangeParam("Bloom Threshold", 0, 200, 255);
 
+    private static final int FOCUS_NONE = 0;
+    private static final int FOCUS_CIRCLE = 1;
+    private static final int FOCUS_BAND = 2;
+
+    private final IntChoiceParam focusType = new IntChoiceParam("Sharp Area", new Value[]{
+            new Value("None", FOCUS_NONE),
+            new Value("Circle", FOCUS_CIRCLE),
+            new Value("Horizontal Band", FOCUS_BAND),
+    });
+    private final ImagePositionParam focusCenter = new ImagePositionParam("Sharp Area Center");
+    private final RangeParam focusSize = new RangeParam("Sharp Area Size (%)", 1, 30, 100);
+
     private final BooleanParam hpSharpening = BooleanParam.forHPSharpening();
 
     private LensBlurFilter filter;
@@ -48,8 +66,16 @@ public class JHLensBlur extends ParametrizedFilter {
                 numberOfSides,
                 bloomFactor,
                 bloomThreshold,
+                focusType,
+                focusCenter,
+                focusSize,
                 hpSharpening
         );
+
+        focusType.setupEnableOtherIf(focusCenter,
+                choice -> choice.getValue() != FOCUS_NONE);
+        focusType.setupEnableOtherIf(focusSize,
+                choice -> choice.getValue() != FOCUS_NONE);
     }
 
     @Override
@@ -67,6 +93,11 @@ public class JHLensBlur extends ParametrizedFilter {
         filter.setSides(numberOfSides.getValue());
         filter.setBloom(bloomFactor.getValueAsFloat());
         filter.setBloomThreshold(bloomThreshold.getValueAsFloat());
+        if (focusType.getValue() == FOCUS_NONE) {
+            filter.setBlurMask(null);
+        } else {
+            filter.setBlurMask(createBlurMask(src.getWidth(), src.getHeight()));
+        }
 
         dest = filter.filter(src, dest);
 
@@ -76,4 +107,44 @@ public class JHLensBlur extends ParametrizedFilter {
 
         return dest;
     }
+
+    /**
+     * Creates a mask which is black (not blurred) inside the sharp area,
+     * and becomes gradually white (fully blurred) outside of it.
+     */
+    private BufferedImage createBlurMask(int width, int height) {
+        BufferedImage mask = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+
+        double cx = focusCenter.getRelativeX() * width;
+        double cy = focusCenter.getRelativeY() * height;
+        boolean circle = focusType.getValue() == FOCUS_CIRCLE;
+        double maxSize = circle ? Math.min(width, height) / 2.0 : height / 2.0;
+        double sharpSize = Math.max(1.0, focusSize.getValueAsPercentage() * maxSize);
+
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            double dy = y - cy;
+            for (int x = 0; x < width; x++) {
+                double dist;
+                if (circle) {
+                    double dx = x - cx;
+                    dist = Math.sqrt(dx * dx + dy * dy);
+                } else {
+                    dist = Math.abs(dy);
+                }
+                // the transition is as wide as the sharp area
+                double blur = (dist - sharpSize) / sharpSize;
+                if (blur <= 0) {
+                    pixels[i] = 0;
+                } else if (blur >= 1) {
+                    pixels[i] = (byte) 255;
+                } else {
+                    pixels[i] = (byte) (blur * 255);
+                }
+                i++;
+            }
+        }
+        return mask;
+    }
 }
\ No newline at end of file
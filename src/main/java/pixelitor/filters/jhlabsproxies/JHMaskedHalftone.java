@@ -23,6 +23,7 @@ import pixelitor.filters.gui.BooleanParam;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.BufferPool;
 
 import java.awt.MultipleGradientPaint;
 import java.awt.image.BufferedImage;
@@ -63,7 +64,16 @@ public abstract class JHMaskedHalftone extends ParametrizedFilter {
         filter.setSoftness(softness.getValueAsPercentage());
         filter.setInvert(invert.isChecked());
 
-        return filter.filter(src, dest);
+        dest = filter.filter(src, dest);
+        releaseMaskImage(stripes);
+        return dest;
+    }
+
+    /**
+     * Called when the mask image is not needed anymore
+     */
+    protected void releaseMaskImage(BufferedImage mask) {
+        BufferPool.returnImage(mask);
     }
 
     private void setupHelperVariables() {
@@ -24,6 +24,7 @@ import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
 import pixelitor.filters.impl.BrickBlockFilter;
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.Graphics2D;
@@ -111,7 +112,11 @@ public class JHPixelate extends ParametrizedFilter {
             }
 
             if (style == STYLE_3D || style == STYLE_EMBEDDED) {
-                dest = ImageUtils.bumpMap(dest, bumpSource, NAME);
+                BufferedImage pixelated = dest;
+                dest = ImageUtils.bumpMap(pixelated, bumpSource, NAME);
+                if (bumpSource != pixelated) {
+                    BufferPool.returnImage(bumpSource);
+                }
 //            } else if (style == STYLE_GRID_ONLY) {
 //                dest = ImageUtils.bumpMap(src, bumpSource);
             } else {
@@ -123,7 +128,7 @@ public class JHPixelate extends ParametrizedFilter {
     }
 
     private static BufferedImage createBumpSource(int type, int cellSize, int width, int height, BufferedImage src) {
-        BufferedImage bumpSource = ImageUtils.createImageWithSameCM(src);
+        BufferedImage bumpSource = BufferPool.leaseImageLike(src);
 
         int gapWidth;
         if (cellSize < 15) {
@@ -90,4 +90,13 @@ public class JHPlasma extends ParametrizedFilter {
         dest = filter.filter(src, dest);
         return dest;
     }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        if (filter != null) {
+            PlasmaFilter filterCopy = new PlasmaFilter(NAME);
+            filterCopy.setSeed(filter.getSeed());
+            ((JHPlasma) copy).filter = filterCopy;
+        }
+    }
 }
\ No newline at end of file
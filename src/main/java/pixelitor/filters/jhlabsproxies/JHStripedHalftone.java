@@ -18,7 +18,7 @@
 package pixelitor.filters.jhlabsproxies;
 
 import pixelitor.filters.gui.AngleParam;
-import pixelitor.utils.ImageUtils;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -49,7 +49,7 @@ public class JHStripedHalftone extends JHMaskedHalftone {
         float[] fractions = {0.0f, 1.0f};
         Color[] colors = {BLACK, WHITE};
 
-        BufferedImage stripes = ImageUtils.createImageWithSameCM(src);
+        BufferedImage stripes = BufferPool.leaseImageLike(src);
         Graphics2D g = stripes.createGraphics();
         float x1 = src.getWidth() / 2.0f;
         float y1 = src.getHeight() / 2.0f;
@@ -22,6 +22,7 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.noise.PerlinNoise;
 
 import java.awt.image.BufferedImage;
 
@@ -41,6 +42,10 @@ public class JHTurbulentDistortion extends ParametrizedFilter {
     private final IntChoiceParam edgeAction = IntChoiceParam.forEdgeAction();
     private final IntChoiceParam interpolation = IntChoiceParam.forInterpolation();
 
+    // replaced (not modified) when reseeding, so that
+    // a running render always sees consistent tables
+    private volatile PerlinNoise noise = new PerlinNoise(System.nanoTime());
+
     private MarbleFilter filter;
 
     public JHTurbulentDistortion() {
@@ -53,7 +58,7 @@ public class JHTurbulentDistortion extends ParametrizedFilter {
                 time,
                 edgeAction.withDefaultChoice(EDGE_REPEAT_PIXELS),
                 interpolation
-        ).withAction(new ReseedNoiseFilterAction());
+        ).withAction(new ReseedNoiseFilterAction(e -> reseed()));
     }
 
     @Override
@@ -68,8 +73,18 @@ public class JHTurbulentDistortion extends ParametrizedFilter {
         filter.setTime(time.getValueAsPercentage() * 5);
         filter.setEdgeAction(edgeAction.getValue());
         filter.setInterpolation(interpolation.getValue());
+        filter.setNoise(noise);
 
         dest = filter.filter(src, dest);
         return dest;
     }
+
+    private void reseed() {
+        noise = new PerlinNoise(System.nanoTime());
+    }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        ((JHTurbulentDistortion) copy).noise = noise;
+    }
 }
@@ -24,6 +24,7 @@ import pixelitor.filters.gui.GradientParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.noise.PerlinNoise;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
@@ -49,6 +50,10 @@ public class JHWood extends ParametrizedFilter {
                     new Color(190, 160, 115),
                     new Color(152, 123, 81)});
 
+    // replaced (not modified) when reseeding, so that
+    // a running render always sees consistent tables
+    private volatile PerlinNoise noise = new PerlinNoise(System.nanoTime());
+
     private WoodFilter filter;
 
     public JHWood() {
@@ -63,7 +68,7 @@ public class JHWood extends ParametrizedFilter {
                 turbulence,
                 fibres,
                 gain
-        ).withAction(new ReseedNoiseFilterAction());
+        ).withAction(new ReseedNoiseFilterAction(e -> reseed()));
     }
 
     @Override
@@ -80,8 +85,18 @@ public class JHWood extends ParametrizedFilter {
         filter.setFibres(fibres.getValueAsPercentage());
         filter.setGain(gain.getValueAsPercentage());
         filter.setColormap(gradient.getValue());
+        filter.setNoise(noise);
 
         dest = filter.filter(src, dest);
         return dest;
     }
+
+    private void reseed() {
+        noise = new PerlinNoise(System.nanoTime());
+    }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        ((JHWood) copy).noise = noise;
+    }
 }
\ No newline at end of file
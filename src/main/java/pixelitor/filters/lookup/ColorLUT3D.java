@@ -0,0 +1,456 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.lookup;
+
+import pixelitor.ThreadPool;
+import pixelitor.filters.RGBPixelOp;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
+/**
+ * A 3D color lookup table (LUT), which maps RGB colors to RGB colors.
+ * The output colors are stored for a lattice of input colors, and the
+ * colors between the lattice points are calculated with tetrahedral
+ * interpolation. The alpha channel is not changed.
+ * <p>
+ * Any per-pixel color transformation which depends only on the RGB
+ * values of the pixel can be baked into such a table, and then applying
+ * the table is much faster than evaluating the transformation for every pixel.
+ * <p>
+ * The tables can also be loaded from and saved into .cube files
+ * (the format introduced by Adobe and used by most color grading software).
+ * The tables are immutable, so they can be shared between threads.
+ */
+public class ColorLUT3D {
+    public static final int DEFAULT_SIZE = 33;
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_SIZE = 256;
+
+    // the interpolation weights are in 8-bit fixed point
+    private static final int FRAC_BITS = 8;
+    private static final int ONE = 1 << FRAC_BITS;
+
+    // The output channels are stored with 5 fractional bits in 21-bit
+    // fields of a long, so that the weighted sum of the 4 corners of a
+    // tetrahedron can be calculated for the 3 channels at once
+    private static final int VALUE_FRAC_BITS = 5;
+    private static final int FIELD_BITS = 21;
+    private static final long FIELD_MASK = (1L << FIELD_BITS) - 1;
+    private static final int MAX_VALUE = 255 << VALUE_FRAC_BITS;
+
+    private final int size;
+
+    // the packed output colors, with the red index
+    // changing fastest (as in .cube files)
+    private final long[] table;
+
+    // For every input channel value, the lattice cell it falls into,
+    // already multiplied with the table stride of the channel, and
+    // the position inside the cell (0..ONE). They are calculated from
+    // the input values of the lattice points, which don't have to be
+    // uniformly spaced: when baking, they are rounded to integers.
+    private final int[] rOffsets = new int[256];
+    private final int[] gOffsets = new int[256];
+    private final int[] bOffsets = new int[256];
+    private final int[] rFracs = new int[256];
+    private final int[] gFracs = new int[256];
+    private final int[] bFracs = new int[256];
+
+    private ColorLUT3D(int size, long[] table, double[] rNodes, double[] gNodes, double[] bNodes) {
+        this.size = size;
+        this.table = table;
+        initCellLookup(rNodes, 1, rOffsets, rFracs);
+        initCellLookup(gNodes, size, gOffsets, gFracs);
+        initCellLookup(bNodes, size * size, bOffsets, bFracs);
+    }
+
+    /**
+     * Creates a table by evaluating the given transformation
+     * at size^3 lattice points. The transformation must not
+     * depend on (or change) the alpha channel.
+     */
+    public static ColorLUT3D bake(RGBPixelOp op, int size) {
+        checkSize(size);
+        // the transformation can be evaluated only at integer values
+        double[] nodes = new double[size];
+        int[] intNodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            intNodes[i] = (int) Math.round(i * 255.0 / (size - 1));
+            nodes[i] = intNodes[i];
+        }
+
+        long[] table = new long[size * size * size];
+        int index = 0;
+        for (int bi = 0; bi < size; bi++) {
+            for (int gi = 0; gi < size; gi++) {
+                for (int ri = 0; ri < size; ri++) {
+                    int rgb = op.changeRGB(255, intNodes[ri], intNodes[gi], intNodes[bi]);
+                    table[index++] = pack(
+                            ((rgb >>> 16) & 0xFF) << VALUE_FRAC_BITS,
+                            ((rgb >>> 8) & 0xFF) << VALUE_FRAC_BITS,
+                            (rgb & 0xFF) << VALUE_FRAC_BITS);
+                }
+            }
+        }
+        return new ColorLUT3D(size, table, nodes, nodes, nodes);
+    }
+
+    private static long pack(int r, int g, int b) {
+        return ((long) r << (2 * FIELD_BITS)) | ((long) g << FIELD_BITS) | b;
+    }
+
+    private static void checkSize(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("size = " + size);
+        }
+    }
+
+    private static void initCellLookup(double[] nodes, int stride, int[] offsets, int[] fracs) {
+        int lastCell = nodes.length - 2;
+        int cell = 0;
+        for (int v = 0; v < 256; v++) {
+            while (cell < lastCell && v >= nodes[cell + 1]) {
+                cell++;
+            }
+            double cellStart = nodes[cell];
+            double cellWidth = nodes[cell + 1] - cellStart;
+            double t = (v - cellStart) / cellWidth;
+            if (t < 0) {
+                t = 0;
+            } else if (t > 1) {
+                t = 1;
+            }
+            offsets[v] = cell * stride;
+            fracs[v] = (int) Math.round(t * ONE);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the transformed color for the given ARGB color
+     */
+    public int lookup(int argb) {
+        int r = (argb >>> 16) & 0xFF;
+        int g = (argb >>> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (argb & 0xFF000000) | interpolate(r, g, b, ONE);
+    }
+
+    /**
+     * Returns the interpolated color in RGB format, blended
+     * with the input color according to the given amount (0..ONE)
+     */
+    private int interpolate(int r, int g, int b, int amount) {
+        int fr = rFracs[r];
+        int fg = gFracs[g];
+        int fb = bFracs[b];
+        int base = rOffsets[r] + gOffsets[g] + bOffsets[b];
+
+        // The cube of the 8 surrounding lattice points is split into
+        // 6 tetrahedra along its main diagonal, and the point is
+        // interpolated from the 4 corners of the tetrahedron containing it
+        int dr = 1;
+        int dg = size;
+        int db = size * size;
+        int c1, c2; // the two corners between the first and the last one
+        int w0, w1, w2, w3; // the weights of the corners
+        if (fr > fg) {
+            if (fg > fb) { // r > g > b
+                c1 = dr;
+                c2 = dr + dg;
+                w0 = ONE - fr;
+                w1 = fr - fg;
+                w2 = fg - fb;
+                w3 = fb;
+            } else if (fr > fb) { // r > b >= g
+                c1 = dr;
+                c2 = dr + db;
+                w0 = ONE - fr;
+                w1 = fr - fb;
+                w2 = fb - fg;
+                w3 = fg;
+            } else { // b >= r > g
+                c1 = db;
+                c2 = dr + db;
+                w0 = ONE - fb;
+                w1 = fb - fr;
+                w2 = fr - fg;
+                w3 = fg;
+            }
+        } else {
+            if (fb > fg) { // b > g >= r
+                c1 = db;
+                c2 = dg + db;
+                w0 = ONE - fb;
+                w1 = fb - fg;
+                w2 = fg - fr;
+                w3 = fr;
+            } else if (fb > fr) { // g >= b > r
+                c1 = dg;
+                c2 = dg + db;
+                w0 = ONE - fg;
+                w1 = fg - fb;
+                w2 = fb - fr;
+                w3 = fr;
+            } else { // g >= r >= b
+                c1 = dg;
+                c2 = dr + dg;
+                w0 = ONE - fg;
+                w1 = fg - fr;
+                w2 = fr - fb;
+                w3 = fb;
+            }
+        }
+        long[] t = table;
+        // the weights add up to ONE, so the fields can't overflow
+        long sum = w0 * t[base] + w1 * t[base + c1]
+                + w2 * t[base + c2] + w3 * t[base + dr + dg + db];
+
+        int shift = FRAC_BITS + VALUE_FRAC_BITS;
+        int half = 1 << (shift - 1);
+        int newR = ((int) ((sum >>> (2 * FIELD_BITS)) & FIELD_MASK) + half) >> shift;
+        int newG = ((int) ((sum >>> FIELD_BITS) & FIELD_MASK) + half) >> shift;
+        int newB = ((int) (sum & FIELD_MASK) + half) >> shift;
+
+        if (amount < ONE) {
+            newR = r + (((newR - r) * amount) >> FRAC_BITS);
+            newG = g + (((newG - g) * amount) >> FRAC_BITS);
+            newB = b + (((newB - b) * amount) >> FRAC_BITS);
+        }
+        return (newR << 16) | (newG << 8) | newB;
+    }
+
+    /**
+     * Applies the table to an image with packed int pixels. The result
+     * is blended with the source according to the given amount (0..1).
+     */
+    public BufferedImage apply(BufferedImage src, BufferedImage dest,
+                               float amount, ProgressTracker pt) {
+        int[] srcData = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+        int[] destData = ((DataBufferInt) dest.getRaster().getDataBuffer()).getData();
+        boolean premultiplied = src.isAlphaPremultiplied();
+        int fixedAmount = Math.round(amount * ONE);
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        Future<?>[] futures = new Future[height];
+        for (int y = 0; y < height; y++) {
+            int lineStart = y * width;
+            Runnable lineTask = () -> applyToLine(srcData, destData,
+                    lineStart, lineStart + width, premultiplied, fixedAmount);
+            futures[y] = ThreadPool.submit(lineTask);
+        }
+        ThreadPool.waitForFutures(futures, pt);
+
+        return dest;
+    }
+
+    private void applyToLine(int[] srcData, int[] destData, int start, int end,
+                             boolean premultiplied, int amount) {
+        for (int i = start; i < end; i++) {
+            int argb = srcData[i];
+            int a = argb >>> 24;
+            int r = (argb >>> 16) & 0xFF;
+            int g = (argb >>> 8) & 0xFF;
+            int b = argb & 0xFF;
+
+            if (a == 255 || !premultiplied) {
+                destData[i] = (a << 24) | interpolate(r, g, b, amount);
+            } else if (a == 0) {
+                destData[i] = 0;
+            } else {
+                // unpremultiply, look up and premultiply again
+                float f = 255.0f / a;
+                int rgb = interpolate(
+                        Math.min(255, (int) (r * f)),
+                        Math.min(255, (int) (g * f)),
+                        Math.min(255, (int) (b * f)), amount);
+                float f2 = a / 255.0f;
+                r = (int) (((rgb >>> 16) & 0xFF) * f2);
+                g = (int) (((rgb >>> 8) & 0xFF) * f2);
+                b = (int) ((rgb & 0xFF) * f2);
+                destData[i] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * Loads a table from a file in the .cube format
+     */
+    public static ColorLUT3D readCube(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return readCube(reader, file.getName());
+        }
+    }
+
+    static ColorLUT3D readCube(BufferedReader reader, String sourceName) throws IOException {
+        int size = -1;
+        float[] domainMin = {0, 0, 0};
+        float[] domainMax = {1, 1, 1};
+        long[] table = null;
+        int numValues = 0;
+        int lineNr = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNr++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            String keyword = tokens[0];
+            try {
+                if (Character.isLetter(keyword.charAt(0))) {
+                    switch (keyword) {
+                        case "TITLE":
+                            break;
+                        case "LUT_3D_SIZE":
+                            size = Integer.parseInt(tokens[1]);
+                            checkSize(size);
+                            table = new long[size * size * size];
+                            break;
+                        case "DOMAIN_MIN":
+                            domainMin = parseTriplet(tokens);
+                            break;
+                        case "DOMAIN_MAX":
+                            domainMax = parseTriplet(tokens);
+                            break;
+                        case "LUT_1D_SIZE":
+                            throw new IOException(sourceName + " contains a 1D LUT, only 3D LUTs are supported");
+                        default:
+                            // ignore the unknown keywords, as the specification requires
+                            break;
+                    }
+                    continue;
+                }
+                if (table == null) {
+                    throw new IOException(format("%s: LUT_3D_SIZE is missing before line %d", sourceName, lineNr));
+                }
+                if (numValues == table.length) {
+                    throw new IOException(format("%s: too many values at line %d", sourceName, lineNr));
+                }
+                float[] rgb = parseTriplet(tokens, 0);
+                table[numValues++] = pack(toFixedPoint(rgb[0]),
+                        toFixedPoint(rgb[1]), toFixedPoint(rgb[2]));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException(format("%s: could not parse line %d: \"%s\"", sourceName, lineNr, line), e);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(format("%s: invalid LUT size at line %d", sourceName, lineNr), e);
+            }
+        }
+        if (table == null || numValues != table.length) {
+            throw new IOException(sourceName + " is not a complete 3D LUT");
+        }
+
+        double[][] nodes = new double[3][size];
+        for (int c = 0; c < 3; c++) {
+            if (domainMax[c] <= domainMin[c]) {
+                throw new IOException(sourceName + ": invalid domain");
+            }
+            for (int i = 0; i < size; i++) {
+                double value = domainMin[c] + i * (domainMax[c] - domainMin[c]) / (size - 1);
+                nodes[c][i] = value * 255.0;
+            }
+        }
+        return new ColorLUT3D(size, table, nodes[0], nodes[1], nodes[2]);
+    }
+
+    private static float[] parseTriplet(String[] tokens) {
+        return parseTriplet(tokens, 1);
+    }
+
+    private static float[] parseTriplet(String[] tokens, int start) {
+        return new float[]{
+                Float.parseFloat(tokens[start]),
+                Float.parseFloat(tokens[start + 1]),
+                Float.parseFloat(tokens[start + 2])};
+    }
+
+    private static int toFixedPoint(float value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > 1) {
+            value = 1;
+        }
+        return Math.round(value * MAX_VALUE);
+    }
+
+    /**
+     * Saves the table into a file in the .cube format.
+     * The input domain is always written as 0..1, so for the
+     * baked tables the lattice points are slightly shifted.
+     */
+    public void writeCube(File file, String title) throws IOException {
+        try (BufferedWriter bw = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+             PrintWriter writer = new PrintWriter(bw)) {
+            writer.println("# Created by Pixelitor");
+            writer.println("TITLE \"" + title.replace('"', '\'') + '"');
+            writer.println("LUT_3D_SIZE " + size);
+            writer.println();
+            float scale = 1.0f / MAX_VALUE;
+            for (long rgb : table) {
+                writer.println(format(Locale.ENGLISH, "%.6f %.6f %.6f",
+                        ((rgb >>> (2 * FIELD_BITS)) & FIELD_MASK) * scale,
+                        ((rgb >>> FIELD_BITS) & FIELD_MASK) * scale,
+                        (rgb & FIELD_MASK) * scale));
+            }
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Keeps the last baked table, so that a filter
+     * bakes a new one only if its settings changed
+     */
+    public static class Cache {
+        private float[] lastKey;
+        private ColorLUT3D lastLUT;
+
+        /**
+         * Returns the table for the given settings, and
+         * bakes the given transformation only if necessary
+         */
+        public synchronized ColorLUT3D get(RGBPixelOp op, float... key) {
+            if (lastLUT == null || !Arrays.equals(key, lastKey)) {
+                lastLUT = bake(op, DEFAULT_SIZE);
+                lastKey = key.clone();
+            }
+            return lastLUT;
+        }
+    }
+}
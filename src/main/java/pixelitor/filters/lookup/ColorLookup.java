@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.lookup;
+
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.FilterAction;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.io.FileChoosers;
+import pixelitor.utils.Messages;
+import pixelitor.utils.StatusBarProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Applies a 3D color lookup table loaded from a .cube file
+ */
+public class ColorLookup extends ParametrizedFilter {
+    public static final String NAME = "Color Lookup";
+
+    private static final long serialVersionUID = 4213878431705946532L;
+
+    private final RangeParam amount = new RangeParam("Amount (%)", 0, 100, 100);
+
+    // the loaded table is not saved with the filter
+    private transient volatile ColorLUT3D lut;
+
+    public ColorLookup() {
+        super(ShowOriginal.YES);
+
+        FilterAction loadAction = new FilterAction("Load .cube File...",
+                e -> loadLUT(), "Load a 3D LUT in the .cube format");
+        setParams(amount).withAction(loadAction);
+    }
+
+    private void loadLUT() {
+        File file = FileChoosers.selectNonImageFile(FileChoosers.cubeFilter, false);
+        if (file == null) {
+            return;
+        }
+        try {
+            lut = ColorLUT3D.readCube(file);
+        } catch (IOException e) {
+            Messages.showException(e);
+        }
+    }
+
+    @Override
+    public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+        ColorLUT3D runLUT = lut;
+        if (runLUT == null || amount.getValue() == 0) {
+            return src;
+        }
+
+        StatusBarProgressTracker pt = new StatusBarProgressTracker(NAME, src.getHeight());
+        runLUT.apply(src, dest, amount.getValueAsPercentage(), pt);
+        pt.finish();
+
+        return dest;
+    }
+
+    @Override
+    protected void copyInternalStateTo(ParametrizedFilter copy) {
+        // the table is immutable, so it can be shared
+        ((ColorLookup) copy).lut = lut;
+    }
+
+    @Override
+    public boolean supportsGray() {
+        return false;
+    }
+}
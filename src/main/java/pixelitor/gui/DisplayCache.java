@@ -0,0 +1,334 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.jdesktop.swingx.painter.CheckerboardPainter;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+import pixelitor.utils.VisibleForTesting;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * A screen-resolution image of the composite flattened over the
+ * checkerboard, for the visible part of an {@link ImageComponent}
+ * (plus a margin). While the composite and the zoom
+ * don't change, the repaints caused by scrolling and by tool overlays
+ * only copy a part of this image instead of painting the checkerboard
+ * and drawing the scaled, translucent composite with Java2D.
+ * <p>
+ * The cache is recalculated in parallel strips. It is not recalculated
+ * for small repaints while the composite changes at every repaint
+ * (for example while painting with a brush), because then the whole
+ * visible area would be recalculated for each small dirty region.
+ * <p>
+ * All methods must be called on the EDT.
+ */
+class DisplayCache {
+    // the extra area around the visible part, so that
+    // scrolling a few steps doesn't need a recalculation
+    private static final int MARGIN = 128;
+
+    // below this size the calculation is not split into parallel tasks
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+
+    private static final int CHECKER_SIZE;
+    private static final int[] CHECKER_TILE;
+
+    static {
+        // a tile of the same pattern that is painted when there is no cache
+        CheckerboardPainter painter = ImageUtils.createCheckerboardPainter();
+        CHECKER_SIZE = (int) (2 * painter.getSquareSize());
+        BufferedImage tile = new BufferedImage(CHECKER_SIZE, CHECKER_SIZE, TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        painter.paint(g, null, CHECKER_SIZE, CHECKER_SIZE);
+        g.dispose();
+        CHECKER_TILE = tile.getRGB(0, 0, CHECKER_SIZE, CHECKER_SIZE,
+                null, 0, CHECKER_SIZE);
+    }
+
+    private BufferedImage image;
+
+    // the covered area in component space
+    private Rectangle coArea;
+
+    // the state that was used for the calculation. The composites
+    // are only compared, they shouldn't be kept in memory by the cache
+    private WeakReference<BufferedImage> composite = new WeakReference<>(null);
+    private double viewScale;
+    private double canvasStartX;
+    private double canvasStartY;
+
+    // the composite at the time of the previous paint
+    private WeakReference<BufferedImage> lastPaintedComposite = new WeakReference<>(null);
+
+    private int numCalculations;
+
+    /**
+     * Paints the checkerboard and the composite for the given clip
+     * from the cache, recalculating it if necessary. The rectangles
+     * are in component space, and the clip must be inside the canvas.
+     * Returns false if the cache can't be used for this paint,
+     * and then nothing is painted.
+     */
+    public boolean paint(Graphics2D g, BufferedImage composite, Rectangle clip,
+                         Rectangle visiblePart, Rectangle canvasBounds,
+                         double viewScale, double canvasStartX, double canvasStartY) {
+        BufferedImage previous = lastPaintedComposite.get();
+        lastPaintedComposite = new WeakReference<>(composite);
+
+        AffineTransform at = g.getTransform();
+        if (clip.isEmpty() || !isWholePixelTranslation(at) || !canRead(composite)) {
+            return false;
+        }
+        if (!isWhole(canvasStartX) || !isWhole(canvasStartY)) {
+            // Java2D's rounding rules for a canvas starting in the middle of a
+            // pixel are not reproduced. Such paints are cheap anyway, because
+            // the canvas is centered only if it is smaller than the view.
+            return false;
+        }
+
+        if (!isValidFor(composite, viewScale, canvasStartX, canvasStartY)
+                || !coArea.contains(clip)) {
+            // if only the view changed, or the composite is the same as
+            // in the previous paint, then it is probably going to be reused
+            Rectangle visibleCanvas = visiblePart.intersection(canvasBounds);
+            boolean reusable = composite == this.composite.get() || composite == previous;
+            boolean mostlyRepainted = 2L * area(clip) >= area(visibleCanvas);
+            if (!reusable && !mostlyRepainted) {
+                return false;
+            }
+
+            Rectangle newArea = new Rectangle(visibleCanvas);
+            newArea.grow(MARGIN, MARGIN);
+            newArea = newArea.intersection(canvasBounds);
+            if (!newArea.contains(clip)) {
+                // can happen when the whole component is painted offscreen
+                return false;
+            }
+            recalculate(composite, newArea, viewScale, canvasStartX, canvasStartY);
+        }
+
+        g.drawImage(image, coArea.x, coArea.y, null);
+        return true;
+    }
+
+    private boolean isValidFor(BufferedImage composite, double viewScale,
+                               double canvasStartX, double canvasStartY) {
+        return image != null
+                && composite == this.composite.get()
+                && viewScale == this.viewScale
+                && canvasStartX == this.canvasStartX
+                && canvasStartY == this.canvasStartY;
+    }
+
+    @VisibleForTesting
+    void recalculate(BufferedImage composite, Rectangle coArea,
+                     double viewScale, double canvasStartX, double canvasStartY) {
+        int width = coArea.width;
+        int height = coArea.height;
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, TYPE_INT_RGB);
+        }
+        WritableRaster raster = image.getRaster();
+
+        int imWidth = composite.getWidth();
+        int imHeight = composite.getHeight();
+        int[] src = ImageUtils.getPixelsAsArray(composite);
+        boolean opaque = composite.getType() == TYPE_INT_RGB;
+        boolean premultiplied = composite.isAlphaPremultiplied();
+
+        // the source column (or -1 outside the image)
+        // and the checkerboard column for each column
+        int canvasX = (int) canvasStartX - coArea.x;
+        int[] srcX = new int[width];
+        int[] checkerX = new int[width];
+        for (int i = 0; i < width; i++) {
+            srcX[i] = sourceIndex(i - canvasX, viewScale, imWidth);
+            checkerX[i] = Math.floorMod(i - canvasX, CHECKER_SIZE);
+        }
+
+        int numStrips = 1;
+        if (width * height >= MIN_PARALLEL_PIXELS) {
+            numStrips = Math.min(height, 4 * ThreadPool.getNumThreads());
+        }
+        if (numStrips == 1) {
+            calcRows(raster, 0, height, src, imWidth, imHeight, srcX, checkerX,
+                    (int) canvasStartY - coArea.y, viewScale, opaque, premultiplied);
+        } else {
+            Future<?>[] futures = new Future<?>[numStrips];
+            for (int s = 0; s < numStrips; s++) {
+                int fromRow = s * height / numStrips;
+                int toRow = (s + 1) * height / numStrips;
+                futures[s] = ThreadPool.submit(() -> calcRows(raster, fromRow, toRow,
+                        src, imWidth, imHeight, srcX, checkerX,
+                        (int) canvasStartY - coArea.y, viewScale,
+                        opaque, premultiplied));
+            }
+            ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
+        }
+
+        this.coArea = new Rectangle(coArea);
+        this.composite = new WeakReference<>(composite);
+        this.viewScale = viewScale;
+        this.canvasStartX = canvasStartX;
+        this.canvasStartY = canvasStartY;
+        numCalculations++;
+    }
+
+    /**
+     * Calculates the given rows one at a time, and copies them into the
+     * image through the raster, so that Java2D can still accelerate
+     * the repeated copying of the image (which wouldn't be possible
+     * after writing into the image's data array directly).
+     */
+    private static void calcRows(WritableRaster raster, int fromRow, int toRow, int[] src,
+                                 int imWidth, int imHeight, int[] srcX, int[] checkerX,
+                                 int canvasY, double viewScale,
+                                 boolean opaque, boolean premultiplied) {
+        int width = srcX.length;
+        int[] row = new int[width];
+        for (int j = fromRow; j < toRow; j++) {
+            int srcY = sourceIndex(j - canvasY, viewScale, imHeight);
+            int checkerOffset = CHECKER_SIZE * Math.floorMod(j - canvasY, CHECKER_SIZE);
+            int srcOffset = srcY * imWidth;
+            for (int i = 0; i < width; i++) {
+                int bg = CHECKER_TILE[checkerOffset + checkerX[i]];
+                if (srcY < 0 || srcX[i] < 0) {
+                    row[i] = bg;
+                    continue;
+                }
+                int rgb = src[srcOffset + srcX[i]];
+                if (opaque) {
+                    row[i] = rgb;
+                } else {
+                    row[i] = blend(rgb, bg, premultiplied);
+                }
+            }
+            raster.setDataElements(0, j, width, 1, row);
+        }
+    }
+
+    /**
+     * Blends the given ARGB color over the given opaque background color
+     */
+    private static int blend(int argb, int bg, boolean premultiplied) {
+        int a = argb >>> 24;
+        if (a == 255) {
+            return argb;
+        }
+        if (a == 0) {
+            return bg;
+        }
+        int r = (argb >>> 16) & 0xFF;
+        int g = (argb >>> 8) & 0xFF;
+        int b = argb & 0xFF;
+        if (!premultiplied) {
+            r = (r * a + 127) / 255;
+            g = (g * a + 127) / 255;
+            b = (b * a + 127) / 255;
+        }
+        int ia = 255 - a;
+        r += (((bg >>> 16) & 0xFF) * ia + 127) / 255;
+        g += (((bg >>> 8) & 0xFF) * ia + 127) / 255;
+        b += ((bg & 0xFF) * ia + 127) / 255;
+        return 0xFF_00_00_00 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Returns the index of the image pixel that Java2D's nearest
+     * neighbor rendering draws at the given canvas-relative pixel,
+     * or -1 if it is outside the image.
+     */
+    private static int sourceIndex(int coPixel, double viewScale, int imSize) {
+        // the pixel centers are transformed into image space
+        int index = (int) Math.floor((coPixel + 0.5) / viewScale);
+        if (index < 0 || index >= imSize) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * Returns true if the component pixels are the device pixels.
+     * With HiDPI scaling the cache isn't used, because then
+     * Java2D also samples the checkerboard texture differently.
+     */
+    private static boolean isWholePixelTranslation(AffineTransform at) {
+        int type = at.getType();
+        return (type == AffineTransform.TYPE_IDENTITY || type == AffineTransform.TYPE_TRANSLATION)
+                && isWhole(at.getTranslateX()) && isWhole(at.getTranslateY());
+    }
+
+    private static boolean isWhole(double d) {
+        return d == Math.rint(d);
+    }
+
+    /**
+     * Returns true if the pixels of the given image can be read
+     * directly from its int array, in rows without padding
+     */
+    private static boolean canRead(BufferedImage img) {
+        if (!ImageUtils.hasPackedIntArray(img)) {
+            return false;
+        }
+        WritableRaster raster = img.getRaster();
+        if (raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || raster.getDataBuffer().getOffset() != 0) {
+            return false;
+        }
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return sm.getScanlineStride() == img.getWidth();
+    }
+
+    private static long area(Rectangle r) {
+        return (long) r.width * r.height;
+    }
+
+    /**
+     * Frees the memory of the cache. It is recalculated
+     * when it is needed again for painting.
+     */
+    public void release() {
+        image = null;
+        coArea = null;
+        composite.clear();
+        lastPaintedComposite.clear();
+    }
+
+    @VisibleForTesting
+    BufferedImage getImage() {
+        return image;
+    }
+
+    @VisibleForTesting
+    int getNumCalculations() {
+        return numCalculations;
+    }
+}
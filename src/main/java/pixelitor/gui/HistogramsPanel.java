@@ -35,10 +35,11 @@ import static java.awt.Color.RED;
 import static javax.swing.BorderFactory.createTitledBorder;
 
 /**
- * The panel that shows the histograms
+ * The panel that shows the histograms.
+ * It is created only when the histograms are shown for the first time.
  */
 public class HistogramsPanel extends JPanel implements ActiveImageChangeListener {
-    public static final HistogramsPanel INSTANCE = new HistogramsPanel();
+    private static HistogramsPanel instance;
     private static final String TYPE_LOGARITHMIC = "Logarithmic";
     private static final String TYPE_LINEAR = "Linear";
 
@@ -81,17 +82,34 @@ public class HistogramsPanel extends JPanel implements ActiveImageChangeListener
         add(scrollPane, BorderLayout.CENTER);
     }
 
+    /**
+     * Returns the panel, creating it if necessary
+     */
+    public static HistogramsPanel getInstance() {
+        assert SwingUtilities.isEventDispatchThread() : "not EDT thread";
+
+        if (instance == null) {
+            instance = new HistogramsPanel();
+            ImageComponents.addActiveImageChangeListener(instance);
+        }
+        return instance;
+    }
+
     private void typeChanged(String selected) {
         boolean isLogarithmicNow = selected.equals(TYPE_LOGARITHMIC);
         if (isLogarithmicNow != logarithmic) {
             logarithmic = isLogarithmicNow;
             ImageComponents.getActiveComp().ifPresent(
-                    this::updateFromCompIfShown);
+                    this::updateFrom);
         }
     }
 
-    public boolean isShown() {
-        return (getParent() != null);
+    /**
+     * Returns true if the histograms are currently shown.
+     * Unlike {@link #getInstance()}, this never creates the panel.
+     */
+    public static boolean isShown() {
+        return instance != null && instance.getParent() != null;
     }
 
     @Override
@@ -107,11 +125,15 @@ public class HistogramsPanel extends JPanel implements ActiveImageChangeListener
         updateFromCompIfShown(newIC.getComp());
     }
 
-    public void updateFromCompIfShown(Composition comp) {
+    public static void updateFromCompIfShown(Composition comp) {
         Objects.requireNonNull(comp);
         if (!isShown()) {
             return;
         }
+        instance.updateFrom(comp);
+    }
+
+    private void updateFrom(Composition comp) {
         BufferedImage image = comp.getCompositeImage();
 
         int[] reds = new int[HISTOGRAM_RESOLUTION];
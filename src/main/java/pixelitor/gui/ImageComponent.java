@@ -56,6 +56,7 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.HierarchyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
@@ -99,6 +100,10 @@ public class ImageComponent extends JComponent
 
     private Navigator navigator;
 
+    private final RepaintScheduler repaintScheduler = new RepaintScheduler(this);
+
+    private final DisplayCache displayCache = new DisplayCache();
+
     private static boolean showPixelGrid = false;
 
     public ImageComponent(Composition comp) {
@@ -192,6 +197,15 @@ public class ImageComponent extends JComponent
                 }
             }
         });
+
+        // the display cache isn't kept for hidden views, like the
+        // other tabs, or the windows of a minimized main window
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0
+                    && !isShowing()) {
+                displayCache.release();
+            }
+        });
     }
 
     public boolean isDirty() {
@@ -269,6 +283,14 @@ public class ImageComponent extends JComponent
             imageWindow.dispose();
         }
         comp.dispose();
+        displayCache.release();
+    }
+
+    /**
+     * Called when the view is not the active one anymore
+     */
+    void releaseDisplayCache() {
+        displayCache.release();
     }
 
     public void activateUI(boolean selectWindow) {
@@ -344,10 +366,13 @@ public class ImageComponent extends JComponent
         // make a copy of the transform object
         AffineTransform componentTransform = g2.getTransform();
 
+        boolean showMask = maskViewMode.showMask();
+        boolean fromCache = !showMask && paintFromDisplayCache(g2, canvasClip,
+                canvasCoWidth, canvasCoHeight);
+
         g2.translate(canvasStartX, canvasStartY);
 
-        boolean showMask = maskViewMode.showMask();
-        if (!showMask) {
+        if (!showMask && !fromCache) {
             checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
         }
 
@@ -359,8 +384,10 @@ public class ImageComponent extends JComponent
             assert mask != null : "no mask in " + maskViewMode;
             mask.paintLayerOnGraphics(g2, true);
         } else {
-            BufferedImage compositeImage = comp.getCompositeImage();
-            ImageUtils.drawImageWithClipping(g2, compositeImage);
+            if (!fromCache) {
+                BufferedImage compositeImage = comp.getCompositeImage();
+                ImageUtils.drawImageWithClipping(g2, compositeImage);
+            }
 
             if (maskViewMode.showRuby()) {
                 LayerMask mask = comp.getActiveLayer().getMask();
@@ -397,6 +424,20 @@ public class ImageComponent extends JComponent
         g2.setClip(originalClip);
     }
 
+    /**
+     * Paints the checkerboard and the composite from the display cache,
+     * if possible. Returns false if they still have to be painted.
+     */
+    private boolean paintFromDisplayCache(Graphics2D g2, Rectangle canvasClip,
+                                          int canvasCoWidth, int canvasCoHeight) {
+        Rectangle canvasBounds = new Rectangle((int) canvasStartX, (int) canvasStartY,
+                canvasCoWidth, canvasCoHeight);
+        Rectangle visiblePart = imageWindow != null ? getVisiblePart() : canvasBounds;
+
+        return displayCache.paint(g2, comp.getCompositeImage(), canvasClip,
+                visiblePart, canvasBounds, viewScale, canvasStartX, canvasStartY);
+    }
+
     public boolean showPixelGridIfEnabled() {
         // for some reason the pixel grid is very slow if there is
         // a selection visible, so don't show it
@@ -495,15 +536,49 @@ public class ImageComponent extends JComponent
         double repWidth = endX - startX;
         double repHeight = endY - startY;
 
-        repaint((int) startX, (int) startY,
-                (int) repWidth, (int) repHeight);
+        repaintScheduler.requestRepaint(new Rectangle(
+                (int) startX, (int) startY,
+                (int) repWidth, (int) repHeight));
     }
 
     /**
      * Repaints only a region of the image
      */
     public void updateRegion(PRectangle area) {
-        repaint(area.getCo());
+        repaintScheduler.requestRepaint(area.getCo());
+    }
+
+    /**
+     * Repaints the whole component, but at most
+     * once per display frame
+     */
+    @Override
+    public void scheduleRepaint() {
+        repaintScheduler.requestFullRepaint();
+    }
+
+    /**
+     * Repaints the given region (in component space),
+     * but at most once per display frame
+     */
+    public void scheduleRepaint(Rectangle coRegion) {
+        repaintScheduler.requestRepaint(coRegion);
+    }
+
+    /**
+     * Updates the navigator (if shown) at a lower rate
+     * than the repaints of the image
+     */
+    public void scheduleNavigatorUpdate() {
+        repaintScheduler.requestNavigatorUpdate();
+    }
+
+    /**
+     * Updates the histograms (if shown) at a lower rate
+     * than the repaints of the image
+     */
+    public void scheduleHistogramUpdate() {
+        repaintScheduler.requestHistogramUpdate();
     }
 
     public void ensurePositiveLocation() {
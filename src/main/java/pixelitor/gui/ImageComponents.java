@@ -202,6 +202,9 @@ public class ImageComponents {
             }
             ImageArea.activateIC(ic);
         }
+        if (activeIC != null && activeIC != ic) {
+            activeIC.releaseDisplayCache();
+        }
         activeIC = ic;
 //        System.out.println("ImageComponents::setActiveIC: new active ic is "
 //                + Ansi.yellow(activeIC == null ? "null" : activeIC.getName())
@@ -28,6 +28,7 @@ import pixelitor.tools.Tools;
 import pixelitor.tools.gui.ToolSettingsPanelContainer;
 import pixelitor.tools.gui.ToolsPanel;
 import pixelitor.utils.AppPreferences;
+import pixelitor.utils.StartupTimeline;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
@@ -43,7 +44,6 @@ import java.util.List;
  * The main application window.
  */
 public class PixelitorWindow extends JFrame {
-    private HistogramsPanel histogramsPanel;
     private Box verticalBoxEast;
     private Box verticalBoxWest;
     private ToolsPanel toolsPanel;
@@ -54,10 +54,13 @@ public class PixelitorWindow extends JFrame {
         setupWindowClosing();
 
         addMenus();
+        StartupTimeline.phaseFinished("menus");
         addImagesArea();
         addLayersAndHistograms();
+        StartupTimeline.phaseFinished("images, layers and histograms");
         addToolsPanel();
         Tools.setDefaultTool();
+        StartupTimeline.phaseFinished("tools");
         addStatusBar();
 
         setupFrameIcons();
@@ -65,9 +68,13 @@ public class PixelitorWindow extends JFrame {
         GlobalKeyboardWatch.init();
         GlobalKeyboardWatch.addBrushSizeActions();
         GlobalKeyboardWatch.registerKeysOnAlwaysVisibleComponent();
+        StartupTimeline.phaseFinished("status bar, icons, keys");
 
         AppPreferences.loadFramePosition(this);
         setVisible(true);
+        // the tips of the day dialog is not part of the timeline,
+        // because it's modal, and it waits for the user
+        StartupTimeline.finish("main window shown");
     }
 
     private void setupWindowClosing() {
@@ -97,11 +104,9 @@ public class PixelitorWindow extends JFrame {
 
     private void addLayersAndHistograms() {
         verticalBoxEast = Box.createVerticalBox();
-        histogramsPanel = HistogramsPanel.INSTANCE;
-        ImageComponents.addActiveImageChangeListener(histogramsPanel);
 
         if (AppPreferences.WorkSpace.getHistogramsVisibility()) {
-            verticalBoxEast.add(histogramsPanel);
+            verticalBoxEast.add(HistogramsPanel.getInstance());
         }
         if (AppPreferences.WorkSpace.getLayersVisibility()) {
             verticalBoxEast.add(LayersContainer.INSTANCE);
@@ -171,11 +176,11 @@ public class PixelitorWindow extends JFrame {
 
     public void setHistogramsVisibility(boolean v, boolean revalidate) {
         if (v) {
-            verticalBoxEast.add(histogramsPanel);
+            verticalBoxEast.add(HistogramsPanel.getInstance());
 
-            ImageComponents.onActiveComp(histogramsPanel::updateFromCompIfShown);
-        } else {
-            verticalBoxEast.remove(histogramsPanel);
+            ImageComponents.onActiveComp(HistogramsPanel::updateFromCompIfShown);
+        } else if (HistogramsPanel.isShown()) {
+            verticalBoxEast.remove(HistogramsPanel.getInstance());
         }
         if (revalidate) {
             verticalBoxEast.revalidate();
@@ -183,7 +188,7 @@ public class PixelitorWindow extends JFrame {
     }
 
     public boolean areHistogramsShown() {
-        return histogramsPanel.isShown();
+        return HistogramsPanel.isShown();
     }
 
     public void setLayersVisibility(boolean v, boolean revalidate) {
@@ -23,6 +23,8 @@ import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.GridBagHelper;
 import pixelitor.gui.utils.TextFieldValidator;
 import pixelitor.history.History;
+import pixelitor.io.PNGEncoder;
+import pixelitor.io.SaveSettings;
 import pixelitor.layers.LayerButtonLayout;
 
 import javax.swing.*;
@@ -36,6 +38,8 @@ import static java.lang.Integer.parseInt;
 public class PreferencesPanel extends JPanel {
     private final JTextField undoLevelsTF;
     private final JComboBox<IntChoiceParam.Value> thumbSizeCB;
+    private final JComboBox<IntChoiceParam.Value> repaintFPSCB;
+    private final JComboBox<IntChoiceParam.Value> pngCompressionCB;
 
     private PreferencesPanel() {
         setLayout(new GridBagLayout());
@@ -70,6 +74,44 @@ public class PreferencesPanel extends JPanel {
 
         gbh.addLabelWithControl("Layer/Mask Thumb Sizes: ", thumbSizeCB);
         thumbSizeCB.addActionListener(e -> updateThumbSize());
+
+        IntChoiceParam.Value[] fpsChoices = {
+                new IntChoiceParam.Value("30 FPS", 30),
+                new IntChoiceParam.Value("60 FPS", 60),
+                new IntChoiceParam.Value("120 FPS", 120),
+        };
+        repaintFPSCB = new JComboBox<>(fpsChoices);
+        repaintFPSCB.setName("repaintFPSCB");
+        int currentFPS = RepaintScheduler.getTargetFPS();
+        for (IntChoiceParam.Value choice : fpsChoices) {
+            if (choice.getValue() == currentFPS) {
+                repaintFPSCB.setSelectedItem(choice);
+            }
+        }
+
+        gbh.addLabelWithControl("Repaints While Painting: ", repaintFPSCB);
+        repaintFPSCB.addActionListener(e -> updateRepaintFPS());
+
+        int minLevel = PNGEncoder.MIN_COMPRESSION_LEVEL;
+        int maxLevel = PNGEncoder.MAX_COMPRESSION_LEVEL;
+        IntChoiceParam.Value[] compressionChoices = new IntChoiceParam.Value[maxLevel - minLevel + 1];
+        for (int level = minLevel; level <= maxLevel; level++) {
+            String name = String.valueOf(level);
+            if (level == minLevel) {
+                name += " (No Compression)";
+            } else if (level == maxLevel) {
+                name += " (Smallest Files)";
+            } else if (level == PNGEncoder.DEFAULT_COMPRESSION_LEVEL) {
+                name += " (Default)";
+            }
+            compressionChoices[level - minLevel] = new IntChoiceParam.Value(name, level);
+        }
+        pngCompressionCB = new JComboBox<>(compressionChoices);
+        pngCompressionCB.setName("pngCompressionCB");
+        pngCompressionCB.setSelectedIndex(SaveSettings.getDefaultCompressionLevel() - minLevel);
+
+        gbh.addLabelWithControl("PNG Compression Level: ", pngCompressionCB);
+        pngCompressionCB.addActionListener(e -> updatePNGCompression());
     }
 
     private boolean validate(JDialog d) {
@@ -103,6 +145,16 @@ public class PreferencesPanel extends JPanel {
         LayerButtonLayout.setThumbSize(newSize);
     }
 
+    private void updateRepaintFPS() {
+        int fps = ((IntChoiceParam.Value) repaintFPSCB.getSelectedItem()).getValue();
+        RepaintScheduler.setTargetFPS(fps);
+    }
+
+    private void updatePNGCompression() {
+        int level = ((IntChoiceParam.Value) pngCompressionCB.getSelectedItem()).getValue();
+        SaveSettings.setDefaultCompressionLevel(level);
+    }
+
     public static void showInDialog() {
         PreferencesPanel prefPanel = new PreferencesPanel();
 
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import pixelitor.utils.AppPreferences;
+
+import javax.swing.Timer;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+
+import static java.lang.String.format;
+
+/**
+ * Collects the repaint requests of the painting tools for an
+ * {@link ImageComponent}, and forwards them at most once per display
+ * frame. The dirty regions requested within a frame are merged into
+ * a single repaint. The navigator and the histograms are updated
+ * at a lower rate, because they depend on the whole image.
+ * <p>
+ * All methods must be called on the EDT.
+ */
+public class RepaintScheduler {
+    public static final int DEFAULT_TARGET_FPS = 60;
+
+    private static final long NAVIGATOR_INTERVAL_NANOS = 100_000_000L;
+    private static final long HISTOGRAM_INTERVAL_NANOS = 250_000_000L;
+
+    private static int targetFPS;
+
+    static {
+        int fps = AppPreferences.loadRepaintFPS();
+        targetFPS = fps > 0 ? fps : DEFAULT_TARGET_FPS;
+    }
+
+    // statistics for tuning, shared by all images
+    private static long requests;
+    private static long mergedRequests;
+    private static long frames;
+    private static long droppedFrames;
+
+    private final ImageComponent ic;
+    private final Timer timer;
+
+    // the dirty region in component space, or null
+    private Rectangle dirtyRegion;
+    private boolean fullRepaint;
+    private boolean navigatorDirty;
+    private boolean histogramDirty;
+
+    private long lastFrameNanos;
+    private long lastNavigatorNanos;
+    private long lastHistogramNanos;
+
+    // the time when the pending timer should fire
+    private long deadlineNanos;
+
+    public RepaintScheduler(ImageComponent ic) {
+        this.ic = ic;
+        timer = new Timer(0, e -> onTimer());
+        timer.setRepeats(false);
+
+        // System.nanoTime() can be any value, so don't start from zero
+        long longAgo = System.nanoTime() - HISTOGRAM_INTERVAL_NANOS;
+        lastFrameNanos = longAgo;
+        lastNavigatorNanos = longAgo;
+        lastHistogramNanos = longAgo;
+    }
+
+    /**
+     * Requests the repaint of the given region, in component space
+     */
+    public void requestRepaint(Rectangle coRegion) {
+        assert EventQueue.isDispatchThread() : "not EDT thread";
+
+        boolean pending = isRepaintPending();
+        if (!fullRepaint) {
+            if (dirtyRegion == null) {
+                dirtyRegion = new Rectangle(coRegion);
+            } else {
+                dirtyRegion.add(coRegion);
+            }
+        }
+        requestFrame(pending);
+    }
+
+    /**
+     * Requests the repaint of the whole component
+     */
+    public void requestFullRepaint() {
+        assert EventQueue.isDispatchThread() : "not EDT thread";
+
+        boolean pending = isRepaintPending();
+        fullRepaint = true;
+        dirtyRegion = null;
+        requestFrame(pending);
+    }
+
+    public void requestNavigatorUpdate() {
+        navigatorDirty = true;
+        scheduleIfNeeded(System.nanoTime());
+    }
+
+    public void requestHistogramUpdate() {
+        histogramDirty = true;
+        scheduleIfNeeded(System.nanoTime());
+    }
+
+    private boolean isRepaintPending() {
+        return fullRepaint || dirtyRegion != null;
+    }
+
+    private void requestFrame(boolean alreadyPending) {
+        requests++;
+        if (alreadyPending) {
+            // it will be repainted in the already scheduled frame
+            mergedRequests++;
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastFrameNanos >= getFrameIntervalNanos()) {
+            // a whole frame has passed since the last repaint,
+            // so there is no reason to wait
+            flush(now);
+        } else {
+            scheduleIfNeeded(now);
+        }
+    }
+
+    private void onTimer() {
+        long now = System.nanoTime();
+        long late = now - deadlineNanos;
+        long frameInterval = getFrameIntervalNanos();
+        if (late > frameInterval) {
+            // the EDT was busy, and the frames in between were lost
+            droppedFrames += late / frameInterval;
+        }
+        flush(now);
+    }
+
+    private void flush(long now) {
+        if (fullRepaint) {
+            ic.repaint();
+            frames++;
+            lastFrameNanos = now;
+        } else if (dirtyRegion != null) {
+            ic.repaint(dirtyRegion);
+            frames++;
+            lastFrameNanos = now;
+        }
+        fullRepaint = false;
+        dirtyRegion = null;
+
+        if (navigatorDirty && now - lastNavigatorNanos >= NAVIGATOR_INTERVAL_NANOS) {
+            navigatorDirty = false;
+            lastNavigatorNanos = now;
+            ic.updateNavigator(false);
+        }
+        if (histogramDirty && now - lastHistogramNanos >= HISTOGRAM_INTERVAL_NANOS) {
+            histogramDirty = false;
+            lastHistogramNanos = now;
+            HistogramsPanel.updateFromCompIfShown(ic.getComp());
+        }
+
+        scheduleIfNeeded(now);
+    }
+
+    /**
+     * Makes sure that the timer fires for the
+     * earliest pending update, if there is one
+     */
+    private void scheduleIfNeeded(long now) {
+        long next = Long.MAX_VALUE;
+        if (isRepaintPending()) {
+            next = lastFrameNanos + getFrameIntervalNanos();
+        }
+        if (navigatorDirty) {
+            next = Math.min(next, lastNavigatorNanos + NAVIGATOR_INTERVAL_NANOS);
+        }
+        if (histogramDirty) {
+            next = Math.min(next, lastHistogramNanos + HISTOGRAM_INTERVAL_NANOS);
+        }
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        next = Math.max(now, next);
+        if (timer.isRunning()) {
+            if (deadlineNanos <= next) {
+                return;
+            }
+            // an earlier update became necessary
+            timer.stop();
+        }
+        deadlineNanos = next;
+        int delayMillis = (int) ((deadlineNanos - now) / 1_000_000L);
+        timer.setInitialDelay(delayMillis);
+        timer.start();
+    }
+
+    private static long getFrameIntervalNanos() {
+        return 1_000_000_000L / targetFPS;
+    }
+
+    public static int getTargetFPS() {
+        return targetFPS;
+    }
+
+    public static void setTargetFPS(int fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("fps = " + fps);
+        }
+        targetFPS = fps;
+    }
+
+    public static long getMergedRequests() {
+        return mergedRequests;
+    }
+
+    public static long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public static String getStatistics() {
+        return format("Target FPS: %d%nRequests: %d%nMerged requests: %d%n" +
+                        "Frames: %d%nDropped frames: %d",
+                targetFPS, requests, mergedRequests, frames, droppedFrames);
+    }
+
+    public static void resetStatistics() {
+        requests = 0;
+        mergedRequests = 0;
+        frames = 0;
+        droppedFrames = 0;
+    }
+}
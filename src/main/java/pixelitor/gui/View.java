@@ -52,6 +52,14 @@ public interface View {
 
     void repaint();
 
+    /**
+     * Repaints the view, but the implementations might coalesce
+     * the frequent requests coming from mouse drags
+     */
+    default void scheduleRepaint() {
+        repaint();
+    }
+
     Cursor getCursor();
 
     void setCursor(Cursor cursor);
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import pixelitor.io.FileUtils;
+import pixelitor.io.OutputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The description of a batch job: the input files, the filters
+ * applied to each of them, and the output directory and format.
+ * <p>
+ * A job file has one "key = value" setting per line, and the lines
+ * starting with # are comments. The keys are "input" (a file or
+ * a directory), "output" (a directory), the optional "format"
+ * (an output file extension, by default the input extension is kept)
+ * and any number of "filter" lines in the format of
+ * {@link FilterStep#parse(String)}, which are applied in order.
+ * Relative paths are resolved against the directory of the job file.
+ */
+public class BatchJob {
+    private final File input;
+    private final File outputDir;
+    private final String outputFormat;
+    private final List<FilterStep> steps;
+
+    public BatchJob(File input, File outputDir, String outputFormat, List<FilterStep> steps) {
+        if (input == null) {
+            throw new IllegalArgumentException("No input given");
+        }
+        if (outputDir == null) {
+            throw new IllegalArgumentException("No output directory given");
+        }
+        if (outputFormat != null) {
+            // fails for unknown extensions
+            OutputFormat.fromExtension(outputFormat);
+        }
+        this.input = input;
+        this.outputDir = outputDir;
+        this.outputFormat = outputFormat;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    public static BatchJob read(File jobFile) throws IOException {
+        List<String> lines = Files.readAllLines(jobFile.toPath(), StandardCharsets.UTF_8);
+        File baseDir = jobFile.getAbsoluteFile().getParentFile();
+        return parse(lines, baseDir);
+    }
+
+    static BatchJob parse(List<String> lines, File baseDir) {
+        File input = null;
+        File outputDir = null;
+        String format = null;
+        List<FilterStep> steps = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int eqIndex = line.indexOf('=');
+            if (eqIndex == -1) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d: expected 'key = value', found '%s'", i + 1, line));
+            }
+            String key = line.substring(0, eqIndex).trim().toLowerCase();
+            String value = line.substring(eqIndex + 1).trim();
+            switch (key) {
+                case "input":
+                    input = resolve(baseDir, value);
+                    break;
+                case "output":
+                    outputDir = resolve(baseDir, value);
+                    break;
+                case "format":
+                    format = value;
+                    break;
+                case "filter":
+                    steps.add(FilterStep.parse(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Line %d: unknown key '%s'", i + 1, key));
+            }
+        }
+        return new BatchJob(input, outputDir, format, steps);
+    }
+
+    private static File resolve(File baseDir, String path) {
+        File file = new File(path);
+        if (file.isAbsolute() || baseDir == null) {
+            return file;
+        }
+        return new File(baseDir, path);
+    }
+
+    /**
+     * Returns the supported image files in the input directory,
+     * or the input file itself
+     */
+    public File[] listInputFiles() {
+        if (input.isDirectory()) {
+            return FileUtils.listSupportedInputFilesIn(input);
+        }
+        return new File[]{input};
+    }
+
+    public File getOutputFileFor(File inputFile) {
+        String name = inputFile.getName();
+        if (outputFormat != null) {
+            name = FileUtils.replaceExt(name, outputFormat);
+        }
+        return new File(outputDir, name);
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public List<FilterStep> getSteps() {
+        return steps;
+    }
+}
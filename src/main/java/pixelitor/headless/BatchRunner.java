@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import pixelitor.Composition;
+import pixelitor.ThreadPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The command-line entry point of the headless API. It processes
+ * the input files of a {@link BatchJob} in parallel, one file per core.
+ */
+public class BatchRunner {
+    private static final String USAGE = String.join("\n",
+            "Usage:",
+            "  BatchRunner <job file>",
+            "  BatchRunner -i <input file or dir> -o <output dir> [-f <format>]",
+            "              [-filter \"<filter name>; <param> = <value>; ...\"]...",
+            "  BatchRunner -list-filters");
+
+    private final BatchJob job;
+
+    public BatchRunner(BatchJob job) {
+        this.job = job;
+    }
+
+    public static void main(String[] args) {
+        Headless.init();
+
+        BatchJob job;
+        try {
+            if (args.length == 1 && "-list-filters".equals(args[0])) {
+                Headless.getFilterNames().forEach(System.out::println);
+                System.exit(0);
+                return;
+            }
+            job = parseArgs(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        int numFailed = new BatchRunner(job).run();
+        System.exit(numFailed == 0 ? 0 : 1);
+    }
+
+    static BatchJob parseArgs(String[] args) throws IOException {
+        if (args.length == 1 && !args[0].startsWith("-")) {
+            return BatchJob.read(new File(args[0]));
+        }
+
+        File input = null;
+        File output = null;
+        String format = null;
+        List<FilterStep> steps = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value after " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-i":
+                    input = new File(value);
+                    break;
+                case "-o":
+                    output = new File(value);
+                    break;
+                case "-f":
+                    format = value;
+                    break;
+                case "-filter":
+                    steps.add(FilterStep.parse(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        return new BatchJob(input, output, format, steps);
+    }
+
+    /**
+     * Processes all the input files, and returns the number of failures
+     */
+    public int run() {
+        File[] inputFiles = job.listInputFiles();
+        File outputDir = job.getOutputDir();
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            System.err.println("Could not create " + outputDir.getAbsolutePath());
+            return inputFiles.length;
+        }
+
+        long startTime = System.nanoTime();
+
+        // the filters run in the calling thread if it is a pool thread,
+        // so submitting a whole file per task keeps every core busy
+        List<Future<?>> futures = new ArrayList<>(inputFiles.length);
+        for (File file : inputFiles) {
+            futures.add(ThreadPool.submit(() -> process(file)));
+        }
+
+        int numFailed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return futures.size() - i;
+            } catch (ExecutionException e) {
+                numFailed++;
+                System.err.println("Failed: " + inputFiles[i].getName());
+                e.getCause().printStackTrace();
+            }
+        }
+
+        long totalTime = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.printf("Processed %d files (%d failed) in %d ms%n",
+                inputFiles.length, numFailed, totalTime);
+        return numFailed;
+    }
+
+    private void process(File file) {
+        try {
+            Composition comp = Headless.load(file);
+            for (FilterStep step : job.getSteps()) {
+                Headless.applyFilter(comp, step);
+            }
+            File outFile = job.getOutputFileFor(file);
+            Headless.save(comp, outFile);
+            System.out.println("Processed " + file.getName() + " -> " + outFile.getName());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import pixelitor.filters.Filter;
+import pixelitor.filters.FilterAction;
+import pixelitor.filters.FilterUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Finds the filters by name without building the menus.
+ * The filter classes are discovered by listing the filters
+ * package on the classpath, and a filter can be referred to
+ * either by its menu name (the NAME constant) or by its class name,
+ * ignoring the case, the spaces and the punctuation.
+ * Only the filters with a public no-argument constructor are found.
+ */
+class FilterFinder {
+    private static final String FILTERS_DIR = "pixelitor/filters/";
+
+    // these contain only GUI and helper classes
+    private static final String[] SKIPPED_DIRS = {
+            FILTERS_DIR + "gui/",
+            FILTERS_DIR + "animation/",
+    };
+
+    // the found filter classes by their normalized names
+    private static Map<String, Class<? extends Filter>> filterClasses;
+
+    // the menu names of the found filters, sorted
+    private static final Map<String, Class<? extends Filter>> displayNames = new TreeMap<>();
+
+    private static boolean actionsRegistered = false;
+
+    private FilterFinder() {
+    }
+
+    /**
+     * Creates a new instance of the filter with the given name
+     */
+    static Filter create(String name) {
+        Class<? extends Filter> filterClass = getFilterClasses().get(normalize(name));
+        if (filterClass == null) {
+            throw new IllegalArgumentException("Unknown filter: '" + name + "'");
+        }
+        return newInstance(filterClass);
+    }
+
+    private static Filter newInstance(Class<? extends Filter> filterClass) {
+        try {
+            return filterClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the filter "
+                    + filterClass.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Creates a {@link FilterAction} for each found filter, so that
+     * the filters can be listed through {@link FilterUtils}
+     * even if the menus are not built.
+     */
+    static synchronized void registerFilterActions() {
+        if (actionsRegistered) {
+            return;
+        }
+        getFilterClasses();
+        displayNames.forEach((name, filterClass) ->
+                new FilterAction(name, () -> newInstance(filterClass)));
+        actionsRegistered = true;
+    }
+
+    static synchronized List<String> getFilterNames() {
+        getFilterClasses();
+        return new ArrayList<>(displayNames.keySet());
+    }
+
+    private static synchronized Map<String, Class<? extends Filter>> getFilterClasses() {
+        if (filterClasses == null) {
+            filterClasses = findFilterClasses();
+        }
+        return filterClasses;
+    }
+
+    private static Map<String, Class<? extends Filter>> findFilterClasses() {
+        Map<String, Class<? extends Filter>> found = new HashMap<>();
+        ClassLoader loader = Filter.class.getClassLoader();
+        for (String className : listClassNames()) {
+            Class<? extends Filter> filterClass = loadFilterClass(className, loader);
+            if (filterClass == null) {
+                continue;
+            }
+            String menuName = getMenuName(filterClass);
+            String displayName = menuName != null ? menuName : filterClass.getSimpleName();
+            displayNames.putIfAbsent(displayName, filterClass);
+
+            found.putIfAbsent(normalize(filterClass.getSimpleName()), filterClass);
+            if (menuName != null) {
+                found.putIfAbsent(normalize(menuName), filterClass);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Loads the class without initializing it, and returns it
+     * only if it is a filter that can be instantiated.
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Filter> loadFilterClass(String className, ClassLoader loader) {
+        try {
+            Class<?> c = Class.forName(className, false, loader);
+            int modifiers = c.getModifiers();
+            if (!Filter.class.isAssignableFrom(c)
+                    || Modifier.isAbstract(modifiers)
+                    || !Modifier.isPublic(modifiers)) {
+                return null;
+            }
+            c.getConstructor(); // checks that there is a no-arg constructor
+            return (Class<? extends Filter>) c;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static String getMenuName(Class<? extends Filter> filterClass) {
+        try {
+            Object name = filterClass.getField("NAME").get(null);
+            if (name instanceof String) {
+                return (String) name;
+            }
+        } catch (ReflectiveOperationException e) {
+            // no NAME constant
+        }
+        return null;
+    }
+
+    private static List<String> listClassNames() {
+        CodeSource codeSource = Filter.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IllegalStateException("The location of the filter classes is unknown");
+        }
+        URL location = codeSource.getLocation();
+        List<String> classFiles = new ArrayList<>();
+        try {
+            File file = new File(location.toURI());
+            if (file.isDirectory()) {
+                listClassFilesInDir(file.toPath(), classFiles);
+            } else {
+                listClassFilesInJar(file, classFiles);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+
+        List<String> classNames = new ArrayList<>(classFiles.size());
+        for (String classFile : classFiles) {
+            if (isCandidate(classFile)) {
+                String path = classFile.substring(0, classFile.length() - ".class".length());
+                classNames.add(path.replace('/', '.'));
+            }
+        }
+        return classNames;
+    }
+
+    private static void listClassFilesInDir(Path root, List<String> classFiles) throws IOException {
+        Path filtersDir = root.resolve(Paths.get(FILTERS_DIR));
+        if (!Files.isDirectory(filtersDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(filtersDir)) {
+            paths.forEach(p -> classFiles.add(
+                    root.relativize(p).toString().replace(File.separatorChar, '/')));
+        }
+    }
+
+    private static void listClassFilesInJar(File file, List<String> classFiles) throws IOException {
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                classFiles.add(entries.nextElement().getName());
+            }
+        }
+    }
+
+    private static boolean isCandidate(String classFile) {
+        if (!classFile.startsWith(FILTERS_DIR)
+                || !classFile.endsWith(".class")
+                || classFile.contains("$")) {
+            return false;
+        }
+        for (String skipped : SKIPPED_DIRS) {
+            if (classFile.startsWith(skipped)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes "Gaussian Blur", "gaussian-blur" and "GaussianBlur" equivalent
+     */
+    static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import pixelitor.filters.Filter;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.AbstractMultipleChoiceParam;
+import pixelitor.filters.gui.AngleParam;
+import pixelitor.filters.gui.BooleanParam;
+import pixelitor.filters.gui.ColorParam;
+import pixelitor.filters.gui.FilterParam;
+import pixelitor.filters.gui.GroupedRangeParam;
+import pixelitor.filters.gui.ParamSet;
+import pixelitor.filters.gui.RangeParam;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A filter with parameter values, which can be applied to
+ * compositions with the headless API.
+ * <p>
+ * The parameters are given by their names as they appear in the
+ * filter dialog, and their values as strings: numbers for sliders
+ * (comma-separated for grouped sliders), degrees for angles,
+ * true/false for checkboxes, item names for combo boxes
+ * and #RRGGBB or #AARRGGBB for colors.
+ */
+public class FilterStep {
+    // setting some parameter types has global side effects
+    // (for example the color history), so it is serialized
+    private static final Object PARAMS_LOCK = new Object();
+
+    private final String filterName;
+    private final Map<String, String> params;
+
+    public FilterStep(String filterName, Map<String, String> params) {
+        this.filterName = filterName;
+        this.params = Collections.unmodifiableMap(new LinkedHashMap<>(params));
+    }
+
+    /**
+     * Parses a step in the "Filter Name; Param = value; Param = value" format
+     */
+    public static FilterStep parse(String spec) {
+        String[] parts = spec.split(";");
+        String filterName = parts[0].trim();
+        if (filterName.isEmpty()) {
+            throw new IllegalArgumentException("No filter name in '" + spec + "'");
+        }
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int eqIndex = part.indexOf('=');
+            if (eqIndex == -1) {
+                throw new IllegalArgumentException("Missing '=' in '" + part + "'");
+            }
+            params.put(part.substring(0, eqIndex).trim(),
+                    part.substring(eqIndex + 1).trim());
+        }
+        return new FilterStep(filterName, params);
+    }
+
+    /**
+     * Creates a new filter instance with the parameter values of this step.
+     * The bounds are used to adjust the size-dependent parameter ranges.
+     */
+    public Filter createFilter(Rectangle imageBounds) {
+        Filter filter = FilterFinder.create(filterName);
+        if (params.isEmpty()) {
+            return filter;
+        }
+        if (!(filter instanceof ParametrizedFilter)) {
+            throw new IllegalArgumentException("The filter '" + filterName
+                    + "' has no parameters");
+        }
+
+        ParamSet paramSet = ((ParametrizedFilter) filter).getParamSet();
+        synchronized (PARAMS_LOCK) {
+            paramSet.considerImageSize(imageBounds);
+            for (Map.Entry<String, String> entry : params.entrySet()) {
+                FilterParam param = findParam(paramSet, entry.getKey());
+                setValue(param, entry.getValue());
+            }
+        }
+        return filter;
+    }
+
+    private FilterParam findParam(ParamSet paramSet, String paramName) {
+        String key = FilterFinder.normalize(paramName);
+        for (FilterParam param : paramSet.getParams()) {
+            if (FilterFinder.normalize(param.getName()).equals(key)) {
+                return param;
+            }
+        }
+        throw new IllegalArgumentException("The filter '" + filterName
+                + "' has no parameter named '" + paramName + "'");
+    }
+
+    private static void setValue(FilterParam param, String value) {
+        try {
+            if (param instanceof RangeParam) {
+                setRangeValue((RangeParam) param, value);
+            } else if (param instanceof GroupedRangeParam) {
+                setGroupedRangeValue((GroupedRangeParam) param, value);
+            } else if (param instanceof AngleParam) {
+                ((AngleParam) param).setValueInDegrees(Double.parseDouble(value), false);
+            } else if (param instanceof BooleanParam) {
+                ((BooleanParam) param).setValue(parseBoolean(value), false, false);
+            } else if (param instanceof AbstractMultipleChoiceParam) {
+                setChoice((AbstractMultipleChoiceParam<?>) param, value);
+            } else if (param instanceof ColorParam) {
+                ((ColorParam) param).setColor(parseColor(value), false);
+            } else {
+                throw new IllegalArgumentException("The parameter '" + param.getName()
+                        + "' can't be set in headless mode");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value
+                    + "' for the parameter '" + param.getName() + "'", e);
+        }
+    }
+
+    private static void setRangeValue(RangeParam param, String value) {
+        double d = Double.parseDouble(value);
+        if (d < param.getMinimum() || d > param.getMaximum()) {
+            throw new IllegalArgumentException(String.format(
+                    "The value of '%s' must be between %d and %d, but it is %s",
+                    param.getName(), param.getMinimum(), param.getMaximum(), value));
+        }
+        param.setValue(d, false);
+    }
+
+    private static void setGroupedRangeValue(GroupedRangeParam param, String value) {
+        String[] values = value.split(",");
+        int numParams = param.getNumParams();
+        if (values.length == 1) {
+            for (int i = 0; i < numParams; i++) {
+                setRangeValue(param.getRangeParam(i), values[0].trim());
+            }
+        } else if (values.length == numParams) {
+            param.setLinked(false);
+            for (int i = 0; i < numParams; i++) {
+                setRangeValue(param.getRangeParam(i), values[i].trim());
+            }
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "'%s' needs 1 or %d comma-separated values",
+                    param.getName(), numParams));
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value) || "no".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new NumberFormatException(value);
+    }
+
+    private static void setChoice(AbstractMultipleChoiceParam<?> param, String value) {
+        String key = FilterFinder.normalize(value);
+        for (int i = 0; i < param.getSize(); i++) {
+            Object item = param.getElementAt(i);
+            if (FilterFinder.normalize(item.toString()).equals(key)) {
+                param.setSelectedItem(item);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("'" + value
+                + "' is not a choice of the parameter '" + param.getName() + "'");
+    }
+
+    private static Color parseColor(String value) {
+        String hex = value.startsWith("#") ? value.substring(1) : value;
+        if (hex.length() == 6) {
+            return new Color(Integer.parseInt(hex, 16));
+        } else if (hex.length() == 8) {
+            return new Color((int) Long.parseLong(hex, 16), true);
+        }
+        throw new NumberFormatException(value);
+    }
+
+    public String getFilterName() {
+        return filterName;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(filterName);
+        params.forEach((name, value) -> sb.append("; ").append(name).append(" = ").append(value));
+        return sb.toString();
+    }
+}
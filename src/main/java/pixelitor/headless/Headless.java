@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import pixelitor.Build;
+import pixelitor.Composition;
+import pixelitor.filters.Filter;
+import pixelitor.filters.FilterUtils;
+import pixelitor.io.FileUtils;
+import pixelitor.io.JpegOutput;
+import pixelitor.io.JpegSettings;
+import pixelitor.io.OpenRaster;
+import pixelitor.io.OutputFormat;
+import pixelitor.io.PNGEncoder;
+import pixelitor.io.PXCFormat;
+import pixelitor.io.TrackedIO;
+import pixelitor.layers.ImageLayer;
+import pixelitor.layers.Layer;
+import pixelitor.utils.HeadlessMessageHandler;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The headless API, which runs Pixelitor's image loading,
+ * filters, compositing and saving without a GUI,
+ * for example on render servers.
+ * <p>
+ * {@link #init()} must be called before any other Pixelitor
+ * class is used. Afterwards no windows or layer buttons are created,
+ * the messages are printed, and the errors are thrown as exceptions.
+ * The methods can be called from several threads at the same time,
+ * as long as each composition is used by only one thread.
+ * Filters that depend on the GUI state (for example on the
+ * foreground color or on the active image) don't work.
+ */
+public final class Headless {
+    // the pxc reading and writing uses static progress trackers
+    private static final Object PXC_LOCK = new Object();
+
+    private Headless() {
+        // should not be instantiated
+    }
+
+    public static void init() {
+        Build.setHeadlessMode();
+    }
+
+    /**
+     * Loads a pxc, ora or single-layered image file into a composition
+     */
+    public static Composition load(File file) throws IOException {
+        String ext = FileUtils.getExt(file.getName()).orElse("").toLowerCase();
+        Composition comp;
+        try {
+            if ("pxc".equals(ext)) {
+                synchronized (PXC_LOCK) {
+                    comp = PXCFormat.read(file);
+                }
+            } else if ("ora".equals(ext)) {
+                comp = OpenRaster.read(file);
+            } else {
+                BufferedImage img = TrackedIO.read(file);
+                comp = Composition.fromImage(img, file, null);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not read " + file.getName(), e);
+        }
+        throwShownException(file);
+        if (comp == null) {
+            throw new IOException("Could not decode " + file.getName());
+        }
+        return comp;
+    }
+
+    public static List<String> getFilterNames() {
+        return FilterFinder.getFilterNames();
+    }
+
+    /**
+     * Registers the found filters in {@link FilterUtils}, which
+     * normally happens when the menus are built.
+     */
+    public static void registerFilterActions() {
+        FilterFinder.registerFilterActions();
+    }
+
+    /**
+     * Applies the given filter step to the active layer of the composition
+     */
+    public static void applyFilter(Composition comp, FilterStep step) {
+        Filter filter = step.createFilter(comp.getCanvas().getImBounds());
+        applyFilter(comp, filter);
+    }
+
+    /**
+     * Applies the given filter to the active layer of the composition.
+     * The filter shouldn't be used by other threads at the same time.
+     */
+    public static void applyFilter(Composition comp, Filter filter) {
+        Layer layer = comp.getActiveLayer();
+        if (!(layer instanceof ImageLayer)) {
+            throw new IllegalStateException("The active layer of "
+                    + comp.getName() + " is not an image layer");
+        }
+        ImageLayer imageLayer = (ImageLayer) layer;
+        BufferedImage dest = filter.transformImage(imageLayer.getImage());
+        imageLayer.setImage(dest);
+        comp.setDirty(true);
+    }
+
+    /**
+     * Returns the image that results from compositing all the layers
+     */
+    public static BufferedImage flatten(Composition comp) {
+        return comp.calculateCompositeImage();
+    }
+
+    /**
+     * Saves the composition in the format determined by the file extension.
+     * The layers are kept in the pxc and ora formats, and they are
+     * flattened in all the other formats.
+     */
+    public static void save(Composition comp, File file) throws IOException {
+        OutputFormat format = OutputFormat.fromFile(file);
+        if (format == OutputFormat.PXC) {
+            synchronized (PXC_LOCK) {
+                PXCFormat.write(comp, file);
+            }
+            throwShownException(file);
+        } else if (format == OutputFormat.ORA) {
+            OpenRaster.write(comp, file, false, PNGEncoder.DEFAULT_COMPRESSION_LEVEL);
+        } else {
+            saveImage(flatten(comp), file);
+        }
+    }
+
+    /**
+     * Saves a single image in the format determined by the file extension
+     */
+    public static void saveImage(BufferedImage img, File file) throws IOException {
+        OutputFormat format = OutputFormat.fromFile(file);
+        if (format == OutputFormat.PXC || format == OutputFormat.ORA) {
+            throw new IllegalArgumentException("Only compositions can be saved as " + format);
+        }
+        if (!format.supportsAlpha()) {
+            img = ImageUtils.convertToRGB(img, false);
+        }
+
+        if (format == OutputFormat.JPG) {
+            JpegOutput.writeJPG(img, file, JpegSettings.DEFAULTS);
+        } else if (format == OutputFormat.PNG) {
+            TrackedIO.writePNG(img, file, PNGEncoder.DEFAULT_COMPRESSION_LEVEL);
+        } else {
+            TrackedIO.write(img, format.toString(), file);
+        }
+    }
+
+    private static void throwShownException(File file) throws IOException {
+        Throwable e = HeadlessMessageHandler.takeShownException();
+        if (e != null) {
+            throw new IOException("Error while processing " + file.getName(), e);
+        }
+    }
+}
@@ -48,6 +48,7 @@ public class FileChoosers {
     private static final FileFilter tiffFilter = new FileNameExtensionFilter("TIFF files", "tiff", "tif");
     private static final FileFilter pxcFilter = new FileNameExtensionFilter("PXC files", "pxc");
     public static final FileFilter oraFilter = new FileNameExtensionFilter("OpenRaster files", "ora");
+    public static final FileNameExtensionFilter cubeFilter = new FileNameExtensionFilter("Cube LUT files", "cube");
 
     private static final FileFilter[] OPEN_SAVE_FILTERS;
 
@@ -262,4 +263,40 @@ public class FileChoosers {
             setDefaultSaveExtensions();
         }
     }
+
+    /**
+     * Lets the user select a file in a non-image format (such as a LUT
+     * file), which is not handled by the image open and save choosers.
+     * When saving, the extension is added if it is missing.
+     * Returns null if the selection was cancelled.
+     */
+    public static File selectNonImageFile(FileNameExtensionFilter fileFilter, boolean save) {
+        assert EventQueue.isDispatchThread() : "not EDT thread";
+
+        File dir = save ? Dirs.getLastSave() : Dirs.getLastOpen();
+        JFileChooser chooser = new JFileChooser(dir);
+        chooser.setAcceptAllFileFilterUsed(false);
+        chooser.setFileFilter(fileFilter);
+
+        GlobalKeyboardWatch.setDialogActive(true);
+        PixelitorWindow owner = PixelitorWindow.getInstance();
+        int status = save ? chooser.showSaveDialog(owner) : chooser.showOpenDialog(owner);
+        GlobalKeyboardWatch.setDialogActive(false);
+
+        if (status != JFileChooser.APPROVE_OPTION) {
+            return null;
+        }
+        File selectedFile = chooser.getSelectedFile();
+        if (save) {
+            Dirs.setLastSave(selectedFile.getParentFile());
+            String ext = fileFilter.getExtensions()[0];
+            if (!FileUtils.getExt(selectedFile.getName()).isPresent()) {
+                selectedFile = new File(selectedFile.getParentFile(),
+                        selectedFile.getName() + '.' + ext);
+            }
+        } else {
+            Dirs.setLastOpen(selectedFile.getParentFile());
+        }
+        return selectedFile;
+    }
 }
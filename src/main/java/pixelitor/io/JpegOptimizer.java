@@ -0,0 +1,445 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.Messages;
+
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Calculates the JPEG previews, file sizes and target size
+ * qualities of the "Export Optimized JPEG..." dialog outside the EDT.
+ * <p>
+ * Only the latest request of each kind matters: a new request
+ * supersedes the queued or running ones, and the encoding of
+ * a superseded request is aborted at its next progress update.
+ */
+class JpegOptimizer {
+    // JPEG compresses 8x8 blocks, or 16x16 macroblocks with
+    // chroma subsampling, so a region that is aligned to this
+    // grid is compressed exactly like in the whole image
+    static final int MCU_SIZE = 16;
+
+    // the size of larger images is estimated from a sample mosaic
+    private static final int MAX_EXACT_PIXELS = 1024 * 1024;
+    private static final int SAMPLE_TILE_SIZE = 64;
+    private static final int SAMPLE_TILES_PER_SIDE = 8;
+
+    // how far from the estimated quality the exact sizes are checked
+    private static final int VERIFY_RANGE = 4;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "[JPEG optimizer]");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final BufferedImage image;
+    private final boolean exactSizes;
+    private BufferedImage sampleMosaic;
+
+    private final AtomicLong previewGeneration = new AtomicLong();
+    private final AtomicLong searchGeneration = new AtomicLong();
+
+    // true while the file size of the latest settings is not delivered,
+    // so that preview-only requests which supersede a size
+    // request (for example while scrolling) also calculate the size
+    private final AtomicBoolean sizePending = new AtomicBoolean();
+
+    JpegOptimizer(BufferedImage image) {
+        this.image = image;
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        exactSizes = (long) width * height <= MAX_EXACT_PIXELS
+                || width < SAMPLE_TILE_SIZE || height < SAMPLE_TILE_SIZE;
+    }
+
+    /**
+     * Returns true if the calculated sizes are the real file
+     * sizes and not estimates (true for smaller images).
+     */
+    boolean hasExactSizes() {
+        return exactSizes;
+    }
+
+    /**
+     * Asynchronously encodes the given area of the image, and optionally
+     * calculates the file size. The callback runs on the EDT, and it
+     * isn't called at all if the request is superseded in the meantime.
+     * If a superseded request had to calculate the size, then the
+     * new request calculates it even if calcSize is false.
+     */
+    void requestPreview(JpegSettings settings, Rectangle area,
+                        boolean calcSize, Consumer<Preview> callback) {
+        boolean withSize;
+        if (calcSize) {
+            sizePending.set(true);
+            withSize = true;
+        } else {
+            withSize = sizePending.get();
+        }
+        long generation = previewGeneration.incrementAndGet();
+        BooleanSupplier superseded = () -> previewGeneration.get() != generation;
+
+        CompletableFuture
+                .supplyAsync(() -> createPreview(settings, area, withSize, superseded), executor)
+                .thenAcceptAsync(preview -> {
+                    if (preview != null && !superseded.getAsBoolean()) {
+                        if (preview.getNumBytes() >= 0) {
+                            sizePending.set(false);
+                        }
+                        callback.accept(preview);
+                    }
+                }, EventQueue::invokeLater)
+                .exceptionally(Messages::showExceptionOnEDT);
+    }
+
+    /**
+     * Asynchronously searches the highest quality that fits into the
+     * given number of bytes. The callback gets the quality percentage
+     * (or 0 if even the lowest quality is too big) on the EDT.
+     */
+    void requestQualityFor(int targetBytes, boolean progressive, IntConsumer callback) {
+        long generation = searchGeneration.incrementAndGet();
+        BooleanSupplier superseded = () -> searchGeneration.get() != generation;
+
+        CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return findQuality(targetBytes, progressive, superseded);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor)
+                .thenAcceptAsync(quality -> {
+                    if (!superseded.getAsBoolean()) {
+                        callback.accept(quality);
+                    }
+                }, EventQueue::invokeLater)
+                .exceptionally(Messages::showExceptionOnEDT);
+    }
+
+    /**
+     * Makes sure that the callbacks of the current requests are not called
+     */
+    void cancelRequests() {
+        sizePending.set(false);
+        previewGeneration.incrementAndGet();
+        searchGeneration.incrementAndGet();
+    }
+
+    private Preview createPreview(JpegSettings settings, Rectangle area,
+                                  boolean calcSize, BooleanSupplier superseded) {
+        if (superseded.getAsBoolean()) {
+            return null;
+        }
+        try {
+            Rectangle region = alignToMCUs(area);
+            BufferedImage regionImage = null;
+            if (!region.isEmpty()) {
+                // the decoder's chroma upsampling depends on the neighboring
+                // macroblocks, so an extra border is encoded and then cropped
+                Rectangle encoded = alignToMCUs(new Rectangle(
+                        region.x - MCU_SIZE, region.y - MCU_SIZE,
+                        region.width + 2 * MCU_SIZE, region.height + 2 * MCU_SIZE));
+                byte[] bytes = encode(image, encoded, settings, superseded);
+                if (superseded.getAsBoolean()) {
+                    return null;
+                }
+                BufferedImage decoded = JpegOutput.readJPGfromBytes(bytes);
+                regionImage = decoded.getSubimage(
+                        region.x - encoded.x, region.y - encoded.y,
+                        region.width, region.height);
+            }
+
+            int numBytes = -1;
+            if (calcSize) {
+                numBytes = calcSize(settings, exactSizes, superseded);
+                if (superseded.getAsBoolean()) {
+                    return null;
+                }
+            }
+            return new Preview(regionImage, region, numBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Grows the given area to the MCU grid, and clips it to the image
+     */
+    Rectangle alignToMCUs(Rectangle area) {
+        int x1 = Math.max(0, area.x / MCU_SIZE * MCU_SIZE);
+        int y1 = Math.max(0, area.y / MCU_SIZE * MCU_SIZE);
+        int x2 = Math.min(image.getWidth(), roundUpToMCU(area.x + area.width));
+        int y2 = Math.min(image.getHeight(), roundUpToMCU(area.y + area.height));
+        if (x2 <= x1 || y2 <= y1) {
+            return new Rectangle();
+        }
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    private static int roundUpToMCU(int value) {
+        return (value + MCU_SIZE - 1) / MCU_SIZE * MCU_SIZE;
+    }
+
+    /**
+     * Returns the highest quality percentage (between 1 and 100)
+     * with a file size that is at most the given number of bytes,
+     * or 0 if even the lowest quality is too big.
+     */
+    int findQuality(int targetBytes, boolean progressive,
+                    BooleanSupplier superseded) throws IOException {
+        int quality = searchQuality(0, 101, targetBytes, progressive,
+                exactSizes, superseded);
+        if (exactSizes) {
+            return quality;
+        }
+
+        // the estimates can be a few percents off, therefore the
+        // whole image is encoded around the estimated quality
+        int hi = Math.min(101, quality + VERIFY_RANGE + 1);
+        int lo = Math.max(0, quality - VERIFY_RANGE - 1);
+        while (!superseded.getAsBoolean()) {
+            quality = searchQuality(lo, hi, targetBytes, progressive,
+                    true, superseded);
+            if (quality > lo || lo == 0) {
+                break;
+            }
+            // nothing fitted in the checked range, continue below it
+            hi = lo + 1;
+            lo = Math.max(0, lo - 2 * VERIFY_RANGE);
+        }
+        return quality;
+    }
+
+    /**
+     * A k-ary search for the highest fitting quality between lo and hi
+     * (both exclusive), which assumes that lo fits and hi doesn't.
+     * The k candidates of each round are encoded in parallel.
+     */
+    private int searchQuality(int lo, int hi, int targetBytes, boolean progressive,
+                              boolean exact, BooleanSupplier superseded) throws IOException {
+        if (!exact) {
+            // created here, before the parallel encodings
+            getSampleMosaic();
+        }
+        int maxCandidates = ThreadPool.getNumThreads();
+        while (hi - lo > 1 && !superseded.getAsBoolean()) {
+            int numCandidates = Math.min(maxCandidates, hi - lo - 1);
+            int[] qualities = new int[numCandidates];
+            List<Future<Integer>> sizes = new ArrayList<>(numCandidates);
+            for (int i = 0; i < numCandidates; i++) {
+                int quality = lo + (hi - lo) * (i + 1) / (numCandidates + 1);
+                qualities[i] = quality;
+                JpegSettings settings = new JpegSettings(quality / 100.0f, progressive);
+                sizes.add(ThreadPool.submit2(() -> calcSize(settings, exact, superseded)));
+            }
+
+            // the file size increases with the quality
+            for (int i = 0; i < numCandidates; i++) {
+                if (getSize(sizes.get(i)) <= targetBytes) {
+                    lo = qualities[i];
+                } else {
+                    hi = qualities[i];
+                    break;
+                }
+            }
+        }
+        return lo;
+    }
+
+    private static int getSize(Future<Integer> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Calculates the exact or estimated file size for the given settings
+     */
+    int calcSize(JpegSettings settings, boolean exact,
+                 BooleanSupplier superseded) throws IOException {
+        if (exact) {
+            return encode(image, null, settings, superseded).length;
+        }
+
+        // the size of the headers and tables is estimated
+        // from the encoding of a single macroblock
+        Rectangle firstMCU = new Rectangle(0, 0, MCU_SIZE, MCU_SIZE);
+        int headerSize = encode(image, firstMCU, settings, superseded).length;
+
+        BufferedImage mosaic = getSampleMosaic();
+        int mosaicSize = encode(mosaic, null, settings, superseded).length;
+        double scale = (double) image.getWidth() * image.getHeight()
+                / (mosaic.getWidth() * mosaic.getHeight());
+        double estimate = headerSize + (mosaicSize - headerSize) * scale;
+        return (int) Math.min(Integer.MAX_VALUE, estimate);
+    }
+
+    /**
+     * Returns an image with tiles copied from evenly
+     * spread, MCU-aligned locations of the image.
+     */
+    private synchronized BufferedImage getSampleMosaic() {
+        if (sampleMosaic != null) {
+            return sampleMosaic;
+        }
+
+        int numTiles = SAMPLE_TILES_PER_SIDE;
+        int tileSize = SAMPLE_TILE_SIZE;
+        int maxSX = image.getWidth() - tileSize;
+        int maxSY = image.getHeight() - tileSize;
+
+        sampleMosaic = new BufferedImage(numTiles * tileSize,
+                numTiles * tileSize, TYPE_INT_RGB);
+        Graphics2D g = sampleMosaic.createGraphics();
+        for (int ty = 0; ty < numTiles; ty++) {
+            int sy = (int) ((long) maxSY * ty / (numTiles - 1)) / MCU_SIZE * MCU_SIZE;
+            int dy = ty * tileSize;
+            for (int tx = 0; tx < numTiles; tx++) {
+                int sx = (int) ((long) maxSX * tx / (numTiles - 1)) / MCU_SIZE * MCU_SIZE;
+                int dx = tx * tileSize;
+                g.drawImage(image,
+                        dx, dy, dx + tileSize, dy + tileSize,
+                        sx, sy, sx + tileSize, sy + tileSize, null);
+            }
+        }
+        g.dispose();
+        return sampleMosaic;
+    }
+
+    private static byte[] encode(BufferedImage img, Rectangle region,
+                                 JpegSettings settings,
+                                 BooleanSupplier superseded) throws IOException {
+        return JpegOutput.writeJPGtoBytes(img, region, settings,
+                new AbortingListener(superseded));
+    }
+
+    /**
+     * The result of a preview request
+     */
+    static class Preview {
+        private final BufferedImage image;
+        private final Rectangle region;
+        private final int numBytes;
+
+        private Preview(BufferedImage image, Rectangle region, int numBytes) {
+            this.image = image;
+            this.region = region;
+            this.numBytes = numBytes;
+        }
+
+        /**
+         * The decoded image of the region, or null if the region is empty
+         */
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public Rectangle getRegion() {
+            return region;
+        }
+
+        /**
+         * The file size, or -1 if it wasn't requested
+         */
+        public int getNumBytes() {
+            return numBytes;
+        }
+    }
+
+    /**
+     * Aborts the writing if the request is superseded
+     */
+    private static class AbortingListener implements IIOWriteProgressListener {
+        private final BooleanSupplier superseded;
+
+        AbortingListener(BooleanSupplier superseded) {
+            this.superseded = superseded;
+        }
+
+        @Override
+        public void imageStarted(ImageWriter source, int imageIndex) {
+            checkAbort(source);
+        }
+
+        @Override
+        public void imageProgress(ImageWriter source, float percentageDone) {
+            checkAbort(source);
+        }
+
+        private void checkAbort(ImageWriter source) {
+            if (superseded.getAsBoolean()) {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void imageComplete(ImageWriter source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageWriter source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageWriter source) {
+        }
+
+        @Override
+        public void writeAborted(ImageWriter source) {
+        }
+    }
+}
@@ -17,18 +17,20 @@
 
 package pixelitor.io;
 
-import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
-import pixelitor.utils.SubtaskProgressTracker;
 import pixelitor.utils.TrackerWriteProgressListener;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -51,44 +53,38 @@ public final class JpegOutput {
         ImageOutputStream ios = ImageIO.createImageOutputStream(file);
         if (ios != null) {
             ProgressTracker tracker = new StatusBarProgressTracker("Writing " + file.getName(), 100);
-            writeJPGtoStream(image, ios, settings, tracker);
+            writeJPGtoStream(image, null, ios, settings,
+                    new TrackerWriteProgressListener(tracker));
         }
     }
 
-    public static ImageWithSize writeJPGtoPreviewImage(BufferedImage image, JpegSettings settings, ProgressTracker pt) {
+    /**
+     * Encodes the given region of the image (or the whole
+     * image if the region is null) into a byte array.
+     * The optional listener can abort the writing.
+     */
+    static byte[] writeJPGtoBytes(BufferedImage image, Rectangle region,
+                                  JpegSettings settings,
+                                  IIOWriteProgressListener listener) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(32768);
-        BufferedImage previewImage = null;
-        byte[] bytes = null;
-        try {
-            // writes the JPEG format with the given settings to memory...
-            // approximately 70% of the total time is spent here
-            ImageOutputStream ios = ImageIO.createImageOutputStream(bos);
-            ProgressTracker pt1 = new SubtaskProgressTracker(0.7, pt);
-            writeJPGtoStream(image, ios, settings, pt1);
-
-            // ...then reads it back into an image
-            // approximately 30% of the total time is spent here
-            bytes = bos.toByteArray();
-            ByteArrayInputStream in = new ByteArrayInputStream(bytes);
-            ProgressTracker pt2 = new SubtaskProgressTracker(0.3, pt);
-            try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
-                previewImage = TrackedIO.readFromIIS(iis, pt2);
-            }
+        // the memory cache is much faster than the default file cache
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(bos);
+        writeJPGtoStream(image, region, ios, settings, listener);
+        return bos.toByteArray();
+    }
 
-            pt.finish();
-        } catch (IOException e) {
-            Messages.showException(e);
+    static BufferedImage readJPGfromBytes(byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            return TrackedIO.readFromIIS(iis, ProgressTracker.NULL_TRACKER);
         }
-
-        int sizeInBytes = bytes.length;
-
-        return new ImageWithSize(previewImage, sizeInBytes);
     }
 
     private static void writeJPGtoStream(BufferedImage image,
+                                         Rectangle region,
                                          ImageInputStream ios,
                                          JpegSettings jpegSettings,
-                                         ProgressTracker tracker) throws IOException {
+                                         IIOWriteProgressListener listener) throws IOException {
         Iterator<ImageWriter> jpgWriters = ImageIO.getImageWritersByFormatName("jpg");
         if (!jpgWriters.hasNext()) {
             throw new IllegalStateException("No JPG writers found");
@@ -105,34 +101,23 @@ public final class JpegOutput {
 
         imageWriteParam.setCompressionMode(MODE_EXPLICIT);
         imageWriteParam.setCompressionQuality(jpegSettings.getQuality());
+        if (region != null) {
+            imageWriteParam.setSourceRegion(region);
+        }
 
         IIOImage iioImage = new IIOImage(image, null, null);
 
         writer.setOutput(ios);
-        if (tracker != null) {
-            writer.addIIOWriteProgressListener(new TrackerWriteProgressListener(tracker));
+        if (listener != null) {
+            writer.addIIOWriteProgressListener(listener);
+        }
+        try {
+            writer.write(null, iioImage, imageWriteParam);
+        } finally {
+            writer.dispose();
         }
-        writer.write(null, iioImage, imageWriteParam);
 
         ios.flush();
         ios.close();
     }
-
-    static class ImageWithSize {
-        final BufferedImage image;
-        final int size;
-
-        private ImageWithSize(BufferedImage image, int size) {
-            this.image = image;
-            this.size = size;
-        }
-
-        public BufferedImage getImage() {
-            return image;
-        }
-
-        public int getSize() {
-            return size;
-        }
-    }
 }
\ No newline at end of file
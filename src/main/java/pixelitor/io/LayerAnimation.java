@@ -17,16 +17,18 @@
 
 package pixelitor.io;
 
-import pd.AnimatedGifEncoder;
+import pd.ParallelGifEncoder;
 import pixelitor.Composition;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.layers.TextLayer;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.Messages;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -75,20 +77,28 @@ public class LayerAnimation {
         }
     }
 
-    private void export(File f) {
-        AnimatedGifEncoder e = new AnimatedGifEncoder();
-        e.start(f);
-        e.setDelay(delayMillis);
-        e.setRepeat(0);
-        images.forEach(e::addFrame);
-        boolean ok = e.finish();
-        // TODO handle ok status
+    private void export(File f) throws IOException {
+        ParallelGifEncoder encoder = new ParallelGifEncoder(f);
+        encoder.setDelay(delayMillis);
+        encoder.setRepeat(0);
+        // all the frames are known, so they can share a palette
+        encoder.setGlobalPalette(images);
+        for (BufferedImage image : images) {
+            encoder.addFrame(image);
+        }
+        encoder.finish();
     }
 
     public void saveToFile(File selectedFile) {
         assert selectedFile != null;
 
-        Runnable r = () -> export(selectedFile);
+        Runnable r = () -> {
+            try {
+                export(selectedFile);
+            } catch (IOException e) {
+                Messages.showException(e);
+            }
+        };
         GUIUtils.runWithBusyCursor(r);
     }
 }
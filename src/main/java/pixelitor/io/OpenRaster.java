@@ -24,30 +24,37 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import pixelitor.Composition;
+import pixelitor.ThreadPool;
 import pixelitor.layers.BlendingMode;
 import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
-import pixelitor.utils.SubtaskProgressTracker;
 import pixelitor.utils.Utils;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -66,70 +73,70 @@ public class OpenRaster {
     private OpenRaster() {
     }
 
-    public static void uncheckedWrite(Composition comp, File outFile, boolean addMergedImage) {
+    public static void uncheckedWrite(Composition comp, File outFile,
+                                      boolean addMergedImage, int compressionLevel) {
         try {
-            write(comp, outFile, addMergedImage);
+            write(comp, outFile, addMergedImage, compressionLevel);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    public static void write(Composition comp, File outFile, boolean addMergedImage) throws IOException {
-        ProgressTracker pt = new StatusBarProgressTracker("Writing " + outFile.getName(), 100);
-
-        FileOutputStream fos = new FileOutputStream(outFile);
-        ZipOutputStream zos = new ZipOutputStream(fos);
-
-        String stackXML = format("<?xml version='1.0' encoding='UTF-8'?>\n" +
-                "<image w=\"%d\" h=\"%d\">\n" +
-                "<stack>\n", comp.getCanvasImWidth(), comp.getCanvasImHeight());
-
-        int numLayers = comp.getNumLayers();
+    /**
+     * Writes the composition as an OpenRaster file, with the layer
+     * images compressed with the given PNG compression level
+     */
+    public static void write(Composition comp, File outFile,
+                             boolean addMergedImage, int compressionLevel) throws IOException {
         int numImageLayers = comp.getNumImageLayers();
         if (addMergedImage) {
             numImageLayers++;
         }
-        double workRatio = 1.0 / numImageLayers;
-
-        // Reverse iteration: in stack.xml the first element in a stack is the uppermost.
-        for (int i = numLayers - 1; i >= 0; i--) {
-            Layer layer = comp.getLayer(i);
-            if (layer instanceof ImageLayer) {
-                ImageLayer imageLayer = (ImageLayer) layer;
-                ProgressTracker spt = new SubtaskProgressTracker(workRatio, pt);
-                stackXML += writeLayer(imageLayer, i, zos, spt);
+        // one unit of work = one PNG entry written into the zip
+        ProgressTracker pt = new StatusBarProgressTracker("Writing " + outFile.getName(), numImageLayers);
+
+        StringBuilder stackXML = new StringBuilder(format("<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<image w=\"%d\" h=\"%d\">\n" +
+                "<stack>\n", comp.getCanvasImWidth(), comp.getCanvasImHeight()));
+
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outFile))) {
+            PNGEntryPipeline pipeline = new PNGEntryPipeline(zos, compressionLevel, pt);
+
+            // Reverse iteration: in stack.xml the first element in a stack is the uppermost.
+            int numLayers = comp.getNumLayers();
+            for (int i = numLayers - 1; i >= 0; i--) {
+                Layer layer = comp.getLayer(i);
+                if (layer instanceof ImageLayer) {
+                    ImageLayer imageLayer = (ImageLayer) layer;
+                    stackXML.append(createLayerXML(imageLayer, i));
+                    pipeline.add(format("data/%d.png", i), imageLayer.getImage());
+                }
             }
-        }
 
-        if (addMergedImage) {
-            zos.putNextEntry(new ZipEntry(MERGED_IMAGE_NAME));
-            ProgressTracker subTaskTracker = new SubtaskProgressTracker(workRatio, pt);
-            BufferedImage img = comp.getCompositeImage();
-            TrackedIO.writeToStream(img, zos, "PNG", subTaskTracker);
-            zos.closeEntry();
-        }
+            if (addMergedImage) {
+                pipeline.add(MERGED_IMAGE_NAME, comp.getCompositeImage());
+            }
 
-        stackXML += "</stack>\n</image>";
+            pipeline.finish();
 
-        // write the stack.xml file
-        zos.putNextEntry(new ZipEntry("stack.xml"));
-        zos.write(stackXML.getBytes(UTF_8));
-        zos.closeEntry();
+            stackXML.append("</stack>\n</image>");
 
-        // write the mimetype
-        zos.putNextEntry(new ZipEntry("mimetype"));
-        zos.write("image/openraster".getBytes(UTF_8));
-        zos.closeEntry();
-        zos.close();
+            // write the stack.xml file
+            zos.putNextEntry(new ZipEntry("stack.xml"));
+            zos.write(stackXML.toString().getBytes(UTF_8));
+            zos.closeEntry();
 
-        pt.finish();
+            // write the mimetype
+            zos.putNextEntry(new ZipEntry("mimetype"));
+            zos.write("image/openraster".getBytes(UTF_8));
+            zos.closeEntry();
+        } finally {
+            pt.finish();
+        }
     }
 
-    private static String writeLayer(ImageLayer layer,
-                                     int layerIndex,
-                                     ZipOutputStream zos,
-                                     ProgressTracker pt) throws IOException {
-        String stackXML = format(Locale.ENGLISH,
+    private static String createLayerXML(ImageLayer layer, int layerIndex) {
+        return format(Locale.ENGLISH,
                 "<layer name=\"%s\" visibility=\"%s\" composite-op=\"%s\" " +
                         "opacity=\"%f\" src=\"data/%d.png\" x=\"%d\" y=\"%d\"/>\n",
                 layer.getName(),
@@ -139,26 +146,92 @@ public class OpenRaster {
                 layerIndex,
                 layer.getTX(),
                 layer.getTY());
-        ZipEntry entry = new ZipEntry(format("data/%d.png", layerIndex));
-        zos.putNextEntry(entry);
-        BufferedImage image = layer.getImage();
+    }
+
+    /**
+     * Encodes images to PNG in parallel into memory buffers,
+     * and writes the buffers into the zip stream in the order
+     * in which the images were added. The estimated memory
+     * held by not yet written encodings is kept under a budget:
+     * if adding a new image would exceed it, the oldest pending
+     * entries are written first.
+     */
+    private static class PNGEntryPipeline {
+        private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 8;
+
+        private final ZipOutputStream zos;
+        private final int compressionLevel;
+        private final ProgressTracker pt;
+        private final Deque<PendingEntry> pending = new ArrayDeque<>();
+        private long pendingBytes = 0;
+
+        PNGEntryPipeline(ZipOutputStream zos, int compressionLevel, ProgressTracker pt) {
+            this.zos = zos;
+            this.compressionLevel = compressionLevel;
+            this.pt = pt;
+        }
+
+        void add(String entryName, BufferedImage image) throws IOException {
+            // the uncompressed size is a pessimistic estimate for the PNG size
+            long estimatedBytes = 4L * image.getWidth() * image.getHeight();
+            while (!pending.isEmpty() && pendingBytes + estimatedBytes > MEMORY_BUDGET) {
+                writeOldest();
+            }
+
+            Future<byte[]> future = ThreadPool.submit2(() -> encode(image, compressionLevel));
+            pending.addLast(new PendingEntry(entryName, future, estimatedBytes));
+            pendingBytes += estimatedBytes;
+        }
 
-        TrackedIO.writeToStream(image, zos, "PNG", pt);
+        void finish() throws IOException {
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        }
+
+        private void writeOldest() throws IOException {
+            PendingEntry entry = pending.removeFirst();
+            byte[] pngBytes = getResult(entry.future);
+            pendingBytes -= entry.estimatedBytes;
+
+            zos.putNextEntry(new ZipEntry(entry.name));
+            zos.write(pngBytes);
+            zos.closeEntry();
+
+            pt.unitDone();
+        }
+
+        private static byte[] encode(BufferedImage image, int compressionLevel) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            TrackedIO.writePNG(image, bos, compressionLevel, ProgressTracker.NULL_TRACKER);
+            return bos.toByteArray();
+        }
+    }
+
+    private static class PendingEntry {
+        private final String name;
+        private final Future<byte[]> future;
+        private final long estimatedBytes;
 
-        zos.closeEntry();
-        return stackXML;
+        PendingEntry(String name, Future<byte[]> future, long estimatedBytes) {
+            this.name = name;
+            this.future = future;
+            this.estimatedBytes = estimatedBytes;
+        }
     }
 
     public static Composition read(File file) throws IOException, ParserConfigurationException, SAXException {
         String stackXML = null;
-        ProgressTracker pt = new StatusBarProgressTracker("Reading " + file.getName(), 100);
+        ProgressTracker pt;
         Map<String, BufferedImage> images = new HashMap<>();
         try (ZipFile zipFile = new ZipFile(file)) {
             // first iterate to count the image files...
             int numImageFiles = countNumImageFiles(zipFile);
-            double workRatio = 1.0 / numImageFiles;
+            pt = new StatusBarProgressTracker("Reading " + file.getName(), numImageFiles);
 
-            // ...then iterate again to actually read the files
+            // ...then iterate again to start decoding the images
+            // concurrently (ZipFile supports parallel entry streams)
+            Map<String, Future<BufferedImage>> decodedImages = new LinkedHashMap<>();
             Enumeration<? extends ZipEntry> fileEntries = zipFile.entries();
             while (fileEntries.hasMoreElements()) {
                 ZipEntry entry = fileEntries.nextElement();
@@ -169,15 +242,19 @@ public class OpenRaster {
                 } else if (name.equalsIgnoreCase(MERGED_IMAGE_NAME)) {
                     // no need for that
                 } else if (hasPNGExtension(name)) {
-                    ProgressTracker spt = new SubtaskProgressTracker(workRatio, pt);
-                    InputStream stream = zipFile.getInputStream(entry);
-                    BufferedImage image = TrackedIO.readFromStream(stream, spt);
-                    images.put(name, image);
+                    decodedImages.put(name, ThreadPool.submit2(() -> decode(zipFile, entry)));
                 }
             }
+
+            // the zip file can be closed only after all the decoding finished
+            for (Map.Entry<String, Future<BufferedImage>> entry : decodedImages.entrySet()) {
+                images.put(entry.getKey(), getResult(entry.getValue()));
+                pt.unitDone();
+            }
         }
 
         if (stackXML == null) {
+            pt.finish();
             throw new IllegalStateException("No stack.xml found.");
         }
 
@@ -185,6 +262,7 @@ public class OpenRaster {
         doc.normalize();
         String documentElementNodeName = doc.getNodeName();
         if (!documentElementNodeName.equals("image")) {
+            pt.finish();
             throw new IllegalStateException(format(
                     "stack.xml root element is '%s', expected: 'image'",
                     documentElementNodeName));
@@ -211,7 +289,6 @@ public class OpenRaster {
             String layerY = element.getAttribute("y");
 
             BufferedImage image = images.get(layerImageSource);
-            image = ImageUtils.toSysCompatibleImage(image);
 
             if (layerVisibility == null || layerVisibility.isEmpty()) {
                 //workaround: paint.net exported files use "visible" attribute instead of "visibility"
@@ -240,6 +317,37 @@ public class OpenRaster {
         return comp;
     }
 
+    private static BufferedImage decode(ZipFile zipFile, ZipEntry entry) throws IOException {
+        BufferedImage image;
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+            image = TrackedIO.readFromStream(stream, ProgressTracker.NULL_TRACKER);
+        }
+        // the conversion is also done on the worker thread
+        return ImageUtils.toSysCompatibleImage(image);
+    }
+
+    /**
+     * Waits for the result of a parallel encoding or decoding task,
+     * and rethrows its IOException, if there was one.
+     */
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     private static int countNumImageFiles(ZipFile zipFile) {
         Enumeration<? extends ZipEntry> fileEntries = zipFile.entries();
         int numImageFiles = 0;
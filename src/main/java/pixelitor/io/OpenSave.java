@@ -188,6 +188,8 @@ public class OpenSave {
                     settings.setOutputFormat(saveSettings.getOutputFormat());
                 }
                 JpegOutput.writeJPG(image, selectedFile, settings);
+            } else if (format == OutputFormat.PNG) {
+                TrackedIO.writePNG(image, selectedFile, saveSettings.getCompressionLevel());
             } else {
                 TrackedIO.write(image, format.toString(), selectedFile);
             }
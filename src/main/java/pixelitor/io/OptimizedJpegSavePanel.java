@@ -19,45 +19,57 @@ package pixelitor.io;
 
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.gui.utils.DialogBuilder;
+import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.gui.utils.ImagePanel;
 import pixelitor.gui.utils.SliderSpinner;
-import pixelitor.io.JpegOutput.ImageWithSize;
+import pixelitor.io.JpegOptimizer.Preview;
 import pixelitor.tools.HandToolSupport;
 import pixelitor.utils.ImageUtils;
-import pixelitor.utils.JProgressBarTracker;
-import pixelitor.utils.Messages;
 import pixelitor.utils.ProgressPanel;
-import pixelitor.utils.ProgressTracker;
-import pixelitor.utils.StatusBarProgressTracker;
 import pixelitor.utils.Utils;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Graphics;
 import java.awt.GridLayout;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 import static javax.swing.BorderFactory.createTitledBorder;
 import static pixelitor.gui.utils.SliderSpinner.TextPosition.WEST;
 
 /**
- * The panel shown in the "Export Optimized JPEG..." dialog
+ * The panel shown in the "Export Optimized JPEG..." dialog.
+ * The encoding runs outside the EDT (see {@link JpegOptimizer}),
+ * and only the visible part of the optimized image is previewed.
  */
 public class OptimizedJpegSavePanel extends JPanel {
     private static final int GRID_HGAP = 10;
     private static final int GRID_VGAP = 10;
-    private final BufferedImage image;
-    private ImagePanel optimized;
+    private static final int DEFAULT_TARGET_KILOBYTES = 200;
+
+    private final JpegOptimizer optimizer;
+    private RegionPreviewPanel optimized;
+    private JScrollPane optimizedSP;
     private RangeParam qualityParam;
+    private SliderSpinner qualitySlider;
     private JLabel sizeLabel;
     private ImagePanel original;
     private JCheckBox progressiveCB;
+    private JCheckBox targetSizeCB;
+    private JSpinner targetSizeSpinner;
     private ProgressPanel progressPanel;
 
+    private boolean previewPending;
+    private boolean searchPending;
+    private boolean progressShown;
+    private boolean targetUnreachable;
+
     private OptimizedJpegSavePanel(BufferedImage image) {
-        this.image = image;
+        optimizer = new JpegOptimizer(image);
 
         JPanel controlsPanel = createControlsPanel();
         JPanel comparePanel = createComparePanel(image);
@@ -66,7 +78,9 @@ public class OptimizedJpegSavePanel extends JPanel {
         add(comparePanel, BorderLayout.CENTER);
         add(controlsPanel, BorderLayout.SOUTH);
 
-        updatePreview(true); // to set a first preview image
+        // calculates the first size, the preview will
+        // follow when the viewport gets its size
+        updatePreview(true);
     }
 
     private JPanel createComparePanel(BufferedImage image) {
@@ -74,10 +88,13 @@ public class OptimizedJpegSavePanel extends JPanel {
         comparePanel.setLayout(new GridLayout(1, 2, GRID_HGAP, GRID_VGAP));
         Dimension imageSize = new Dimension(image.getWidth(), image.getHeight());
 
-        original = createViewPanel(imageSize);
+        // no checkerboard, because here it is a black image
+        original = new ImagePanel(false);
+        original.setPreferredSize(imageSize);
         original.setImage(image);
 
-        optimized = createViewPanel(imageSize);
+        optimized = new RegionPreviewPanel();
+        optimized.setPreferredSize(imageSize);
 
         setupScrollPanes(comparePanel);
 
@@ -86,42 +103,48 @@ public class OptimizedJpegSavePanel extends JPanel {
 
     private void setupScrollPanes(JPanel comparePanel) {
         JScrollPane originalSP = createScrollPane(original, "Original");
-        JScrollPane optimizedSP = createScrollPane(optimized, "Optimized");
+        optimizedSP = createScrollPane(optimized, "Optimized");
 
         comparePanel.add(originalSP);
         comparePanel.add(optimizedSP);
 
         GUIUtils.setupSharedScrollModels(originalSP, optimizedSP);
+
+        // a different area has to be encoded after scrolling or resizing
+        optimizedSP.getViewport().addChangeListener(e -> updatePreview(false));
     }
 
-    private static JScrollPane createScrollPane(ImagePanel original, String borderTitle) {
-        JScrollPane sp = new JScrollPane(original);
+    private static JScrollPane createScrollPane(JComponent view, String borderTitle) {
+        JScrollPane sp = new JScrollPane(view);
         HandToolSupport.addBehavior(sp);
         sp.setBorder(createTitledBorder(borderTitle));
 
         return sp;
     }
 
-    private static ImagePanel createViewPanel(Dimension imageSize) {
-        // no checkerboard, because here it is a black image
-        ImagePanel view = new ImagePanel(false);
-
-        view.setPreferredSize(imageSize);
-
-        return view;
-    }
-
     private JPanel createControlsPanel() {
         JPanel p = new JPanel(new FlowLayout(FlowLayout.LEFT));
 
         p.add(new JLabel("Progressive:"));
         progressiveCB = new JCheckBox("", false);
-        progressiveCB.addActionListener(e -> updatePreview(false));
+        progressiveCB.addActionListener(e -> settingsChanged());
         p.add(progressiveCB);
 
         qualityParam = new RangeParam("  JPEG Quality", 1, 60, 100);
-        qualityParam.setAdjustmentListener(() -> updatePreview(false));
-        p.add(new SliderSpinner(qualityParam, WEST, false));
+        qualityParam.setAdjustmentListener(() -> updatePreview(true));
+        qualitySlider = new SliderSpinner(qualityParam, WEST, false);
+        p.add(qualitySlider);
+
+        p.add(new JLabel("  Target Size (KB):"));
+        targetSizeCB = new JCheckBox("", false);
+        targetSizeCB.addActionListener(e -> targetModeChanged());
+        p.add(targetSizeCB);
+
+        targetSizeSpinner = new JSpinner(new SpinnerNumberModel(
+                DEFAULT_TARGET_KILOBYTES, 1, Integer.MAX_VALUE / 1024, 10));
+        targetSizeSpinner.setEnabled(false);
+        targetSizeSpinner.addChangeListener(e -> settingsChanged());
+        p.add(targetSizeSpinner);
 
         sizeLabel = new JLabel();
         p.add(sizeLabel);
@@ -129,32 +152,80 @@ public class OptimizedJpegSavePanel extends JPanel {
         p.add(Box.createRigidArea(new Dimension(40, 10)));
 
         progressPanel = new ProgressPanel();
+        progressPanel.setIndeterminate(true);
         p.add(progressPanel);
 
         return p;
     }
 
-    private void updatePreview(boolean first) {
-        JpegSettings settings = getSelectedSettings();
+    private void targetModeChanged() {
+        boolean targetMode = targetSizeCB.isSelected();
+        // the quality is found by the optimizer in target size mode
+        qualitySlider.setEnabled(!targetMode);
+        targetSizeSpinner.setEnabled(targetMode);
+        settingsChanged();
+    }
 
-        ProgressTracker pt;
-        if (first) {
-            pt = new StatusBarProgressTracker("JPEG preview", 100);
+    private void settingsChanged() {
+        if (targetSizeCB.isSelected()) {
+            searchTargetQuality();
         } else {
-            pt = new JProgressBarTracker(progressPanel);
+            updatePreview(true);
         }
-        ImageWithSize imageWithSize = JpegOutput.writeJPGtoPreviewImage(
-                this.image, settings, pt);
+    }
 
-        BufferedImage newPreview = imageWithSize.getImage();
-        optimized.changeImage(newPreview);
+    private void searchTargetQuality() {
+        int targetBytes = (Integer) targetSizeSpinner.getValue() * 1024;
+        searchPending = true;
+        updateProgress();
+        optimizer.requestQualityFor(targetBytes, progressiveCB.isSelected(), quality -> {
+            searchPending = false;
+            targetUnreachable = quality == 0;
+            qualityParam.setValueNoTrigger(Math.max(1, quality));
+            updatePreview(true);
+        });
+    }
+
+    private void updatePreview(boolean calcSize) {
+        if (calcSize && !targetSizeCB.isSelected()) {
+            targetUnreachable = false;
+        }
+        // empty before the dialog is shown
+        Rectangle visibleArea = optimized.getVisibleRect();
 
-        int numBytes = imageWithSize.getSize();
-        sizeLabel.setText("  Size: " + Utils.bytesToString(numBytes));
+        previewPending = true;
+        updateProgress();
+        optimizer.requestPreview(getSelectedSettings(), visibleArea, calcSize, this::showPreview);
+    }
 
-        if (first) {
-            // clear the message
-            Messages.showInStatusBar("");
+    private void showPreview(Preview preview) {
+        previewPending = false;
+        updateProgress();
+
+        if (preview.getImage() != null) {
+            optimized.setPreview(preview.getImage(), preview.getRegion());
+        }
+
+        int numBytes = preview.getNumBytes();
+        if (numBytes >= 0) {
+            String approx = optimizer.hasExactSizes() ? "" : "~";
+            String text = "  Size: " + approx + Utils.bytesToString(numBytes);
+            if (targetUnreachable) {
+                text += " (the target size is too small)";
+            }
+            sizeLabel.setText(text);
+        }
+    }
+
+    private void updateProgress() {
+        boolean busy = previewPending || searchPending;
+        if (busy != progressShown) {
+            progressShown = busy;
+            if (busy) {
+                progressPanel.showProgressBar();
+            } else {
+                progressPanel.hideProgressBar();
+            }
         }
     }
 
@@ -173,10 +244,44 @@ public class OptimizedJpegSavePanel extends JPanel {
                 .title("Save Optimized JPEG")
                 .okText("Save")
                 .okAction(() -> {
+                    p.optimizer.cancelRequests();
                     JpegSettings settings = p.getSelectedSettings();
                     OpenSave.saveJpegWithQuality(settings);
                 })
+                .cancelAction(p.optimizer::cancelRequests)
                 .show();
     }
-}
 
+    /**
+     * Shows the last decoded region of the optimized image
+     * at its location within the image.
+     */
+    private static class RegionPreviewPanel extends JPanel {
+        private static final long serialVersionUID = -2916342675519317048L;
+
+        private transient BufferedImage regionImage;
+        private Rectangle region;
+
+        void setPreview(BufferedImage regionImage, Rectangle region) {
+            this.regionImage = regionImage;
+            this.region = region;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+
+            if (regionImage == null) {
+                return;
+            }
+
+            try {
+                g.drawImage(regionImage, region.x, region.y, null);
+            } catch (OutOfMemoryError e) {
+                Dialogs.showOutOfMemoryDialog(e);
+            }
+        }
+    }
+}
@@ -39,7 +39,8 @@ public enum OutputFormat {
     }, ORA(true, true) {
         @Override
         public Runnable getSaveTask(Composition comp, SaveSettings settings) {
-            return () -> OpenRaster.uncheckedWrite(comp, settings.getFile(), false);
+            return () -> OpenRaster.uncheckedWrite(comp, settings.getFile(),
+                    false, settings.getCompressionLevel());
         }
     };
 
@@ -66,6 +67,10 @@ public enum OutputFormat {
         OpenSave.saveImageToFile(img, settings);
     }
 
+    public boolean supportsAlpha() {
+        return supportsAlpha;
+    }
+
     @Override
     public String toString() {
         return super.toString().toLowerCase();
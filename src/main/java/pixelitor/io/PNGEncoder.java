@@ -0,0 +1,610 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * A PNG encoder that compresses the image in parallel.
+ * <p>
+ * The image is split into horizontal bands, and each band is
+ * filtered and deflated independently on the {@link ThreadPool}.
+ * Every band except the last one ends with a sync flush, so that the raw
+ * deflate streams can be simply concatenated (like pigz does it), and
+ * every band is primed with the last 32 KB of the previous band's
+ * data as a dictionary, so the compression ratio is practically the
+ * same as with a single stream. The rows are read directly from the
+ * image's data buffer, one row at a time.
+ * <p>
+ * Images that are not INT_ARGB, INT_ARGB_PRE, INT_RGB or BYTE_GRAY
+ * are written with the default ImageIO writer.
+ */
+public class PNGEncoder {
+    public static final int MIN_COMPRESSION_LEVEL = Deflater.NO_COMPRESSION;
+    public static final int MAX_COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+    public static final int DEFAULT_COMPRESSION_LEVEL = 4;
+
+    private static final byte[] SIGNATURE = {
+            (byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+    private static final int NUM_FILTERS = 5;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int MIN_BAND_BYTES = 128 * 1024;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    private final int width;
+    private final int height;
+    private final int compressionLevel;
+
+    private final int colorType;
+    private final int bytesPerPixel;
+    private final int rowBytes; // without the filter type byte
+    private final boolean premultiplied;
+
+    // the pixel data, only one of these is not null
+    private final int[] intData;
+    private final byte[] byteData;
+    private final int dataOffset;
+    private final int scanlineStride;
+
+    private PNGEncoder(BufferedImage img, int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        width = img.getWidth();
+        height = img.getHeight();
+
+        int type = img.getType();
+        premultiplied = type == TYPE_INT_ARGB_PRE;
+        if (type == TYPE_INT_RGB) {
+            colorType = COLOR_TYPE_RGB;
+            bytesPerPixel = 3;
+        } else if (type == TYPE_BYTE_GRAY) {
+            colorType = COLOR_TYPE_GRAY;
+            bytesPerPixel = 1;
+        } else {
+            colorType = COLOR_TYPE_RGBA;
+            bytesPerPixel = 4;
+        }
+        rowBytes = width * bytesPerPixel;
+
+        WritableRaster raster = img.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        int translateX = raster.getSampleModelTranslateX();
+        int translateY = raster.getSampleModelTranslateY();
+        if (type == TYPE_BYTE_GRAY) {
+            DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+            scanlineStride = ((PixelInterleavedSampleModel) sm).getScanlineStride();
+            byteData = db.getData();
+            intData = null;
+            dataOffset = db.getOffset() - translateY * scanlineStride - translateX;
+        } else {
+            DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+            scanlineStride = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+            intData = db.getData();
+            byteData = null;
+            dataOffset = db.getOffset() - translateY * scanlineStride - translateX;
+        }
+    }
+
+    /**
+     * Returns true if the given image can be written
+     * without falling back to ImageIO
+     */
+    public static boolean canEncode(BufferedImage img) {
+        int type = img.getType();
+        if (type == TYPE_INT_ARGB || type == TYPE_INT_ARGB_PRE || type == TYPE_INT_RGB) {
+            return img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+        }
+        if (type == TYPE_BYTE_GRAY) {
+            return img.getRaster().getSampleModel() instanceof PixelInterleavedSampleModel;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the given image in PNG format with the given
+     * deflate compression level (0 = fastest, 9 = smallest).
+     * The stream is not closed.
+     */
+    public static void write(BufferedImage img,
+                             OutputStream os,
+                             int compressionLevel,
+                             ProgressTracker pt) throws IOException {
+        if (compressionLevel < MIN_COMPRESSION_LEVEL || compressionLevel > MAX_COMPRESSION_LEVEL) {
+            throw new IllegalArgumentException("compressionLevel = " + compressionLevel);
+        }
+        if (!canEncode(img)) {
+            TrackedIO.writeWithImageIO(img, os, "PNG", pt);
+            return;
+        }
+        new PNGEncoder(img, compressionLevel).encode(os, pt);
+    }
+
+    private void encode(OutputStream os, ProgressTracker pt) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.write(SIGNATURE);
+        writeHeader(out);
+
+        int bandHeight = calcBandHeight();
+        int numBands = (height + bandHeight - 1) / bandHeight;
+
+        // the bands are written in order as soon as they are ready,
+        // so only the compressed data is kept in memory
+        List<Future<Band>> futures = new ArrayList<>(numBands);
+        boolean parallel = numBands > 1 && !ThreadPool.isWorkerThread();
+        for (int i = 0; i < numBands; i++) {
+            int startY = i * bandHeight;
+            int endY = Math.min(height, startY + bandHeight);
+            boolean last = i == numBands - 1;
+            if (parallel) {
+                futures.add(ThreadPool.submit2(() -> compressBand(startY, endY, last)));
+            }
+        }
+
+        long adler = 1;
+        int percentDone = 0;
+        for (int i = 0; i < numBands; i++) {
+            Band band;
+            if (parallel) {
+                band = getBand(futures.get(i));
+            } else {
+                int startY = i * bandHeight;
+                band = compressBand(startY, Math.min(height, startY + bandHeight), i == numBands - 1);
+            }
+            adler = combineAdler32(adler, band.adler, band.uncompressedLength);
+
+            boolean first = i == 0;
+            boolean last = i == numBands - 1;
+            writeImageData(out, band.data, first, last, adler);
+
+            int newPercentDone = (int) ((i + 1) * 100L / numBands);
+            pt.unitsDone(newPercentDone - percentDone);
+            percentDone = newPercentDone;
+        }
+
+        writeChunk(out, "IEND", new byte[0], 0, 0);
+        out.flush();
+    }
+
+    private int calcBandHeight() {
+        // a few bands per thread for load balancing,
+        // but each band should contain a meaningful amount of data
+        int targetNumBands = ThreadPool.getNumThreads() * 4;
+        int bandHeight = (height + targetNumBands - 1) / targetNumBands;
+        int minBandHeight = MIN_BAND_BYTES / (rowBytes + 1) + 1;
+        return Math.max(1, Math.min(height, Math.max(bandHeight, minBandHeight)));
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8); // bit depth
+        header.writeByte(colorType);
+        header.writeByte(0); // compression method
+        header.writeByte(0); // filter method
+        header.writeByte(0); // no interlace
+        byte[] data = bos.toByteArray();
+        writeChunk(out, "IHDR", data, 0, data.length);
+    }
+
+    /**
+     * Writes the compressed data of a band as IDAT chunks. The zlib header
+     * is written before the first band, the checksum after the last one.
+     */
+    private void writeImageData(DataOutputStream out, byte[] data,
+                                boolean first, boolean last,
+                                long adler) throws IOException {
+        if (first) {
+            byte[] zlibHeader = createZlibHeader();
+            writeChunk(out, "IDAT", zlibHeader, 0, zlibHeader.length);
+        }
+        for (int offset = 0; offset < data.length; offset += MAX_CHUNK_SIZE) {
+            int length = Math.min(MAX_CHUNK_SIZE, data.length - offset);
+            writeChunk(out, "IDAT", data, offset, length);
+        }
+        if (last) {
+            byte[] checksum = {
+                    (byte) (adler >>> 24), (byte) (adler >>> 16),
+                    (byte) (adler >>> 8), (byte) adler};
+            writeChunk(out, "IDAT", checksum, 0, checksum.length);
+        }
+    }
+
+    private byte[] createZlibHeader() {
+        int cmf = 0x78; // deflate with 32K window
+        int levelFlag;
+        if (compressionLevel <= 1) {
+            levelFlag = 0;
+        } else if (compressionLevel <= 5) {
+            levelFlag = 1;
+        } else if (compressionLevel == 6) {
+            levelFlag = 2;
+        } else {
+            levelFlag = 3;
+        }
+        int flg = levelFlag << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        return new byte[]{(byte) cmf, (byte) flg};
+    }
+
+    private static void writeChunk(DataOutputStream out, String type,
+                                   byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Filters and deflates the rows between startY (inclusive) and
+     * endY (exclusive) into a raw deflate stream.
+     */
+    private Band compressBand(int startY, int endY, boolean last) {
+        Deflater deflater = new Deflater(compressionLevel, true);
+        try {
+            RowFilter filter = new RowFilter();
+            if (startY > 0) {
+                // the dictionary is recalculated from the previous rows,
+                // because they are filtered deterministically
+                filter.prepareRow(startY - 1);
+                byte[] dictionary = createDictionary(startY);
+                deflater.setDictionary(dictionary);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (endY - startY) * rowBytes / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            Adler32 adler = new Adler32();
+            long uncompressedLength = 0;
+
+            for (int y = startY; y < endY; y++) {
+                byte[] filtered = filter.filterNextRow(y);
+                adler.update(filtered, 0, filtered.length);
+                uncompressedLength += filtered.length;
+
+                deflater.setInput(filtered);
+                while (!deflater.needsInput()) {
+                    int n = deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH);
+                    out.write(buffer, 0, n);
+                }
+            }
+
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+            } else {
+                // a sync flush ends the band on a byte boundary
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+
+            return new Band(out.toByteArray(), adler.getValue(), uncompressedLength);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the last (at most) 32 KB of the filtered data before the given row
+     */
+    private byte[] createDictionary(int beforeY) {
+        int filteredRowBytes = rowBytes + 1;
+        int numRows = Math.min(beforeY, (DICTIONARY_SIZE + filteredRowBytes - 1) / filteredRowBytes);
+        int firstY = beforeY - numRows;
+
+        RowFilter filter = new RowFilter();
+        if (firstY > 0) {
+            filter.prepareRow(firstY - 1);
+        }
+        byte[] data = new byte[numRows * filteredRowBytes];
+        for (int y = firstY; y < beforeY; y++) {
+            byte[] filtered = filter.filterNextRow(y);
+            System.arraycopy(filtered, 0, data, (y - firstY) * filteredRowBytes, filteredRowBytes);
+        }
+
+        if (data.length <= DICTIONARY_SIZE) {
+            return data;
+        }
+        byte[] dictionary = new byte[DICTIONARY_SIZE];
+        System.arraycopy(data, data.length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+        return dictionary;
+    }
+
+    /**
+     * Converts the image rows into PNG byte order and chooses
+     * the filter type adaptively, using the "minimum sum of
+     * absolute differences" heuristic recommended by the PNG spec.
+     */
+    private class RowFilter {
+        private byte[] prevRow = new byte[rowBytes]; // zeros before the first row
+        private byte[] currentRow = new byte[rowBytes];
+        private final byte[][] candidates = new byte[NUM_FILTERS][rowBytes + 1];
+
+        RowFilter() {
+            for (int i = 0; i < NUM_FILTERS; i++) {
+                candidates[i][0] = (byte) i;
+            }
+        }
+
+        /**
+         * Makes the given row the previous row for the next filtering
+         */
+        void prepareRow(int y) {
+            readRow(y, prevRow);
+        }
+
+        /**
+         * Returns the filtered version of the given row, starting with the
+         * filter type byte. The returned array is reused by the next call.
+         */
+        byte[] filterNextRow(int y) {
+            readRow(y, currentRow);
+
+            byte[] result;
+            if (compressionLevel == Deflater.NO_COMPRESSION) {
+                // no point in filtering if the data is not compressed
+                result = filter(FILTER_NONE);
+            } else {
+                result = candidates[0];
+                long minSum = Long.MAX_VALUE;
+                for (int filterType = 0; filterType < NUM_FILTERS; filterType++) {
+                    byte[] filtered = filter(filterType);
+                    long sum = sumOfAbsValues(filtered, minSum);
+                    if (sum < minSum) {
+                        minSum = sum;
+                        result = filtered;
+                    }
+                }
+            }
+
+            byte[] tmp = prevRow;
+            prevRow = currentRow;
+            currentRow = tmp;
+            return result;
+        }
+
+        private byte[] filter(int filterType) {
+            byte[] out = candidates[filterType];
+            byte[] cur = currentRow;
+            byte[] prev = prevRow;
+            int bpp = bytesPerPixel;
+            int n = rowBytes;
+            switch (filterType) {
+                case FILTER_NONE:
+                    System.arraycopy(cur, 0, out, 1, n);
+                    break;
+                case FILTER_SUB:
+                    for (int i = 0; i < bpp; i++) {
+                        out[i + 1] = cur[i];
+                    }
+                    for (int i = bpp; i < n; i++) {
+                        out[i + 1] = (byte) (cur[i] - cur[i - bpp]);
+                    }
+                    break;
+                case FILTER_UP:
+                    for (int i = 0; i < n; i++) {
+                        out[i + 1] = (byte) (cur[i] - prev[i]);
+                    }
+                    break;
+                case FILTER_AVERAGE:
+                    for (int i = 0; i < bpp; i++) {
+                        out[i + 1] = (byte) (cur[i] - ((prev[i] & 0xFF) >>> 1));
+                    }
+                    for (int i = bpp; i < n; i++) {
+                        int avg = ((cur[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1;
+                        out[i + 1] = (byte) (cur[i] - avg);
+                    }
+                    break;
+                case FILTER_PAETH:
+                    for (int i = 0; i < bpp; i++) {
+                        out[i + 1] = (byte) (cur[i] - prev[i]);
+                    }
+                    for (int i = bpp; i < n; i++) {
+                        int a = cur[i - bpp] & 0xFF;
+                        int b = prev[i] & 0xFF;
+                        int c = prev[i - bpp] & 0xFF;
+                        out[i + 1] = (byte) (cur[i] - paethPredictor(a, b, c));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("filterType = " + filterType);
+            }
+            return out;
+        }
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+
+    /**
+     * The filter bytes interpreted as signed values, as suggested by
+     * the PNG spec. Stops early if the sum exceeds the current minimum.
+     */
+    private static long sumOfAbsValues(byte[] filtered, long limit) {
+        long sum = 0;
+        for (int i = 1; i < filtered.length; i++) {
+            sum += Math.abs(filtered[i]);
+            if (sum >= limit) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Copies one image row into the PNG byte order (R, G, B, A)
+     * directly from the data buffer.
+     */
+    private void readRow(int y, byte[] row) {
+        int rowStart = dataOffset + y * scanlineStride;
+        if (byteData != null) {
+            System.arraycopy(byteData, rowStart, row, 0, width);
+            return;
+        }
+
+        int[] data = intData;
+        if (colorType == COLOR_TYPE_RGB) {
+            for (int x = 0, i = 0; x < width; x++) {
+                int rgb = data[rowStart + x];
+                row[i++] = (byte) (rgb >>> 16);
+                row[i++] = (byte) (rgb >>> 8);
+                row[i++] = (byte) rgb;
+            }
+        } else if (premultiplied) {
+            for (int x = 0, i = 0; x < width; x++) {
+                int argb = data[rowStart + x];
+                int a = argb >>> 24;
+                if (a == 255) {
+                    row[i++] = (byte) (argb >>> 16);
+                    row[i++] = (byte) (argb >>> 8);
+                    row[i++] = (byte) argb;
+                } else if (a == 0) {
+                    row[i++] = 0;
+                    row[i++] = 0;
+                    row[i++] = 0;
+                } else {
+                    int halfA = a >> 1;
+                    row[i++] = (byte) Math.min(255, (((argb >>> 16) & 0xFF) * 255 + halfA) / a);
+                    row[i++] = (byte) Math.min(255, (((argb >>> 8) & 0xFF) * 255 + halfA) / a);
+                    row[i++] = (byte) Math.min(255, ((argb & 0xFF) * 255 + halfA) / a);
+                }
+                row[i++] = (byte) a;
+            }
+        } else {
+            for (int x = 0, i = 0; x < width; x++) {
+                int argb = data[rowStart + x];
+                row[i++] = (byte) (argb >>> 16);
+                row[i++] = (byte) (argb >>> 8);
+                row[i++] = (byte) argb;
+                row[i++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    /**
+     * Calculates the Adler-32 checksum of two concatenated
+     * data blocks from their individual checksums,
+     * like adler32_combine in zlib.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static Band getBand(Future<Band> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * The compressed data of a band
+     */
+    private static class Band {
+        private final byte[] data;
+        private final long adler;
+        private final long uncompressedLength;
+
+        Band(byte[] data, long adler, long uncompressedLength) {
+            this.data = data;
+            this.adler = adler;
+            this.uncompressedLength = uncompressedLength;
+        }
+    }
+}
@@ -17,12 +17,21 @@
 
 package pixelitor.io;
 
+import pixelitor.utils.AppPreferences;
+
 import java.io.File;
 
 public class SaveSettings {
     private File file; // the output file
     private OutputFormat outputFormat;
 
+    // the compression level set in the preferences, used for
+    // all PNG files, including the layers of OpenRaster files
+    private static int defaultCompressionLevel = AppPreferences.loadPNGCompressionLevel();
+
+    // the deflate level used for PNG files, 0 (fastest) to 9 (smallest)
+    private int compressionLevel = defaultCompressionLevel;
+
     public SaveSettings() {
     }
 
@@ -46,4 +55,33 @@ public class SaveSettings {
     public OutputFormat getOutputFormat() {
         return outputFormat;
     }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        checkCompressionLevel(compressionLevel);
+        this.compressionLevel = compressionLevel;
+    }
+
+    public static int getDefaultCompressionLevel() {
+        return defaultCompressionLevel;
+    }
+
+    public static void setDefaultCompressionLevel(int compressionLevel) {
+        checkCompressionLevel(compressionLevel);
+        defaultCompressionLevel = compressionLevel;
+    }
+
+    public static boolean isValidCompressionLevel(int compressionLevel) {
+        return compressionLevel >= PNGEncoder.MIN_COMPRESSION_LEVEL
+                && compressionLevel <= PNGEncoder.MAX_COMPRESSION_LEVEL;
+    }
+
+    private static void checkCompressionLevel(int compressionLevel) {
+        if (!isValidCompressionLevel(compressionLevel)) {
+            throw new IllegalArgumentException("compressionLevel = " + compressionLevel);
+        }
+    }
 }
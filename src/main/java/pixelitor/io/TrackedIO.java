@@ -32,7 +32,9 @@ import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -52,21 +54,69 @@ public class TrackedIO {
     public static void write(BufferedImage img,
                              String formatName,
                              File file) throws IOException {
+        if (isPNG(formatName)) {
+            writePNG(img, file, SaveSettings.getDefaultCompressionLevel());
+            return;
+        }
         ProgressTracker pt = new StatusBarProgressTracker("Writing " + file.getName(), 100);
         try (ImageOutputStream ios = ImageIO.createImageOutputStream(file)) {
             writeToIOS(img, ios, formatName, pt);
         }
     }
 
+    /**
+     * Writes a PNG file with the given compression level using {@link PNGEncoder}
+     */
+    public static void writePNG(BufferedImage img,
+                                File file,
+                                int compressionLevel) throws IOException {
+        ProgressTracker pt = new StatusBarProgressTracker("Writing " + file.getName(), 100);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            writePNG(img, os, compressionLevel, pt);
+        } finally {
+            pt.finish();
+        }
+    }
+
+    /**
+     * Writes a PNG image into the given stream with the given
+     * compression level using {@link PNGEncoder}
+     */
+    public static void writePNG(BufferedImage img,
+                                OutputStream os,
+                                int compressionLevel,
+                                ProgressTracker pt) throws IOException {
+        PNGEncoder.write(img, os, compressionLevel, pt);
+    }
+
     public static void writeToStream(BufferedImage img,
                                      OutputStream os,
                                      String formatName,
                                      ProgressTracker pt) throws IOException {
+        if (isPNG(formatName)) {
+            writePNG(img, os, SaveSettings.getDefaultCompressionLevel(), pt);
+            return;
+        }
+        writeWithImageIO(img, os, formatName, pt);
+    }
+
+    /**
+     * Writes the image with the ImageIO writer even if
+     * there is a built-in encoder for the format.
+     */
+    static void writeWithImageIO(BufferedImage img,
+                                 OutputStream os,
+                                 String formatName,
+                                 ProgressTracker pt) throws IOException {
         try (ImageOutputStream ios = ImageIO.createImageOutputStream(os)) {
             writeToIOS(img, ios, formatName, pt);
         }
     }
 
+    private static boolean isPNG(String formatName) {
+        return formatName.equalsIgnoreCase("PNG");
+    }
+
     private static void writeToIOS(BufferedImage img,
                                    ImageOutputStream ios,
                                    String formatName,
@@ -55,6 +55,8 @@ public interface Drawable {
 
     TmpDrawingLayer createTmpDrawingLayer(Composite c);
 
+    TmpDrawingLayer getTmpDrawingLayer();
+
     void mergeTmpDrawingLayerDown();
 
     BufferedImage getCanvasSizedSubImage();
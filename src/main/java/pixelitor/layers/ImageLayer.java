@@ -30,6 +30,8 @@ import pixelitor.history.ImageEdit;
 import pixelitor.history.PixelitorEdit;
 import pixelitor.io.PXCFormat;
 import pixelitor.selection.Selection;
+import pixelitor.selection.SelectionMask;
+import pixelitor.selection.SoftSelectionShape;
 import pixelitor.tools.Tools;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
@@ -285,6 +287,12 @@ public class ImageLayer extends ContentLayer implements Drawable {
         Shape selectionShape = comp.getSelectionShape();
         if (selectionShape == null) {
             return newImg;
+        } else if (selectionShape instanceof SoftSelectionShape) {
+            // the partially selected pixels are mixed with the old ones
+            SelectionMask mask = ((SoftSelectionShape) selectionShape).getMask();
+            Rectangle bounds = selectionShape.getBounds();
+            mask.blend(src, getTX(), getTY(), newImg, bounds.x, bounds.y);
+            return src;
         } else {
             // the argument image pixels will replace the old ones only where selected
             Graphics2D g = src.createGraphics();
@@ -660,6 +668,11 @@ public class ImageLayer extends ContentLayer implements Drawable {
         return tmpDrawingLayer;
     }
 
+    @Override
+    public TmpDrawingLayer getTmpDrawingLayer() {
+        return tmpDrawingLayer;
+    }
+
     @Override
     public void mergeTmpDrawingLayerDown() {
         if (tmpDrawingLayer == null) {
@@ -1023,7 +1036,10 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
     @Override
     public void updateIconImage() {
-        getUI().updateLayerIconImage(this);
+        LayerButton button = getUI();
+        if (button != null) { // null in headless mode
+            button.updateLayerIconImage(this);
+        }
     }
 
     /**
@@ -17,6 +17,7 @@
 
 package pixelitor.layers;
 
+import pixelitor.Build;
 import pixelitor.Canvas;
 import pixelitor.Composition;
 import pixelitor.Layers;
@@ -76,6 +77,7 @@ public abstract class Layer implements Serializable {
     protected boolean isAdjustment = false;
 
     // transient variables from here
+    // the ui is null for layers created in headless mode
     private transient LayerButton ui;
     private transient List<LayerChangeListener> layerChangeListeners;
 
@@ -99,7 +101,7 @@ public abstract class Layer implements Serializable {
 
         if (parent != null) { // this is a layer mask
             ui = parent.getUI();
-        } else { // normal layer
+        } else if (!Build.isHeadless()) { // normal layer
             ui = new LayerButton(this);
         }
         layerChangeListeners = new ArrayList<>();
@@ -117,7 +119,7 @@ public abstract class Layer implements Serializable {
 
         // Creates a layer button only for real layers, because
         // layer masks use the button of the real layer.
-        if (parent == null) { // not mask
+        if (parent == null && !Build.isHeadless()) { // not mask
             ui = new LayerButton(this);
 
             if (mask != null) {
@@ -137,7 +139,9 @@ public abstract class Layer implements Serializable {
 
         this.visible = newVisibility;
         comp.imageChanged();
-        ui.setOpenEye(newVisibility);
+        if (ui != null) {
+            ui.setOpenEye(newVisibility);
+        }
 
         if (addToHistory) {
             History.addEdit(
@@ -170,10 +174,7 @@ public abstract class Layer implements Serializable {
     private void updateAfterBMorOpacityChange() {
         comp.imageChanged();
 
-        HistogramsPanel hp = HistogramsPanel.INSTANCE;
-        if (hp.isShown()) {
-            hp.updateFromCompIfShown(comp);
-        }
+        HistogramsPanel.updateFromCompIfShown(comp);
     }
 
     public void setOpacity(float newOpacity, boolean updateGUI,
@@ -224,7 +225,9 @@ public abstract class Layer implements Serializable {
             return;
         }
 
-        ui.setLayerName(newName);
+        if (ui != null) {
+            ui.setLayerName(newName);
+        }
 
         if (addToHistory) {
             History.addEdit(new LayerRenameEdit(this, previousName, name));
@@ -291,7 +294,9 @@ public abstract class Layer implements Serializable {
 
         // needs to be added first, because the inherited layer
         // mask constructor already will try to update the image
-        ui.addMaskIconLabel();
+        if (ui != null) {
+            ui.addMaskIconLabel();
+        }
 
         comp.imageChanged();
 
@@ -330,7 +335,9 @@ public abstract class Layer implements Serializable {
 
         this.mask = mask;
         comp.imageChanged();
-        ui.addMaskIconLabel();
+        if (ui != null) {
+            ui.addMaskIconLabel();
+        }
         Layers.maskAddedTo(this);
         mask.updateIconImage();
     }
@@ -349,7 +356,9 @@ public abstract class Layer implements Serializable {
         }
 
         Layers.maskDeletedFrom(this);
-        ui.deleteMaskIconLabel();
+        if (ui != null) {
+            ui.deleteMaskIconLabel();
+        }
 
         MaskViewMode.NORMAL.activate(ic, this, "mask deleted");
     }
@@ -463,7 +472,9 @@ public abstract class Layer implements Serializable {
     public void setMaskEditing(boolean b) {
         assert b ? hasMask() : true;
         this.maskEditing = b;
-        ui.configureBorders(b); // sets the border around the icon
+        if (ui != null) {
+            ui.configureBorders(b); // sets the border around the icon
+        }
     }
 
     public boolean isMaskEditing() {
@@ -572,7 +583,9 @@ public abstract class Layer implements Serializable {
     }
 
     public void activateUI() {
-        ui.setSelected(true);
+        if (ui != null) {
+            ui.setSelected(true);
+        }
     }
 
     public void addLayerChangeListener(LayerChangeListener listener) {
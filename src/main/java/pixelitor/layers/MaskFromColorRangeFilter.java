@@ -18,7 +18,6 @@
 package pixelitor.layers;
 
 import com.jhlabs.image.PointFilter;
-import net.jafama.FastMath;
 
 import java.awt.Color;
 
@@ -36,6 +35,8 @@ class MaskFromColorRangeFilter extends PointFilter {
 
     private double maxTolerance;
     private double minTolerance;
+    private double maxToleranceSq;
+    private double minToleranceSq;
 
     private int refR, refG, refB; // the reference color in RGB
     private float refHue, refSat, refBri; // the reference color in HSB
@@ -69,6 +70,9 @@ class MaskFromColorRangeFilter extends PointFilter {
 
         this.maxTolerance = adjustedTolerance * (1.0 - fuzziness);
         this.minTolerance = adjustedTolerance * (1.0 + fuzziness);
+
+        maxToleranceSq = maxTolerance < 0 ? -1 : maxTolerance * maxTolerance;
+        minToleranceSq = minTolerance * minTolerance;
     }
 
     public void setInvert(boolean invert) {
@@ -77,47 +81,33 @@ class MaskFromColorRangeFilter extends PointFilter {
 
     @Override
     public int filterRGB(int x, int y, int rgb) {
-        double dist;
-
         int r = (rgb >> 16) & 0xFF;
         int g = (rgb >> 8) & 0xFF;
         int b = rgb & 0xFF;
 
+        // the squared distances are compared with the squared
+        // tolerances, so the square root is needed only
+        // for the pixels in the soft transition zone
+        double distSq;
         if (interpolation == RGB) {
             int deltaR = r - refR;
             int deltaG = g - refG;
             int deltaB = b - refB;
 
-            dist = FastMath.sqrtQuick(deltaR * deltaR + deltaG * deltaG + deltaB * deltaB);
+            distSq = deltaR * deltaR + deltaG * deltaG + deltaB * deltaB;
         } else if (interpolation == HSB) {
-            float[] hsb = Color.RGBtoHSB(r, g, b, null);
-
-            float deltaHue = hsb[0] - refHue;
-            float deltaSat = hsb[1] - refSat;
-            float deltaBri = hsb[2] - refBri;
-
-            // hue is an angle
-            if (deltaHue > 0.5f) {
-                deltaHue = 1.0f - deltaHue;
-            } else if (deltaHue < -0.5f) {
-                deltaHue = 1.0f + deltaHue;
-            }
-
-//            int v = Math.abs((int) (deltaHue * 255 * 2));
-//            return 0xFF_00_00_00 | (v << 16) | (v << 8) | v;
-
-            dist = 150 * FastMath.sqrtQuick(deltaHue * deltaHue + deltaSat * deltaSat + deltaBri * deltaBri);
+            distSq = 150 * 150 * hsbDistanceSq(r, g, b);
         } else {
             throw new IllegalStateException("interpolation = " + interpolation);
         }
 
-        if (dist > minTolerance) {
+        if (distSq > minToleranceSq) {
             if (invert) {
                 return WHITE_PIXEL;
             } else {
                 return BLACK_PIXEL;
             }
-        } else if (dist < maxTolerance) {
+        } else if (distSq < maxToleranceSq) {
             if (invert) {
                 return BLACK_PIXEL;
             } else {
@@ -125,6 +115,7 @@ class MaskFromColorRangeFilter extends PointFilter {
             }
         } else {
             // linear interpolation
+            double dist = Math.sqrt(distSq);
             int v = (int) ((minTolerance - dist) * 255 / (minTolerance - maxTolerance));
             if (invert) {
                 v = 255 - v;
@@ -132,4 +123,49 @@ class MaskFromColorRangeFilter extends PointFilter {
             return 0xFF_00_00_00 | (v << 16) | (v << 8) | v;
         }
     }
+
+    /**
+     * The same calculation as {@link Color#RGBtoHSB(int, int, int, float[])},
+     * but without allocating an array for each pixel
+     */
+    private double hsbDistanceSq(int r, int g, int b) {
+        int cmax = Math.max(Math.max(r, g), b);
+        int cmin = Math.min(Math.min(r, g), b);
+
+        float bri = cmax * (1.0f / 255.0f);
+        float sat = cmax != 0 ? (float) (cmax - cmin) / cmax : 0;
+        float hue;
+        if (sat == 0) {
+            hue = 0;
+        } else {
+            float invRange = 1.0f / (cmax - cmin);
+            float redc = (cmax - r) * invRange;
+            float greenc = (cmax - g) * invRange;
+            float bluec = (cmax - b) * invRange;
+            if (r == cmax) {
+                hue = bluec - greenc;
+            } else if (g == cmax) {
+                hue = 2.0f + redc - bluec;
+            } else {
+                hue = 4.0f + greenc - redc;
+            }
+            hue = hue / 6.0f;
+            if (hue < 0) {
+                hue = hue + 1.0f;
+            }
+        }
+
+        float deltaHue = hue - refHue;
+        float deltaSat = sat - refSat;
+        float deltaBri = bri - refBri;
+
+        // hue is an angle
+        if (deltaHue > 0.5f) {
+            deltaHue = 1.0f - deltaHue;
+        } else if (deltaHue < -0.5f) {
+            deltaHue = 1.0f + deltaHue;
+        }
+
+        return deltaHue * deltaHue + deltaSat * deltaSat + deltaBri * deltaBri;
+    }
 }
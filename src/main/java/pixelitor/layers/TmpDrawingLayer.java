@@ -44,6 +44,10 @@ public class TmpDrawingLayer {
         return g;
     }
 
+    public BufferedImage getImage() {
+        return image;
+    }
+
     public int getWidth() {
         return image.getWidth();
     }
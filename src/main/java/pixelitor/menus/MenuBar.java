@@ -40,6 +40,7 @@ import pixelitor.filters.gui.ResizePanel;
 import pixelitor.filters.jhlabsproxies.*;
 import pixelitor.filters.levels.Levels;
 import pixelitor.filters.lookup.ColorBalance;
+import pixelitor.filters.lookup.ColorLookup;
 import pixelitor.filters.lookup.Luminosity;
 import pixelitor.filters.painters.TextFilter;
 import pixelitor.gui.GlobalKeyboardWatch;
@@ -50,6 +51,7 @@ import pixelitor.gui.ImageComponents;
 import pixelitor.gui.Navigator;
 import pixelitor.gui.PixelitorWindow;
 import pixelitor.gui.PreferencesPanel;
+import pixelitor.gui.RepaintScheduler;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.guides.Guides;
@@ -91,9 +93,11 @@ import pixelitor.menus.view.ZoomMenu;
 import pixelitor.selection.SelectionActions;
 import pixelitor.tools.brushes.CopyBrush;
 import pixelitor.utils.AppPreferences;
+import pixelitor.utils.BufferPool;
 import pixelitor.utils.FilterCreator;
 import pixelitor.utils.Messages;
 import pixelitor.utils.OpenInBrowserAction;
+import pixelitor.utils.StartupTimeline;
 import pixelitor.utils.Tests3x3;
 import pixelitor.utils.debug.AppNode;
 import pixelitor.utils.test.Events;
@@ -102,6 +106,7 @@ import pixelitor.utils.test.SplashImageCreator;
 
 import javax.swing.*;
 import java.awt.BorderLayout;
+import java.awt.Font;
 import java.awt.image.BufferedImage;
 import java.lang.management.ManagementFactory;
 
@@ -581,6 +586,10 @@ public class MenuBar extends JMenuBar {
                 .enableIf(ACTION_ENABLED)
                 .add();
 
+        selectMenu.buildAction(SelectionActions.getFeather())
+                .enableIf(ACTION_ENABLED)
+                .add();
+
         return selectMenu;
     }
 
@@ -664,6 +673,8 @@ public class MenuBar extends JMenuBar {
                 .add();
         colorsMenu.buildFilter(ChannelMixer.NAME, ChannelMixer::new)
                 .add();
+        colorsMenu.buildFilter(ColorLookup.NAME, ColorLookup::new)
+                .add();
 
         colorsMenu.add(createExtractChannelsSubmenu());
         colorsMenu.add(createReduceColorsSubmenu());
@@ -673,7 +684,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createExtractChannelsSubmenu() {
-        PMenu sub = new PMenu("Extract Channels");
+        PMenu sub = PMenu.createLazy("Extract Channels");
 
         sub.addFilter("Extract Channel", ExtractChannel::new);
 
@@ -697,7 +708,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createReduceColorsSubmenu() {
-        PMenu sub = new PMenu("Reduce Colors");
+        PMenu sub = PMenu.createLazy("Reduce Colors");
 
         sub.addFilter(JHQuantize.NAME, JHQuantize::new);
         sub.addFilter(Posterize.NAME, Posterize::new);
@@ -757,7 +768,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createBlurSharpenSubmenu() {
-        PMenu sub = new PMenu("Blur/Sharpen");
+        PMenu sub = PMenu.createLazy("Blur/Sharpen");
 
         sub.addFilter(JHBoxBlur.NAME, JHBoxBlur::new);
         sub.addFilter(JHFocus.NAME, JHFocus::new);
@@ -773,7 +784,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createDistortSubmenu() {
-        PMenu sub = new PMenu("Distort");
+        PMenu sub = PMenu.createLazy("Distort");
 
         sub.addFilter(JHSwirlPinchBulge.NAME, JHSwirlPinchBulge::new);
         sub.addFilter(CircleToSquare.NAME, CircleToSquare::new);
@@ -809,7 +820,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createDislocateSubmenu() {
-        PMenu sub = new PMenu("Dislocate");
+        PMenu sub = PMenu.createLazy("Dislocate");
 
         sub.addFilter(DrunkVision.NAME, DrunkVision::new);
         sub.addFilter(JHKaleidoscope.NAME, JHKaleidoscope::new);
@@ -822,7 +833,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createLightSubmenu() {
-        PMenu sub = new PMenu("Light");
+        PMenu sub = PMenu.createLazy("Light");
 
         sub.addFilter(Flashlight.NAME, Flashlight::new);
         sub.addFilter(JHGlint.NAME, JHGlint::new);
@@ -834,7 +845,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createNoiseSubmenu() {
-        PMenu sub = new PMenu("Noise");
+        PMenu sub = PMenu.createLazy("Noise");
 
         sub.buildFilter(JHReduceNoise.NAME, JHReduceNoise::new)
                 .noGUI()
@@ -852,7 +863,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createRenderSubmenu() {
-        PMenu sub = new PMenu("Render");
+        PMenu sub = PMenu.createLazy("Render");
 
         sub.addFilter(Clouds.NAME, Clouds::new);
         sub.addFilter(JHPlasma.NAME, JHPlasma::new);
@@ -877,7 +888,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createRenderShapesSubmenu() {
-        PMenu sub = new PMenu("Shapes");
+        PMenu sub = PMenu.createLazy("Shapes");
 
         sub.addFilter("Flower of Life", FlowerOfLife::new);
         sub.addFilter("Grid", RenderGrid::new);
@@ -889,7 +900,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createRenderGeometrySubmenu() {
-        PMenu sub = new PMenu("Geometry");
+        PMenu sub = PMenu.createLazy("Geometry");
 
         sub.addFilter(JHCheckerFilter.NAME, JHCheckerFilter::new);
         sub.addFilter(Starburst.NAME, Starburst::new);
@@ -898,7 +909,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createArtisticSubmenu() {
-        PMenu sub = new PMenu("Artistic");
+        PMenu sub = PMenu.createLazy("Artistic");
 
         sub.addFilter(JHCrystallize.NAME, JHCrystallize::new);
         sub.addFilter(JHEmboss.NAME, JHEmboss::new);
@@ -917,7 +928,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createHalftoneSubmenu() {
-        PMenu sub = new PMenu("Halftone");
+        PMenu sub = PMenu.createLazy("Halftone");
 
         sub.addFilter(JHStripedHalftone.NAME, JHStripedHalftone::new);
         sub.addFilter(JHConcentricHalftone.NAME, JHConcentricHalftone::new);
@@ -928,7 +939,7 @@ public class MenuBar extends JMenuBar {
 
 
     private static JMenu createFindEdgesSubmenu() {
-        PMenu sub = new PMenu("Find Edges");
+        PMenu sub = PMenu.createLazy("Find Edges");
 
         sub.addFilter(JHConvolutionEdge.NAME, JHConvolutionEdge::new);
         sub.addAction(new FilterAction(JHLaplacian.NAME, JHLaplacian::new)
@@ -940,7 +951,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createOtherSubmenu() {
-        PMenu sub = new PMenu("Other");
+        PMenu sub = PMenu.createLazy("Other");
 
         sub.addFilter(JHDropShadow.NAME, JHDropShadow::new);
         sub.addFilter(Morphology.NAME, Morphology::new);
@@ -1059,7 +1070,7 @@ public class MenuBar extends JMenuBar {
     }
 
     private static JMenu createColorVariationsSubmenu(PixelitorWindow pw) {
-        PMenu variations = new PMenu("Color Variations");
+        PMenu variations = PMenu.createLazy("Color Variations");
         variations.addAlwaysEnabledAction(new MenuAction("Foreground...") {
             @Override
             public void onClick() {
@@ -1237,6 +1248,26 @@ public class MenuBar extends JMenuBar {
             }
         });
 
+        developMenu.addAlwaysEnabledAction(new MenuAction("Repaint Statistics") {
+            @Override
+            public void onClick() {
+                Dialogs.showInfoDialog(pw, "Repaint Statistics",
+                        "<html>" + RepaintScheduler.getStatistics()
+                                .replace(System.lineSeparator(), "<br>"));
+                RepaintScheduler.resetStatistics();
+            }
+        });
+
+        developMenu.addAlwaysEnabledAction(new MenuAction("Buffer Pool Statistics") {
+            @Override
+            public void onClick() {
+                Dialogs.showInfoDialog(pw, "Buffer Pool Statistics",
+                        "<html>" + BufferPool.getStatistics()
+                                .replace(System.lineSeparator(), "<br>"));
+                BufferPool.resetStatistics();
+            }
+        });
+
         developMenu.addAlwaysEnabledAction(new MenuAction("Debug Java Main Version") {
             @Override
             public void onClick() {
@@ -1293,7 +1324,7 @@ public class MenuBar extends JMenuBar {
             @Override
             public void onClick() {
                 Composition comp = getActiveCompOrNull();
-                HistogramsPanel.INSTANCE.updateFromCompIfShown(comp);
+                HistogramsPanel.updateFromCompIfShown(comp);
             }
         });
 
@@ -1411,6 +1442,19 @@ public class MenuBar extends JMenuBar {
             }
         });
 
+        helpMenu.addAlwaysEnabledAction(new MenuAction("Startup Timeline...") {
+            @Override
+            public void onClick() {
+                String text = StartupTimeline.asText();
+                JTextArea textArea = new JTextArea(text);
+                textArea.setEditable(false);
+                textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+                GUIUtils.showCopyTextToClipboardDialog(
+                        new JScrollPane(textArea), text, "Startup Timeline");
+            }
+        });
+
         helpMenu.add(new MenuAction("Check for Update...") {
             @Override
             public void onClick() {
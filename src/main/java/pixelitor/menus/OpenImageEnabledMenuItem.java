@@ -28,7 +28,8 @@ import javax.swing.*;
 public class OpenImageEnabledMenuItem extends JMenuItem implements ActiveImageChangeListener {
     public OpenImageEnabledMenuItem(Action a) {
         super(a);
-        setEnabled(false);
+        // can be created later than the first image, in a lazy menu
+        setEnabled(ImageComponents.getActiveIC() != null);
         ImageComponents.addActiveImageChangeListener(this);
     }
 
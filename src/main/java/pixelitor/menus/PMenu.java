@@ -22,12 +22,17 @@ import pixelitor.filters.Filter;
 import pixelitor.filters.FilterAction;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Supplier;
 
 /**
  * A JMenu with some utility methods
  */
 public class PMenu extends JMenu {
+    // the not yet created items of a lazy menu, in their final order
+    private List<Runnable> pendingItems;
+
     public PMenu(String s) {
         super(s);
     }
@@ -37,14 +42,69 @@ public class PMenu extends JMenu {
         setMnemonic(c);
     }
 
+    /**
+     * Creates a menu whose items are created only when it is first shown.
+     * The actions are still created eagerly (the filter actions
+     * register themselves), only the Swing menu items are deferred.
+     * Lazy menus can't have items with keyboard shortcuts,
+     * because those must work even if the menu was never opened.
+     */
+    public static PMenu createLazy(String s) {
+        PMenu menu = new PMenu(s);
+        menu.pendingItems = new ArrayList<>();
+        return menu;
+    }
+
+    @Override
+    public void setPopupMenuVisible(boolean b) {
+        if (b) {
+            createPendingItems();
+        }
+        super.setPopupMenuVisible(b);
+    }
+
+    private void createPendingItems() {
+        if (pendingItems != null) {
+            List<Runnable> items = pendingItems;
+            pendingItems = null;
+            items.forEach(Runnable::run);
+        }
+    }
+
+    private void addItem(EnabledIf whenToEnable, Action action) {
+        if (pendingItems != null) {
+            pendingItems.add(() -> add(whenToEnable.getMenuItem(action)));
+        } else {
+            add(whenToEnable.getMenuItem(action));
+        }
+    }
+
+    @Override
+    public JMenuItem add(JMenuItem menuItem) {
+        if (pendingItems != null) {
+            pendingItems.add(() -> add(menuItem));
+            return menuItem;
+        }
+        return super.add(menuItem);
+    }
+
+    @Override
+    public void addSeparator() {
+        if (pendingItems != null) {
+            pendingItems.add(this::addSeparator);
+        } else {
+            super.addSeparator();
+        }
+    }
+
     // Simple add without a builder
     public void addAction(Action action) {
-        JMenuItem menuItem = EnabledIf.THERE_IS_OPEN_IMAGE.getMenuItem(action);
-        add(menuItem);
+        addItem(EnabledIf.THERE_IS_OPEN_IMAGE, action);
     }
 
     // Simple add without a builder
     public void addActionWithKey(Action action, KeyStroke keyStroke) {
+        assert pendingItems == null : "shortcut in lazy menu " + getText();
         JMenuItem menuItem = EnabledIf.THERE_IS_OPEN_IMAGE.getMenuItem(action);
         menuItem.setAccelerator(keyStroke);
         add(menuItem);
@@ -52,12 +112,12 @@ public class PMenu extends JMenu {
 
     // Simple add without a builder
     public void addAlwaysEnabledAction(Action action) {
-        JMenuItem menuItem = EnabledIf.ACTION_ENABLED.getMenuItem(action);
-        add(menuItem);
+        addItem(EnabledIf.ACTION_ENABLED, action);
     }
 
     // Simple add without a builder
     public void addAlwaysEnabledAction(Action action, KeyStroke keyStroke) {
+        assert pendingItems == null : "shortcut in lazy menu " + getText();
         JMenuItem menuItem = EnabledIf.ACTION_ENABLED.getMenuItem(action);
         menuItem.setAccelerator(keyStroke);
         add(menuItem);
@@ -87,8 +147,7 @@ public class PMenu extends JMenu {
     }
 
     public void addFilter(FilterAction fa) {
-        JMenuItem menuItem = EnabledIf.THERE_IS_OPEN_IMAGE.getMenuItem(fa);
-        add(menuItem);
+        addItem(EnabledIf.THERE_IS_OPEN_IMAGE, fa);
     }
 
     public FilterMenuItemBuilder buildFilter(String name, Supplier<Filter> supplier) {
@@ -118,11 +177,14 @@ public class PMenu extends JMenu {
             if (whenToEnable == null) {
                 whenToEnable = EnabledIf.THERE_IS_OPEN_IMAGE;
             }
+            if (keyStroke == null) {
+                menu.addItem(whenToEnable, action);
+                return;
+            }
+            assert menu.pendingItems == null : "shortcut in lazy menu " + menu.getText();
             JMenuItem menuItem = whenToEnable.getMenuItem(action);
             menu.add(menuItem);
-            if (keyStroke != null) {
-                menuItem.setAccelerator(keyStroke);
-            }
+            menuItem.setAccelerator(keyStroke);
         }
 
         public MenuItemBuilder withKey(KeyStroke keyStroke) {
@@ -23,6 +23,7 @@ import pixelitor.gui.utils.DialogBuilder;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.io.FileChoosers;
 import pixelitor.io.OpenRaster;
+import pixelitor.io.SaveSettings;
 
 import javax.swing.*;
 import java.io.File;
@@ -67,7 +68,9 @@ public class OpenRasterExportPanel extends JPanel {
         File file = FileChoosers.selectSaveFileForSpecificFormat(FileChoosers.oraFilter);
         if (file != null) {
             boolean addMergedImage = p.exportMergedImage();
-            Runnable saveTask = () -> OpenRaster.uncheckedWrite(comp, file, addMergedImage);
+            int compressionLevel = SaveSettings.getDefaultCompressionLevel();
+            Runnable saveTask = () -> OpenRaster.uncheckedWrite(comp, file,
+                    addMergedImage, compressionLevel);
             comp.saveAsync(saveTask, file, true);
         }
     }
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import pixelitor.gui.ImageComponent;
+
+import java.awt.BasicStroke;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+
+import static java.awt.BasicStroke.CAP_BUTT;
+import static java.awt.BasicStroke.JOIN_ROUND;
+import static java.awt.Color.BLACK;
+import static java.awt.Color.WHITE;
+
+/**
+ * Paints the marching ants of a selection in component space.
+ * The flattened outline is cached for the current zoom level and
+ * canvas position, and the animation repaints only the region
+ * around the outline.
+ */
+class MarchingAntsRenderer {
+    private static final int DASH_LENGTH = 4;
+    private static final int DASH_PERIOD = 2 * DASH_LENGTH;
+
+    // the outline is flattened to this precision, in component pixels
+    private static final double FLATNESS = 0.25;
+
+    // the strokes for all the possible dash phases
+    private static final BasicStroke[] STROKES = new BasicStroke[DASH_PERIOD];
+
+    static {
+        float[] dash = {DASH_LENGTH, DASH_LENGTH};
+        for (int i = 0; i < DASH_PERIOD; i++) {
+            STROKES[i] = new BasicStroke(1.0f, CAP_BUTT,
+                    JOIN_ROUND, 0.0f, dash, i);
+        }
+    }
+
+    private int phase;
+
+    // the cache key
+    private Shape cachedShape;
+    private AffineTransform cachedTransform;
+
+    private Path2D coOutline;
+    private Rectangle coBounds;
+
+    // the region painted during the last animation step
+    private Rectangle lastRegion;
+
+    /**
+     * Must be called if the shape could have been changed in place
+     */
+    void shapeChanged() {
+        cachedShape = null;
+    }
+
+    void advance() {
+        phase = (phase + 1) % DASH_PERIOD;
+    }
+
+    /**
+     * Paints the ants with a Graphics2D that is transformed into image space
+     */
+    void paint(Graphics2D g2, Shape shape, ImageComponent ic) {
+        Path2D outline = getOutline(shape, ic);
+
+        AffineTransform imageTransform = g2.getTransform();
+        // go back to component space, where the line width
+        // and the dash lengths don't depend on the zoom
+        g2.transform(ic.getComponentToImageTransform());
+
+        g2.setPaint(WHITE);
+        g2.setStroke(STROKES[phase]);
+        g2.draw(outline);
+
+        g2.setPaint(BLACK);
+        g2.setStroke(STROKES[(phase + DASH_LENGTH) % DASH_PERIOD]);
+        g2.draw(outline);
+
+        g2.setTransform(imageTransform);
+    }
+
+    /**
+     * Returns the region (in component space) that has to be repainted
+     * for the next animation step, or null if no repaint is necessary,
+     * because the outline is not visible.
+     */
+    Rectangle getAnimationRegion(Shape shape, ImageComponent ic) {
+        if (!ic.isShowing()) {
+            return null;
+        }
+        getOutline(shape, ic);
+
+        // the stroke extends half a pixel beyond the outline
+        Rectangle region = new Rectangle(coBounds);
+        region.grow(1, 1);
+
+        // also repaint where the ants were the last time,
+        // in case the shape changed without a full repaint
+        Rectangle dirty = region;
+        if (lastRegion != null) {
+            dirty = region.union(lastRegion);
+        }
+        lastRegion = region;
+
+        dirty = dirty.intersection(ic.getVisiblePart());
+        if (dirty.isEmpty()) {
+            return null;
+        }
+        return dirty;
+    }
+
+    private Path2D getOutline(Shape shape, ImageComponent ic) {
+        AffineTransform imToCo = ic.getImageToComponentTransform();
+        if (shape != cachedShape || !imToCo.equals(cachedTransform)) {
+            coOutline = flatten(shape, imToCo);
+            coBounds = coOutline.getBounds();
+            cachedShape = shape;
+            cachedTransform = new AffineTransform(imToCo);
+        }
+        return coOutline;
+    }
+
+    private static Path2D flatten(Shape shape, AffineTransform at) {
+        Path2D.Float path = new Path2D.Float();
+        PathIterator it = shape.getPathIterator(at, FLATNESS);
+        path.setWindingRule(it.getWindingRule());
+        path.append(it, false);
+        return path;
+    }
+}
@@ -29,20 +29,13 @@ import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Shape;
-import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
 
-import static java.awt.BasicStroke.CAP_BUTT;
-import static java.awt.BasicStroke.JOIN_ROUND;
-import static java.awt.Color.BLACK;
-import static java.awt.Color.WHITE;
-
 /**
  * Represents a selection on an image.
  */
 public class Selection {
-    private float dashPhase;
     private ImageComponent ic;
     private Timer marchingAntsTimer;
 
@@ -50,9 +43,7 @@ public class Selection {
     // The coordinates are in image space, relative to the canvas.
     private Shape shape;
 
-    private static final double DASH_WIDTH = 1.0;
-    private static final float DASH_LENGTH = 4.0f;
-    private static final float[] MARCHING_ANTS_DASH = {DASH_LENGTH, DASH_LENGTH};
+    private final MarchingAntsRenderer antsRenderer = new MarchingAntsRenderer();
 
     private boolean hidden = false;
     private boolean dead = false;
@@ -94,9 +85,9 @@ public class Selection {
 
         marchingAntsTimer = new Timer(100, null);
         marchingAntsTimer.addActionListener(evt -> {
-            if(!hidden) {
-                dashPhase += 1.0f / (float) ic.getViewScale();
-                repaint();
+            if (!hidden) {
+                antsRenderer.advance();
+                repaintAnts();
             }
         });
         marchingAntsTimer.start();
@@ -120,37 +111,7 @@ public class Selection {
             return;
         }
 
-        paintAnts(g2, shape, dashPhase);
-    }
-
-    private void paintAnts(Graphics2D g2, Shape shape, float phase) {
-        // As the selection coordinates are in image space, this is
-        // called with a Graphics2D transformed into image space.
-        // The line width has to be scaled to compensate.
-        double viewScale = ic.getViewScale();
-        float lineWidth = (float) (DASH_WIDTH / viewScale);
-
-        float[] dash;
-        if (viewScale == 1.0) { // the most common case
-            dash = MARCHING_ANTS_DASH;
-        } else {
-            float scaledDashLength = (float) (DASH_LENGTH / viewScale);
-            dash = new float[]{scaledDashLength, scaledDashLength};
-        }
-
-        g2.setPaint(WHITE);
-        Stroke stroke = new BasicStroke(lineWidth, CAP_BUTT,
-                JOIN_ROUND, 0.0f, dash,
-                phase);
-        g2.setStroke(stroke);
-        g2.draw(shape);
-
-        g2.setPaint(BLACK);
-        Stroke stroke2 = new BasicStroke(lineWidth, CAP_BUTT,
-                JOIN_ROUND, 0.0f, dash,
-                (float) (phase + DASH_LENGTH / viewScale));
-        g2.setStroke(stroke2);
-        g2.draw(shape);
+        antsRenderer.paint(g2, shape, ic);
     }
 
     public void die() {
@@ -170,11 +131,27 @@ public class Selection {
 //             But it does not seem to solve the pixel grid problem anyway
 //        }
 
-        ic.repaint();
+        ic.scheduleRepaint();
+    }
+
+    /**
+     * Repaints only the region of the marching ants, if they are visible
+     */
+    private void repaintAnts() {
+        if (shape == null) {
+            return;
+        }
+        Rectangle region = antsRenderer.getAnimationRegion(shape, ic);
+        if (region != null) {
+            ic.scheduleRepaint(region);
+        }
     }
 
     public void setShape(Shape currentShape) {
         this.shape = currentShape;
+
+        // the lasso selections modify the same shape object
+        antsRenderer.shapeChanged();
     }
 
     /**
@@ -209,20 +186,42 @@ public class Selection {
     }
 
     public void modify(SelectionModifyType type, float amount) {
-        BasicStroke outlineStroke = new BasicStroke(amount);
-        Shape outlineShape = outlineStroke.createStrokedShape(shape);
+        Shape backupShape = shape;
+        if (type.canModifyMask() && SelectionMask.shouldUseMask(shape)) {
+            // the distance transforms are much faster than
+            // stroking a complex outline, and keep the soft edges
+            shape = type.modify(shape, amount);
+        } else {
+            BasicStroke outlineStroke = new BasicStroke(amount);
+            Shape outlineShape = outlineStroke.createStrokedShape(shape);
 
-        Area oldArea = new Area(shape);
-        Area outlineArea = new Area(outlineShape);
+            Area oldArea = new Area(shape);
+            Area outlineArea = new Area(outlineShape);
+
+            shape = type.modify(oldArea, outlineArea);
+        }
 
+        selectionChanged("Modify Selection", backupShape);
+    }
+
+    /**
+     * Softens the edges of the selection, so that
+     * the filters fade out gradually around them
+     */
+    public void feather(double radius) {
         Shape backupShape = shape;
-        shape = type.modify(oldArea, outlineArea);
+        SelectionMask mask = SelectionMask.fromShape(shape).feather(radius);
+        shape = new SoftSelectionShape(mask);
+
+        selectionChanged("Feather Selection", backupShape);
+    }
 
+    private void selectionChanged(String editName, Shape backupShape) {
         Composition comp = ic.getComp();
         boolean stillSelection = clipToCanvasSize(comp);
         if (stillSelection) {
             SelectionChangeEdit edit = new SelectionChangeEdit(
-                    "Modify Selection", comp, backupShape);
+                    editName, comp, backupShape);
             History.addEdit(edit);
         } else {
             comp.deselect(true);
@@ -231,10 +230,22 @@ public class Selection {
 
     public Shape transform(AffineTransform at) {
         Shape backupShape = shape;
-        shape = at.createTransformedShape(shape);
+        if (shape instanceof SoftSelectionShape && isWholePixelTranslation(at)) {
+            SelectionMask mask = ((SoftSelectionShape) shape).getMask();
+            shape = new SoftSelectionShape(mask.translate(
+                    (int) at.getTranslateX(), (int) at.getTranslateY()));
+        } else {
+            shape = at.createTransformedShape(shape);
+        }
         return backupShape;
     }
 
+    private static boolean isWholePixelTranslation(AffineTransform at) {
+        return (at.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0
+                && at.getTranslateX() == Math.rint(at.getTranslateX())
+                && at.getTranslateY() == Math.rint(at.getTranslateY());
+    }
+
     public void nudge(AffineTransform at) {
         Shape backupShape = transform(at);
         History.addEdit(new SelectionChangeEdit(
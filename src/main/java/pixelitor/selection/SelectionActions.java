@@ -121,6 +121,31 @@ public final class SelectionActions {
         }
     };
 
+    private static final Action feather = new MenuAction("Feather Selection...") {
+        @Override
+        public void onClick() {
+            JPanel panel = new JPanel(new GridBagLayout());
+            GridBagHelper gbh = new GridBagHelper(panel);
+            RangeParam radius = new RangeParam("Radius (pixels)", 1, 5, 100);
+
+            gbh.addLabelWithControl("Radius", radius.createGUI());
+
+            new DialogBuilder()
+                    .content(panel)
+                    .title("Feather Selection")
+                    .okText("Feather")
+                    .okAction(() -> featherSelection(radius))
+                    .show();
+        }
+    };
+
+    private static void featherSelection(RangeParam radius) {
+        Selection selection = getActiveCompOrNull().getSelection();
+        if (selection != null) {
+            selection.feather(radius.getValue());
+        }
+    }
+
     private static void modifySelection(EnumParam<SelectionModifyType> type,
                                         RangeParam amount) {
         Selection selection = getActiveCompOrNull().getSelection();
@@ -164,6 +189,7 @@ public final class SelectionActions {
         invert.setEnabled(b);
         showHide.setEnabled(b);
         modify.setEnabled(b);
+        feather.setEnabled(b);
         convertToPath.setEnabled(b);
     }
 
@@ -195,4 +221,8 @@ public final class SelectionActions {
         return modify;
     }
 
+    public static Action getFeather() {
+        return feather;
+    }
+
 }
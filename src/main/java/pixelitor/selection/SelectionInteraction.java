@@ -32,6 +32,10 @@ public enum SelectionInteraction {
     }, ADD("Add") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (useMask(oldShape, newShape)) {
+                return maskResult(oldShape, newShape,
+                        maskOf(oldShape).add(maskOf(newShape)));
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.add(newArea);
@@ -40,6 +44,10 @@ public enum SelectionInteraction {
     }, SUBTRACT("Subtract") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (useMask(oldShape, newShape)) {
+                return maskResult(oldShape, newShape,
+                        maskOf(oldShape).subtract(maskOf(newShape)));
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.subtract(newArea);
@@ -48,6 +56,10 @@ public enum SelectionInteraction {
     }, INTERSECT("Intersect") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
+            if (useMask(oldShape, newShape)) {
+                return maskResult(oldShape, newShape,
+                        maskOf(oldShape).intersect(maskOf(newShape)));
+            }
             Area oldArea = new Area(oldShape);
             Area newArea = new Area(newShape);
             oldArea.intersect(newArea);
@@ -66,6 +78,30 @@ public enum SelectionInteraction {
      */
     public abstract Shape combine(Shape oldShape, Shape newShape);
 
+    /**
+     * The {@link Area} operations get very slow for complex outlines
+     * (for example after a magic wand selection), so in that case
+     * the shapes are combined as raster masks.
+     */
+    private static boolean useMask(Shape oldShape, Shape newShape) {
+        return SelectionMask.shouldUseMask(oldShape) || SelectionMask.shouldUseMask(newShape);
+    }
+
+    private static SelectionMask maskOf(Shape shape) {
+        return SelectionMask.fromShape(shape);
+    }
+
+    /**
+     * If one of the inputs had soft edges, then the result keeps
+     * them, otherwise it is converted back into a hard-edged outline.
+     */
+    private static Shape maskResult(Shape oldShape, Shape newShape, SelectionMask result) {
+        if (oldShape instanceof SoftSelectionShape || newShape instanceof SoftSelectionShape) {
+            return new SoftSelectionShape(result);
+        }
+        return result.toOutline();
+    }
+
     @Override
     public String toString() {
         return guiName;
@@ -0,0 +1,984 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_STROKE_CONTROL;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_STROKE_PURE;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * A raster representation of a selection: an 8-bit coverage
+ * value for each pixel, in image space, relative to the canvas.
+ * <p>
+ * The mask is stored in square tiles aligned to the canvas origin.
+ * Empty tiles are not stored, and the fully selected tiles share
+ * a single array, so large simple selections are cheap. The masks
+ * are immutable, the operations return new masks which might
+ * share tiles with the original ones.
+ * <p>
+ * The boolean operations work tile by tile, and unlike the
+ * {@link java.awt.geom.Area} operations, their speed doesn't
+ * depend on the complexity of the outline.
+ */
+public class SelectionMask {
+    private static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+    // shared by all the fully selected tiles, never modified
+    private static final byte[] FULL_TILE = new byte[TILE_AREA];
+
+    static {
+        Arrays.fill(FULL_TILE, (byte) 0xFF);
+    }
+
+    // shapes with more path segments are combined as masks
+    private static final int COMPLEX_SHAPE_SEGMENTS = 1000;
+
+    // a pixel belongs to the outline of the mask if its coverage
+    // is at least this, which is also the pixel center sampling
+    // of the antialiased rasterization
+    private static final int THRESHOLD = 128;
+
+    private static final SelectionMask EMPTY = new SelectionMask(0, 0, 0, 0, new byte[0][]);
+
+    // the range of the stored tiles, in tile units
+    private final int tileX0;
+    private final int tileY0;
+    private final int tilesX;
+    private final int tilesY;
+
+    // null means an empty tile
+    private final byte[][] tiles;
+
+    // the bounds of the nonzero pixels, calculated lazily
+    private Rectangle bounds;
+
+    private SelectionMask(int tileX0, int tileY0, int tilesX, int tilesY, byte[][] tiles) {
+        assert tiles.length == tilesX * tilesY;
+        this.tileX0 = tileX0;
+        this.tileY0 = tileY0;
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Rasterizes the given shape with antialiasing
+     */
+    public static SelectionMask fromShape(Shape shape) {
+        if (shape instanceof SoftSelectionShape) {
+            return ((SoftSelectionShape) shape).getMask();
+        }
+        if (shape instanceof TracedOutline) {
+            return ((TracedOutline) shape).mask;
+        }
+        Rectangle shapeBounds = shape.getBounds();
+        if (shapeBounds.isEmpty()) {
+            return EMPTY;
+        }
+        int tileX0 = Math.floorDiv(shapeBounds.x, TILE_SIZE);
+        int tileY0 = Math.floorDiv(shapeBounds.y, TILE_SIZE);
+        int tilesX = Math.floorDiv(shapeBounds.x + shapeBounds.width - 1, TILE_SIZE) - tileX0 + 1;
+        int tilesY = Math.floorDiv(shapeBounds.y + shapeBounds.height - 1, TILE_SIZE) - tileY0 + 1;
+        byte[][] tiles = new byte[tilesX * tilesY][];
+
+        // each row of tiles is rendered separately
+        parallelFor(tilesY, ty -> {
+            int width = tilesX * TILE_SIZE;
+            BufferedImage band = new BufferedImage(width, TILE_SIZE, TYPE_BYTE_GRAY);
+            Graphics2D g = band.createGraphics();
+            g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(KEY_STROKE_CONTROL, VALUE_STROKE_PURE);
+            g.translate(-tileX0 * TILE_SIZE, -(tileY0 + ty) * TILE_SIZE);
+            g.setColor(Color.WHITE);
+            g.fill(shape);
+            g.dispose();
+
+            byte[] pixels = ((DataBufferByte) band.getRaster().getDataBuffer()).getData();
+            for (int tx = 0; tx < tilesX; tx++) {
+                byte[] tile = new byte[TILE_AREA];
+                for (int y = 0; y < TILE_SIZE; y++) {
+                    System.arraycopy(pixels, y * width + tx * TILE_SIZE,
+                            tile, y * TILE_SIZE, TILE_SIZE);
+                }
+                tiles[ty * tilesX + tx] = compress(tile);
+            }
+        });
+        return new SelectionMask(tileX0, tileY0, tilesX, tilesY, tiles);
+    }
+
+    /**
+     * Creates a mask from the coverage values of the given area
+     */
+    public static SelectionMask fromArray(byte[] coverage, Rectangle area) {
+        assert coverage.length == area.width * area.height;
+        if (area.isEmpty()) {
+            return EMPTY;
+        }
+        int tileX0 = Math.floorDiv(area.x, TILE_SIZE);
+        int tileY0 = Math.floorDiv(area.y, TILE_SIZE);
+        int tilesX = Math.floorDiv(area.x + area.width - 1, TILE_SIZE) - tileX0 + 1;
+        int tilesY = Math.floorDiv(area.y + area.height - 1, TILE_SIZE) - tileY0 + 1;
+        byte[][] tiles = new byte[tilesX * tilesY][];
+
+        parallelFor(tilesY, ty -> {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int tileStartX = (tileX0 + tx) * TILE_SIZE;
+                int tileStartY = (tileY0 + ty) * TILE_SIZE;
+                byte[] tile = new byte[TILE_AREA];
+                for (int y = 0; y < TILE_SIZE; y++) {
+                    int srcY = tileStartY + y - area.y;
+                    if (srcY < 0 || srcY >= area.height) {
+                        continue;
+                    }
+                    int startX = Math.max(tileStartX, area.x);
+                    int endX = Math.min(tileStartX + TILE_SIZE, area.x + area.width);
+                    if (startX < endX) {
+                        System.arraycopy(coverage, srcY * area.width + startX - area.x,
+                                tile, y * TILE_SIZE + startX - tileStartX, endX - startX);
+                    }
+                }
+                tiles[ty * tilesX + tx] = compress(tile);
+            }
+        });
+        return new SelectionMask(tileX0, tileY0, tilesX, tilesY, tiles);
+    }
+
+    /**
+     * Returns null for empty tiles and the shared
+     * full tile for the fully selected ones
+     */
+    private static byte[] compress(byte[] tile) {
+        boolean allZero = true;
+        boolean allFull = true;
+        for (byte b : tile) {
+            if (b != 0) {
+                allZero = false;
+            }
+            if (b != (byte) 0xFF) {
+                allFull = false;
+            }
+            if (!allZero && !allFull) {
+                return tile;
+            }
+        }
+        if (allZero) {
+            return null;
+        }
+        return FULL_TILE;
+    }
+
+    /**
+     * Returns true if the given shape is complex enough to make the
+     * {@link java.awt.geom.Area} operations slow, or if it is
+     * already a soft selection, which can be combined only as a mask.
+     */
+    public static boolean shouldUseMask(Shape shape) {
+        if (shape instanceof SoftSelectionShape) {
+            return true;
+        }
+        int numSegments = 0;
+        PathIterator it = shape.getPathIterator(null);
+        while (!it.isDone()) {
+            numSegments++;
+            if (numSegments > COMPLEX_SHAPE_SEGMENTS) {
+                return true;
+            }
+            it.next();
+        }
+        return false;
+    }
+
+    /**
+     * Restricts a soft or complex shape to the given bounds
+     */
+    public static Shape clipShape(Shape shape, Rectangle clipBounds) {
+        SelectionMask mask = fromShape(shape);
+        boolean inside = clipBounds.contains(mask.getBounds());
+        if (inside && (shape instanceof SoftSelectionShape || shape instanceof TracedOutline)) {
+            return shape;
+        }
+        if (!inside) {
+            mask = mask.crop(clipBounds);
+        }
+        return toShape(shape, mask);
+    }
+
+    /**
+     * Inverts a soft or complex shape within the given bounds
+     */
+    public static Shape invertShape(Shape shape, Rectangle canvasBounds) {
+        return toShape(shape, fromShape(shape).invert(canvasBounds));
+    }
+
+    /**
+     * Returns a shape for the given mask, which keeps
+     * the soft edges only if the original shape had them
+     */
+    static Shape toShape(Shape original, SelectionMask mask) {
+        if (original instanceof SoftSelectionShape) {
+            return new SoftSelectionShape(mask);
+        }
+        return mask.toOutline();
+    }
+
+    public int getCoverage(int x, int y) {
+        int tx = Math.floorDiv(x, TILE_SIZE) - tileX0;
+        int ty = Math.floorDiv(y, TILE_SIZE) - tileY0;
+        if (tx < 0 || ty < 0 || tx >= tilesX || ty >= tilesY) {
+            return 0;
+        }
+        byte[] tile = tiles[ty * tilesX + tx];
+        if (tile == null) {
+            return 0;
+        }
+        int localX = x & (TILE_SIZE - 1);
+        int localY = y & (TILE_SIZE - 1);
+        return tile[(localY << TILE_SHIFT) + localX] & 0xFF;
+    }
+
+    public boolean isEmpty() {
+        return getBounds().isEmpty();
+    }
+
+    /**
+     * Returns the bounds of the pixels with nonzero coverage
+     */
+    public Rectangle getBounds() {
+        if (bounds == null) {
+            bounds = calcBounds();
+        }
+        return new Rectangle(bounds);
+    }
+
+    private Rectangle calcBounds() {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                byte[] tile = tiles[ty * tilesX + tx];
+                if (tile == null) {
+                    continue;
+                }
+                int tileStartX = (tileX0 + tx) * TILE_SIZE;
+                int tileStartY = (tileY0 + ty) * TILE_SIZE;
+                if (tile == FULL_TILE) {
+                    minX = Math.min(minX, tileStartX);
+                    minY = Math.min(minY, tileStartY);
+                    maxX = Math.max(maxX, tileStartX + TILE_SIZE - 1);
+                    maxY = Math.max(maxY, tileStartY + TILE_SIZE - 1);
+                    continue;
+                }
+                for (int i = 0; i < TILE_AREA; i++) {
+                    if (tile[i] != 0) {
+                        int x = tileStartX + (i & (TILE_SIZE - 1));
+                        int y = tileStartY + (i >> TILE_SHIFT);
+                        minX = Math.min(minX, x);
+                        minY = Math.min(minY, y);
+                        maxX = Math.max(maxX, x);
+                        maxY = Math.max(maxY, y);
+                    }
+                }
+            }
+        }
+        if (minX == Integer.MAX_VALUE) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Returns the coverage values of the given area in a row-major array
+     */
+    public byte[] toArray(Rectangle area) {
+        byte[] coverage = new byte[area.width * area.height];
+        parallelFor(area.height, row -> {
+            int y = area.y + row;
+            int ty = Math.floorDiv(y, TILE_SIZE) - tileY0;
+            if (ty < 0 || ty >= tilesY) {
+                return;
+            }
+            int localY = y & (TILE_SIZE - 1);
+            int x = area.x;
+            int endX = area.x + area.width;
+            while (x < endX) {
+                int tileStartX = Math.floorDiv(x, TILE_SIZE) * TILE_SIZE;
+                int runEnd = Math.min(endX, tileStartX + TILE_SIZE);
+                int tx = tileStartX / TILE_SIZE - tileX0;
+                if (tx >= 0 && tx < tilesX) {
+                    byte[] tile = tiles[ty * tilesX + tx];
+                    if (tile != null) {
+                        System.arraycopy(tile, (localY << TILE_SHIFT) + x - tileStartX,
+                                coverage, row * area.width + x - area.x, runEnd - x);
+                    }
+                }
+                x = runEnd;
+            }
+        });
+        return coverage;
+    }
+
+    public SelectionMask add(SelectionMask other) {
+        int x0 = Math.min(tileX0, other.tileX0);
+        int y0 = Math.min(tileY0, other.tileY0);
+        int x1 = Math.max(tileX0 + tilesX, other.tileX0 + other.tilesX);
+        int y1 = Math.max(tileY0 + tilesY, other.tileY0 + other.tilesY);
+        return combine(other, x0, y0, x1, y1, (a, b) -> {
+            if (a == null || b == FULL_TILE) {
+                return b;
+            }
+            if (b == null || a == FULL_TILE) {
+                return a;
+            }
+            byte[] result = new byte[TILE_AREA];
+            for (int i = 0; i < TILE_AREA; i++) {
+                result[i] = (byte) Math.max(a[i] & 0xFF, b[i] & 0xFF);
+            }
+            return compress(result);
+        });
+    }
+
+    public SelectionMask subtract(SelectionMask other) {
+        return combine(other, tileX0, tileY0, tileX0 + tilesX, tileY0 + tilesY, (a, b) -> {
+            if (a == null || b == FULL_TILE) {
+                return null;
+            }
+            if (b == null) {
+                return a;
+            }
+            byte[] result = new byte[TILE_AREA];
+            for (int i = 0; i < TILE_AREA; i++) {
+                result[i] = (byte) Math.min(a[i] & 0xFF, 255 - (b[i] & 0xFF));
+            }
+            return compress(result);
+        });
+    }
+
+    public SelectionMask intersect(SelectionMask other) {
+        int x0 = Math.max(tileX0, other.tileX0);
+        int y0 = Math.max(tileY0, other.tileY0);
+        int x1 = Math.min(tileX0 + tilesX, other.tileX0 + other.tilesX);
+        int y1 = Math.min(tileY0 + tilesY, other.tileY0 + other.tilesY);
+        if (x0 >= x1 || y0 >= y1) {
+            return EMPTY;
+        }
+        return combine(other, x0, y0, x1, y1, (a, b) -> {
+            if (a == null || b == null) {
+                return null;
+            }
+            if (a == FULL_TILE) {
+                return b;
+            }
+            if (b == FULL_TILE) {
+                return a;
+            }
+            byte[] result = new byte[TILE_AREA];
+            for (int i = 0; i < TILE_AREA; i++) {
+                result[i] = (byte) Math.min(a[i] & 0xFF, b[i] & 0xFF);
+            }
+            return compress(result);
+        });
+    }
+
+    /**
+     * Returns the inverse of this mask within the given (canvas) bounds
+     */
+    public SelectionMask invert(Rectangle canvasBounds) {
+        return fromShape(canvasBounds).subtract(this);
+    }
+
+    /**
+     * Returns the part of this mask within the given bounds
+     */
+    public SelectionMask crop(Rectangle cropBounds) {
+        return intersect(fromShape(cropBounds));
+    }
+
+    private interface TileOp {
+        byte[] apply(byte[] a, byte[] b);
+    }
+
+    private SelectionMask combine(SelectionMask other, int x0, int y0, int x1, int y1, TileOp op) {
+        int newTilesX = x1 - x0;
+        int newTilesY = y1 - y0;
+        if (newTilesX <= 0 || newTilesY <= 0) {
+            return EMPTY;
+        }
+        byte[][] newTiles = new byte[newTilesX * newTilesY][];
+        parallelFor(newTilesY, ty -> {
+            for (int tx = 0; tx < newTilesX; tx++) {
+                byte[] a = getTile(x0 + tx, y0 + ty);
+                byte[] b = other.getTile(x0 + tx, y0 + ty);
+                newTiles[ty * newTilesX + tx] = op.apply(a, b);
+            }
+        });
+        return new SelectionMask(x0, y0, newTilesX, newTilesY, newTiles);
+    }
+
+    /**
+     * Returns the tile at the given absolute tile coordinates
+     */
+    private byte[] getTile(int absTileX, int absTileY) {
+        int tx = absTileX - tileX0;
+        int ty = absTileY - tileY0;
+        if (tx < 0 || ty < 0 || tx >= tilesX || ty >= tilesY) {
+            return null;
+        }
+        return tiles[ty * tilesX + tx];
+    }
+
+    /**
+     * Returns this mask moved by the given number of pixels
+     */
+    public SelectionMask translate(int dx, int dy) {
+        Rectangle area = getBounds();
+        byte[] coverage = toArray(area);
+        area.translate(dx, dy);
+        return fromArray(coverage, area);
+    }
+
+    /**
+     * Expands the selection by the given distance
+     */
+    public SelectionMask grow(double radius) {
+        if (radius <= 0 || isEmpty()) {
+            return this;
+        }
+        Rectangle area = getPaddedBounds(radius);
+        byte[] coverage = toArray(area);
+        float[] distSq = squaredDistances(coverage, area.width, area.height, true);
+
+        byte[] result = new byte[coverage.length];
+        parallelFor(area.height, y -> {
+            for (int i = y * area.width, end = i + area.width; i < end; i++) {
+                double d = Math.sqrt(distSq[i]);
+                // the distance to the edge is about half a pixel less
+                // than the distance to the nearest selected pixel center
+                int grown = toCoverage(radius - d + 1);
+                result[i] = (byte) Math.max(coverage[i] & 0xFF, grown);
+            }
+        });
+        return fromArray(result, area);
+    }
+
+    /**
+     * Contracts the selection by the given distance
+     */
+    public SelectionMask shrink(double radius) {
+        if (radius <= 0 || isEmpty()) {
+            return this;
+        }
+        Rectangle area = getPaddedBounds(1);
+        byte[] coverage = toArray(area);
+        float[] distSq = squaredDistances(coverage, area.width, area.height, false);
+
+        byte[] result = new byte[coverage.length];
+        parallelFor(area.height, y -> {
+            for (int i = y * area.width, end = i + area.width; i < end; i++) {
+                int c = coverage[i] & 0xFF;
+                if (c >= THRESHOLD) {
+                    double d = Math.sqrt(distSq[i]);
+                    result[i] = (byte) Math.min(c, toCoverage(d - radius));
+                }
+            }
+        });
+        return fromArray(result, area);
+    }
+
+    /**
+     * Returns a soft-edged version of this selection, where the
+     * coverage falls from fully selected to unselected over a band
+     * of the given radius on both sides of the original edge.
+     */
+    public SelectionMask feather(double radius) {
+        if (radius <= 0 || isEmpty()) {
+            return this;
+        }
+        Rectangle area = getPaddedBounds(radius);
+        byte[] coverage = toArray(area);
+        float[] toSelected = squaredDistances(coverage, area.width, area.height, true);
+        float[] toUnselected = squaredDistances(coverage, area.width, area.height, false);
+
+        byte[] result = new byte[coverage.length];
+        parallelFor(area.height, y -> {
+            for (int i = y * area.width, end = i + area.width; i < end; i++) {
+                // the signed distance from the edge, positive inside
+                double edgeDist;
+                if ((coverage[i] & 0xFF) >= THRESHOLD) {
+                    edgeDist = Math.sqrt(toUnselected[i]) - 0.5;
+                } else {
+                    edgeDist = 0.5 - Math.sqrt(toSelected[i]);
+                }
+                double t = (edgeDist + radius) / (2 * radius);
+                if (t <= 0) {
+                    continue;
+                }
+                if (t >= 1) {
+                    result[i] = (byte) 0xFF;
+                } else {
+                    double smooth = t * t * (3 - 2 * t);
+                    result[i] = (byte) toCoverage(smooth);
+                }
+            }
+        });
+        return fromArray(result, area);
+    }
+
+    private static int toCoverage(double fraction) {
+        if (fraction <= 0) {
+            return 0;
+        }
+        if (fraction >= 1) {
+            return 255;
+        }
+        return (int) (fraction * 255 + 0.5);
+    }
+
+    private Rectangle getPaddedBounds(double radius) {
+        Rectangle area = getBounds();
+        int pad = (int) Math.ceil(radius) + 1;
+        area.grow(pad, pad);
+        return area;
+    }
+
+    /**
+     * Calculates for each pixel the squared Euclidean distance to the
+     * nearest selected (or unselected) pixel with the linear time
+     * algorithm of Felzenszwalb and Huttenlocher.
+     */
+    private static float[] squaredDistances(byte[] coverage, int width, int height, boolean toSelected) {
+        float[] dist = new float[width * height];
+        for (int i = 0; i < dist.length; i++) {
+            boolean selected = (coverage[i] & 0xFF) >= THRESHOLD;
+            dist[i] = selected == toSelected ? 0 : Float.POSITIVE_INFINITY;
+        }
+
+        // first the columns, then the rows
+        parallelFor(width, x -> {
+            float[] column = new float[height];
+            for (int y = 0; y < height; y++) {
+                column[y] = dist[y * width + x];
+            }
+            float[] transformed = transform1D(column, height);
+            for (int y = 0; y < height; y++) {
+                dist[y * width + x] = transformed[y];
+            }
+        });
+        parallelFor(height, y -> {
+            float[] row = Arrays.copyOfRange(dist, y * width, (y + 1) * width);
+            float[] transformed = transform1D(row, width);
+            System.arraycopy(transformed, 0, dist, y * width, width);
+        });
+        return dist;
+    }
+
+    /**
+     * The one-dimensional squared distance transform
+     * (the lower envelope of parabolas)
+     */
+    private static float[] transform1D(float[] f, int n) {
+        float[] d = new float[n];
+        int[] v = new int[n];
+        double[] z = new double[n + 1];
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            if (f[q] == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            if (k < 0) {
+                k = 0;
+                v[0] = q;
+                z[0] = Double.NEGATIVE_INFINITY;
+                z[1] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                if (k < 0) {
+                    break;
+                }
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        if (k < 0) {
+            // no finite values
+            Arrays.fill(d, Float.POSITIVE_INFINITY);
+            return d;
+        }
+        int j = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[j + 1] < q) {
+                j++;
+            }
+            double diff = q - v[j];
+            d[q] = (float) (diff * diff + f[v[j]]);
+        }
+        return d;
+    }
+
+    private static double intersection(float[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+    }
+
+    /**
+     * Traces the outlines of the pixels whose coverage is at least
+     * 128, and returns them as a path along the pixel edges.
+     * The holes are traced in the opposite direction.
+     */
+    public Shape toOutline() {
+        Path2D path = new TracedOutline(this);
+        Rectangle area = getBounds();
+        if (area.isEmpty()) {
+            return path;
+        }
+        int w = area.width;
+        int h = area.height;
+        byte[] coverage = toArray(area);
+        boolean[] inside = new boolean[w * h];
+        for (int i = 0; i < inside.length; i++) {
+            inside[i] = (coverage[i] & 0xFF) >= THRESHOLD;
+        }
+        OutlineTracer tracer = new OutlineTracer(inside, w, h, area.x, area.y, path);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                tracer.traceIfStart(x, y);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * An outline which remembers the mask it was traced from,
+     * so that it doesn't have to be rasterized again if
+     * it is combined with another shape.
+     */
+    private static class TracedOutline extends Path2D.Float {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SelectionMask mask;
+
+        TracedOutline(SelectionMask mask) {
+            super(WIND_EVEN_ODD);
+            this.mask = mask;
+        }
+    }
+
+    /**
+     * Follows the pixel edges around the selected regions, keeping
+     * the selected pixels on the right side (in image space).
+     * The directions are 0 = east, 1 = south, 2 = west, 3 = north.
+     */
+    private static class OutlineTracer {
+        private static final int[] DX = {1, 0, -1, 0};
+        private static final int[] DY = {0, 1, 0, -1};
+
+        private final boolean[] inside;
+        private final int w;
+        private final int h;
+        private final int offsetX;
+        private final int offsetY;
+        private final Path2D path;
+
+        // the eastward edges (the top edges of selected pixels) already traced
+        private final boolean[] visitedTop;
+
+        OutlineTracer(boolean[] inside, int w, int h, int offsetX, int offsetY, Path2D path) {
+            this.inside = inside;
+            this.w = w;
+            this.h = h;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.path = path;
+            visitedTop = new boolean[w * h];
+        }
+
+        private boolean isInside(int x, int y) {
+            return x >= 0 && y >= 0 && x < w && y < h && inside[y * w + x];
+        }
+
+        /**
+         * Returns true if moving from the given vertex in the given
+         * direction follows a boundary with the selection on the right
+         */
+        private boolean isBoundary(int vx, int vy, int dir) {
+            switch (dir) {
+                case 0:
+                    return isInside(vx, vy) && !isInside(vx, vy - 1);
+                case 1:
+                    return isInside(vx - 1, vy) && !isInside(vx, vy);
+                case 2:
+                    return isInside(vx - 1, vy - 1) && !isInside(vx - 1, vy);
+                case 3:
+                    return isInside(vx, vy - 1) && !isInside(vx - 1, vy - 1);
+                default:
+                    throw new IllegalStateException("dir = " + dir);
+            }
+        }
+
+        void traceIfStart(int x, int y) {
+            int i = y * w + x;
+            if (!inside[i] || visitedTop[i] || isInside(x, y - 1)) {
+                return;
+            }
+            int startX = x;
+            int startY = y;
+            path.moveTo(startX + offsetX, startY + offsetY);
+
+            int vx = startX;
+            int vy = startY;
+            int dir = 0;
+            do {
+                if (dir == 0) {
+                    visitedTop[vy * w + vx] = true;
+                }
+                vx += DX[dir];
+                vy += DY[dir];
+
+                // prefer turning right, so that diagonally
+                // touching pixels are traced together
+                int newDir = -1;
+                for (int turn : new int[]{1, 0, 3}) {
+                    int candidate = (dir + turn) & 3;
+                    if (isBoundary(vx, vy, candidate)) {
+                        newDir = candidate;
+                        break;
+                    }
+                }
+                assert newDir >= 0;
+                if (newDir != dir) {
+                    path.lineTo(vx + offsetX, vy + offsetY);
+                    dir = newDir;
+                }
+            } while (vx != startX || vy != startY || dir != 0);
+            path.closePath();
+        }
+    }
+
+    /**
+     * Mixes the pixels of newImg into dest according to the coverage.
+     * The positions are the canvas coordinates of the images' top-left corners.
+     */
+    public void blend(BufferedImage dest, int destX, int destY,
+                      BufferedImage newImg, int newX, int newY) {
+        Rectangle area = getBounds();
+        area = area.intersection(new Rectangle(destX, destY, dest.getWidth(), dest.getHeight()));
+        area = area.intersection(new Rectangle(newX, newY, newImg.getWidth(), newImg.getHeight()));
+        if (area.isEmpty()) {
+            return;
+        }
+        byte[] coverage = toArray(area);
+        IntPixels destPixels = IntPixels.of(dest);
+        IntPixels newPixels = IntPixels.of(newImg);
+        boolean direct = destPixels != null && newPixels != null;
+        Rectangle finalArea = area;
+
+        parallelFor(area.height, row -> {
+            int y = finalArea.y + row;
+            int coverageStart = row * finalArea.width;
+            if (direct) {
+                blendRow(coverage, coverageStart, finalArea.width,
+                        destPixels, finalArea.x - destX, y - destY,
+                        newPixels, finalArea.x - newX, y - newY);
+                return;
+            }
+            for (int col = 0; col < finalArea.width; col++) {
+                int c = coverage[coverageStart + col] & 0xFF;
+                if (c == 0) {
+                    continue;
+                }
+                int x = finalArea.x + col;
+                int dx = x - destX;
+                int dy = y - destY;
+                int newRGB = newImg.getRGB(x - newX, y - newY);
+                dest.setRGB(dx, dy, c == 255 ? newRGB : mix(dest.getRGB(dx, dy), newRGB, c));
+            }
+        });
+    }
+
+    private static void blendRow(byte[] coverage, int coverageStart, int length,
+                                 IntPixels dest, int destX, int destY,
+                                 IntPixels newImg, int newX, int newY) {
+        int[] destData = dest.data;
+        int[] newData = newImg.data;
+        int di = dest.indexOf(destX, destY);
+        int ni = newImg.indexOf(newX, newY);
+        boolean convert = dest.premultiplied != newImg.premultiplied;
+        for (int i = 0; i < length; i++, di++, ni++) {
+            int c = coverage[coverageStart + i] & 0xFF;
+            if (c == 0) {
+                continue;
+            }
+            int newRGB = newData[ni];
+            if (convert) {
+                newRGB = dest.premultiplied
+                        ? ImageUtils.premultiply(newRGB)
+                        : ImageUtils.unPremultiply(newRGB);
+            }
+            if (c == 255) {
+                destData[di] = newRGB;
+            } else if (dest.premultiplied) {
+                destData[di] = mixPremultiplied(destData[di], newRGB, c);
+            } else {
+                destData[di] = mix(destData[di], newRGB, c);
+            }
+        }
+    }
+
+    /**
+     * Direct access to the pixels of an int ARGB image. The scanline
+     * stride and the origin come from the raster, so that sub-images
+     * (which share the data array of their parent image) also work.
+     */
+    private static class IntPixels {
+        private final int[] data;
+        private final int stride;
+        // the array index of the pixel at 0, 0
+        private final int origin;
+        private final boolean premultiplied;
+
+        private IntPixels(int[] data, int stride, int origin, boolean premultiplied) {
+            this.data = data;
+            this.stride = stride;
+            this.origin = origin;
+            this.premultiplied = premultiplied;
+        }
+
+        /**
+         * Returns null if the pixels of the image can't be accessed directly
+         */
+        static IntPixels of(BufferedImage img) {
+            int type = img.getType();
+            if (type != TYPE_INT_ARGB && type != TYPE_INT_ARGB_PRE) {
+                return null;
+            }
+            WritableRaster raster = img.getRaster();
+            if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+                return null;
+            }
+            DataBuffer dataBuffer = raster.getDataBuffer();
+            if (!(dataBuffer instanceof DataBufferInt)) {
+                return null;
+            }
+            int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            int origin = dataBuffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX();
+            return new IntPixels(((DataBufferInt) dataBuffer).getData(), stride,
+                    origin, type == TYPE_INT_ARGB_PRE);
+        }
+
+        int indexOf(int x, int y) {
+            return origin + y * stride + x;
+        }
+    }
+
+    /**
+     * Interpolates between two premultiplied ARGB colors
+     */
+    private static int mixPremultiplied(int oldRGB, int newRGB, int weight) {
+        int inv = 255 - weight;
+        int a = ((oldRGB >>> 24) * inv + (newRGB >>> 24) * weight + 127) / 255;
+        int r = (((oldRGB >>> 16) & 0xFF) * inv + ((newRGB >>> 16) & 0xFF) * weight + 127) / 255;
+        int g = (((oldRGB >>> 8) & 0xFF) * inv + ((newRGB >>> 8) & 0xFF) * weight + 127) / 255;
+        int b = ((oldRGB & 0xFF) * inv + (newRGB & 0xFF) * weight + 127) / 255;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Interpolates between two non-premultiplied ARGB colors,
+     * weighting the colors by their alpha
+     */
+    private static int mix(int oldRGB, int newRGB, int weight) {
+        int inv = 255 - weight;
+        int oldA = oldRGB >>> 24;
+        int newA = newRGB >>> 24;
+        int oldW = oldA * inv;
+        int newW = newA * weight;
+        int sumW = oldW + newW;
+        if (sumW == 0) {
+            return 0;
+        }
+        int a = (sumW + 127) / 255;
+        int r = (((oldRGB >>> 16) & 0xFF) * oldW + ((newRGB >>> 16) & 0xFF) * newW + sumW / 2) / sumW;
+        int g = (((oldRGB >>> 8) & 0xFF) * oldW + ((newRGB >>> 8) & 0xFF) * newW + sumW / 2) / sumW;
+        int b = ((oldRGB & 0xFF) * oldW + (newRGB & 0xFF) * newW + sumW / 2) / sumW;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Runs the given task for 0..n-1, in parallel
+     * if not called from the thread pool
+     */
+    private static void parallelFor(int n, IntConsumer task) {
+        if (n < 2 || ThreadPool.isWorkerThread() || ThreadPool.getNumThreads() < 2) {
+            for (int i = 0; i < n; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+        int numChunks = Math.min(n, ThreadPool.getNumThreads() * 4);
+        Future<?>[] futures = new Future<?>[numChunks];
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            int start = (int) ((long) n * chunk / numChunks);
+            int end = (int) ((long) n * (chunk + 1) / numChunks);
+            futures[chunk] = ThreadPool.submit(() -> {
+                for (int i = start; i < end; i++) {
+                    task.accept(i);
+                }
+            });
+        }
+        ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    @Override
+    public String toString() {
+        return "SelectionMask{bounds=" + getBounds() + '}';
+    }
+}
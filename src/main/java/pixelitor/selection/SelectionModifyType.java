@@ -69,6 +69,29 @@ public enum SelectionModifyType {
      */
     public abstract Shape modify(Area previous, Area outlineShape);
 
+    /**
+     * Returns true if this modification can be calculated
+     * directly on the raster mask of the selection
+     */
+    public boolean canModifyMask() {
+        return this == EXPAND || this == CONTRACT;
+    }
+
+    /**
+     * Expands or contracts the mask of the given shape. As with the
+     * stroked outline, the edge moves by half of the given amount.
+     */
+    public Shape modify(Shape previous, float amount) {
+        assert canModifyMask();
+        SelectionMask mask = SelectionMask.fromShape(previous);
+        if (this == EXPAND) {
+            mask = mask.grow(amount / 2.0);
+        } else {
+            mask = mask.shrink(amount / 2.0);
+        }
+        return SelectionMask.toShape(previous, mask);
+    }
+
     public static EnumParam<SelectionModifyType> asParam() {
         return new EnumParam<>("Type", SelectionModifyType.class);
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A selection shape with soft (partially selected) edges.
+ * The geometric methods use the 50% coverage outline, which is
+ * also what the marching ants show, but the bounds include the
+ * whole soft edge, so that the filters process the partially
+ * selected pixels too.
+ */
+public class SoftSelectionShape implements Shape {
+    private final SelectionMask mask;
+    private final Shape outline;
+
+    public SoftSelectionShape(SelectionMask mask) {
+        this.mask = mask;
+        outline = mask.toOutline();
+    }
+
+    public SelectionMask getMask() {
+        return mask;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return mask.getBounds();
+    }
+
+    @Override
+    public Rectangle2D getBounds2D() {
+        return mask.getBounds();
+    }
+
+    @Override
+    public boolean contains(double x, double y) {
+        return outline.contains(x, y);
+    }
+
+    @Override
+    public boolean contains(Point2D p) {
+        return outline.contains(p);
+    }
+
+    @Override
+    public boolean intersects(double x, double y, double w, double h) {
+        return outline.intersects(x, y, w, h);
+    }
+
+    @Override
+    public boolean intersects(Rectangle2D r) {
+        return outline.intersects(r);
+    }
+
+    @Override
+    public boolean contains(double x, double y, double w, double h) {
+        return outline.contains(x, y, w, h);
+    }
+
+    @Override
+    public boolean contains(Rectangle2D r) {
+        return outline.contains(r);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return outline.getPathIterator(at);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return outline.getPathIterator(at, flatness);
+    }
+}
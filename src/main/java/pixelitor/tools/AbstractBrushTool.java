@@ -304,6 +304,7 @@ public abstract class AbstractBrushTool extends Tool {
         }
 
         brush.setTarget(comp, g);
+        brush.setTargetImage(drawDestination.getDrawImage(dr));
         return g;
     }
 
@@ -386,6 +387,7 @@ public abstract class AbstractBrushTool extends Tool {
      * Traces the given shape with the current brush tool
      */
     public void trace(Drawable dr, Shape shape) {
+        initSettingsPanelIfNeeded();
         try {
             respectSelection = false;
 
@@ -38,6 +38,7 @@ public abstract class BlendingModeBrushTool extends AbstractBrushTool {
     }
 
     public void setupMaskEditing(boolean isMask) {
+        initSettingsPanelIfNeeded();
         if (isMask) {
             drawDestination = DrawDestination.DIRECT;
             blendingModePanel.setEnabled(false);
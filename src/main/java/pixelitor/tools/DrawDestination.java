@@ -37,6 +37,11 @@ public enum DrawDestination {
             return dr.createTmpDrawingLayer(composite).getGraphics();
         }
 
+        @Override
+        public BufferedImage getDrawImage(Drawable dr) {
+            return dr.getTmpDrawingLayer().getImage();
+        }
+
         @Override
         public void prepareBrushStroke(Drawable dr) {
             // nothing to be done
@@ -63,6 +68,11 @@ public enum DrawDestination {
             return drawImage.createGraphics();
         }
 
+        @Override
+        public BufferedImage getDrawImage(Drawable dr) {
+            return dr.getCanvasSizedSubImage();
+        }
+
         @Override
         public void prepareBrushStroke(Drawable dr) {
             BufferedImage image = dr.getImage();
@@ -90,6 +100,12 @@ public enum DrawDestination {
 
     public abstract Graphics2D createGraphics(Drawable dr, Composite composite);
 
+    /**
+     * Returns the image into which the Graphics2D
+     * returned by createGraphics draws
+     */
+    public abstract BufferedImage getDrawImage(Drawable dr);
+
     public abstract void prepareBrushStroke(Drawable dr);
 
     public abstract void finishBrushStroke(Drawable dr);
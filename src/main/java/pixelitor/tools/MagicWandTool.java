@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools;
+
+import pixelitor.Composition;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.gui.utils.SliderSpinner;
+import pixelitor.history.History;
+import pixelitor.history.PixelitorEdit;
+import pixelitor.layers.Drawable;
+import pixelitor.selection.SelectionInteraction;
+import pixelitor.selection.SelectionMask;
+import pixelitor.tools.util.PMouseEvent;
+import pixelitor.utils.Cursors;
+import pixelitor.utils.FloodFill;
+import pixelitor.utils.FloodFill.Region;
+import pixelitor.utils.ImageUtils;
+import pixelitor.utils.debug.DebugNode;
+
+import javax.swing.*;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.util.function.IntPredicate;
+
+import static pixelitor.gui.utils.SliderSpinner.TextPosition.WEST;
+import static pixelitor.selection.SelectionInteraction.ADD;
+import static pixelitor.selection.SelectionInteraction.INTERSECT;
+import static pixelitor.selection.SelectionInteraction.SUBTRACT;
+
+/**
+ * The magic wand tool, which selects the pixels
+ * with a color similar to the clicked pixel
+ */
+public class MagicWandTool extends Tool {
+    private static final String CONTIGUOUS_TEXT = "Contiguous";
+    private static final String SAMPLE_LAYER_TEXT = "Sample Only the Active Layer";
+
+    private final RangeParam toleranceParam = new RangeParam("Tolerance", 0, 20, 255);
+    private final JCheckBox contiguousCB = new JCheckBox(CONTIGUOUS_TEXT, true);
+    private final JCheckBox sampleLayerOnlyCB = new JCheckBox(SAMPLE_LAYER_TEXT, true);
+    private JComboBox<SelectionInteraction> interactionCombo;
+
+    public MagicWandTool() {
+        super("Magic Wand", 'w', "magic_wand_tool_icon.png",
+                "<b>click</b> to select the area with a similar color. " +
+                        "<b>Shift-click</b> adds to an existing selection, " +
+                        "<b>Alt-click</b> removes from it, <b>Shift+Alt click</b> intersects.",
+                Cursors.CROSSHAIR, false,
+                true, ClipStrategy.FULL);
+    }
+
+    @Override
+    public void initSettingsPanel() {
+        settingsPanel.add(new SliderSpinner(toleranceParam, WEST, false));
+        settingsPanel.add(contiguousCB);
+        settingsPanel.add(sampleLayerOnlyCB);
+
+        settingsPanel.addSeparator();
+
+        interactionCombo = new JComboBox<>(SelectionInteraction.values());
+        settingsPanel.addWithLabel("New Selection:", interactionCombo);
+    }
+
+    @Override
+    public void mousePressed(PMouseEvent e) {
+        // do nothing
+    }
+
+    @Override
+    public void mouseDragged(PMouseEvent e) {
+        // do nothing
+    }
+
+    @Override
+    public void mouseReleased(PMouseEvent e) {
+        Composition comp = e.getComp();
+
+        BufferedImage img;
+        int tx = 0;
+        int ty = 0;
+        if (sampleLayerOnlyCB.isSelected()) {
+            if (!comp.activeIsDrawable()) {
+                return;
+            }
+            Drawable dr = comp.getActiveDrawableOrThrow();
+            img = dr.getImage();
+            tx = dr.getTX();
+            ty = dr.getTY();
+        } else {
+            img = comp.getCompositeImage();
+        }
+
+        int x = (int) e.getImX() - tx;
+        int y = (int) e.getImY() - ty;
+        int width = img.getWidth();
+        int height = img.getHeight();
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+
+        int[] pixels = getPixels(img);
+        IntPredicate matcher = FloodFill.similarTo(
+                pixels[y * width + x], toleranceParam.getValue());
+        Region region;
+        if (contiguousCB.isSelected()) {
+            region = FloodFill.fillContiguous(pixels, width, height, x, y, matcher);
+        } else {
+            region = FloodFill.fillGlobal(pixels, width, height, matcher);
+        }
+
+        // the region is relative to the image, the selection to the canvas
+        Rectangle bounds = region.getBounds();
+        bounds.translate(tx, ty);
+        Shape shape = SelectionMask.fromArray(region.toCoverage(), bounds).toOutline();
+
+        setSelection(comp, shape, getInteraction(e));
+        e.repaint();
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        if (ImageUtils.hasPackedIntArray(img)) {
+            return ImageUtils.getPixelsAsArray(img);
+        }
+        int width = img.getWidth();
+        int height = img.getHeight();
+        return img.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    private SelectionInteraction getInteraction(PMouseEvent e) {
+        boolean shiftDown = e.isShiftDown();
+        boolean altDown = e.isAltDown();
+        if (shiftDown && altDown) {
+            return INTERSECT;
+        } else if (shiftDown) {
+            return ADD;
+        } else if (altDown) {
+            return SUBTRACT;
+        }
+        return (SelectionInteraction) interactionCombo.getSelectedItem();
+    }
+
+    private static void setSelection(Composition comp, Shape shape,
+                                     SelectionInteraction interaction) {
+        Shape oldShape = comp.getSelectionShape();
+        if (oldShape != null) {
+            shape = interaction.combine(oldShape, shape);
+        }
+        PixelitorEdit edit = comp.setSelectionFromShapeComplete(shape);
+        if (edit != null) {
+            History.addEdit(edit);
+        } else if (oldShape != null) {
+            // nothing remained after the combination
+            comp.deselect(true);
+        }
+    }
+
+    @Override
+    public DebugNode getDebugNode() {
+        DebugNode node = super.getDebugNode();
+
+        node.addInt("Tolerance", toleranceParam.getValue());
+        node.addBoolean(CONTIGUOUS_TEXT, contiguousCB.isSelected());
+        node.addBoolean(SAMPLE_LAYER_TEXT, sampleLayerOnlyCB.isSelected());
+        node.addQuotedString("Interaction", interactionCombo.getSelectedItem().toString());
+
+        return node;
+    }
+}
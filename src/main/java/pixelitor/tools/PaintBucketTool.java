@@ -24,17 +24,16 @@ import pixelitor.history.History;
 import pixelitor.layers.Drawable;
 import pixelitor.tools.util.PMouseEvent;
 import pixelitor.utils.Cursors;
+import pixelitor.utils.FloodFill;
+import pixelitor.utils.FloodFill.Region;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
 import javax.swing.*;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
-import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
-import java.util.Deque;
 
 import static pixelitor.colors.FgBgColors.getBGColor;
 import static pixelitor.colors.FgBgColors.getFGColor;
@@ -186,146 +185,24 @@ public class PaintBucketTool extends Tool {
     private static Rectangle scanlineFloodFill(BufferedImage img,
                                                int x, int y, int tolerance,
                                                int rgbAtMouse, int newRGB) {
-        int minX = x;
-        int maxX = x;
-        int minY = y;
-        int maxY = y;
-        int imgHeight = img.getHeight();
-        int imgWidth = img.getWidth();
-
         int[] pixels = ImageUtils.getPixelsAsArray(img);
-
-        // Needed because the tolerance: we cannot assume that
-        // if the pixel is within the target range, it has been processed
-        boolean[] checkedPixels = new boolean[pixels.length];
-        for (int i = 0; i < checkedPixels.length; i++) {
-            checkedPixels[i] = false;
-        }
-
-        // the double-ended queue is used as a simple LIFO stack
-        Deque<Point> stack = new ArrayDeque<>();
-        stack.push(new Point(x, y));
-
-        while (!stack.isEmpty()) {
-            Point p = stack.pop();
-
-            x = p.x;
-            y = p.y;
-
-            // find the last replaceable point to the left
-            int scanlineMinX = x - 1;
-            int offset = y * imgWidth;
-            while ((scanlineMinX >= 0)
-                    && isSimilar(pixels[scanlineMinX + offset], rgbAtMouse, tolerance)) {
-                scanlineMinX--;
-            }
-            scanlineMinX++;
-
-            // find the last replaceable point to the right
-            int scanlineMaxX = x + 1;
-            while ((scanlineMaxX < img.getWidth())
-                    && isSimilar(pixels[scanlineMaxX + offset], rgbAtMouse, tolerance)) {
-                scanlineMaxX++;
-            }
-            scanlineMaxX--;
-
-            // set the minX, maxX, minY, maxY variables
-            // that will be used to calculate the affected area
-            if (scanlineMinX < minX) {
-                minX = scanlineMinX;
-            }
-            if (scanlineMaxX > maxX) {
-                maxX = scanlineMaxX;
-            }
-            if (y > maxY) {
-                maxY = y;
-            } else if (y < minY) {
-                minY = y;
-            }
-
-            // draw a line between (scanlineMinX, y) and (scanlineMaxX, y)
-            for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                int index = i + offset;
-                pixels[index] = newRGB;
-                checkedPixels[index] = true;
-            }
-
-            // look upwards for new points to be inspected later
-            if (y > 0) {
-                // if there are multiple pixels to be replaced
-                // that are horizontal neighbours,
-                // only one of them has to be inspected later
-                boolean pointsInLine = false;
-
-                int upOffset = (y - 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int upIndex = i + upOffset;
-                    boolean shouldBeReplaced = !checkedPixels[upIndex]
-                            && isSimilar(pixels[upIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y - 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
-
-            // look downwards for new points to be inspected later
-            if (y < imgHeight - 1) {
-                boolean pointsInLine = false;
-                int downOffset = (y + 1) * imgWidth;
-
-                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
-                    int downIndex = i + downOffset;
-                    boolean shouldBeReplaced = !checkedPixels[downIndex]
-                            && isSimilar(pixels[downIndex], rgbAtMouse, tolerance);
-
-                    if (!pointsInLine && shouldBeReplaced) {
-                        Point inspectLater = new Point(i, y + 1);
-                        stack.push(inspectLater);
-                        pointsInLine = true;
-                    } else if (pointsInLine && !shouldBeReplaced) {
-                        pointsInLine = false;
-                    }
-                }
-            }
-        }
+        Region region = FloodFill.fillContiguous(pixels,
+                img.getWidth(), img.getHeight(), x, y,
+                FloodFill.similarTo(rgbAtMouse, tolerance));
+        region.fill(pixels, newRGB);
 
         // return the affected area
-        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        return region.getBounds();
     }
 
     private static void globalReplaceColor(BufferedImage img,
                                            int tolerance,
                                            int rgbAtMouse, int newRGB) {
         int[] pixels = ImageUtils.getPixelsAsArray(img);
-        for (int i = 0; i < pixels.length; i++) {
-            if (isSimilar(pixels[i], rgbAtMouse, tolerance)) {
-                pixels[i] = newRGB;
-            }
-        }
-    }
-
-    private static boolean isSimilar(int color1, int color2, int tolerance) {
-        if (color1 == color2) {
-            return true;
-        }
-
-        int r1 = (color1 >>> 16) & 0xFF;
-        int g1 = (color1 >>> 8) & 0xFF;
-        int b1 = color1 & 0xFF;
-
-        int r2 = (color2 >>> 16) & 0xFF;
-        int g2 = (color2 >>> 8) & 0xFF;
-        int b2 = color2 & 0xFF;
-
-        return (r2 <= r1 + tolerance) && (r2 >= r1 - tolerance) &&
-                (g2 <= g1 + tolerance) && (g2 >= g1 - tolerance) &&
-                (b2 <= b1 + tolerance) && (b2 >= b1 - tolerance);
+        Region region = FloodFill.fillGlobal(pixels,
+                img.getWidth(), img.getHeight(),
+                FloodFill.similarTo(rgbAtMouse, tolerance));
+        region.fill(pixels, newRGB);
     }
 
     @Override
@@ -26,6 +26,7 @@ import pixelitor.gui.ImageComponents;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.tools.gui.ToolButton;
 import pixelitor.tools.gui.ToolSettingsPanel;
+import pixelitor.tools.gui.ToolSettingsPanelContainer;
 import pixelitor.tools.toolhandlers.ToolHandlerChain;
 import pixelitor.tools.util.ArrowKey;
 import pixelitor.tools.util.DraggablePoint;
@@ -168,6 +169,21 @@ public abstract class Tool implements KeyListener {
         this.settingsPanel = settingsPanel;
     }
 
+    public boolean hasSettingsPanel() {
+        return settingsPanel != null;
+    }
+
+    /**
+     * The settings panels are created lazily, but some tools
+     * need their settings even if they were never selected,
+     * for example when a path is traced with a brush tool.
+     */
+    protected void initSettingsPanelIfNeeded() {
+        if (settingsPanel == null) {
+            ToolSettingsPanelContainer.INSTANCE.addSettingsPanelFor(this);
+        }
+    }
+
     public void randomize() {
         GUIUtils.randomizeGUIWidgetsOn(settingsPanel);
     }
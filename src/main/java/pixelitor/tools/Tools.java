@@ -42,6 +42,7 @@ public class Tools {
     public static final MoveTool MOVE = new MoveTool();
     public static final CropTool CROP = new CropTool();
     public static final SelectionTool SELECTION = new SelectionTool();
+    public static final MagicWandTool MAGIC_WAND = new MagicWandTool();
     public static final BrushTool BRUSH = new BrushTool();
     public static final CloneTool CLONE = new CloneTool();
 
@@ -73,7 +74,7 @@ public class Tools {
     }
 
     private static final Tool[] allTools = {
-            MOVE, CROP, SELECTION, BRUSH, CLONE, ERASER,
+            MOVE, CROP, SELECTION, MAGIC_WAND, BRUSH, CLONE, ERASER,
             SMUDGE, GRADIENT, PAINT_BUCKET, COLOR_PICKER,
             PEN, SHAPES, HAND, ZOOM};
 
@@ -111,8 +112,9 @@ public class Tools {
             EventDispatcher.toolChanged(previousTool, newTool);
         }
         Tools.currentTool = newTool;
-        newTool.toolStarted();
+        // creates the settings panel if this is the first activation
         ToolSettingsPanelContainer.INSTANCE.showSettingsFor(newTool);
+        newTool.toolStarted();
     }
 
     public static Tool[] getAll() {
@@ -23,6 +23,7 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * An abstract base class for the brushes that are
@@ -32,6 +33,9 @@ public abstract class AbstractBrush implements Brush {
     protected Graphics2D targetG;
     protected Composition comp;
 
+    // draws directly into the target image, if it is possible
+    protected DabBlitter blitter;
+
     protected double radius = AbstractBrushTool.DEFAULT_BRUSH_RADIUS;
     protected double diameter;
     protected PPoint previous;
@@ -56,6 +60,12 @@ public abstract class AbstractBrush implements Brush {
     public void setTarget(Composition comp, Graphics2D g) {
         this.comp = comp;
         this.targetG = g;
+        blitter = null;
+    }
+
+    @Override
+    public void setTargetImage(BufferedImage image) {
+        blitter = DabBlitter.create(targetG, image);
     }
 
     // always call it before rememberPrevious!
@@ -22,6 +22,7 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * A decorator for other brushes that tracks their affected area.
@@ -40,6 +41,11 @@ public class AffectedAreaTracker implements Brush {
         delegate.setTarget(comp, g);
     }
 
+    @Override
+    public void setTargetImage(BufferedImage image) {
+        delegate.setTargetImage(image);
+    }
+
     @Override
     public void setRadius(double radius) {
         delegate.setRadius(radius);
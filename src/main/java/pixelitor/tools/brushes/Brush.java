@@ -22,6 +22,7 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * A brush.
@@ -34,6 +35,14 @@ public interface Brush {
      */
     void setTarget(Composition comp, Graphics2D g);
 
+    /**
+     * Sets the image behind the Graphics2D given in setTarget,
+     * so that brushes can blend their dabs directly into its pixels.
+     * It is called after setTarget, and it is optional.
+     */
+    default void setTargetImage(BufferedImage image) {
+    }
+
     /**
      * Sets the radius of the brush
      */
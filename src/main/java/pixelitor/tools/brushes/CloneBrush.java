@@ -108,11 +108,12 @@ public class CloneBrush extends CopyBrush {
 
     @Override
     public void putDab(PPoint p, double theta) {
-        AffineTransform transform = AffineTransform.getTranslateInstance(
-                p.getImX() - radius,
-                p.getImY() - radius
-        );
-        targetG.drawImage(brushImage, transform, null);
+        double tx = p.getImX() - radius;
+        double ty = p.getImY() - radius;
+        if (!blitBrushImage(tx, ty)) {
+            AffineTransform transform = AffineTransform.getTranslateInstance(tx, ty);
+            targetG.drawImage(brushImage, transform, null);
+        }
         updateComp(p);
     }
 
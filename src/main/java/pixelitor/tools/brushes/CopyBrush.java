@@ -17,6 +17,7 @@
 
 package pixelitor.tools.brushes;
 
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Utils;
 import pixelitor.utils.debug.DebugNode;
 
@@ -57,6 +58,23 @@ public abstract class CopyBrush extends DabsBrush {
         type.setSize(diameter);
     }
 
+    /**
+     * Blends the brush image with its top-left corner at the given
+     * point directly into the target image. Returns false if
+     * it has to be drawn with the Graphics2D instead.
+     */
+    protected boolean blitBrushImage(double tx, double ty) {
+        if (blitter == null) {
+            return false;
+        }
+        // the same pixels as with a nearest neighbor translation:
+        // the destination pixel centers are mapped back to the source
+        int x0 = (int) Math.ceil(tx - 0.5);
+        int y0 = (int) Math.ceil(ty - 0.5);
+        return blitter.blendImage(ImageUtils.getPixelsAsArray(brushImage),
+                brushImage.getWidth(), brushImage.getHeight(), x0, y0);
+    }
+
     public void debugImage() {
         if (debugBrushImage) {
             Utils.debugImage(brushImage, "Copy Brush");
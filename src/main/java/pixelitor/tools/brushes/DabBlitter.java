@@ -0,0 +1,407 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import static java.awt.AlphaComposite.DST_OUT;
+import static java.awt.AlphaComposite.SRC_OVER;
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Blends dab stamps and brush images directly into the
+ * int pixel array of the brush stroke's target image.
+ * <p>
+ * Only the common cases are handled here: int ARGB images,
+ * an identity transform and the SrcOver or DstOut alpha
+ * composites. The blend methods return false if the current
+ * state of the Graphics2D is not supported, and then
+ * the brush has to draw with the Graphics2D.
+ */
+class DabBlitter {
+    // clip shapes with a larger bounding box are not rasterized
+    private static final long MAX_CLIP_MASK_AREA = 64L * 1024 * 1024;
+
+    // The 8-bit multiplication and division tables, calculated in the
+    // same way as in Java2D's native loops (AlphaMath.c), so that the
+    // rounding errors accumulate in the same way in overlapping dabs.
+    // MUL8[a << 8 | b] = a * b / 255, DIV8[a << 8 | b] = b * 255 / a
+    private static final byte[] MUL8 = new byte[256 * 256];
+    private static final byte[] DIV8 = new byte[256 * 256];
+
+    static {
+        for (int a = 1; a < 256; a++) {
+            long inc = a * 0x01_01_01L;
+            long val = inc + (1 << 23);
+            for (int b = 1; b < 256; b++) {
+                MUL8[a << 8 | b] = (byte) (val >>> 24);
+                val += inc;
+            }
+        }
+        for (int a = 1; a < 256; a++) {
+            long inc = ((0xFFL << 24) + a / 2) / a;
+            long val = 1 << 23;
+            for (int b = 0; b < 256; b++) {
+                DIV8[a << 8 | b] = (byte) (b < a ? val >>> 24 : 255);
+                val += inc;
+            }
+        }
+    }
+
+    private final Graphics2D g;
+    private final int[] pixels;
+    private final int stride;
+    // the array index of the pixel at 0, 0
+    private final int origin;
+    private final boolean premultiplied;
+
+    // the drawable area (image bounds intersected with the clip)
+    private final int minX;
+    private final int minY;
+    private final int maxX; // exclusive
+    private final int maxY; // exclusive
+
+    // the rasterized clip shape over the drawable area,
+    // or null if the clip is a rectangle or there is no clip
+    private final byte[] clipMask;
+
+    private DabBlitter(Graphics2D g, int[] pixels, int stride, int origin,
+                       boolean premultiplied, Rectangle area, byte[] clipMask) {
+        this.g = g;
+        this.pixels = pixels;
+        this.stride = stride;
+        this.origin = origin;
+        this.premultiplied = premultiplied;
+        this.clipMask = clipMask;
+
+        minX = area.x;
+        minY = area.y;
+        maxX = area.x + area.width;
+        maxY = area.y + area.height;
+    }
+
+    /**
+     * Returns a blitter for the given Graphics2D and its image,
+     * or null if the fast path is not possible at all.
+     */
+    static DabBlitter create(Graphics2D g, BufferedImage image) {
+        if (g == null || image == null) {
+            return null;
+        }
+        int type = image.getType();
+        if (type != TYPE_INT_ARGB && type != TYPE_INT_ARGB_PRE) {
+            return null;
+        }
+        if (!g.getTransform().isIdentity()) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return null;
+        }
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if (!(dataBuffer instanceof DataBufferInt)) {
+            return null;
+        }
+        SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int stride = sm.getScanlineStride();
+        // for sub-images the raster's sample model is translated
+        int origin = dataBuffer.getOffset()
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX();
+
+        Rectangle area = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+        byte[] clipMask = null;
+        Shape clip = g.getClip();
+        if (clip != null) {
+            area = area.intersection(clip.getBounds());
+            if (!isIntRectangle(clip)) {
+                if ((long) area.width * area.height > MAX_CLIP_MASK_AREA) {
+                    return null;
+                }
+                if (!area.isEmpty()) {
+                    clipMask = rasterizeClip(clip, area);
+                }
+            }
+        }
+        if (area.isEmpty()) {
+            area = new Rectangle(0, 0, 0, 0);
+        }
+
+        int[] pixels = ((DataBufferInt) dataBuffer).getData();
+        return new DabBlitter(g, pixels, stride, origin,
+                type == TYPE_INT_ARGB_PRE, area, clipMask);
+    }
+
+    private static boolean isIntRectangle(Shape clip) {
+        if (clip instanceof Rectangle) {
+            return true;
+        }
+        if (clip instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) clip;
+            return r.getX() == Math.floor(r.getX())
+                    && r.getY() == Math.floor(r.getY())
+                    && r.getWidth() == Math.floor(r.getWidth())
+                    && r.getHeight() == Math.floor(r.getHeight());
+        }
+        return false;
+    }
+
+    /**
+     * Rasterizes the clip shape without antialiasing,
+     * because Java2D also uses hard clipping
+     */
+    private static byte[] rasterizeClip(Shape clip, Rectangle area) {
+        BufferedImage maskImage = new BufferedImage(area.width, area.height, TYPE_BYTE_GRAY);
+        Graphics2D mg = maskImage.createGraphics();
+        mg.translate(-area.x, -area.y);
+        mg.setColor(Color.WHITE);
+        mg.fill(clip);
+        mg.dispose();
+        return ((DataBufferByte) maskImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Blends the given stamp as a mask of the current color
+     * of the Graphics2D, with the stamp's anchor at the given pixel.
+     */
+    boolean blendMask(DabStamp stamp, int anchorX, int anchorY) {
+        Paint paint = g.getPaint();
+        if (!(paint instanceof Color)) {
+            return false;
+        }
+        return blendMask(stamp, anchorX, anchorY, ((Color) paint).getRGB());
+    }
+
+    /**
+     * Blends the given stamp as a mask of the given
+     * non-premultiplied ARGB color.
+     */
+    boolean blendMask(DabStamp stamp, int anchorX, int anchorY, int argb) {
+        int rule = getRule();
+        if (rule < 0) {
+            return false;
+        }
+        // the extra alpha is applied to the color
+        // in the same way as in SunGraphics2D
+        int srcA = Math.round(getExtraAlpha() * (argb >>> 24));
+        if (srcA == 0) {
+            return true;
+        }
+        int srcR = (argb >>> 16) & 0xFF;
+        int srcG = (argb >>> 8) & 0xFF;
+        int srcB = argb & 0xFF;
+        if (srcA != 255) {
+            srcR = mul8(srcA, srcR);
+            srcG = mul8(srcA, srcG);
+            srcB = mul8(srcA, srcB);
+        }
+        int srcRGB = srcR << 16 | srcG << 8 | srcB;
+
+        int x0 = anchorX + stamp.offsetX;
+        int y0 = anchorY + stamp.offsetY;
+        int startX = Math.max(x0, minX);
+        int startY = Math.max(y0, minY);
+        int endX = Math.min(x0 + stamp.width, maxX);
+        int endY = Math.min(y0 + stamp.height, maxY);
+
+        // local copies for the hot loop
+        byte[] alpha = stamp.alpha;
+        int[] pixels = this.pixels;
+        byte[] clipMask = this.clipMask;
+        int clipWidth = maxX - minX;
+        int rowLength = endX - startX;
+        for (int y = startY; y < endY; y++) {
+            int maskStart = (y - y0) * stamp.width + (startX - x0);
+            int pixelStart = origin + y * stride + startX;
+            int clipStart = (y - minY) * clipWidth + (startX - minX);
+            for (int i = 0; i < rowLength; i++) {
+                int pathA = alpha[maskStart + i] & 0xFF;
+                if (pathA == 0 || (clipMask != null && clipMask[clipStart + i] == 0)) {
+                    continue;
+                }
+                int pixelIndex = pixelStart + i;
+                if (rule == DST_OUT) {
+                    int dstF = 255 - srcA;
+                    if (pathA != 255) {
+                        dstF = 255 - pathA + mul8(pathA, dstF);
+                    }
+                    pixels[pixelIndex] = dstOut(pixels[pixelIndex], dstF);
+                } else if (pathA == 255) {
+                    pixels[pixelIndex] = srcOver(pixels[pixelIndex], srcA, srcRGB);
+                } else {
+                    pixels[pixelIndex] = srcOver(pixels[pixelIndex], mul8(pathA, srcA),
+                            mul8(pathA, srcR) << 16 | mul8(pathA, srcG) << 8 | mul8(pathA, srcB));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Blends a non-premultiplied ARGB image with its
+     * top-left corner at the given pixel.
+     */
+    boolean blendImage(int[] src, int width, int height, int x0, int y0) {
+        int rule = getRule();
+        if (rule < 0) {
+            return false;
+        }
+        // calculated in double precision, as in Java2D
+        int extraA = (int) (getExtraAlpha() * 255.0 + 0.5);
+
+        int startX = Math.max(x0, minX);
+        int startY = Math.max(y0, minY);
+        int endX = Math.min(x0 + width, maxX);
+        int endY = Math.min(y0 + height, maxY);
+
+        int[] pixels = this.pixels;
+        byte[] clipMask = this.clipMask;
+        int clipWidth = maxX - minX;
+        int rowLength = endX - startX;
+        for (int y = startY; y < endY; y++) {
+            int srcStart = (y - y0) * width + (startX - x0);
+            int pixelStart = origin + y * stride + startX;
+            int clipStart = (y - minY) * clipWidth + (startX - minX);
+            for (int i = 0; i < rowLength; i++) {
+                int srcRGB = src[srcStart + i];
+                int srcA = mul8(extraA, srcRGB >>> 24);
+                if (srcA == 0 || (clipMask != null && clipMask[clipStart + i] == 0)) {
+                    continue;
+                }
+                int pixelIndex = pixelStart + i;
+                if (rule == DST_OUT) {
+                    pixels[pixelIndex] = dstOut(pixels[pixelIndex], 255 - srcA);
+                } else if (srcA == 255) {
+                    pixels[pixelIndex] = srcRGB | 0xFF_00_00_00;
+                } else {
+                    pixels[pixelIndex] = srcOver(pixels[pixelIndex], srcA,
+                            mul8(srcA, (srcRGB >>> 16) & 0xFF) << 16
+                                    | mul8(srcA, (srcRGB >>> 8) & 0xFF) << 8
+                                    | mul8(srcA, srcRGB & 0xFF));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the supported composite rule of the Graphics2D, or -1
+     */
+    private int getRule() {
+        Composite composite = g.getComposite();
+        if (!(composite instanceof AlphaComposite)) {
+            return -1;
+        }
+        int rule = ((AlphaComposite) composite).getRule();
+        if (rule == SRC_OVER || rule == DST_OUT) {
+            return rule;
+        }
+        return -1;
+    }
+
+    private float getExtraAlpha() {
+        return ((AlphaComposite) g.getComposite()).getAlpha();
+    }
+
+    /**
+     * SrcOver with a source color that is already
+     * premultiplied with the given alpha
+     */
+    private int srcOver(int dstRGB, int srcA, int srcRGB) {
+        if (srcA == 255) {
+            return srcRGB | 0xFF_00_00_00;
+        }
+        int dstF = 255 - srcA;
+        int dstA = dstRGB >>> 24;
+        int dstR = (dstRGB >>> 16) & 0xFF;
+        int dstG = (dstRGB >>> 8) & 0xFF;
+        int dstB = dstRGB & 0xFF;
+        int resR = (srcRGB >>> 16) & 0xFF;
+        int resG = (srcRGB >>> 8) & 0xFF;
+        int resB = srcRGB & 0xFF;
+        if (premultiplied) {
+            return (srcA + mul8(dstF, dstA)) << 24
+                    | (resR + mul8(dstF, dstR)) << 16
+                    | (resG + mul8(dstF, dstG)) << 8
+                    | (resB + mul8(dstF, dstB));
+        }
+        // the weight of the destination color in the result
+        int dstWeight = mul8(dstF, dstA);
+        int resA = srcA + dstWeight;
+        if (dstWeight != 0) {
+            resR += mul8(dstWeight, dstR);
+            resG += mul8(dstWeight, dstG);
+            resB += mul8(dstWeight, dstB);
+        }
+        return unPremultiply(resA, resR, resG, resB);
+    }
+
+    /**
+     * Scales the destination with the given factor
+     */
+    private int dstOut(int dstRGB, int dstF) {
+        if (dstF == 255) {
+            return dstRGB;
+        }
+        int dstA = dstRGB >>> 24;
+        int dstR = (dstRGB >>> 16) & 0xFF;
+        int dstG = (dstRGB >>> 8) & 0xFF;
+        int dstB = dstRGB & 0xFF;
+        if (premultiplied) {
+            return mul8(dstF, dstA) << 24
+                    | mul8(dstF, dstR) << 16
+                    | mul8(dstF, dstG) << 8
+                    | mul8(dstF, dstB);
+        }
+        int resA = mul8(dstF, dstA);
+        return unPremultiply(resA, mul8(resA, dstR), mul8(resA, dstG), mul8(resA, dstB));
+    }
+
+    private static int unPremultiply(int a, int r, int g, int b) {
+        if (a == 0) {
+            return 0;
+        }
+        if (a < 255) {
+            int row = a << 8;
+            r = DIV8[row + r] & 0xFF;
+            g = DIV8[row + g] & 0xFF;
+            b = DIV8[row + b] & 0xFF;
+        }
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int mul8(int a, int b) {
+        return MUL8[a << 8 | b] & 0xFF;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+/**
+ * A pre-rasterized brush tip: an alpha mask that can be
+ * blended into an image by a {@link DabBlitter}
+ */
+class DabStamp {
+    final byte[] alpha;
+    final int width;
+    final int height;
+
+    // the position of the mask's top-left corner
+    // relative to the integer anchor pixel of the dab
+    final int offsetX;
+    final int offsetY;
+
+    DabStamp(byte[] alpha, int width, int height, int offsetX, int offsetY) {
+        this.alpha = alpha;
+        this.width = width;
+        this.height = height;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    int getSizeInBytes() {
+        return alpha.length + 32;
+    }
+}
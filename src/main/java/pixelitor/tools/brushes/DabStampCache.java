@@ -0,0 +1,226 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_STROKE_CONTROL;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.RenderingHints.VALUE_STROKE_PURE;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Caches the brush tip rasterized into alpha masks at quantized
+ * sub-pixel offsets and angles, so that the dabs of a stroke
+ * don't have to go through the Java2D rasterizer one by one.
+ * <p>
+ * The dab centers are rounded to an eighth of a pixel (a quarter
+ * pixel for rotated dabs), and the angles to a step that moves
+ * the tip's edge by at most a quarter pixel.
+ * The least recently used stamps are evicted when the
+ * cache grows over its memory budget.
+ */
+class DabStampCache {
+    // the number of sub-pixel positions along each axis
+    private static final int SUB = 8;
+
+    // rotated dabs are positioned more coarsely, because every
+    // angle needs its own stamps, so the finer positions would
+    // cost more in cache misses than they gain in precision
+    private static final int ROTATED_SUB = 4;
+
+    private static final int MIN_ANGLE_STEPS = 64;
+    private static final int MAX_ANGLE_STEPS = 4096;
+
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Renders the tip in an opaque color with
+     * the given center and rotation angle
+     */
+    interface TipRenderer {
+        void render(Graphics2D g, double cx, double cy, double theta);
+    }
+
+    private final TipRenderer renderer;
+
+    private Object tipKey;
+    private double diameter;
+    private int pad;
+    private int angleSteps;
+
+    private final LinkedHashMap<Long, DabStamp> stamps
+            = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+
+    private BufferedImage scratch;
+
+    // the integer anchor pixel of the last dab
+    private int anchorX;
+    private int anchorY;
+
+    DabStampCache(TipRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * Sets the tip that is rendered. The tip key identifies
+     * everything (other than the diameter) that influences the
+     * rendering, and the cached stamps are thrown away if it changes.
+     */
+    void setTip(Object tipKey, double diameter) {
+        if (Objects.equals(this.tipKey, tipKey) && this.diameter == diameter) {
+            return;
+        }
+        this.tipKey = tipKey;
+        this.diameter = diameter;
+        clear();
+
+        double radius = diameter / 2.0;
+        // the diagonal of a rotated square tip must also fit
+        pad = (int) Math.ceil(radius * Math.sqrt(2)) + 2;
+        int steps = (int) Math.ceil(2 * Math.PI * radius * ROTATED_SUB);
+        angleSteps = Math.max(MIN_ANGLE_STEPS, Math.min(MAX_ANGLE_STEPS, steps));
+
+        int scratchSize = 2 * pad + 1;
+        scratch = new BufferedImage(scratchSize, scratchSize, TYPE_INT_ARGB);
+    }
+
+    /**
+     * Returns the stamp for a dab centered at the given point.
+     * The stamp's offsets are relative to the anchor pixel,
+     * which is available from {@link #getAnchorX()} and
+     * {@link #getAnchorY()} until the next call.
+     */
+    DabStamp get(double x, double y, double theta) {
+        assert tipKey != null;
+
+        int sub = theta == 0 ? SUB : ROTATED_SUB;
+        int qx = (int) Math.round(x * sub);
+        int qy = (int) Math.round(y * sub);
+        anchorX = Math.floorDiv(qx, sub);
+        anchorY = Math.floorDiv(qy, sub);
+        // in units of 1/SUB pixels
+        int subX = (qx - anchorX * sub) * (SUB / sub);
+        int subY = (qy - anchorY * sub) * (SUB / sub);
+
+        int angleIndex = 0;
+        if (theta != 0) {
+            double turns = theta / (2 * Math.PI);
+            turns -= Math.floor(turns);
+            angleIndex = (int) Math.round(turns * angleSteps) % angleSteps;
+        }
+
+        long key = ((long) angleIndex * SUB + subY) * SUB + subX;
+        DabStamp stamp = stamps.get(key);
+        if (stamp == null) {
+            double quantizedTheta = 2 * Math.PI * angleIndex / angleSteps;
+            stamp = render(subX / (double) SUB, subY / (double) SUB, quantizedTheta);
+            stamps.put(key, stamp);
+            bytes += stamp.getSizeInBytes();
+            evictIfNecessary();
+        }
+        return stamp;
+    }
+
+    int getAnchorX() {
+        return anchorX;
+    }
+
+    int getAnchorY() {
+        return anchorY;
+    }
+
+    private DabStamp render(double subX, double subY, double theta) {
+        int size = scratch.getWidth();
+        int[] pixels = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, 0);
+
+        Graphics2D g = scratch.createGraphics();
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(KEY_STROKE_CONTROL, VALUE_STROKE_PURE);
+        g.setColor(Color.WHITE);
+        renderer.render(g, pad + subX, pad + subY, theta);
+        g.dispose();
+
+        // trim the transparent border
+        int minX = size;
+        int minY = size;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < size; y++) {
+            int rowStart = y * size;
+            for (int x = 0; x < size; x++) {
+                if (pixels[rowStart + x] >>> 24 != 0) {
+                    if (x < minX) {
+                        minX = x;
+                    }
+                    if (x > maxX) {
+                        maxX = x;
+                    }
+                    if (y < minY) {
+                        minY = y;
+                    }
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            return new DabStamp(new byte[0], 0, 0, 0, 0);
+        }
+
+        int width = maxX - minX + 1;
+        int height = maxY - minY + 1;
+        byte[] alpha = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int srcStart = (y + minY) * size + minX;
+            int destStart = y * width;
+            for (int x = 0; x < width; x++) {
+                alpha[destStart + x] = (byte) (pixels[srcStart + x] >>> 24);
+            }
+        }
+        return new DabStamp(alpha, width, height, minX - pad, minY - pad);
+    }
+
+    private void evictIfNecessary() {
+        Iterator<Map.Entry<Long, DabStamp>> it = stamps.entrySet().iterator();
+        // the most recently added stamp is never evicted
+        while (bytes > MAX_BYTES && stamps.size() > 1) {
+            DabStamp evicted = it.next().getValue();
+            it.remove();
+            bytes -= evicted.getSizeInBytes();
+        }
+    }
+
+    void clear() {
+        stamps.clear();
+        bytes = 0;
+    }
+}
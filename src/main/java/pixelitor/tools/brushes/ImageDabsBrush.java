@@ -42,6 +42,9 @@ public class ImageDabsBrush extends DabsBrush {
     private BufferedImage finalScaledImg;
     private Color lastColor;
 
+    // the rotated dabs are cached as masks of the scaled image's alpha
+    private final DabStampCache rotatedStamps = new DabStampCache(this::renderRotatedTip);
+
     public ImageDabsBrush(double radius, ImageBrushType imageBrushType,
                           double spacingRatio, AngleSettings angleSettings) {
         super(radius, new RadiusRatioSpacing(spacingRatio),
@@ -122,8 +125,13 @@ public class ImageDabsBrush extends DabsBrush {
         int drawStartX = (int) (x - radius);
         int drawStartY = (int) (y - radius);
         if (!settings.isAngleAware() || theta == 0) {
-            targetG.drawImage(finalScaledImg, drawStartX, drawStartY, null);
-        } else {
+            if (blitter == null || !blitter.blendImage(
+                    ImageUtils.getPixelsAsArray(finalScaledImg),
+                    finalScaledImg.getWidth(), finalScaledImg.getHeight(),
+                    drawStartX, drawStartY)) {
+                targetG.drawImage(finalScaledImg, drawStartX, drawStartY, null);
+            }
+        } else if (!putRotatedStamp(x, y, theta)) {
             AffineTransform oldTransform = targetG.getTransform();
             targetG.rotate(theta, x, y);
             targetG.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
@@ -132,4 +140,23 @@ public class ImageDabsBrush extends DabsBrush {
         }
         updateComp(p);
     }
+
+    private boolean putRotatedStamp(double x, double y, double theta) {
+        if (blitter == null) {
+            return false;
+        }
+        // the alpha of the scaled image depends only on its size
+        rotatedStamps.setTip(finalScaledImg.getWidth(), diameter);
+        DabStamp stamp = rotatedStamps.get(x, y, theta);
+        // the brush image is always opaque where the template is black
+        int rgb = 0xFF_00_00_00 | lastColor.getRGB();
+        return blitter.blendMask(stamp,
+                rotatedStamps.getAnchorX(), rotatedStamps.getAnchorY(), rgb);
+    }
+
+    private void renderRotatedTip(Graphics2D g, double cx, double cy, double theta) {
+        g.rotate(theta, cx, cy);
+        g.translate(cx - radius, cy - radius);
+        g.drawImage(finalScaledImg, 0, 0, null);
+    }
 }
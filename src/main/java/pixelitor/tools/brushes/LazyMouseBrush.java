@@ -24,6 +24,7 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * A brush with the "lazy mouse" feature enabled is
@@ -79,6 +80,11 @@ public class LazyMouseBrush implements Brush {
         ic = comp.getIC();
     }
 
+    @Override
+    public void setTargetImage(BufferedImage image) {
+        delegate.setTargetImage(image);
+    }
+
     @Override
     public void setRadius(double radius) {
         delegate.setRadius(radius);
@@ -32,6 +32,10 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
  * A {@link DabsBrush} where the dabs are filled shapes
  */
 public class ShapeDabsBrush extends DabsBrush {
+    private ShapeType stampShapeType;
+    private final DabStampCache stampCache = new DabStampCache(
+            (g, cx, cy, theta) -> g.fill(createDabShape(stampShapeType, cx, cy, theta)));
+
     public ShapeDabsBrush(double radius, ShapeDabsBrushSettings settings) {
         super(radius, settings, false);
     }
@@ -47,16 +51,29 @@ public class ShapeDabsBrush extends DabsBrush {
         double x = p.getImX();
         double y = p.getImY();
         ShapeType shapeType = ((ShapeDabsBrushSettings)settings).getShapeType();
+
+        // the random star is different for each dab, so it can't be cached
+        boolean drawn = false;
+        if (blitter != null && shapeType != ShapeType.RANDOM_STAR) {
+            stampShapeType = shapeType;
+            stampCache.setTip(shapeType, diameter);
+            DabStamp stamp = stampCache.get(x, y, theta);
+            drawn = blitter.blendMask(stamp,
+                    stampCache.getAnchorX(), stampCache.getAnchorY());
+        }
+        if (!drawn) {
+            targetG.fill(createDabShape(shapeType, x, y, theta));
+        }
+        updateComp(p);
+    }
+
+    private Shape createDabShape(ShapeType shapeType, double x, double y, double theta) {
+        Shape shape = shapeType.getShape(x - radius, y - radius, diameter);
         if (theta != 0) {
-            Shape shape = shapeType.getShape(x - radius, y - radius, diameter);
             AffineTransform t = AffineTransform.getRotateInstance(theta, x, y);
-            Shape transformedShape = t.createTransformedShape(shape);
-            targetG.fill(transformedShape);
-        } else {
-            Shape shape = shapeType.getShape(x - radius, y - radius, diameter);
-            targetG.fill(shape);
+            return t.createTransformedShape(shape);
         }
-        updateComp(p);
+        return shape;
     }
 
     @Override
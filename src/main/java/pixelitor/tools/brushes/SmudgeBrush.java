@@ -88,10 +88,8 @@ public class SmudgeBrush extends CopyBrush {
 
     @Override
     public void putDab(PPoint p, double theta) {
-        AffineTransform transform = AffineTransform.getTranslateInstance(
-                p.getImX() - radius,
-                p.getImY() - radius
-        );
+        double tx = p.getImX() - radius;
+        double ty = p.getImY() - radius;
 
         // TODO SrcOver allows to smudge into transparent areas, but transparency
         // cannot be smudged into non-transparent areas
@@ -103,7 +101,10 @@ public class SmudgeBrush extends CopyBrush {
 
 //        targetG.setComposite(BlendComposite.CrossFade.derive(strength));
 
-        targetG.drawImage(brushImage, transform, null);
+        if (!blitBrushImage(tx, ty)) {
+            AffineTransform transform = AffineTransform.getTranslateInstance(tx, ty);
+            targetG.drawImage(brushImage, transform, null);
+        }
 
         last = p;
 
@@ -25,6 +25,7 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 /**
  * Delegates the work to other brushes according to the symmetry and brush type settings
@@ -61,6 +62,13 @@ public class SymmetryBrush implements Brush {
         }
     }
 
+    @Override
+    public void setTargetImage(BufferedImage image) {
+        for(int i = 0; i < numInstantiatedBrushes; i++) {
+            brushes[i].setTargetImage(image);
+        }
+    }
+
     @Override
     public void setRadius(double radius) {
         for(int i = 0; i < numInstantiatedBrushes; i++) {
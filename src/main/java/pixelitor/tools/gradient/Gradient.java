@@ -17,12 +17,14 @@
 
 package pixelitor.tools.gradient;
 
+import pixelitor.Composition;
 import pixelitor.gui.View;
 import pixelitor.layers.BlendingMode;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.LayerMask;
 import pixelitor.layers.TmpDrawingLayer;
 import pixelitor.tools.util.ImDrag;
+import pixelitor.utils.BufferPool;
 
 import java.awt.Color;
 import java.awt.Composite;
@@ -34,6 +36,7 @@ import java.awt.image.BufferedImage;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 
 /**
  * This class describes a gradient with all the information
@@ -64,40 +67,68 @@ public class Gradient {
     }
 
     public void drawOn(Drawable dr) {
-        Graphics2D g;
-        int width;
-        int height;
-        if (dr instanceof LayerMask) {
-            BufferedImage subImage = dr.getCanvasSizedSubImage();
-            g = subImage.createGraphics();
-            width = subImage.getWidth();
-            height = subImage.getHeight();
-        } else {
-            Composite composite = blendingMode.getComposite(opacity);
-            TmpDrawingLayer tmpDrawingLayer = dr.createTmpDrawingLayer(composite);
-            g = tmpDrawingLayer.getGraphics();
-            width = tmpDrawingLayer.getWidth();
-            height = tmpDrawingLayer.getHeight();
-        }
-        dr.getComp().applySelectionClipping(g);
+        drawOn(dr, 1);
+        dr.updateIconImage();
+    }
 
-        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+    /**
+     * Draws a fast, low resolution version of the gradient,
+     * which is used while a handle is dragged.
+     */
+    public void drawPreviewOn(Drawable dr) {
+        drawOn(dr, GradientRenderer.LOW_RES_BLOCK_SIZE);
+    }
 
+    private void drawOn(Drawable dr, int blockSize) {
         Color startColor = colorType.getStartColor(reverted);
         Color endColor = colorType.getEndColor(reverted);
         assert startColor != null;
         assert endColor != null;
-        Color[] colors = {startColor, endColor};
 
-        Paint paint = type.createPaint(imDrag, colors, cycleMethod);
+        if (dr instanceof LayerMask) {
+            // the paints also handle the gray color model of the mask
+            drawOnMask(dr, startColor, endColor);
+            return;
+        }
 
-        g.setPaint(paint);
+        Composite composite = blendingMode.getComposite(opacity);
+        TmpDrawingLayer tmpDrawingLayer = dr.createTmpDrawingLayer(composite);
+        BufferedImage tmpImage = tmpDrawingLayer.getImage();
+        Composition comp = dr.getComp();
 
-        g.fillRect(0, 0, width, height);
+        GradientRenderer renderer = new GradientRenderer(type, imDrag,
+                startColor, endColor, cycleMethod);
+        if (!comp.hasSelection() && GradientRenderer.canRenderInto(tmpImage)) {
+            renderer.render(tmpImage, blockSize);
+        } else {
+            // render into a scratch image, and let Java2D do
+            // the clipping and the color model conversion
+            BufferedImage gradientImage = BufferPool.leaseImage(
+                    tmpImage.getWidth(), tmpImage.getHeight(), TYPE_INT_ARGB_PRE);
+            renderer.render(gradientImage, blockSize);
+
+            Graphics2D g = tmpDrawingLayer.getGraphics();
+            comp.applySelectionClipping(g);
+            g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+            g.drawImage(gradientImage, 0, 0, null);
+            BufferPool.returnImage(gradientImage);
+        }
 
-        g.dispose();
         dr.mergeTmpDrawingLayerDown();
-        dr.updateIconImage();
+    }
+
+    private void drawOnMask(Drawable dr, Color startColor, Color endColor) {
+        BufferedImage subImage = dr.getCanvasSizedSubImage();
+        Graphics2D g = subImage.createGraphics();
+        dr.getComp().applySelectionClipping(g);
+
+        g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+
+        Color[] colors = {startColor, endColor};
+        Paint paint = type.createPaint(imDrag, colors, cycleMethod);
+        g.setPaint(paint);
+        g.fillRect(0, 0, subImage.getWidth(), subImage.getHeight());
+        g.dispose();
     }
 
     /**
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.gradient;
+
+import pixelitor.ThreadPool;
+import pixelitor.tools.util.ImDrag;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.Future;
+
+import static java.awt.MultipleGradientPaint.CycleMethod.NO_CYCLE;
+import static java.awt.MultipleGradientPaint.CycleMethod.REFLECT;
+import static java.awt.MultipleGradientPaint.CycleMethod.REPEAT;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+
+/**
+ * Renders a {@link Gradient} directly into the int pixels of an image,
+ * in parallel bands of rows. The colors are looked up from a precomputed
+ * color ramp. The interpolation math is the same as in the Java2D gradient
+ * paints (for the linear and radial types) and in the custom paints
+ * of the pixelitor.tools.gradient.paints package (for the other types).
+ * <p>
+ * In the low resolution mode only one color is calculated
+ * for each block of pixels, this is fast enough to
+ * be used while a gradient handle is dragged.
+ */
+class GradientRenderer {
+    private static final int RAMP_SIZE = 1024;
+    private static final int AA_RES = 4; // the resolution of AA supersampling
+    private static final int AA_RES2 = AA_RES * AA_RES;
+    private static final int BAND_HEIGHT = 32;
+
+    /**
+     * The size of the pixel blocks in the low resolution mode
+     */
+    public static final int LOW_RES_BLOCK_SIZE = 4;
+
+    private final Interpolator interpolator;
+    private final Color startColor;
+    private final Color endColor;
+
+    GradientRenderer(GradientType type, ImDrag imDrag,
+                     Color startColor, Color endColor, CycleMethod cycleMethod) {
+        this.startColor = startColor;
+        this.endColor = endColor;
+        interpolator = createInterpolator(type, imDrag, cycleMethod);
+    }
+
+    /**
+     * Returns true if the pixels of the given image can be written directly
+     */
+    static boolean canRenderInto(BufferedImage img) {
+        int type = img.getType();
+        if (type != TYPE_INT_ARGB && type != TYPE_INT_ARGB_PRE) {
+            return false;
+        }
+        WritableRaster raster = img.getRaster();
+        return raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Fills the whole image with the gradient. The image coordinates are
+     * the same as the coordinates of the drag that defines the gradient.
+     * The block size is 1 for the full quality rendering,
+     * and larger for the low resolution mode.
+     */
+    void render(BufferedImage img, int blockSize) {
+        assert canRenderInto(img);
+        assert blockSize >= 1;
+
+        int[] ramp = createRamp(img.isAlphaPremultiplied());
+
+        WritableRaster raster = img.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int[] pixels = ((DataBufferInt) dataBuffer).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int offset = dataBuffer.getOffset()
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX();
+        int width = img.getWidth();
+        int height = img.getHeight();
+
+        // the bands have to contain whole blocks
+        int bandHeight = Math.max(BAND_HEIGHT / blockSize, 1) * blockSize;
+        int numBands = (height + bandHeight - 1) / bandHeight;
+        if (numBands <= 1 || ThreadPool.getNumThreads() < 2) {
+            renderBand(pixels, offset, stride, width, 0, height, blockSize, ramp);
+            return;
+        }
+
+        Future<?>[] futures = new Future<?>[numBands];
+        for (int i = 0; i < numBands; i++) {
+            int startY = i * bandHeight;
+            int endY = Math.min(height, startY + bandHeight);
+            futures[i] = ThreadPool.submit(() ->
+                    renderBand(pixels, offset, stride, width, startY, endY, blockSize, ramp));
+        }
+        ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private void renderBand(int[] pixels, int offset, int stride, int width,
+                            int startY, int endY, int blockSize, int[] ramp) {
+        if (blockSize == 1) {
+            double[] row = new double[width];
+            for (int y = startY; y < endY; y++) {
+                interpolator.interpolateRow(y, row);
+                int index = offset + y * stride;
+                for (int x = 0; x < width; x++) {
+                    double interpolation = row[x];
+                    if (interpolator.needsAA(x, y, interpolation)) {
+                        pixels[index++] = calcAAColor(x, y, ramp);
+                    } else {
+                        pixels[index++] = ramp[toRampIndex(interpolation)];
+                    }
+                }
+            }
+            return;
+        }
+
+        // low resolution mode: the color in the center
+        // of the block is used for the whole block
+        int half = blockSize / 2;
+        for (int blockY = startY; blockY < endY; blockY += blockSize) {
+            int blockEndY = Math.min(endY, blockY + blockSize);
+            for (int blockX = 0; blockX < width; blockX += blockSize) {
+                int color = ramp[toRampIndex(interpolator.at(blockX + half, blockY + half))];
+                int blockEndX = Math.min(width, blockX + blockSize);
+                for (int y = blockY; y < blockEndY; y++) {
+                    int index = offset + y * stride;
+                    for (int x = blockX; x < blockEndX; x++) {
+                        pixels[index + x] = color;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Supersampling near the discontinuities
+     */
+    private int calcAAColor(int x, int y, int[] ramp) {
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int m = 0; m < AA_RES; m++) {
+            double yy = y + 1.0 / AA_RES * m - 0.5;
+            for (int n = 0; n < AA_RES; n++) {
+                double xx = x + 1.0 / AA_RES * n - 0.5;
+                int color = ramp[toRampIndex(interpolator.at(xx, yy))];
+                a += color >>> 24;
+                r += (color >>> 16) & 0xFF;
+                g += (color >>> 8) & 0xFF;
+                b += color & 0xFF;
+            }
+        }
+        return (a / AA_RES2) << 24
+                | (r / AA_RES2) << 16
+                | (g / AA_RES2) << 8
+                | (b / AA_RES2);
+    }
+
+    private static int toRampIndex(double interpolation) {
+        int index = (int) (interpolation * (RAMP_SIZE - 1) + 0.5);
+        if (index < 0) {
+            return 0;
+        }
+        if (index >= RAMP_SIZE) {
+            return RAMP_SIZE - 1;
+        }
+        return index;
+    }
+
+    private int[] createRamp(boolean premultiplied) {
+        int startAlpha = startColor.getAlpha();
+        int startRed = startColor.getRed();
+        int startGreen = startColor.getGreen();
+        int startBlue = startColor.getBlue();
+
+        int endAlpha = endColor.getAlpha();
+        int endRed = endColor.getRed();
+        int endGreen = endColor.getGreen();
+        int endBlue = endColor.getBlue();
+
+        int[] ramp = new int[RAMP_SIZE];
+        for (int i = 0; i < RAMP_SIZE; i++) {
+            double t = i / (double) (RAMP_SIZE - 1);
+            int a = (int) (startAlpha + t * (endAlpha - startAlpha));
+            int r = (int) (startRed + t * (endRed - startRed));
+            int g = (int) (startGreen + t * (endGreen - startGreen));
+            int b = (int) (startBlue + t * (endBlue - startBlue));
+            if (premultiplied && a != 255) {
+                r = (r * a + 127) / 255;
+                g = (g * a + 127) / 255;
+                b = (b * a + 127) / 255;
+            }
+            ramp[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return ramp;
+    }
+
+    private static Interpolator createInterpolator(GradientType type,
+                                                   ImDrag imDrag,
+                                                   CycleMethod cycleMethod) {
+        switch (type) {
+            case LINEAR:
+                return new LinearInterpolator(imDrag, cycleMethod);
+            case RADIAL:
+                return new RadialInterpolator(imDrag, cycleMethod);
+            case ANGLE:
+                return new AngleInterpolator(imDrag, cycleMethod);
+            case SPIRAL_CW:
+                return new SpiralInterpolator(true, imDrag, cycleMethod);
+            case SPIRAL_CCW:
+                return new SpiralInterpolator(false, imDrag, cycleMethod);
+            case DIAMOND:
+                return new DiamondInterpolator(imDrag, cycleMethod);
+            default:
+                throw new IllegalStateException("type = " + type);
+        }
+    }
+
+    /**
+     * Maps a location to a value between 0 and 1
+     */
+    private abstract static class Interpolator {
+        protected final ImDrag imDrag;
+        protected final CycleMethod cycleMethod;
+
+        Interpolator(ImDrag imDrag, CycleMethod cycleMethod) {
+            this.imDrag = imDrag;
+            this.cycleMethod = cycleMethod;
+        }
+
+        abstract double at(double x, double y);
+
+        /**
+         * Calculates the interpolation for all pixels in a row
+         */
+        void interpolateRow(int y, double[] row) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = at(x, y);
+            }
+        }
+
+        /**
+         * Returns whether the given pixel is so close to a
+         * discontinuity that it should be supersampled
+         */
+        boolean needsAA(int x, int y, double interpolation) {
+            return false;
+        }
+
+        /**
+         * The cycling of the Java2D gradient paints
+         */
+        double cycleUnbounded(double t) {
+            if (cycleMethod == NO_CYCLE) {
+                return Math.max(0.0, Math.min(1.0, t));
+            } else if (cycleMethod == REPEAT) {
+                return t - Math.floor(t);
+            } else { // REFLECT
+                t = Math.abs(t) % 2.0;
+                return t > 1.0 ? 2.0 - t : t;
+            }
+        }
+
+        /**
+         * The cycling of the custom gradient paints, for values between 0 and 1
+         */
+        double cycleCustom(double interpolation) {
+            if (cycleMethod == REFLECT) {
+                if (interpolation < 0.5) {
+                    return 2.0 * interpolation;
+                } else {
+                    return 2.0 * (1 - interpolation);
+                }
+            } else if (cycleMethod == REPEAT) {
+                if (interpolation < 0.5) {
+                    return 2.0 * interpolation;
+                } else {
+                    return 2.0 * (interpolation - 0.5);
+                }
+            }
+            return interpolation;
+        }
+    }
+
+    private static class LinearInterpolator extends Interpolator {
+        private final double startX;
+        private final double startY;
+        private final double relDX;
+        private final double relDY;
+
+        LinearInterpolator(ImDrag imDrag, CycleMethod cycleMethod) {
+            super(imDrag, cycleMethod);
+            startX = imDrag.getStartX();
+            startY = imDrag.getStartY();
+            double dx = imDrag.getDX();
+            double dy = imDrag.getDY();
+            double distSq = dx * dx + dy * dy;
+            relDX = dx / distSq;
+            relDY = dy / distSq;
+        }
+
+        @Override
+        double at(double x, double y) {
+            double px = x - startX;
+            double py = y - startY;
+            return cycleUnbounded(px * relDX + py * relDY);
+        }
+
+        @Override
+        void interpolateRow(int y, double[] row) {
+            // the interpolation changes linearly along the row
+            double t = -startX * relDX + (y - startY) * relDY;
+            for (int x = 0; x < row.length; x++) {
+                row[x] = cycleUnbounded(t);
+                t += relDX;
+            }
+        }
+    }
+
+    private static class RadialInterpolator extends Interpolator {
+        private final double radius;
+
+        RadialInterpolator(ImDrag imDrag, CycleMethod cycleMethod) {
+            super(imDrag, cycleMethod);
+            radius = (float) imDrag.getDistance();
+        }
+
+        @Override
+        double at(double x, double y) {
+            return cycleUnbounded(imDrag.getStartDistanceFrom(x, y) / radius);
+        }
+    }
+
+    private static class AngleInterpolator extends Interpolator {
+        private final double drawAngle;
+
+        AngleInterpolator(ImDrag imDrag, CycleMethod cycleMethod) {
+            super(imDrag, cycleMethod);
+            drawAngle = imDrag.getDrawAngle();
+        }
+
+        @Override
+        double at(double x, double y) {
+            double relativeAngle = imDrag.getAngleFromStartTo(x, y) - drawAngle;
+            double interpolation = (relativeAngle / (Math.PI * 2)) + 1.0; // between 0..2
+            interpolation %= 1.0; // between 0..1
+            return cycleCustom(interpolation);
+        }
+
+        @Override
+        boolean needsAA(int x, int y, double interpolation) {
+            if (cycleMethod == REFLECT) {
+                return false;
+            }
+            double threshold = 0.2 / imDrag.taxiCabMetric(x, y);
+            return interpolation > (1.0 - threshold) || interpolation < threshold;
+        }
+    }
+
+    private static class SpiralInterpolator extends Interpolator {
+        private final boolean clockwise;
+        private final double drawAngle;
+        private final double dragDistance;
+
+        SpiralInterpolator(boolean clockwise, ImDrag imDrag, CycleMethod cycleMethod) {
+            super(imDrag, cycleMethod);
+            this.clockwise = clockwise;
+            drawAngle = imDrag.getDrawAngle() + Math.PI; // between 0 and 2*PI
+            dragDistance = imDrag.getDistance();
+        }
+
+        @Override
+        double at(double x, double y) {
+            double renderAngle = imDrag.getAngleFromStartTo(x, y) + Math.PI;
+            double relativeAngle;
+            if (clockwise) {
+                relativeAngle = renderAngle - drawAngle;
+            } else {
+                relativeAngle = drawAngle - renderAngle;
+            }
+            if (relativeAngle < 0) {
+                relativeAngle += (2 * Math.PI);
+            }
+            relativeAngle /= (2.0 * Math.PI);
+
+            double relativeDist = imDrag.getStartDistanceFrom(x, y) / dragDistance;
+
+            double interpolation = relativeAngle + relativeDist;
+            interpolation %= 1.0; // between 0..1
+            return cycleCustom(interpolation);
+        }
+
+        @Override
+        boolean needsAA(int x, int y, double interpolation) {
+            if (cycleMethod == REFLECT) {
+                return false;
+            }
+            double threshold;
+            if (cycleMethod == NO_CYCLE) {
+                threshold = 0.5 / dragDistance;
+            } else { // REPEAT
+                threshold = 1.0 / dragDistance;
+            }
+            return interpolation > (1.0 - threshold) || interpolation < threshold;
+        }
+    }
+
+    private static class DiamondInterpolator extends Interpolator {
+        private final double relDX;
+        private final double relDY;
+        private final double dragDist;
+
+        DiamondInterpolator(ImDrag imDrag, CycleMethod cycleMethod) {
+            super(imDrag, cycleMethod);
+            dragDist = imDrag.getDistance();
+            double dragDistSqr = dragDist * dragDist;
+            relDX = (float) (imDrag.getDX() / dragDistSqr);
+            relDY = (float) (imDrag.getDY() / dragDistSqr);
+        }
+
+        @Override
+        double at(double x, double y) {
+            double dx = x - imDrag.getStartX();
+            double dy = y - imDrag.getStartY();
+
+            double v1 = Math.abs((dx * relDX) + (dy * relDY));
+            double v2 = Math.abs((dx * relDY) - (dy * relDX));
+
+            double interpolation = v1 + v2;
+            if (cycleMethod == NO_CYCLE) {
+                return Math.min(interpolation, 1.0);
+            }
+            return cycleCustom(interpolation % 1.0);
+        }
+
+        @Override
+        boolean needsAA(int x, int y, double interpolation) {
+            if (cycleMethod != REPEAT) {
+                return false;
+            }
+            double threshold = 1.0 / dragDist;
+            return interpolation > (1.0 - threshold) || interpolation < threshold;
+        }
+    }
+}
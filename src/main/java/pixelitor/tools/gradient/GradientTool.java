@@ -26,6 +26,7 @@ import pixelitor.gui.View;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.History;
 import pixelitor.layers.Drawable;
+import pixelitor.layers.LayerMask;
 import pixelitor.tools.ClipStrategy;
 import pixelitor.tools.DragTool;
 import pixelitor.tools.gradient.history.GradientChangeEdit;
@@ -72,6 +73,9 @@ public class GradientTool extends DragTool {
     private Gradient lastGradient;
     private boolean ignoreRegenerate = false;
 
+    // true if a low resolution preview was drawn while dragging a handle
+    private boolean previewDrawn = false;
+
     public GradientTool() {
         super("Gradient", 'g', "gradient_tool_icon.png",
                 "<b>click</b> and <b>drag</b> to draw a gradient, " +
@@ -179,6 +183,8 @@ public class GradientTool extends DragTool {
             double x = e.getCoX();
             double y = e.getCoY();
             activePoint.mouseDragged(x, y, e.isShiftDown());
+
+            drawPreview(e);
         } else {
             // if we are dragging a new gradient from scratch,
             // we don't want to show the old handles
@@ -208,6 +214,13 @@ public class GradientTool extends DragTool {
 
             imDrag = handles.toImDrag(e.getView());
             if (imDrag.isClick()) {
+                if (previewDrawn) {
+                    // restore the gradient that was overwritten by the previews
+                    Drawable dr = e.getComp().getActiveDrawableOrThrow();
+                    lastGradient.drawOn(dr);
+                    dr.getComp().imageChanged();
+                    previewDrawn = false;
+                }
                 return;
             }
         } else { // a gradient was dragged
@@ -304,13 +317,45 @@ public class GradientTool extends DragTool {
         return (GradientType) typeSelector.getSelectedItem();
     }
 
-    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory) {
-        Gradient gradient = new Gradient(imDrag,
+    /**
+     * Draws a low resolution version of the gradient while a handle
+     * is dragged. This is possible only if both the old and the new
+     * gradient fully cover the pixels, because the preview overwrites
+     * the image before the history edit is created.
+     */
+    private void drawPreview(PMouseEvent e) {
+        if (handles == null || lastGradient == null || !lastGradient.fullyCovers()) {
+            return;
+        }
+        Drawable dr = e.getComp().getActiveDrawableOrThrow();
+        if (dr instanceof LayerMask) {
+            return;
+        }
+        ImDrag imDrag = handles.toImDrag(e.getView());
+        if (imDrag.isClick()) {
+            return;
+        }
+        Gradient gradient = createGradient(imDrag);
+        if (!gradient.fullyCovers()) {
+            return;
+        }
+
+        gradient.drawPreviewOn(dr);
+        dr.getComp().imageChanged();
+        previewDrawn = true;
+    }
+
+    private Gradient createGradient(ImDrag imDrag) {
+        return new Gradient(imDrag,
                 getType(), getCycleType(), getGradientColorType(),
                 revertCheckBox.isSelected(),
                 blendingModePanel.getBlendingMode(),
                 blendingModePanel.getOpacity());
+    }
 
+    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory) {
+        Gradient gradient = createGradient(imDrag);
+        previewDrawn = false;
 
         if (addToHistory) {
             boolean isFirst = lastGradient == null;
@@ -379,6 +424,7 @@ public class GradientTool extends DragTool {
     }
 
     public void setupMaskEditing(boolean editMask) {
+        initSettingsPanelIfNeeded();
         if (editMask) {
             blendingModePanel.setEnabled(false);
         } else {
@@ -394,6 +440,7 @@ public class GradientTool extends DragTool {
         }
 
         assert gradient != null;
+        initSettingsPanelIfNeeded();
         handles = gradient.createHandles(view);
 
         // set the settings
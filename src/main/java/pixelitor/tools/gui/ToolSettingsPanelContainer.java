@@ -24,28 +24,51 @@ import javax.swing.*;
 import java.awt.CardLayout;
 
 /**
- * The {@link ToolSettingsPanel}s for each tool in a CardLayout
+ * The {@link ToolSettingsPanel}s for each tool in a CardLayout.
+ * The panels are created only when they are first needed,
+ * so that only the panel of the default tool is built at startup.
  */
 public final class ToolSettingsPanelContainer extends JPanel {
     public static final ToolSettingsPanelContainer INSTANCE = new ToolSettingsPanelContainer();
 
     private ToolSettingsPanelContainer() {
         setLayout(new CardLayout());
-
-        Tool[] tools = Tools.getAll();
-        for (Tool tool : tools) {
-            ToolSettingsPanel p = new ToolSettingsPanel();
-            tool.setSettingsPanel(p);
-            tool.initSettingsPanel();
-            add(p, tool.getName());
-        }
     }
 
     public void showSettingsFor(Tool tool) {
+        if (!tool.hasSettingsPanel()) {
+            addSettingsPanelFor(tool);
+            revalidate();
+        }
         CardLayout cl = (CardLayout) (getLayout());
         cl.show(this, tool.getName());
     }
 
+    public void addSettingsPanelFor(Tool tool) {
+        assert !tool.hasSettingsPanel() : tool.getName();
+
+        ToolSettingsPanel p = new ToolSettingsPanel();
+        tool.setSettingsPanel(p);
+        tool.initSettingsPanel();
+        add(p, tool.getName());
+    }
+
+    /**
+     * Creates the remaining panels one by one in later
+     * event dispatch thread tasks, so that the height of the
+     * container doesn't change when a tool is selected for the first time.
+     */
+    public void addRemainingPanelsLater() {
+        for (Tool tool : Tools.getAll()) {
+            SwingUtilities.invokeLater(() -> {
+                if (!tool.hasSettingsPanel()) {
+                    addSettingsPanelFor(tool);
+                    revalidate();
+                }
+            });
+        }
+    }
+
     public void randomizeToolSettings() {
         int count = getComponentCount();
         for (int i = 0; i < count; i++) {
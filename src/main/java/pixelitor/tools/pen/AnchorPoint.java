@@ -31,6 +31,7 @@ import javax.swing.*;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.IllegalComponentStateException;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.geom.Line2D;
 
@@ -131,6 +132,31 @@ public class AnchorPoint extends DraggablePoint {
         ctrlIn.translateOnlyThis(dx, dy);
     }
 
+    @Override
+    protected void locationChanged() {
+        // the subpath is null while the constructor is running
+        if (subPath != null) {
+            subPath.getPath().handleMoved(this);
+        }
+    }
+
+    /**
+     * Returns whether the handles of this anchor point
+     * (including the control handles) could be visible
+     * if the given area was painted.
+     */
+    public boolean handlesIntersect(Rectangle area) {
+        double minX = Math.min(x, Math.min(ctrlIn.x, ctrlOut.x));
+        double minY = Math.min(y, Math.min(ctrlIn.y, ctrlOut.y));
+        double maxX = Math.max(x, Math.max(ctrlIn.x, ctrlOut.x));
+        double maxY = Math.max(y, Math.max(ctrlIn.y, ctrlOut.y));
+
+        // also consider the handle shadows
+        int margin = HANDLE_RADIUS + 2;
+        return area.intersects(minX - margin, minY - margin,
+                maxX - minX + 2 * margin, maxY - minY + 2 * margin);
+    }
+
     public DraggablePoint handleOrCtrlHandleWasHit(double x, double y,
                                                    boolean altDown) {
         if (altDown) {
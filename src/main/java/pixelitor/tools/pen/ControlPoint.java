@@ -60,6 +60,14 @@ public class ControlPoint extends DraggablePoint {
         super.setLocation(x, y);
     }
 
+    @Override
+    protected void locationChanged() {
+        // the anchor is null while the constructor is running
+        if (anchor != null) {
+            anchor.getSubPath().getPath().handleMoved(this);
+        }
+    }
+
     @Override
     public void setConstrainedLocation(double mouseX, double mouseY) {
         // constrain it relative to the anchor
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.pen;
+
+import pixelitor.gui.View;
+import pixelitor.tools.util.DraggablePoint;
+import pixelitor.utils.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static pixelitor.tools.util.DraggablePoint.HANDLE_RADIUS;
+
+/**
+ * A uniform grid of the anchor and control handles of a {@link Path},
+ * which makes the hit testing of paths with many anchors fast.
+ * The grid is in image space, so it is not affected by zooming,
+ * but the positions are calculated from the component space
+ * coordinates, because only those are always up to date.
+ * <p>
+ * The handles are added as the anchors are appended to the path and
+ * moved between the cells as they are dragged. Other structural changes
+ * discard the whole index, and the path creates a new one when needed.
+ * The identity-based maps are necessary because the equality
+ * of the points is based on their positions.
+ */
+class HandleIndex {
+    // the size of a grid cell in image pixels
+    private static final double CELL_SIZE = 32;
+
+    private final Map<Long, List<DraggablePoint>> cells = new HashMap<>();
+    private final Map<DraggablePoint, Long> cellOfHandle = new IdentityHashMap<>();
+
+    // the order of the anchors within the path: if the handles
+    // of more than one anchor are hit, then the first one wins
+    private final Map<AnchorPoint, Integer> anchorOrder = new IdentityHashMap<>();
+    private int nextOrder = 0;
+
+    HandleIndex(List<SubPath> subPaths) {
+        for (SubPath sp : subPaths) {
+            int numAnchors = sp.getNumAnchors();
+            for (int i = 0; i < numAnchors; i++) {
+                add(sp.getAnchor(i));
+            }
+        }
+    }
+
+    /**
+     * Adds an anchor that comes after all the already indexed anchors
+     */
+    void add(AnchorPoint anchor) {
+        anchorOrder.put(anchor, nextOrder++);
+        addHandle(anchor);
+        addHandle(anchor.ctrlIn);
+        addHandle(anchor.ctrlOut);
+    }
+
+    private void addHandle(DraggablePoint handle) {
+        long cell = cellOf(handle);
+        cellOfHandle.put(handle, cell);
+        cells.computeIfAbsent(cell, k -> new ArrayList<>(4)).add(handle);
+    }
+
+    /**
+     * Updates the cell of the given handle after its location changed.
+     * Handles that are not (yet) in the index are ignored.
+     */
+    void handleMoved(DraggablePoint handle) {
+        Long oldCell = cellOfHandle.get(handle);
+        if (oldCell == null) {
+            return;
+        }
+        long newCell = cellOf(handle);
+        if (newCell == oldCell) {
+            return;
+        }
+
+        List<DraggablePoint> oldList = cells.get(oldCell);
+        for (int i = 0; i < oldList.size(); i++) {
+            if (oldList.get(i) == handle) {
+                oldList.remove(i);
+                break;
+            }
+        }
+        if (oldList.isEmpty()) {
+            cells.remove(oldCell);
+        }
+        cellOfHandle.put(handle, newCell);
+        cells.computeIfAbsent(newCell, k -> new ArrayList<>(4)).add(handle);
+    }
+
+    /**
+     * Returns the same handle as checking all the anchors
+     * in the path order, but only the nearby anchors are checked.
+     * The given coordinates are in component space.
+     */
+    DraggablePoint findHit(double x, double y, boolean altDown, View view) {
+        double imX1 = view.componentXToImageSpace(x - HANDLE_RADIUS);
+        double imX2 = view.componentXToImageSpace(x + HANDLE_RADIUS);
+        double imY1 = view.componentYToImageSpace(y - HANDLE_RADIUS);
+        double imY2 = view.componentYToImageSpace(y + HANDLE_RADIUS);
+        int minCellX = toCell(Math.min(imX1, imX2));
+        int maxCellX = toCell(Math.max(imX1, imX2));
+        int minCellY = toCell(Math.min(imY1, imY2));
+        int maxCellY = toCell(Math.max(imY1, imY2));
+
+        DraggablePoint bestHit = null;
+        int bestOrder = Integer.MAX_VALUE;
+
+        long numCellsInRange = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (numCellsInRange <= cells.size()) {
+            for (int cx = minCellX; cx <= maxCellX; cx++) {
+                for (int cy = minCellY; cy <= maxCellY; cy++) {
+                    List<DraggablePoint> handles = cells.get(toKey(cx, cy));
+                    if (handles == null) {
+                        continue;
+                    }
+                    for (DraggablePoint handle : handles) {
+                        AnchorPoint anchor = anchorOf(handle);
+                        int order = anchorOrder.get(anchor);
+                        if (order < bestOrder) {
+                            DraggablePoint hit = anchor.handleOrCtrlHandleWasHit(x, y, altDown);
+                            if (hit != null) {
+                                bestHit = hit;
+                                bestOrder = order;
+                            }
+                        }
+                    }
+                }
+            }
+        } else {
+            // very zoomed out: it's faster to check all the anchors
+            for (Map.Entry<AnchorPoint, Integer> entry : anchorOrder.entrySet()) {
+                int order = entry.getValue();
+                if (order < bestOrder) {
+                    DraggablePoint hit = entry.getKey().handleOrCtrlHandleWasHit(x, y, altDown);
+                    if (hit != null) {
+                        bestHit = hit;
+                        bestOrder = order;
+                    }
+                }
+            }
+        }
+        return bestHit;
+    }
+
+    private static AnchorPoint anchorOf(DraggablePoint handle) {
+        if (handle instanceof ControlPoint) {
+            return ((ControlPoint) handle).getAnchor();
+        }
+        return (AnchorPoint) handle;
+    }
+
+    private static long cellOf(DraggablePoint handle) {
+        View view = handle.getView();
+        int cx = toCell(view.componentXToImageSpace(handle.x));
+        int cy = toCell(view.componentYToImageSpace(handle.y));
+        return toKey(cx, cy);
+    }
+
+    private static int toCell(double imCoord) {
+        return (int) Math.floor(imCoord / CELL_SIZE);
+    }
+
+    private static long toKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFF_FFFFL);
+    }
+
+    @VisibleForTesting
+    int getNumHandles() {
+        return cellOfHandle.size();
+    }
+}
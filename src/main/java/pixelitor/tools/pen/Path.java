@@ -64,6 +64,10 @@ public class Path implements Serializable {
     private BuildState prevBuildState;
     private transient PenToolMode preferredPenToolMode;
 
+    // created lazily for the hit testing, and discarded
+    // if the anchors change in a way that it can't follow
+    private transient HandleIndex handleIndex;
+
     public Path(Composition comp, boolean setAsActive) {
         this.comp = comp;
         if (setAsActive) {
@@ -117,13 +121,40 @@ public class Path implements Serializable {
     }
 
     public DraggablePoint handleWasHit(double x, double y, boolean altDown) {
-        for (SubPath sp : subPaths) {
-            DraggablePoint hit = sp.handleWasHit(x, y, altDown);
-            if (hit != null) {
-                return hit;
+        return handleWasHit(x, y, altDown, comp.getIC());
+    }
+
+    DraggablePoint handleWasHit(double x, double y, boolean altDown, View view) {
+        if (handleIndex == null) {
+            handleIndex = new HandleIndex(subPaths);
+        }
+        return handleIndex.findHit(x, y, altDown, view);
+    }
+
+    @VisibleForTesting
+    HandleIndex getHandleIndex() {
+        return handleIndex;
+    }
+
+    void anchorAdded(SubPath sp, AnchorPoint ap) {
+        if (handleIndex != null) {
+            if (sp == subPaths.get(subPaths.size() - 1)) {
+                handleIndex.add(ap);
+            } else {
+                // the order of the anchors would be wrong
+                handleIndex = null;
             }
         }
-        return null;
+    }
+
+    void anchorsChanged() {
+        handleIndex = null;
+    }
+
+    void handleMoved(DraggablePoint handle) {
+        if (handleIndex != null) {
+            handleIndex.handleMoved(handle);
+        }
     }
 
     public Shape toImageSpaceShape() {
@@ -153,6 +184,7 @@ public class Path implements Serializable {
         assert activeSubPath.getNumAnchors() == 1;
 
         subPaths.remove(lastIndex);
+        anchorsChanged();
         if (lastIndex == 0) {
             return true;
         }
@@ -162,6 +194,7 @@ public class Path implements Serializable {
 
     public void addSubPath(SubPath subPath) {
         subPaths.add(subPath);
+        anchorsChanged();
         activeSubPath = subPath;
     }
 
@@ -263,6 +296,7 @@ public class Path implements Serializable {
         for (SubPath subPath : subPaths) {
             subPath.setView(view);
         }
+        anchorsChanged();
     }
 
     public void finishActiveSubpath(String reason) {
@@ -286,6 +320,7 @@ public class Path implements Serializable {
 
         Path backup = copyForUndo();
         subPaths.removeIf(sp -> sp == subPath);
+        anchorsChanged();
         assert subPaths.size() >= 1; // should never be called for the last subpath
         activeSubPath = subPaths.get(subPaths.size() - 1);
         comp.repaint();
@@ -321,6 +356,7 @@ public class Path implements Serializable {
         assert activeSubPath == subPaths.get(index);
         subPaths.set(index, subPath);
         activeSubPath = subPath;
+        anchorsChanged();
     }
 
     public BuildState getBuildState() {
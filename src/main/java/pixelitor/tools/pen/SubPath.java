@@ -31,6 +31,7 @@ import pixelitor.utils.VisibleForTesting;
 import pixelitor.utils.debug.Ansi;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.GeneralPath;
 import java.io.PrintStream;
 import java.io.Serializable;
@@ -101,6 +102,7 @@ public class SubPath implements Serializable {
 
     public void addFirstPoint(AnchorPoint p, boolean addToHistory) {
         anchorPoints.add(p);
+        path.anchorAdded(this, p);
 
         if (addToHistory) {
             History.addEdit(new SubPathStartEdit(comp, path, this));
@@ -115,6 +117,7 @@ public class SubPath implements Serializable {
 //            return;
 //        }
         anchorPoints.add(p);
+        path.anchorAdded(this, p);
     }
 
     // not used in the builder, only in tests
@@ -148,6 +151,7 @@ public class SubPath implements Serializable {
     public AnchorPoint addMovingPointAsAnchor() {
         AnchorPoint ap = moving.toAnchor();
         anchorPoints.add(ap);
+        path.anchorAdded(this, ap);
         setMoving(null);
 
         AnchorPoint last = getLast();
@@ -250,6 +254,9 @@ public class SubPath implements Serializable {
     public void paintHandlesForBuilding(Graphics2D g, BuildState state) {
         assert checkConsistency();
 
+        // the handles outside the clip are not painted
+        Rectangle clip = g.getClipBounds();
+
         // paint first all anchor points, without the handles
         int numPoints = anchorPoints.size();
         for (int i = 0; i < numPoints; i++) {
@@ -275,7 +282,7 @@ public class SubPath implements Serializable {
                     AnchorPoint next = anchorPoints.get(0);
                     next.paintHandles(g, true, false);
                 }
-            } else {
+            } else if (clip == null || point.handlesIntersect(clip)) {
                 point.paintHandle(g);
             }
         }
@@ -299,19 +306,13 @@ public class SubPath implements Serializable {
     public void paintHandlesForEditing(Graphics2D g) {
         assert checkConsistency();
 
+        // the handles outside the clip are not painted
+        Rectangle clip = g.getClipBounds();
         for (AnchorPoint point : anchorPoints) {
-            point.paintHandles(g, true, true);
-        }
-    }
-
-    public DraggablePoint handleWasHit(double x, double y, boolean altDown) {
-        for (AnchorPoint anchor : anchorPoints) {
-            DraggablePoint hit = anchor.handleOrCtrlHandleWasHit(x, y, altDown);
-            if (hit != null) {
-                return hit;
+            if (clip == null || point.handlesIntersect(clip)) {
+                point.paintHandles(g, true, true);
             }
         }
-        return null;
     }
 
     /**
@@ -354,6 +355,7 @@ public class SubPath implements Serializable {
             newPoints.set(0, removedLast);
         }
         anchorPoints = newPoints;
+        path.anchorsChanged();
     }
 
     private static boolean tryMerging(AnchorPoint ap1, AnchorPoint ap2) {
@@ -521,6 +523,7 @@ public class SubPath implements Serializable {
             AnchorPoint point = anchorPoints.get(i);
             if (point == before) { // has to be reference equality
                 anchorPoints.set(i, after);
+                path.anchorsChanged();
                 replaced = true;
                 break;
             }
@@ -549,11 +552,13 @@ public class SubPath implements Serializable {
         }
 
         anchorPoints.remove(index);
+        path.anchorsChanged();
     }
 
     public void deleteLast() {
         int indexOfLast = anchorPoints.size() - 1;
         anchorPoints.remove(indexOfLast);
+        path.anchorsChanged();
     }
 
     public void setView(View view) {
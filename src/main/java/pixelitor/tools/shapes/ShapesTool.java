@@ -53,7 +53,6 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 
-import static pixelitor.Composition.ImageChangeActions.REPAINT;
 import static pixelitor.tools.shapes.ShapesToolState.INITIAL_DRAG;
 import static pixelitor.tools.shapes.ShapesToolState.NO_INTERACTION;
 import static pixelitor.tools.shapes.ShapesToolState.TRANSFORM;
@@ -200,7 +199,7 @@ public class ShapesTool extends DragTool {
         // this will trigger paintOverLayer, therefore the continuous drawing of the shape
         // TODO it could be optimized not to repaint the whole image, however
         // it is not easy as some shapes extend beyond their drag rectangle
-        comp.imageChanged(REPAINT);
+        comp.imageChangedWhileDragging();
     }
 
     @Override
@@ -45,7 +45,7 @@ import java.util.Optional;
 public class DraggablePoint extends Point2D.Double {
     private static final long serialVersionUID = 1L;
 
-    private static final int HANDLE_RADIUS = 5;
+    public static final int HANDLE_RADIUS = 5;
     private static final int HANDLE_DIAMETER = 2 * HANDLE_RADIUS;
     private static final int SHADOW_OFFSET = 1;
 
@@ -72,6 +72,7 @@ public class DraggablePoint extends Point2D.Double {
     @SuppressWarnings("TransientFieldNotInitialized")
     protected transient View view;
 
+    // the shapes are created lazily, only for the painted handles
     private Shape shape;
     private Shape shadow;
     private static final Composite shadowComposite = AlphaComposite.SrcOver.derive(0.7f);
@@ -88,7 +89,6 @@ public class DraggablePoint extends Point2D.Double {
 
         this.color = color;
         this.activeColor = activeColor;
-        setShapes();
         calcImCoords();
     }
 
@@ -103,7 +103,16 @@ public class DraggablePoint extends Point2D.Double {
         this.x = x;
         this.y = y;
 
-        setShapes();
+        shape = null;
+        shadow = null;
+        locationChanged();
+    }
+
+    /**
+     * Called after the location was changed in any way
+     * (including the zooming). Does nothing by default.
+     */
+    protected void locationChanged() {
     }
 
     public final void setLocationOnlyForThis(Point2D p) {
@@ -148,6 +157,10 @@ public class DraggablePoint extends Point2D.Double {
     }
 
     public void paintHandle(Graphics2D g) {
+        if (shape == null) {
+            setShapes();
+        }
+
         Composite c = g.getComposite();
         g.setComposite(shadowComposite);
         Shapes.fillVisible(g, shadow, Color.BLACK);
@@ -93,7 +93,9 @@ public class PMouseEvent extends PPoint.Lazy {
     }
 
     public void repaint() {
-        view.repaint();
+        // the tools call this while dragging, so the
+        // repaints can be coalesced into display frames
+        view.scheduleRepaint();
     }
 
     // TODO this is a workaround so that the transform box
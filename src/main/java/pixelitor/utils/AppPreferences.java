@@ -22,9 +22,12 @@ import pixelitor.Pixelitor;
 import pixelitor.TipsOfTheDay;
 import pixelitor.gui.ImageArea;
 import pixelitor.gui.PixelitorWindow;
+import pixelitor.gui.RepaintScheduler;
 import pixelitor.gui.utils.GUIUtils;
 import pixelitor.history.History;
 import pixelitor.io.Dirs;
+import pixelitor.io.PNGEncoder;
+import pixelitor.io.SaveSettings;
 import pixelitor.layers.LayerButtonLayout;
 import pixelitor.menus.file.RecentFile;
 import pixelitor.menus.file.RecentFilesMenu;
@@ -84,6 +87,10 @@ public final class AppPreferences {
 
     private static final String THUMB_SIZE_KEY = "thumb_size";
 
+    private static final String REPAINT_FPS_KEY = "repaint_fps";
+
+    private static final String PNG_COMPRESSION_KEY = "png_compression";
+
     private static final String LAST_TOOL_KEY = "last_tool";
 
     private AppPreferences() {
@@ -254,6 +261,26 @@ public final class AppPreferences {
         mainNode.putInt(THUMB_SIZE_KEY, LayerButtonLayout.getThumbSize());
     }
 
+    public static int loadRepaintFPS() {
+        return mainNode.getInt(REPAINT_FPS_KEY, RepaintScheduler.DEFAULT_TARGET_FPS);
+    }
+
+    private static void saveRepaintFPS() {
+        mainNode.putInt(REPAINT_FPS_KEY, RepaintScheduler.getTargetFPS());
+    }
+
+    public static int loadPNGCompressionLevel() {
+        int level = mainNode.getInt(PNG_COMPRESSION_KEY, PNGEncoder.DEFAULT_COMPRESSION_LEVEL);
+        if (!SaveSettings.isValidCompressionLevel(level)) {
+            return PNGEncoder.DEFAULT_COMPRESSION_LEVEL;
+        }
+        return level;
+    }
+
+    private static void savePNGCompressionLevel() {
+        mainNode.putInt(PNG_COMPRESSION_KEY, SaveSettings.getDefaultCompressionLevel());
+    }
+
     public static void savePrefsAndExit() {
         savePreferencesBeforeExit();
         System.exit(0);
@@ -269,6 +296,8 @@ public final class AppPreferences {
         WorkSpace.saveVisibility();
         saveUndoLevels();
         saveThumbSize();
+        saveRepaintFPS();
+        savePNGCompressionLevel();
         TipsOfTheDay.saveNextTipNr();
         saveNewImageSize();
         saveLastToolName();
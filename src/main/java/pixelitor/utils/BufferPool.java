@@ -0,0 +1,314 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * A memory-bounded pool of the large temporary buffers
+ * (int and float arrays and images) that the filters need
+ * while they are running. Reusing them avoids creating
+ * a lot of garbage while the filter previews are updated.
+ * <p>
+ * The arrays are grouped into size classes (powers of two
+ * and 1.5 times the powers of two), and a leased array
+ * can be longer than the requested length. Their content
+ * is undefined. The leased images always have the
+ * exact size and type, and they are cleared.
+ * <p>
+ * A leased buffer should be given back with the corresponding
+ * return method, and it must not be used afterwards. A buffer
+ * that is not returned (for example because of an exception)
+ * is simply garbage collected. Buffers that were not leased
+ * can also be given to the pool, if they are not referenced anymore.
+ */
+public final class BufferPool {
+    private static final int MIN_ARRAY_CAPACITY = 1024;
+
+    // the idle buffers, starting with the least recently returned
+    private static final List<Object> idleBuffers = new ArrayList<>();
+    private static long idleBytes = 0;
+    private static long maxIdleBytes = Runtime.getRuntime().maxMemory() / 16;
+
+    private static final Stats intStats = new Stats("int[]");
+    private static final Stats floatStats = new Stats("float[]");
+    private static final Stats imageStats = new Stats("Images");
+
+    private BufferPool() {
+        // should not be instantiated
+    }
+
+    /**
+     * Returns an int array with at least the given length
+     */
+    public static int[] leaseInts(int minLength) {
+        int capacity = capacityFor(minLength);
+        synchronized (BufferPool.class) {
+            for (int i = idleBuffers.size() - 1; i >= 0; i--) {
+                Object buffer = idleBuffers.get(i);
+                if (buffer instanceof int[]
+                        && sizeClassOf(((int[]) buffer).length) == capacity) {
+                    removeIdle(i);
+                    intStats.hit();
+                    return (int[]) buffer;
+                }
+            }
+            intStats.miss();
+        }
+        return new int[capacity];
+    }
+
+    /**
+     * Returns a float array with at least the given length
+     */
+    public static float[] leaseFloats(int minLength) {
+        int capacity = capacityFor(minLength);
+        synchronized (BufferPool.class) {
+            for (int i = idleBuffers.size() - 1; i >= 0; i--) {
+                Object buffer = idleBuffers.get(i);
+                if (buffer instanceof float[]
+                        && sizeClassOf(((float[]) buffer).length) == capacity) {
+                    removeIdle(i);
+                    floatStats.hit();
+                    return (float[]) buffer;
+                }
+            }
+            floatStats.miss();
+        }
+        return new float[capacity];
+    }
+
+    /**
+     * Returns a transparent image with the given size and
+     * type, which must be one of the predefined types.
+     */
+    public static BufferedImage leaseImage(int width, int height, int type) {
+        assert type != BufferedImage.TYPE_CUSTOM;
+        BufferedImage found = null;
+        synchronized (BufferPool.class) {
+            for (int i = idleBuffers.size() - 1; i >= 0; i--) {
+                Object buffer = idleBuffers.get(i);
+                if (buffer instanceof BufferedImage) {
+                    BufferedImage img = (BufferedImage) buffer;
+                    if (img.getWidth() == width && img.getHeight() == height
+                            && img.getType() == type) {
+                        removeIdle(i);
+                        found = img;
+                        break;
+                    }
+                }
+            }
+            if (found == null) {
+                imageStats.miss();
+            } else {
+                imageStats.hit();
+            }
+        }
+        if (found == null) {
+            return new BufferedImage(width, height, type);
+        }
+        clear(found);
+        return found;
+    }
+
+    /**
+     * Returns a transparent image with the same size
+     * and color model as the given image.
+     */
+    public static BufferedImage leaseImageLike(BufferedImage src) {
+        if (src.getType() == BufferedImage.TYPE_CUSTOM) {
+            ColorModel cm = src.getColorModel();
+            return new BufferedImage(cm, cm.createCompatibleWritableRaster(
+                    src.getWidth(), src.getHeight()), cm.isAlphaPremultiplied(), null);
+        }
+        return leaseImage(src.getWidth(), src.getHeight(), src.getType());
+    }
+
+    public static void returnInts(int[] array) {
+        if (array != null && array.length >= MIN_ARRAY_CAPACITY) {
+            addIdle(array, 4L * array.length);
+        }
+    }
+
+    public static void returnFloats(float[] array) {
+        if (array != null && array.length >= MIN_ARRAY_CAPACITY) {
+            addIdle(array, 4L * array.length);
+        }
+    }
+
+    public static void returnImage(BufferedImage img) {
+        if (img != null && img.getType() != BufferedImage.TYPE_CUSTOM) {
+            addIdle(img, imageSizeInBytes(img));
+        }
+    }
+
+    private static synchronized void addIdle(Object buffer, long numBytes) {
+        if (numBytes > maxIdleBytes) {
+            return;
+        }
+        assert !containsIdle(buffer) : "returned twice";
+
+        // evict the least recently returned buffers
+        while (idleBytes + numBytes > maxIdleBytes) {
+            removeIdle(0);
+        }
+        idleBuffers.add(buffer);
+        idleBytes += numBytes;
+    }
+
+    private static boolean containsIdle(Object buffer) {
+        for (Object idle : idleBuffers) {
+            if (idle == buffer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void removeIdle(int index) {
+        Object buffer = idleBuffers.remove(index);
+        idleBytes -= sizeInBytes(buffer);
+    }
+
+    private static long sizeInBytes(Object buffer) {
+        if (buffer instanceof int[]) {
+            return 4L * ((int[]) buffer).length;
+        } else if (buffer instanceof float[]) {
+            return 4L * ((float[]) buffer).length;
+        } else {
+            return imageSizeInBytes((BufferedImage) buffer);
+        }
+    }
+
+    private static long imageSizeInBytes(BufferedImage img) {
+        DataBuffer dataBuffer = img.getRaster().getDataBuffer();
+        int bytesPerElement = DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * bytesPerElement;
+    }
+
+    private static void clear(BufferedImage img) {
+        DataBuffer dataBuffer = img.getRaster().getDataBuffer();
+        if (dataBuffer instanceof DataBufferInt) {
+            Arrays.fill(((DataBufferInt) dataBuffer).getData(), 0);
+        } else {
+            for (int bank = 0; bank < dataBuffer.getNumBanks(); bank++) {
+                for (int i = 0, size = dataBuffer.getSize(); i < size; i++) {
+                    dataBuffer.setElem(bank, i, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the arrays that are
+     * created for the given minimal length.
+     */
+    static int capacityFor(int minLength) {
+        if (minLength <= MIN_ARRAY_CAPACITY) {
+            return MIN_ARRAY_CAPACITY;
+        }
+        if (minLength > (1 << 30)) {
+            return minLength; // not pooled, too large anyway
+        }
+        int powerOfTwo = Integer.highestOneBit(minLength - 1) << 1;
+        int threeHalves = (powerOfTwo >> 1) + (powerOfTwo >> 2);
+        return minLength <= threeHalves ? threeHalves : powerOfTwo;
+    }
+
+    /**
+     * Returns the largest capacity that is not greater than the given
+     * array length, or -1 if the array is too short for the pool.
+     */
+    static int sizeClassOf(int length) {
+        if (length < MIN_ARRAY_CAPACITY) {
+            return -1;
+        }
+        int powerOfTwo = Integer.highestOneBit(length);
+        int threeHalves = powerOfTwo + (powerOfTwo >> 1);
+        if (length >= threeHalves && threeHalves > 0) {
+            return threeHalves;
+        }
+        return powerOfTwo;
+    }
+
+    /**
+     * Releases all idle buffers
+     */
+    public static synchronized void clear() {
+        idleBuffers.clear();
+        idleBytes = 0;
+    }
+
+    public static synchronized void setMaxIdleBytes(long maxIdleBytes) {
+        BufferPool.maxIdleBytes = maxIdleBytes;
+        while (idleBytes > maxIdleBytes) {
+            removeIdle(0);
+        }
+    }
+
+    public static synchronized String getStatistics() {
+        return format("%s%n%s%n%s%nIdle buffers: %d (%d MB of max %d MB)",
+                intStats, floatStats, imageStats, idleBuffers.size(),
+                idleBytes / MemoryInfo.ONE_MEGABYTE,
+                maxIdleBytes / MemoryInfo.ONE_MEGABYTE);
+    }
+
+    public static synchronized void resetStatistics() {
+        intStats.reset();
+        floatStats.reset();
+        imageStats.reset();
+    }
+
+    private static class Stats {
+        private final String name;
+        private int leases;
+        private int hits;
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        void hit() {
+            leases++;
+            hits++;
+        }
+
+        void miss() {
+            leases++;
+        }
+
+        void reset() {
+            leases = 0;
+            hits = 0;
+        }
+
+        @Override
+        public String toString() {
+            int hitRate = leases == 0 ? 0 : (int) (100L * hits / leases);
+            return format("%s: %d leases, %d%% hit rate", name, leases, hitRate);
+        }
+    }
+}
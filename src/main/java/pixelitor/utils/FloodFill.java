@@ -0,0 +1,375 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.ThreadPool;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+/**
+ * Finds the pixels of an image that match a condition, either only the
+ * ones connected to a seed pixel (like the paint bucket or the magic
+ * wand in "contiguous" mode), or all of them ("global" mode).
+ * <p>
+ * The contiguous search uses the scanline algorithm with a primitive
+ * stack of pixel indices, and the result is stored as a bitset.
+ * The global search runs in parallel on word-aligned chunks of
+ * the bitset, so the chunks never write the same word.
+ */
+public final class FloodFill {
+    // the global search is split into chunks of at least this many pixels
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    private FloodFill() {
+    }
+
+    /**
+     * Returns a matcher which accepts the colors whose RGB channels
+     * differ from the given color by at most the given tolerance.
+     * The alpha channel is ignored.
+     */
+    public static IntPredicate similarTo(int rgb, int tolerance) {
+        int refR = (rgb >>> 16) & 0xFF;
+        int refG = (rgb >>> 8) & 0xFF;
+        int refB = rgb & 0xFF;
+        return color -> {
+            if (color == rgb) {
+                return true;
+            }
+            int r = (color >>> 16) & 0xFF;
+            int g = (color >>> 8) & 0xFF;
+            int b = color & 0xFF;
+            return Math.abs(r - refR) <= tolerance
+                    && Math.abs(g - refG) <= tolerance
+                    && Math.abs(b - refB) <= tolerance;
+        };
+    }
+
+    /**
+     * Returns the region of matching pixels that are
+     * 4-connected to the given seed pixel
+     */
+    public static Region fillContiguous(int[] pixels, int width, int height,
+                                        int seedX, int seedY, IntPredicate matcher) {
+        assert pixels.length == width * height;
+        Region region = new Region(width, height);
+        if (seedX < 0 || seedY < 0 || seedX >= width || seedY >= height
+                || !matcher.test(pixels[seedY * width + seedX])) {
+            return region;
+        }
+        long[] bits = region.bits;
+
+        int minX = seedX;
+        int maxX = seedX;
+        int minY = seedY;
+        int maxY = seedY;
+
+        IntStack stack = new IntStack();
+        stack.push(seedY * width + seedX);
+        while (!stack.isEmpty()) {
+            int index = stack.pop();
+            if (isSet(bits, index)) {
+                continue;
+            }
+            int y = index / width;
+            int rowStart = y * width;
+            int x = index - rowStart;
+
+            // find the extent of the span containing the pixel
+            int left = x;
+            while (left > 0 && !isSet(bits, rowStart + left - 1)
+                    && matcher.test(pixels[rowStart + left - 1])) {
+                left--;
+            }
+            int right = x;
+            while (right < width - 1 && !isSet(bits, rowStart + right + 1)
+                    && matcher.test(pixels[rowStart + right + 1])) {
+                right++;
+            }
+            setRange(bits, rowStart + left, rowStart + right + 1);
+
+            if (left < minX) {
+                minX = left;
+            }
+            if (right > maxX) {
+                maxX = right;
+            }
+            if (y < minY) {
+                minY = y;
+            } else if (y > maxY) {
+                maxY = y;
+            }
+
+            // only one pixel has to be pushed for each
+            // matching span in the neighboring rows
+            if (y > 0) {
+                pushSpans(pixels, bits, rowStart - width, left, right, matcher, stack);
+            }
+            if (y < height - 1) {
+                pushSpans(pixels, bits, rowStart + width, left, right, matcher, stack);
+            }
+        }
+        region.setBounds(minX, minY, maxX, maxY);
+        return region;
+    }
+
+    private static void pushSpans(int[] pixels, long[] bits, int rowStart,
+                                  int left, int right,
+                                  IntPredicate matcher, IntStack stack) {
+        boolean inSpan = false;
+        for (int i = rowStart + left, end = rowStart + right; i <= end; i++) {
+            boolean matches = !isSet(bits, i) && matcher.test(pixels[i]);
+            if (matches && !inSpan) {
+                stack.push(i);
+                inSpan = true;
+            } else if (!matches) {
+                inSpan = false;
+            }
+        }
+    }
+
+    /**
+     * Returns all the matching pixels, whether they are connected or not
+     */
+    public static Region fillGlobal(int[] pixels, int width, int height, IntPredicate matcher) {
+        assert pixels.length == width * height;
+        Region region = new Region(width, height);
+        int numPixels = pixels.length;
+        if (numPixels == 0) {
+            return region;
+        }
+
+        // the chunk boundaries are at multiples of 64
+        // pixels, so that each word has a single writer
+        int numChunks = Math.max(1, Math.min(ThreadPool.getNumThreads() * 4,
+                numPixels / MIN_CHUNK_SIZE));
+        if (ThreadPool.isWorkerThread()) {
+            numChunks = 1;
+        }
+        int numWords = region.bits.length;
+        int[][] chunkBounds = new int[numChunks][];
+        Future<?>[] futures = new Future<?>[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            int startWord = (int) ((long) numWords * c / numChunks);
+            int endWord = (int) ((long) numWords * (c + 1) / numChunks);
+            int chunk = c;
+            futures[c] = ThreadPool.submit(() ->
+                    chunkBounds[chunk] = fillGlobalChunk(pixels, width, region.bits,
+                            startWord * 64, Math.min(numPixels, endWord * 64), matcher));
+        }
+        ThreadPool.waitForFutures(futures, ProgressTracker.NULL_TRACKER);
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        for (int[] b : chunkBounds) {
+            if (b != null) {
+                minX = Math.min(minX, b[0]);
+                minY = Math.min(minY, b[1]);
+                maxX = Math.max(maxX, b[2]);
+                maxY = Math.max(maxY, b[3]);
+            }
+        }
+        if (maxX >= 0) {
+            region.setBounds(minX, minY, maxX, maxY);
+        }
+        return region;
+    }
+
+    /**
+     * Returns the bounds of the matching pixels in the
+     * chunk as {minX, minY, maxX, maxY}, or null if none
+     */
+    private static int[] fillGlobalChunk(int[] pixels, int width, long[] bits,
+                                         int start, int end, IntPredicate matcher) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+
+        int y = start / width;
+        int x = start - y * width;
+        long word = 0;
+        for (int i = start; i < end; i++) {
+            if (matcher.test(pixels[i])) {
+                word |= 1L << i;
+                if (x < minX) {
+                    minX = x;
+                }
+                if (x > maxX) {
+                    maxX = x;
+                }
+                if (y < minY) {
+                    minY = y;
+                }
+                maxY = y;
+            }
+            if ((i & 63) == 63) {
+                bits[i >>> 6] = word;
+                word = 0;
+            }
+            if (++x == width) {
+                x = 0;
+                y++;
+            }
+        }
+        if ((end & 63) != 0) {
+            bits[(end - 1) >>> 6] = word;
+        }
+        if (maxX < 0) {
+            return null;
+        }
+        return new int[]{minX, minY, maxX, maxY};
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Sets the bits from start (inclusive) to end (exclusive)
+     */
+    private static void setRange(long[] bits, int start, int end) {
+        int startWord = start >>> 6;
+        int endWord = (end - 1) >>> 6;
+        long firstMask = -1L << start;
+        long lastMask = -1L >>> -end;
+        if (startWord == endWord) {
+            bits[startWord] |= firstMask & lastMask;
+            return;
+        }
+        bits[startWord] |= firstMask;
+        for (int w = startWord + 1; w < endWord; w++) {
+            bits[w] = -1L;
+        }
+        bits[endWord] |= lastMask;
+    }
+
+    /**
+     * The pixels found by a flood fill, as a bitset
+     * over the pixel indices of the image
+     */
+    public static class Region {
+        private final int width;
+        private final int height;
+        private final long[] bits;
+        private Rectangle bounds = new Rectangle(0, 0, 0, 0);
+
+        private Region(int width, int height) {
+            this.width = width;
+            this.height = height;
+            bits = new long[(int) (((long) width * height + 63) >>> 6)];
+        }
+
+        private void setBounds(int minX, int minY, int maxX, int maxY) {
+            bounds = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+
+        public boolean contains(int x, int y) {
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                return false;
+            }
+            return isSet(bits, y * width + x);
+        }
+
+        public boolean isEmpty() {
+            return bounds.isEmpty();
+        }
+
+        /**
+         * Returns the bounds of the region in image coordinates
+         */
+        public Rectangle getBounds() {
+            return new Rectangle(bounds);
+        }
+
+        /**
+         * Sets the pixels of the region to the given value
+         */
+        public void fill(int[] pixels, int value) {
+            assert pixels.length == width * height;
+            forEachRow((row, x, index) -> pixels[index] = value);
+        }
+
+        /**
+         * Returns the coverage of the pixels within the bounds
+         * (255 for the pixels in the region, 0 otherwise)
+         */
+        public byte[] toCoverage() {
+            byte[] coverage = new byte[bounds.width * bounds.height];
+            forEachRow((row, x, index) ->
+                    coverage[row * bounds.width + x - bounds.x] = (byte) 0xFF);
+            return coverage;
+        }
+
+        private interface PixelAction {
+            void apply(int row, int x, int index);
+        }
+
+        /**
+         * Calls the action for each pixel of the region, in the
+         * bounds rows, skipping the empty words of the bitset
+         */
+        private void forEachRow(PixelAction action) {
+            for (int row = 0; row < bounds.height; row++) {
+                int rowStart = (bounds.y + row) * width;
+                int start = rowStart + bounds.x;
+                int end = start + bounds.width;
+                int w = start >>> 6;
+                int endWord = (end - 1) >>> 6;
+                for (; w <= endWord; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (index >= start && index < end) {
+                            action.apply(row, index - rowStart, index);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable stack of ints, without boxing
+     */
+    private static class IntStack {
+        private int[] data = new int[256];
+        private int size;
+
+        void push(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int pop() {
+            return data[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
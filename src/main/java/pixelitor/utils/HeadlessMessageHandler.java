@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * The message handler used by the headless API. It prints the
+ * messages, and it remembers the exceptions shown on the current
+ * thread, so that the API can turn them into thrown exceptions.
+ */
+public class HeadlessMessageHandler implements MessageHandler {
+    private static final ThreadLocal<Throwable> shownException = new ThreadLocal<>();
+
+    @Override
+    public void showInStatusBar(String msg) {
+    }
+
+    @Override
+    public ProgressHandler startProgress(String msg, int max) {
+        return ProgressHandler.EMPTY;
+    }
+
+    @Override
+    public void showInfo(String title, String msg) {
+        System.out.println(title + ": " + msg);
+    }
+
+    @Override
+    public void showError(String title, String msg) {
+        System.err.println(title + ": " + msg);
+    }
+
+    @Override
+    public void showNotImageLayerError() {
+        System.err.println("The active layer is not an image layer.");
+    }
+
+    @Override
+    public void showNotDrawableError() {
+        System.err.println("The active layer is not an image layer or mask.");
+    }
+
+    @Override
+    public void showException(Throwable e) {
+        shownException.set(e);
+    }
+
+    @Override
+    public void showException(Throwable e, Thread t) {
+        System.err.println("Uncaught exception in " + t.getName() + ":");
+        e.printStackTrace();
+    }
+
+    @Override
+    public void showExceptionOnEDT(Throwable e) {
+        e.printStackTrace();
+    }
+
+    /**
+     * Returns and forgets the last exception that
+     * was shown on the current thread, or null.
+     */
+    public static Throwable takeShownException() {
+        Throwable e = shownException.get();
+        shownException.remove();
+        return e;
+    }
+}
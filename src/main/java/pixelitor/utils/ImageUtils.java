@@ -88,11 +88,17 @@ public class ImageUtils {
     public static final double DEG_315_IN_RADIANS = 0.7853981634;
     private static final Color CHECKERBOARD_GRAY = new Color(200, 200, 200);
 
-    private static final GraphicsConfiguration graphicsConfiguration = GraphicsEnvironment
+    // null in a headless environment, where the
+    // system-compatible images are TYPE_INT_ARGB_PRE
+    private static final GraphicsConfiguration graphicsConfiguration = GraphicsEnvironment.isHeadless()
+            ? null
+            : GraphicsEnvironment
             .getLocalGraphicsEnvironment()
             .getDefaultScreenDevice()
             .getDefaultConfiguration();
-    private static final ColorModel defaultColorModel = graphicsConfiguration.getColorModel();
+    private static final ColorModel defaultColorModel = graphicsConfiguration != null
+            ? graphicsConfiguration.getColorModel()
+            : new BufferedImage(1, 1, TYPE_INT_ARGB_PRE).getColorModel();
 
     private ImageUtils() {
     }
@@ -110,8 +116,7 @@ public class ImageUtils {
             return input;
         }
 
-        BufferedImage output = graphicsConfiguration
-                .createCompatibleImage(input.getWidth(), input.getHeight(), TRANSLUCENT);
+        BufferedImage output = createSysCompatibleImage(input.getWidth(), input.getHeight());
         Graphics2D g = output.createGraphics();
         g.drawImage(input, 0, 0, null);
         g.dispose();
@@ -122,6 +127,9 @@ public class ImageUtils {
     public static BufferedImage createSysCompatibleImage(int width, int height) {
         assert (width > 0) && (height > 0);
 
+        if (graphicsConfiguration == null) {
+            return new BufferedImage(width, height, TYPE_INT_ARGB_PRE);
+        }
         return graphicsConfiguration.createCompatibleImage(width, height, TRANSLUCENT);
     }
 
@@ -936,7 +944,8 @@ public class ImageUtils {
         embossFilter.setElevation(elevation);
         embossFilter.setBumpHeight(bumpHeight);
 
-        BufferedImage bumpMap = embossFilter.filter(bumpMapSource, null);
+        BufferedImage bumpMap = embossFilter.filter(bumpMapSource,
+                BufferPool.leaseImageLike(bumpMapSource));
 
         BufferedImage dest = ImageUtils.copyImage(src);
 
@@ -944,6 +953,7 @@ public class ImageUtils {
         g.setComposite(composite);
         g.drawImage(bumpMap, 0, 0, null);
         g.dispose();
+        BufferPool.returnImage(bumpMap);
 
         return dest;
     }
@@ -34,6 +34,8 @@ public class Messages {
         try {
             if (Build.isTesting()) {
                 msgHandler = new TestMessageHandler();
+            } else if (Build.isHeadless()) {
+                msgHandler = new HeadlessMessageHandler();
             } else {
                 msgHandler = new GUIMessageHandler();
             }
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * A uniform grid of buckets over a set of points with integer
+ * coordinates, used for fast nearest point queries.
+ * The grid is immutable after construction, so it can be
+ * queried from multiple threads.
+ * <p>
+ * The nearest point is searched in growing rings of grid cells
+ * around the query point, and the search stops when the closest
+ * possible point in the next ring is farther than the best
+ * point found so far. This works for all {@link Metric}s,
+ * because the distance is at least the metric distance along
+ * one axis. Ties are resolved in favor of the smaller point index,
+ * so the result is the same as with a linear search.
+ */
+public class PointGrid {
+    // the average number of points in a cell
+    private static final double POINTS_PER_CELL = 2.0;
+
+    private final int[] xCoords;
+    private final int[] yCoords;
+    private final Metric metric;
+
+    private final int cellSize;
+    private final int gridWidth;
+    private final int gridHeight;
+
+    // the point indices sorted by cell, and for each cell
+    // the start of its points in this array (like in a CSR matrix)
+    private final int[] sortedIndices;
+    private final int[] cellStarts;
+
+    public PointGrid(int[] xCoords, int[] yCoords, int numPoints,
+                     int width, int height, Metric metric) {
+        assert numPoints > 0;
+        this.xCoords = xCoords;
+        this.yCoords = yCoords;
+        this.metric = metric;
+
+        double cellArea = (double) width * height * POINTS_PER_CELL / numPoints;
+        cellSize = Math.max(1, (int) Math.ceil(Math.sqrt(cellArea)));
+        gridWidth = Math.max(1, (width + cellSize - 1) / cellSize);
+        gridHeight = Math.max(1, (height + cellSize - 1) / cellSize);
+
+        int numCells = gridWidth * gridHeight;
+        cellStarts = new int[numCells + 1];
+        int[] pointCells = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            int cell = cellIndex(cellX(xCoords[i]), cellY(yCoords[i]));
+            pointCells[i] = cell;
+            cellStarts[cell + 1]++;
+        }
+        for (int c = 0; c < numCells; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+
+        // the points are inserted in increasing index
+        // order, so each cell's list is also sorted
+        sortedIndices = new int[numPoints];
+        int[] fillPositions = new int[numCells];
+        System.arraycopy(cellStarts, 0, fillPositions, 0, numCells);
+        for (int i = 0; i < numPoints; i++) {
+            int cell = pointCells[i];
+            sortedIndices[fillPositions[cell]++] = i;
+        }
+    }
+
+    /**
+     * Returns the index of the point that is nearest to the given pixel
+     */
+    public int nearest(int x, int y) {
+        return nearest((double) x, (double) y);
+    }
+
+    /**
+     * Returns the index of the point that is nearest
+     * to the given location with double precision.
+     */
+    public int nearest(double x, double y) {
+        int cx = cellX((int) Math.floor(x));
+        int cy = cellY((int) Math.floor(y));
+        double edgeGap = calcEdgeGap(x, y, cx, cy);
+
+        int bestIndex = Integer.MAX_VALUE;
+        double bestDist = Double.POSITIVE_INFINITY;
+        int maxRing = Math.max(gridWidth, gridHeight);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (ring > 0 && minDistInRing(ring, edgeGap) > bestDist) {
+                break;
+            }
+            int minCY = Math.max(0, cy - ring);
+            int maxCY = Math.min(gridHeight - 1, cy + ring);
+            for (int gy = minCY; gy <= maxCY; gy++) {
+                boolean fullRow = gy == cy - ring || gy == cy + ring;
+                // in the middle rows only the two side cells belong to the ring
+                int step = fullRow ? 1 : 2 * ring;
+                for (int gx = cx - ring; gx <= cx + ring; gx += step) {
+                    if (gx < 0 || gx >= gridWidth) {
+                        continue;
+                    }
+                    int cell = cellIndex(gx, gy);
+                    for (int k = cellStarts[cell], end = cellStarts[cell + 1]; k < end; k++) {
+                        int i = sortedIndices[k];
+                        double dist = metric.distanceDouble(xCoords[i], x, yCoords[i], y);
+                        if (dist < bestDist || (dist == bestDist && i < bestIndex)) {
+                            bestDist = dist;
+                            bestIndex = i;
+                        }
+                    }
+                }
+            }
+        }
+        return bestIndex;
+    }
+
+    /**
+     * The distance from the query point to the nearest edge
+     * of its cell, or zero if it is outside the grid.
+     */
+    private double calcEdgeGap(double x, double y, int cx, int cy) {
+        double left = x - cx * cellSize;
+        double right = (cx + 1) * cellSize - x;
+        double top = y - cy * cellSize;
+        double bottom = (cy + 1) * cellSize - y;
+        double gap = Math.min(Math.min(left, right), Math.min(top, bottom));
+        return Math.max(0, gap);
+    }
+
+    /**
+     * A lower bound for the distance of any point in the given ring
+     */
+    private double minDistInRing(int ring, double edgeGap) {
+        // a point in the ring is at least this far along one of the axes
+        double axisDist = (ring - 1) * cellSize + edgeGap;
+        return metric.distanceDouble(axisDist, 0, 0, 0);
+    }
+
+    private int cellX(int x) {
+        return Math.min(gridWidth - 1, Math.max(0, x / cellSize));
+    }
+
+    private int cellY(int y) {
+        return Math.min(gridHeight - 1, Math.max(0, y / cellSize));
+    }
+
+    private int cellIndex(int gx, int gy) {
+        return gy * gridWidth + gx;
+    }
+}
@@ -47,6 +47,10 @@ public class ProgressPanel extends JPanel {
         cardLayout.first(this);
     }
 
+    public void setIndeterminate(boolean b) {
+        progressBar.setIndeterminate(b);
+    }
+
     public void setProgress(int p) {
         progressBar.setValue(p);
     }
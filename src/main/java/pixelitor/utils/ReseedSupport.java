@@ -28,8 +28,7 @@ import java.util.Random;
  * here, and the actions reseed it.
  */
 public class ReseedSupport {
-    private static long seed = System.nanoTime();
-    private static final Random rand = new Random();
+    private static volatile long seed = System.nanoTime();
 
     private ReseedSupport() {
     }
@@ -39,12 +38,13 @@ public class ReseedSupport {
      * make sure that the filter runs with the same random numbers
      * as before when the re-run is NOT caused by pressing
      * the "reseed" button.
-     * Returns the random number generator which is reseeded.
+     * Returns a new random number generator (and not a shared one,
+     * because filters can run in parallel, for example while
+     * rendering the frames of a tween animation).
      * This must be called at the beginning of the filter.
      */
     public static Random reInitialize() {
-        rand.setSeed(seed);
-        return rand;
+        return new Random(seed);
     }
 
     /**
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import pixelitor.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Records how long the phases of the application startup take.
+ * The timeline is printed in development mode,
+ * and it can be viewed from the Help menu in every mode.
+ */
+public final class StartupTimeline {
+    private static final List<String> phaseNames = new ArrayList<>();
+    private static final List<Long> phaseEndTimes = new ArrayList<>();
+    private static long startTime;
+    private static boolean finished;
+
+    private StartupTimeline() {
+        // should not be instantiated
+    }
+
+    /**
+     * Called as early as possible in the main method
+     */
+    public static synchronized void start() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a phase, which started
+     * at the end of the previous phase.
+     */
+    public static synchronized void phaseFinished(String name) {
+        if (finished || startTime == 0) {
+            return;
+        }
+        phaseNames.add(name);
+        phaseEndTimes.add(System.nanoTime());
+    }
+
+    /**
+     * Marks the end of the last phase, and prints the timeline
+     * in development mode. Later calls to phaseFinished are ignored.
+     */
+    public static synchronized void finish(String lastPhaseName) {
+        phaseFinished(lastPhaseName);
+        finished = true;
+
+        if (Build.isDevelopment()) {
+            System.out.println(asText());
+        }
+    }
+
+    public static synchronized String asText() {
+        if (startTime == 0) {
+            return "No startup timeline was recorded";
+        }
+        StringBuilder sb = new StringBuilder("Startup timeline:\n");
+        long prevTime = startTime;
+        for (int i = 0; i < phaseNames.size(); i++) {
+            long endTime = phaseEndTimes.get(i);
+            sb.append(format("%-32s %8.1f ms %10.1f ms%n",
+                    phaseNames.get(i),
+                    toMillis(endTime - prevTime),
+                    toMillis(endTime - startTime)));
+            prevTime = endTime;
+        }
+        if (!finished) {
+            sb.append("(the startup is not finished yet)\n");
+        }
+        return sb.toString();
+    }
+
+    @VisibleForTesting
+    static synchronized void reset() {
+        phaseNames.clear();
+        phaseEndTimes.clear();
+        startTime = 0;
+        finished = false;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
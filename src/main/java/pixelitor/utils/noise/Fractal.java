@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+/**
+ * Sums of noise octaves (fractional Brownian motion and turbulence)
+ * for any {@link SeededNoise}, both for single points and
+ * for whole rows evaluated into float buffers.
+ */
+public class Fractal {
+    private Fractal() {
+        // should not be instantiated
+    }
+
+    /**
+     * Turbulence like in the JHLabs filters: the sum of the absolute
+     * values of the octaves, where the frequency is doubled
+     * while it is not greater than the given octaves value.
+     */
+    public static float turbulence2(SeededNoise noise, float x, float y, float octaves) {
+        float t = 0.0f;
+        for (float f = 1.0f; f <= octaves; f *= 2) {
+            t += Math.abs(noise.noise2(f * x, f * y)) / f;
+        }
+        return t;
+    }
+
+    /**
+     * Same as the turbulence above, but without abs,
+     * which results in a smoother look
+     */
+    public static float smoothTurbulence2(SeededNoise noise, float x, float y, float octaves) {
+        float t = 0.0f;
+        for (float f = 1.0f; f <= octaves; f *= 2) {
+            t += noise.noise2(f * x, f * y) / f;
+        }
+        return t;
+    }
+
+    /**
+     * The 3D version of {@link #turbulence2(SeededNoise, float, float, float)}
+     */
+    public static float turbulence3(SeededNoise noise, float x, float y, float z, float octaves) {
+        float t = 0.0f;
+        for (float f = 1.0f; f <= octaves; f *= 2) {
+            t += Math.abs(noise.noise3(f * x, f * y, f * z)) / f;
+        }
+        return t;
+    }
+
+    /**
+     * Evaluates the fractional Brownian motion along a row: dest[i] is
+     * set to the sum of the given number of octaves at
+     * (startX + i * stepX, y), where the frequency of each octave is
+     * multiplied by the lacunarity and its amplitude by the gain. The octaves are
+     * calculated one row at a time into the given temporary buffer,
+     * which must be at least as long as the row.
+     */
+    public static void fbm2Row(SeededNoise noise, float[] dest, float[] tmp,
+                               int length, float startX, float stepX, float y,
+                               int octaves, float lacunarity, float gain) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = 0.0f;
+        }
+        float amplitude = 1.0f;
+        float frequency = 1.0f;
+        for (int octave = 0; octave < octaves; octave++) {
+            noise.noise2Row(tmp, length, startX * frequency, stepX * frequency, y * frequency);
+            for (int i = 0; i < length; i++) {
+                dest[i] += amplitude * tmp[i];
+            }
+            frequency *= lacunarity;
+            amplitude *= gain;
+        }
+    }
+}
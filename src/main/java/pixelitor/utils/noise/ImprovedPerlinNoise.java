@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+import java.util.Random;
+
+/**
+ * Ken Perlin's improved noise (http://mrl.nyu.edu/~perlin/noise/),
+ * with a permutation table shuffled according to the seed.
+ * The returned values are in the range -1..1
+ */
+public class ImprovedPerlinNoise extends SeededNoise {
+    private final int[] p;
+
+    public ImprovedPerlinNoise(long seed) {
+        super(seed);
+        p = createPermutation(new Random(seed));
+    }
+
+    @Override
+    public float noise2(float x, float y) {
+        int floorY = fastFloor(y);
+        float fracY = y - floorY;
+        return noise2(x, floorY & 255, fracY, fade(fracY));
+    }
+
+    @Override
+    public void noise2Row(float[] dest, int length, float startX, float stepX, float y) {
+        // the y-dependent part is the same for the whole row
+        int floorY = fastFloor(y);
+        int gridY = floorY & 255;
+        float fracY = y - floorY;
+        float v = fade(fracY);
+        for (int i = 0; i < length; i++) {
+            dest[i] = noise2(startX + i * stepX, gridY, fracY, v);
+        }
+    }
+
+    private float noise2(float x, int gridY, float y, float v) {
+        // find unit grid cell containing point + wrap the integer cells at 255
+        int floorX = fastFloor(x);
+        int gridX = floorX & 255;
+
+        // get relative coordinate of point within cell
+        x -= floorX;
+
+        // compute the fade curve for x
+        float u = fade(x);
+
+        // calculate hashed gradient indices
+        int a = p[gridX] + gridY;
+        int aa = p[a];
+        int ab = p[a + 1];
+        int b = p[gridX + 1] + gridY;
+        int ba = p[b];
+        int bb = p[b + 1];
+
+        float noiseSE = grad2D(p[aa], x, y);
+        float noiseSW = grad2D(p[ba], x - 1, y);
+        float noiseNE = grad2D(p[ab], x, y - 1);
+        float noiseNW = grad2D(p[bb], x - 1, y - 1);
+
+        float noiseS = lerp(u, noiseSE, noiseSW);
+        float noiseN = lerp(u, noiseNE, noiseNW);
+
+        return lerp(v, noiseS, noiseN);
+    }
+
+    @Override
+    public float noise3(float x, float y, float z) {
+        int floorX = fastFloor(x);
+        int floorY = fastFloor(y);
+        int floorZ = fastFloor(z);
+        int gridX = floorX & 255;
+        int gridY = floorY & 255;
+        int gridZ = floorZ & 255;
+
+        x -= floorX;
+        y -= floorY;
+        z -= floorZ;
+
+        float u = fade(x);
+        float v = fade(y);
+        float w = fade(z);
+
+        int a = p[gridX] + gridY;
+        int aa = p[a] + gridZ;
+        int ab = p[a + 1] + gridZ;
+        int b = p[gridX + 1] + gridY;
+        int ba = p[b] + gridZ;
+        int bb = p[b + 1] + gridZ;
+
+        return lerp(w,
+                lerp(v,
+                        lerp(u, grad3D(p[aa], x, y, z), grad3D(p[ba], x - 1, y, z)),
+                        lerp(u, grad3D(p[ab], x, y - 1, z), grad3D(p[bb], x - 1, y - 1, z))),
+                lerp(v,
+                        lerp(u, grad3D(p[aa + 1], x, y, z - 1), grad3D(p[ba + 1], x - 1, y, z - 1)),
+                        lerp(u, grad3D(p[ab + 1], x, y - 1, z - 1), grad3D(p[bb + 1], x - 1, y - 1, z - 1))));
+    }
+
+    // a smooth interpolation between 0 and 1
+    // see http://en.wikipedia.org/wiki/Smoothstep
+    private static float fade(float t) {
+        return t * t * t * (t * (t * 6 - 15) + 10);
+    }
+
+    private static float grad2D(int hash, float x, float y) {
+        int h = hash & 15;
+        float u = h < 8 ? x : y;
+        float v = h < 4 ? y : x;
+
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+
+    private static float grad3D(int hash, float x, float y, float z) {
+        int h = hash & 15;
+        float u = h < 8 ? x : y;
+        float v = h < 4 ? y : (h == 12 || h == 14 ? x : z);
+
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+import java.util.Random;
+
+/**
+ * Value noise: pseudo-random values at the integer lattice
+ * points, interpolated with a smooth step. The lattice values
+ * come from an integer hash function whose constants are
+ * chosen according to the seed.
+ * The returned values are in the range -1..1
+ */
+public class LatticeValueNoise extends SeededNoise {
+    private final int r1;
+    private final int r2;
+    private final int r3;
+
+    public LatticeValueNoise(long seed) {
+        super(seed);
+        Random random = new Random(seed);
+        r1 = 1000 + random.nextInt(90000);
+        r2 = 10000 + random.nextInt(900000);
+        r3 = 100000 + random.nextInt(1000000000);
+    }
+
+    @Override
+    public float noise2(float x, float y) {
+        int ix = fastFloor(x);
+        int iy = fastFloor(y);
+        float fx = smoothStep(x - ix);
+        float fy = smoothStep(y - iy);
+
+        float n1 = latticeValue(ix + iy * 57);
+        float n2 = latticeValue(ix + 1 + iy * 57);
+        float n3 = latticeValue(ix + (iy + 1) * 57);
+        float n4 = latticeValue(ix + 1 + (iy + 1) * 57);
+
+        float i1 = lerp(fx, n1, n2);
+        float i2 = lerp(fx, n3, n4);
+
+        return lerp(fy, i1, i2);
+    }
+
+    @Override
+    public float noise3(float x, float y, float z) {
+        int ix = fastFloor(x);
+        int iy = fastFloor(y);
+        int iz = fastFloor(z);
+        float fx = smoothStep(x - ix);
+        float fy = smoothStep(y - iy);
+        float fz = smoothStep(z - iz);
+
+        int n = ix + iy * 57 + iz * 131;
+        float i1 = lerp(fx, latticeValue(n), latticeValue(n + 1));
+        float i2 = lerp(fx, latticeValue(n + 57), latticeValue(n + 58));
+        float i3 = lerp(fx, latticeValue(n + 131), latticeValue(n + 132));
+        float i4 = lerp(fx, latticeValue(n + 188), latticeValue(n + 189));
+
+        return lerp(fz, lerp(fy, i1, i2), lerp(fy, i3, i4));
+    }
+
+    private float latticeValue(int n) {
+        n = (n << 13) ^ n;
+        return 1.0f - ((n * (n * n * r1 + r2) + r3) & 0x7fffffff) / 1.07374182E+9f;
+    }
+
+    // the smooth step is very similar but much faster than the cosine interpolation
+    // http://en.wikipedia.org/wiki/Smoothstep
+    private static float smoothStep(float a) {
+        return a * a * (3 - 2 * a);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+import java.util.Random;
+
+/**
+ * The classic Perlin gradient noise, as it was implemented
+ * in the JHLabs {@link com.jhlabs.math.Noise} class,
+ * but with per-instance tables.
+ */
+public class PerlinNoise extends SeededNoise {
+    private static final int B = 0x100;
+    private static final int BM = 0xff;
+    private static final int N = 0x1000;
+
+    private final int[] p = new int[B + B + 2];
+    private final float[][] g3 = new float[B + B + 2][3];
+    private final float[][] g2 = new float[B + B + 2][2];
+    private final float[] g1 = new float[B + B + 2];
+
+    public PerlinNoise(long seed) {
+        super(seed);
+
+        Random random = new Random(seed);
+        int i, j, k;
+
+        for (i = 0; i < B; i++) {
+            p[i] = i;
+
+            g1[i] = (float) ((nextPositive(random) % (B + B)) - B) / B;
+
+            for (j = 0; j < 2; j++) {
+                g2[i][j] = (float) ((nextPositive(random) % (B + B)) - B) / B;
+            }
+            normalize2(g2[i]);
+
+            for (j = 0; j < 3; j++) {
+                g3[i][j] = (float) ((nextPositive(random) % (B + B)) - B) / B;
+            }
+            normalize3(g3[i]);
+        }
+
+        for (i = B - 1; i >= 0; i--) {
+            k = p[i];
+            p[i] = p[j = nextPositive(random) % B];
+            p[j] = k;
+        }
+
+        for (i = 0; i < B + 2; i++) {
+            p[B + i] = p[i];
+            g1[B + i] = g1[i];
+            for (j = 0; j < 2; j++) {
+                g2[B + i][j] = g2[i][j];
+            }
+            for (j = 0; j < 3; j++) {
+                g3[B + i][j] = g3[i][j];
+            }
+        }
+    }
+
+    private static int nextPositive(Random random) {
+        return random.nextInt() & 0x7fffffff;
+    }
+
+    private static void normalize2(float[] v) {
+        float s = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1]);
+        v[0] = v[0] / s;
+        v[1] = v[1] / s;
+    }
+
+    private static void normalize3(float[] v) {
+        float s = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        v[0] = v[0] / s;
+        v[1] = v[1] / s;
+        v[2] = v[2] / s;
+    }
+
+    private static float sCurve(float t) {
+        return t * t * (3.0f - 2.0f * t);
+    }
+
+    /**
+     * Returns the 1D noise value at x in the range -1..1
+     */
+    public float noise1(float x) {
+        float t = x + N;
+        int bx0 = ((int) t) & BM;
+        int bx1 = (bx0 + 1) & BM;
+        float rx0 = t - (int) t;
+        float rx1 = rx0 - 1.0f;
+
+        float sx = sCurve(rx0);
+
+        float u = rx0 * g1[p[bx0]];
+        float v = rx1 * g1[p[bx1]];
+        return 2.3f * lerp(sx, u, v);
+    }
+
+    /**
+     * Returns the 2D noise value at (x, y), approximately in the range -1..1
+     */
+    @Override
+    public float noise2(float x, float y) {
+        float t = y + N;
+        int by0 = ((int) t) & BM;
+        float ry0 = t - (int) t;
+        return noise2(x, by0, ry0, sCurve(ry0));
+    }
+
+    /**
+     * The 2D noise with the y-dependent values already calculated
+     */
+    private float noise2(float x, int by0, float ry0, float sy) {
+        int by1 = (by0 + 1) & BM;
+        float ry1 = ry0 - 1.0f;
+
+        float t = x + N;
+        int bx0 = ((int) t) & BM;
+        int bx1 = (bx0 + 1) & BM;
+        float rx0 = t - (int) t;
+        float rx1 = rx0 - 1.0f;
+
+        int i = p[bx0];
+        int j = p[bx1];
+
+        int b00 = p[i + by0];
+        int b10 = p[j + by0];
+        int b01 = p[i + by1];
+        int b11 = p[j + by1];
+
+        float sx = sCurve(rx0);
+
+        float[] q = g2[b00];
+        float u = rx0 * q[0] + ry0 * q[1];
+        q = g2[b10];
+        float v = rx1 * q[0] + ry0 * q[1];
+        float a = lerp(sx, u, v);
+
+        q = g2[b01];
+        u = rx0 * q[0] + ry1 * q[1];
+        q = g2[b11];
+        v = rx1 * q[0] + ry1 * q[1];
+        float b = lerp(sx, u, v);
+
+        return 1.5f * lerp(sy, a, b);
+    }
+
+    @Override
+    public void noise2Row(float[] dest, int length, float startX, float stepX, float y) {
+        float t = y + N;
+        int by0 = ((int) t) & BM;
+        float ry0 = t - (int) t;
+        float sy = sCurve(ry0);
+        for (int i = 0; i < length; i++) {
+            dest[i] = noise2(startX + i * stepX, by0, ry0, sy);
+        }
+    }
+
+    /**
+     * Returns the 3D noise value at (x, y, z), approximately in the range -1..1
+     */
+    @Override
+    public float noise3(float x, float y, float z) {
+        float t = x + N;
+        int bx0 = ((int) t) & BM;
+        int bx1 = (bx0 + 1) & BM;
+        float rx0 = t - (int) t;
+        float rx1 = rx0 - 1.0f;
+
+        t = y + N;
+        int by0 = ((int) t) & BM;
+        int by1 = (by0 + 1) & BM;
+        float ry0 = t - (int) t;
+        float ry1 = ry0 - 1.0f;
+
+        t = z + N;
+        int bz0 = ((int) t) & BM;
+        int bz1 = (bz0 + 1) & BM;
+        float rz0 = t - (int) t;
+        float rz1 = rz0 - 1.0f;
+
+        int i = p[bx0];
+        int j = p[bx1];
+
+        int b00 = p[i + by0];
+        int b10 = p[j + by0];
+        int b01 = p[i + by1];
+        int b11 = p[j + by1];
+
+        t = sCurve(rx0);
+        float sy = sCurve(ry0);
+        float sz = sCurve(rz0);
+
+        float[] q = g3[b00 + bz0];
+        float u = rx0 * q[0] + ry0 * q[1] + rz0 * q[2];
+        q = g3[b10 + bz0];
+        float v = rx1 * q[0] + ry0 * q[1] + rz0 * q[2];
+        float a = lerp(t, u, v);
+
+        q = g3[b01 + bz0];
+        u = rx0 * q[0] + ry1 * q[1] + rz0 * q[2];
+        q = g3[b11 + bz0];
+        v = rx1 * q[0] + ry1 * q[1] + rz0 * q[2];
+        float b = lerp(t, u, v);
+
+        float c = lerp(sy, a, b);
+
+        q = g3[b00 + bz1];
+        u = rx0 * q[0] + ry0 * q[1] + rz1 * q[2];
+        q = g3[b10 + bz1];
+        v = rx1 * q[0] + ry0 * q[1] + rz1 * q[2];
+        a = lerp(t, u, v);
+
+        q = g3[b01 + bz1];
+        u = rx0 * q[0] + ry1 * q[1] + rz1 * q[2];
+        q = g3[b11 + bz1];
+        v = rx1 * q[0] + ry1 * q[1] + rz1 * q[2];
+        b = lerp(t, u, v);
+
+        float d = lerp(sy, a, b);
+
+        return 1.5f * lerp(sz, c, d);
+    }
+}
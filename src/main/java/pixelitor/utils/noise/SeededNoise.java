@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+import java.util.Random;
+
+/**
+ * The base class of the noise generators. The random tables
+ * of a generator are completely determined by its seed and
+ * are never modified after the construction, so an instance
+ * can be shared between threads, and two instances with the
+ * same seed always return the same values.
+ */
+public abstract class SeededNoise {
+    private final long seed;
+
+    protected SeededNoise(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public abstract float noise2(float x, float y);
+
+    public abstract float noise3(float x, float y, float z);
+
+    /**
+     * Evaluates the 2D noise along a row: dest[i] is set to the noise
+     * value at (startX + i * stepX, y) for i in 0..length-1.
+     * Subclasses can override it to hoist the per-row calculations.
+     */
+    public void noise2Row(float[] dest, int length, float startX, float stepX, float y) {
+        for (int i = 0; i < length; i++) {
+            dest[i] = noise2(startX + i * stepX, y);
+        }
+    }
+
+    static int fastFloor(float x) {
+        int xi = (int) x;
+        return x < xi ? xi - 1 : xi;
+    }
+
+    static float lerp(float t, float a, float b) {
+        return a + t * (b - a);
+    }
+
+    /**
+     * Returns a permutation of 0..255, repeated twice
+     */
+    static int[] createPermutation(Random random) {
+        int[] perm = new int[512];
+        for (int i = 0; i < 256; i++) {
+            perm[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = perm[i];
+            perm[i] = perm[j];
+            perm[j] = tmp;
+        }
+        System.arraycopy(perm, 0, perm, 256, 256);
+        return perm;
+    }
+}
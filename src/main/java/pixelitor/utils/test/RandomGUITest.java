@@ -487,7 +487,7 @@ public class RandomGUITest {
         String filterName = f.getName();
         log("filter: " + filterName);
 
-        long runCountBefore = Filter.runCount;
+        long runCountBefore = Filter.getRunCount();
 
         if (f instanceof FilterWithGUI) {
             ((FilterWithGUI) f).randomizeSettings();
@@ -531,7 +531,7 @@ public class RandomGUITest {
                 throw e;
             }
         }
-        long runCountAfter = Filter.runCount;
+        long runCountAfter = Filter.getRunCount();
         if (runCountAfter != (runCountBefore + 1)) {
             throw new IllegalStateException(
                     "runCountBefore = " + runCountBefore
@@ -545,7 +545,7 @@ public class RandomGUITest {
             return;
         }
 
-        long runCountBefore = Filter.runCount;
+        long runCountBefore = Filter.getRunCount();
 
         ParametrizedFilter filter = getRandomTweenFilter();
         String filterName = filter.getName();
@@ -587,7 +587,7 @@ public class RandomGUITest {
 
         dr.tweenCalculatingEnded();
 
-        long runCountAfter = Filter.runCount;
+        long runCountAfter = Filter.getRunCount();
         if (runCountAfter != (runCountBefore + 1)) {
             throw new IllegalStateException(
                     "runCountBefore = " + runCountBefore
@@ -104,7 +104,6 @@ public class SplashImageCreator {
 
             String fileName = format("splash%04d.%s", seqNo, outputFormat.toString());
 
-            ValueNoise.reseed();
             Composition comp = createSplashImage();
             ImageComponent ic = comp.getIC();
 
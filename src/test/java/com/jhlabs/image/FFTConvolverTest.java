@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.Kernel;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link FFTConvolver} gives the same results as
+ * the direct convolution, with a difference of at most one
+ * in each channel, because of the rounding errors
+ */
+public class FFTConvolverTest {
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 97;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testMatchesDirectConvolution() {
+        int[] edgeActions = {
+                ConvolveFilter.ZERO_EDGES,
+                ConvolveFilter.CLAMP_EDGES,
+                ConvolveFilter.WRAP_EDGES};
+        int[] pixels = createRandomPixels();
+
+        for (int edgeAction : edgeActions) {
+            for (boolean alpha : new boolean[]{true, false}) {
+                // a non-square kernel with negative values
+                Kernel kernel = createRandomKernel(15, 11);
+                int[] direct = new int[WIDTH * HEIGHT];
+                int[] fft = new int[WIDTH * HEIGHT];
+
+                ConvolveFilter filter = createFilter();
+                filter.convolveHV(kernel, pixels, direct, WIDTH, HEIGHT, alpha, edgeAction);
+                filter.convolveFFT(kernel, pixels, fft, WIDTH, HEIGHT, alpha, edgeAction);
+
+                assertThat(maxChannelDiff(direct, fft))
+                        .as("edgeAction = %d, alpha = %b", edgeAction, alpha)
+                        .isLessThanOrEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void testAutomaticSwitch() {
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(3, 3))).isFalse();
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(1, 31))).isFalse();
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(21, 21))).isTrue();
+
+        // around the measured crossover
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(3, 7))).isFalse();
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(7, 3))).isFalse();
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(5, 5))).isTrue();
+        assertThat(FFTConvolver.isFasterFor(createRandomKernel(3, 9))).isTrue();
+    }
+
+    private ConvolveFilter createFilter() {
+        ConvolveFilter filter = new ConvolveFilter("Test");
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        return filter;
+    }
+
+    private int[] createRandomPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private Kernel createRandomKernel(int width, int height) {
+        float[] data = new float[width * height];
+        float sum = 0;
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat() - 0.3f;
+            sum += data[i];
+        }
+        for (int i = 0; i < data.length; i++) {
+            data[i] /= sum;
+        }
+        return new Kernel(width, height, data);
+    }
+
+    private static int maxChannelDiff(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int ca = (a[i] >>> shift) & 0xFF;
+                int cb = (b[i] >>> shift) & 0xFF;
+                max = Math.max(max, Math.abs(ca - cb));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the blur mask of {@link LensBlurFilter}
+ */
+public class LensBlurFilterTest {
+    private static final int WIDTH = 210;
+    private static final int HEIGHT = 130;
+
+    @Test
+    public void testBlackMaskKeepsImage() {
+        BufferedImage src = createTestImage();
+        LensBlurFilter filter = createFilter();
+        filter.setBlurMask(createMask(Color.BLACK));
+
+        BufferedImage result = filter.filter(src, null);
+        assertThat(countDifferentPixels(src, result)).isEqualTo(0);
+    }
+
+    @Test
+    public void testWhiteMaskIsUniformBlur() {
+        BufferedImage src = createTestImage();
+        LensBlurFilter filter = createFilter();
+        BufferedImage uniform = filter.filter(src, null);
+        assertThat(countDifferentPixels(src, uniform)).isGreaterThan(0);
+
+        filter.setBlurMask(createMask(Color.WHITE));
+        BufferedImage masked = filter.filter(src, null);
+        assertThat(countDifferentPixels(uniform, masked)).isEqualTo(0);
+    }
+
+    private static LensBlurFilter createFilter() {
+        LensBlurFilter filter = new LensBlurFilter("Test");
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setRadius(12);
+        return filter;
+    }
+
+    private static BufferedImage createTestImage() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setColor(Color.WHITE);
+        g.fillOval(40, 30, 50, 50);
+        g.setColor(Color.ORANGE);
+        g.fillRect(120, 60, 60, 40);
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage createMask(Color color) {
+        BufferedImage mask = new BufferedImage(WIDTH, HEIGHT, TYPE_BYTE_GRAY);
+        Graphics2D g = mask.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return mask;
+    }
+
+    private static int countDifferentPixels(BufferedImage a, BufferedImage b) {
+        int count = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link RecursiveGaussian} approximates
+ * the blur with the exact Gaussian kernel
+ */
+public class RecursiveGaussianTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testMatchesExactKernel() {
+        int[][] images = {createRandomPixels(), createCheckerboard()};
+        float[] radii = {GaussianFilter.MIN_RECURSIVE_RADIUS, 200};
+
+        for (int[] pixels : images) {
+            for (float radius : radii) {
+                for (boolean alpha : new boolean[]{true, false}) {
+                    GaussianFilter filter = createFilter(radius, alpha);
+                    assertThat(filter.recursiveGaussian).isNotNull();
+
+                    int[] exact = blurWithKernel(filter, pixels);
+                    int[] recursive = pixels.clone();
+                    filter.blur(recursive, new int[WIDTH * HEIGHT], WIDTH, HEIGHT, ProgressTracker.NULL_TRACKER);
+
+                    String description = String.format("radius = %.0f, alpha = %b", radius, alpha);
+                    assertThat(maxChannelDiff(exact, recursive))
+                            .as(description)
+                            .isLessThanOrEqualTo(3);
+                    assertThat(meanChannelDiff(exact, recursive))
+                            .as(description)
+                            .isLessThan(0.5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEdgesOfUniformImage() {
+        // with clamped edges, the blur shouldn't change a uniform image,
+        // even if the radius is much larger than the image
+        int color = 0xFF_33_99_CC;
+        int width = 30;
+        int height = 20;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, color);
+
+        GaussianFilter filter = createFilter(500, true);
+        filter.blur(pixels, new int[width * height], width, height, ProgressTracker.NULL_TRACKER);
+
+        for (int pixel : pixels) {
+            assertThat(pixel).isEqualTo(color);
+        }
+    }
+
+    @Test
+    public void testAutomaticSwitch() {
+        float belowThreshold = GaussianFilter.MIN_RECURSIVE_RADIUS - 1;
+        assertThat(createFilter(belowThreshold, true).recursiveGaussian).isNull();
+        assertThat(createFilter(GaussianFilter.MIN_RECURSIVE_RADIUS, true).recursiveGaussian).isNotNull();
+    }
+
+    private static GaussianFilter createFilter(float radius, boolean alpha) {
+        GaussianFilter filter = new GaussianFilter(radius, "Test");
+        filter.setUseAlpha(alpha);
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        return filter;
+    }
+
+    private static int[] blurWithKernel(GaussianFilter filter, int[] pixels) {
+        Kernel kernel = GaussianFilter.makeKernel(filter.getRadius());
+        boolean alpha = filter.getUseAlpha();
+        boolean premultiply = alpha && filter.getPremultiplyAlpha();
+
+        int[] in = pixels.clone();
+        int[] tmp = new int[WIDTH * HEIGHT];
+        GaussianFilter.convolveAndTranspose(kernel, in, tmp, WIDTH, HEIGHT, alpha,
+                premultiply, false, ConvolveFilter.CLAMP_EDGES, ProgressTracker.NULL_TRACKER);
+        GaussianFilter.convolveAndTranspose(kernel, tmp, in, HEIGHT, WIDTH, alpha,
+                false, premultiply, ConvolveFilter.CLAMP_EDGES, ProgressTracker.NULL_TRACKER);
+        return in;
+    }
+
+    private int[] createRandomPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static int[] createCheckerboard() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean white = (x / 37 + y / 23) % 2 == 0;
+                pixels[y * WIDTH + x] = white ? 0xFF_FF_FF_FF : 0x80_10_20_30;
+            }
+        }
+        return pixels;
+    }
+
+    private static int maxChannelDiff(int[] a, int[] b) {
+        int max = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                max = Math.max(max, channelDiff(a[i], b[i], shift));
+            }
+        }
+        return max;
+    }
+
+    private static double meanChannelDiff(int[] a, int[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                sum += channelDiff(a[i], b[i], shift);
+            }
+        }
+        return sum / (4.0 * a.length);
+    }
+
+    private static int channelDiff(int a, int b, int shift) {
+        int ca = (a >>> shift) & 0xFF;
+        int cb = (b >>> shift) & 0xFF;
+        return Math.abs(ca - cb);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static com.jhlabs.image.TransformFilter.BICUBIC;
+import static com.jhlabs.image.TransformFilter.BILINEAR;
+import static com.jhlabs.image.TransformFilter.NEAREST_NEIGHBOUR;
+import static com.jhlabs.image.TransformFilter.SUPERSAMPLING;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the interpolation modes of {@link TransformFilter}
+ */
+public class TransformFilterTest {
+    private static final int SIZE = 256;
+
+    @Test
+    public void testIdentityBilinear() {
+        checkIdentity(BILINEAR);
+    }
+
+    @Test
+    public void testIdentityBicubic() {
+        checkIdentity(BICUBIC);
+    }
+
+    @Test
+    public void testIdentitySupersampling() {
+        checkIdentity(SUPERSAMPLING);
+    }
+
+    @Test
+    public void testIdentityNearestNeighbour() {
+        checkIdentity(NEAREST_NEIGHBOUR);
+    }
+
+    @Test
+    public void testMinificationIsBoxFiltered() {
+        BufferedImage src = createCheckerboard();
+
+        // 8x stays in the base level, 16x and 32x use the mip pyramid
+        for (int scale : new int[]{8, 16, 32}) {
+            BufferedImage result = createScalingFilter(SUPERSAMPLING, scale).filter(src, createDest());
+
+            // the box-filtered average of a 1px checkerboard is 127.5,
+            // only the pixels with a footprint inside the source are checked
+            int maxDeviation = 0;
+            for (int y = 1; y < SIZE / scale - 1; y++) {
+                for (int x = 1; x < SIZE / scale - 1; x++) {
+                    int rgb = result.getRGB(x, y);
+                    assertThat(rgb >>> 24).isEqualTo(255);
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int channel = (rgb >> shift) & 0xFF;
+                        maxDeviation = Math.max(maxDeviation, Math.abs(2 * channel - 255));
+                    }
+                }
+            }
+            assertThat(maxDeviation)
+                    .as("max deviation from the average (doubled) at scale " + scale)
+                    .isLessThanOrEqualTo(3);
+        }
+    }
+
+    @Test
+    public void testMinificationAliasesWithoutSupersampling() {
+        // makes sure that the box filter test above isn't trivially true:
+        // with a single sample per pixel the checkerboard aliases
+        BufferedImage src = createCheckerboard();
+        BufferedImage result = createScalingFilter(BILINEAR, 8).filter(src, createDest());
+
+        int first = result.getRGB(1, 1);
+        assertThat(first == 0xFF_FF_FF_FF || first == 0xFF_00_00_00).isTrue();
+        for (int y = 1; y < SIZE / 8 - 1; y++) {
+            for (int x = 1; x < SIZE / 8 - 1; x++) {
+                assertThat(result.getRGB(x, y)).isEqualTo(first);
+            }
+        }
+    }
+
+    private static void checkIdentity(int interpolation) {
+        BufferedImage src = createRandomImage();
+        BufferedImage result = createScalingFilter(interpolation, 1).filter(src, createDest());
+
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertThat(result.getRGB(x, y))
+                        .as("pixel at " + x + ", " + y)
+                        .isEqualTo(src.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Returns a filter whose output is the source scaled down by the given factor
+     */
+    private static TransformFilter createScalingFilter(int interpolation, int scale) {
+        TransformFilter filter = new TransformFilter("Test") {
+            @Override
+            protected void transformInverse(int x, int y, float[] out) {
+                out[0] = x * scale;
+                out[1] = y * scale;
+            }
+        };
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setEdgeAction(TransformFilter.REPEAT_EDGE_PIXELS);
+        filter.setInterpolation(interpolation);
+        return filter;
+    }
+
+    private static BufferedImage createDest() {
+        return new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+    }
+
+    private static BufferedImage createRandomImage() {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        Random rand = new Random(42);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                // opaque, because getRGB/setRGB aren't lossless
+                // for translucent pixels of premultiplied images
+                img.setRGB(x, y, 0xFF_00_00_00 | rand.nextInt(0x1_00_00_00));
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage createCheckerboard() {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, TYPE_INT_ARGB);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                img.setRGB(x, y, (x + y) % 2 == 0 ? 0xFF_FF_FF_FF : 0xFF_00_00_00);
+            }
+        }
+        return img;
+    }
+}
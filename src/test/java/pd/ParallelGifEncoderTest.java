@@ -0,0 +1,238 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pd;
+
+import org.junit.Test;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Round trip tests for {@link ParallelGifEncoder}: the written file
+ * is decoded with ImageIO, and the frames are composited like a
+ * GIF viewer would, and then compared with the source frames.
+ */
+public class ParallelGifEncoderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int NUM_FRAMES = 12;
+    private static final int SQUARE_SIZE = 10;
+
+    // the frames with a gradient background have more than 256 colors,
+    // so they are quantized, and only the average error can be checked
+    private static final double MAX_QUANTIZED_MEAN_ERROR = 8.0;
+
+    @Test
+    public void testLocalPalettes() throws IOException {
+        checkRoundTrip(false, false);
+    }
+
+    @Test
+    public void testGlobalPalette() throws IOException {
+        checkRoundTrip(false, true);
+    }
+
+    @Test
+    public void testQuantizedLocalPalettes() throws IOException {
+        checkRoundTrip(true, false);
+    }
+
+    @Test
+    public void testQuantizedGlobalPalette() throws IOException {
+        checkRoundTrip(true, true);
+    }
+
+    private static void checkRoundTrip(boolean gradient, boolean globalPalette) throws IOException {
+        List<BufferedImage> frames = createFrames(gradient);
+        File file = File.createTempFile("anim", ".gif");
+        try {
+            ParallelGifEncoder encoder = new ParallelGifEncoder(file);
+            encoder.setDelay(100);
+            encoder.setRepeat(0);
+            if (globalPalette) {
+                encoder.setGlobalPalette(frames);
+            }
+            for (BufferedImage frame : frames) {
+                encoder.addFrame(frame);
+            }
+            encoder.finish();
+
+            checkDecodedFile(file, frames, gradient, globalPalette);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkDecodedFile(File file, List<BufferedImage> frames,
+                                         boolean gradient, boolean globalPalette) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            reader.setInput(in);
+            assertThat(reader.getNumImages(true)).isEqualTo(NUM_FRAMES);
+
+            Node streamRoot = reader.getStreamMetadata().getAsTree("javax_imageio_gif_stream_1.0");
+            assertThat(findChild(streamRoot, "GlobalColorTable") != null)
+                    .as("has global color table")
+                    .isEqualTo(globalPalette);
+
+            BufferedImage canvas = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+            for (int i = 0; i < NUM_FRAMES; i++) {
+                IIOMetadata metadata = reader.getImageMetadata(i);
+                Node root = metadata.getAsTree("javax_imageio_gif_image_1.0");
+                assertThat(findChild(root, "LocalColorTable") != null)
+                        .as("frame " + i + " has local color table")
+                        .isEqualTo(!globalPalette);
+
+                NamedNodeMap control = findChild(root, "GraphicControlExtension").getAttributes();
+                assertThat(control.getNamedItem("disposalMethod").getNodeValue())
+                        .isEqualTo("doNotDispose");
+                assertThat(control.getNamedItem("transparentColorFlag").getNodeValue())
+                        .as("frame " + i + " transparency")
+                        .isEqualTo(i == 0 ? "FALSE" : "TRUE");
+
+                NamedNodeMap desc = findChild(root, "ImageDescriptor").getAttributes();
+                Rectangle rect = new Rectangle(
+                        intAttr(desc, "imageLeftPosition"), intAttr(desc, "imageTopPosition"),
+                        intAttr(desc, "imageWidth"), intAttr(desc, "imageHeight"));
+                Rectangle expectedRect = i == 0
+                        ? new Rectangle(0, 0, WIDTH, HEIGHT)
+                        : changedBounds(frames.get(i - 1), frames.get(i));
+                assertThat(rect).as("rectangle of frame " + i).isEqualTo(expectedRect);
+
+                // the transparent pixels of the frame leave
+                // the previous frame visible
+                Graphics2D g = canvas.createGraphics();
+                g.drawImage(reader.read(i), rect.x, rect.y, null);
+                g.dispose();
+
+                checkPixels(canvas, frames.get(i), gradient, i);
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Frames with a static background (stripes or a gradient)
+     * and a moving square. Two consecutive frames are identical.
+     */
+    private static List<BufferedImage> createFrames(boolean gradient) {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < NUM_FRAMES; i++) {
+            BufferedImage frame = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_RGB);
+            if (gradient) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        frame.setRGB(x, y, (4 * x << 16) | (5 * y << 8) | 128);
+                    }
+                }
+            }
+            Graphics2D g = frame.createGraphics();
+            if (!gradient) {
+                for (int stripe = 0; stripe < 8; stripe++) {
+                    g.setColor(new Color(30 * stripe, 90, 250 - 30 * stripe));
+                    g.fillRect(stripe * WIDTH / 8, 0, WIDTH / 8, HEIGHT);
+                }
+            }
+            int pos = i == 6 ? 5 : i; // frame 6 is the same as frame 5
+            g.setColor(Color.YELLOW);
+            g.fillRect(3 + 4 * pos, 2 + 3 * pos, SQUARE_SIZE, SQUARE_SIZE);
+            g.dispose();
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the bounding rectangle of the changed pixels,
+     * or the top left pixel if nothing changed
+     */
+    private static Rectangle changedBounds(BufferedImage prev, BufferedImage img) {
+        Rectangle bounds = null;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (prev.getRGB(x, y) != img.getRGB(x, y)) {
+                    if (bounds == null) {
+                        bounds = new Rectangle(x, y, 1, 1);
+                    } else {
+                        bounds.add(new Rectangle(x, y, 1, 1));
+                    }
+                }
+            }
+        }
+        return bounds == null ? new Rectangle(0, 0, 1, 1) : bounds;
+    }
+
+    private static void checkPixels(BufferedImage actual, BufferedImage expected,
+                                    boolean quantized, int frameIndex) {
+        int maxDiff = 0;
+        long sumDiff = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int a = actual.getRGB(x, y);
+                int e = expected.getRGB(x, y);
+                assertThat(a >>> 24).isEqualTo(255);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int diff = Math.abs(((a >> shift) & 0xFF) - ((e >> shift) & 0xFF));
+                    maxDiff = Math.max(maxDiff, diff);
+                    sumDiff += diff;
+                }
+            }
+        }
+        if (quantized) {
+            double meanDiff = sumDiff / (3.0 * WIDTH * HEIGHT);
+            assertThat(meanDiff)
+                    .as("mean channel difference in frame " + frameIndex)
+                    .isLessThanOrEqualTo(MAX_QUANTIZED_MEAN_ERROR);
+        } else {
+            // the palettes of the frames with at most 256 colors are exact
+            assertThat(maxDiff)
+                    .as("max channel difference in frame " + frameIndex)
+                    .isEqualTo(0);
+        }
+    }
+
+    private static Node findChild(Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static int intAttr(NamedNodeMap attributes, String name) {
+        return Integer.parseInt(attributes.getNamedItem(name).getNodeValue());
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import pixelitor.colors.FillType;
 import pixelitor.io.OpenRaster;
 import pixelitor.io.OpenSave;
+import pixelitor.io.PNGEncoder;
 import pixelitor.io.PXCFormat;
 import pixelitor.layers.AdjustmentLayer;
 import pixelitor.layers.BlendingMode;
@@ -182,7 +183,7 @@ public class CompositionIOTest {
         Composition comp = testMultiLayerRead(f, extraCheck);
 
         File tmp = File.createTempFile("pix_tmp", ".ora");
-        OpenRaster.write(comp, tmp, true);
+        OpenRaster.write(comp, tmp, true, PNGEncoder.DEFAULT_COMPRESSION_LEVEL);
 
         // read back and test
         testMultiLayerRead(tmp, extraCheck);
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import pixelitor.headless.Headless;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test for the concurrent execution of {@link RenderRequest}s
+ */
+public class RenderRequestTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_ROUNDS = 3;
+
+    // filters that can't run without an open image or an initialized dialog
+    private static final Set<String> NEEDS_GUI_STATE = new HashSet<>(Arrays.asList(
+            "Fade", "Levels", "RandomFilter", "TransformLayer"));
+
+    // filters with a random output even with the same settings
+    private static final Set<String> NON_DETERMINISTIC = new HashSet<>(Arrays.asList(
+            "Caustics", "Frosted Glass"));
+
+    private static BufferedImage src;
+
+    @BeforeClass
+    public static void setupClass() {
+        // the menus with the filter actions are not built in unit tests
+        if (FilterUtils.getAllFiltersSorted().length == 0) {
+            Headless.registerFilterActions();
+        }
+        src = createTestImage();
+    }
+
+    @Test
+    public void testConcurrentExecutionMatchesSerial() throws Exception {
+        List<RenderRequest> requests = new ArrayList<>();
+        List<int[]> serialResults = new ArrayList<>();
+        Set<String> skipped = new HashSet<>();
+        for (FilterAction fa : FilterUtils.getAllFiltersSorted()) {
+            String name = fa.getName();
+            if (NEEDS_GUI_STATE.contains(name) || NON_DETERMINISTIC.contains(name)) {
+                skipped.add(name);
+                continue;
+            }
+            RenderRequest request = RenderRequest.of(fa.getFilter());
+            int[] first = getPixels(request.execute(src));
+            int[] second = getPixels(request.execute(src));
+            assertThat(second)
+                    .as("repeated serial execution of " + name)
+                    .isEqualTo(first);
+            requests.add(request);
+            serialResults.add(first);
+        }
+        // the exclusion lists must not contain stale filter names
+        assertThat(skipped).hasSize(NEEDS_GUI_STATE.size() + NON_DETERMINISTIC.size());
+
+        // run all the requests several times in mixed order
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        List<Future<BufferedImage>> futures = new ArrayList<>();
+        List<Integer> futureRequests = new ArrayList<>();
+        for (int round = 0; round < NUM_ROUNDS; round++) {
+            for (int i = 0; i < requests.size(); i++) {
+                RenderRequest request = requests.get(i);
+                futures.add(executor.submit(() -> request.execute(src)));
+                futureRequests.add(i);
+            }
+        }
+
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            int requestIndex = futureRequests.get(i);
+            int[] pixels = getPixels(futures.get(i).get());
+            if (!Arrays.equals(pixels, serialResults.get(requestIndex))) {
+                mismatches.add(requests.get(requestIndex).getFilterName());
+            }
+        }
+        executor.shutdown();
+
+        assertThat(mismatches).isEmpty();
+    }
+
+    @Test
+    public void testSettingsAreSnapshotted() {
+        Invert invert = new Invert();
+        RenderRequest request = RenderRequest.of(invert);
+        assertThat(request.canRunInParallel()).isTrue();
+
+        BufferedImage result = request.execute(src);
+        assertThat(result).isNotSameAs(src);
+        assertThat(result.getRGB(0, 0)).isEqualTo(src.getRGB(0, 0) ^ 0x00FFFFFF);
+    }
+
+    private static BufferedImage createTestImage() {
+        BufferedImage img = new BufferedImage(64, 48, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 64, 48, Color.BLUE));
+        g.fillRect(0, 0, 64, 48);
+        g.setColor(new Color(255, 255, 0, 128));
+        g.fillOval(10, 5, 30, 30);
+        g.dispose();
+        return img;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        int width = img.getWidth();
+        int height = img.getHeight();
+        return img.getRGB(0, 0, width, height, null, 0, width);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CannyFilterTest {
+    // the contrasts of step edges, which are above the high
+    // threshold and between the thresholds with the default settings
+    private static final int STRONG_CONTRAST = 150;
+    private static final int WEAK_CONTRAST = 40;
+
+    @Test
+    public void testHysteresisFollowsLongWeakEdges() {
+        // a horizontal step edge across a wide image, which is strong
+        // only at its left end (the contrast fades out gradually, so
+        // that the edge stays straight), and a second edge, which is
+        // weak everywhere. The first one must be followed along its
+        // whole length, the second one must be discarded.
+        int width = 3000;
+        int height = 200;
+        int strongEdgeY = 60;
+        int weakEdgeY = 140;
+        byte[] lum = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 0;
+                if (y >= strongEdgeY) {
+                    value += Math.max(WEAK_CONTRAST, STRONG_CONTRAST - x);
+                }
+                if (y >= weakEdgeY) {
+                    value += WEAK_CONTRAST;
+                }
+                lum[y * width + x] = (byte) value;
+            }
+        }
+
+        byte[] edges = new CannyFilter().detectEdges(lum, width, height,
+                ProgressTracker.NULL_TRACKER);
+
+        // skip the ends, where the clamped gradient is weaker
+        for (int x = 10; x < width - 10; x++) {
+            assertThat(countEdgesInColumn(edges, width, x, strongEdgeY - 3, strongEdgeY + 3))
+                    .as("strong edge at x = %d", x)
+                    .isEqualTo(1);
+            assertThat(countEdgesInColumn(edges, width, x, weakEdgeY - 3, weakEdgeY + 3))
+                    .as("weak edge at x = %d", x)
+                    .isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testGrayMatchesARGB() {
+        // layer masks are filtered as TYPE_BYTE_GRAY images
+        int width = 120;
+        int height = 90;
+        BufferedImage gray = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        BufferedImage argb = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dx = x - width / 2;
+                int dy = y - height / 2;
+                int v = dx * dx + dy * dy < 30 * 30 ? 200 : 40;
+                gray.getRaster().setSample(x, y, 0, v);
+                argb.setRGB(x, y, 0xFF_00_00_00 | v << 16 | v << 8 | v);
+            }
+        }
+
+        CannyFilter filter = new CannyFilter();
+        BufferedImage grayResult = filter.filter(gray, null, ProgressTracker.NULL_TRACKER);
+        BufferedImage argbResult = filter.filter(argb, null, ProgressTracker.NULL_TRACKER);
+
+        assertThat(grayResult.getType()).isEqualTo(TYPE_BYTE_GRAY);
+        assertThat(argbResult.getType()).isEqualTo(TYPE_INT_ARGB);
+
+        byte[] grayEdges = ((DataBufferByte) grayResult.getRaster().getDataBuffer()).getData();
+        int numEdges = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean grayEdge = grayEdges[y * width + x] != 0;
+                boolean argbEdge = argbResult.getRGB(x, y) == 0xFF_FF_FF_FF;
+                assertThat(grayEdge).isEqualTo(argbEdge);
+                if (grayEdge) {
+                    numEdges++;
+                }
+            }
+        }
+        // about the circumference of the circle
+        assertThat(numEdges).isGreaterThan(150);
+    }
+
+    private static int countEdgesInColumn(byte[] edges, int width, int x, int minY, int maxY) {
+        int count = 0;
+        for (int y = minY; y <= maxY; y++) {
+            if (edges[y * width + x] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
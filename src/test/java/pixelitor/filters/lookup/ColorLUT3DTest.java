@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.lookup;
+
+import org.junit.Test;
+import pixelitor.filters.RGBPixelOp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ColorLUT3D}
+ */
+public class ColorLUT3DTest {
+    private static final RGBPixelOp IDENTITY = (a, r, g, b) ->
+            (a << 24) | (r << 16) | (g << 8) | b;
+
+    // a channel mixer, which is linear, so the
+    // interpolation must not change its results
+    private static final RGBPixelOp LINEAR = (a, r, g, b) ->
+            (a << 24) | (((r + g) / 2) << 16) | (b << 8) | (255 - r);
+
+    @Test
+    public void testIdentityIsExact() {
+        for (int size : new int[]{2, 17, ColorLUT3D.DEFAULT_SIZE}) {
+            ColorLUT3D lut = ColorLUT3D.bake(IDENTITY, size);
+            for (int rgb = 0; rgb < 1 << 24; rgb += 997) {
+                int argb = 0x80_00_00_00 | rgb;
+                assertThat(lut.lookup(argb)).isEqualTo(argb);
+            }
+        }
+    }
+
+    @Test
+    public void testBakedMatchesTransformation() {
+        ColorLUT3D lut = ColorLUT3D.bake(LINEAR, ColorLUT3D.DEFAULT_SIZE);
+        for (int rgb = 0; rgb < 1 << 24; rgb += 1009) {
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            int expected = LINEAR.changeRGB(255, r, g, b);
+            int actual = lut.lookup(0xFF_00_00_00 | rgb);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int diff = ((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF);
+                // only the integer division in the transformation can differ
+                assertThat(Math.abs(diff)).isLessThanOrEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void testReadCube() throws IOException {
+        // a 2x2x2 table that inverts the colors, red changes fastest
+        String cube = "# comment\n" +
+                "TITLE \"Invert\"\n" +
+                "LUT_3D_SIZE 2\n" +
+                "\n" +
+                "1 1 1\n" +
+                "0 1 1\n" +
+                "1 0 1\n" +
+                "0 0 1\n" +
+                "1 1 0\n" +
+                "0 1 0\n" +
+                "1 0 0\n" +
+                "0 0 0\n";
+        ColorLUT3D lut = ColorLUT3D.readCube(
+                new BufferedReader(new StringReader(cube)), "test");
+
+        assertThat(lut.getSize()).isEqualTo(2);
+        assertThat(lut.lookup(0xFF_00_00_00)).isEqualTo(0xFF_FF_FF_FF);
+        assertThat(lut.lookup(0xFF_FF_00_00)).isEqualTo(0xFF_00_FF_FF);
+        assertThat(lut.lookup(0xFF_12_80_F0)).isEqualTo(0xFF_ED_7F_0F);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadIncompleteCube() throws IOException {
+        String cube = "LUT_3D_SIZE 2\n0 0 0\n1 1 1\n";
+        ColorLUT3D.readCube(new BufferedReader(new StringReader(cube)), "test");
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ColorLUT3D lut = ColorLUT3D.bake(LINEAR, 9);
+        File file = File.createTempFile("lut", ".cube");
+        try {
+            lut.writeCube(file, "Test");
+            ColorLUT3D read = ColorLUT3D.readCube(file);
+
+            assertThat(read.getSize()).isEqualTo(9);
+            for (int rgb = 0; rgb < 1 << 24; rgb += 4999) {
+                int argb = 0xFF_00_00_00 | rgb;
+                int expected = lut.lookup(argb);
+                int actual = read.lookup(argb);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int diff = ((expected >>> shift) & 0xFF) - ((actual >>> shift) & 0xFF);
+                    // the written lattice points are slightly shifted
+                    assertThat(Math.abs(diff)).isLessThanOrEqualTo(1);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
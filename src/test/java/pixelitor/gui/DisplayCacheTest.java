@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import org.jdesktop.swingx.painter.CheckerboardPainter;
+import org.junit.Test;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the {@link DisplayCache} paints the same
+ * pixels as the checkerboard and the composite painted with Java2D
+ */
+public class DisplayCacheTest {
+    private static final int CO_WIDTH = 200;
+    private static final int CO_HEIGHT = 150;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void testMatchesJava2D() {
+        double[] viewScales = {1.0, 2.0, 0.5, 3.0};
+        double[] canvasStarts = {0, 7};
+
+        for (int type : new int[]{TYPE_INT_ARGB_PRE, TYPE_INT_ARGB}) {
+            BufferedImage composite = createTranslucentImage(60, 45, type);
+            for (double viewScale : viewScales) {
+                for (double canvasStart : canvasStarts) {
+                    Rectangle canvasBounds = canvasBounds(composite, viewScale, canvasStart);
+
+                    BufferedImage expected = paintWithJava2D(composite, viewScale, canvasStart, canvasBounds);
+                    BufferedImage actual = new BufferedImage(CO_WIDTH, CO_HEIGHT, TYPE_INT_RGB);
+                    Graphics2D g = actual.createGraphics();
+                    g.setClip(canvasBounds);
+                    boolean painted = new DisplayCache().paint(g, composite,
+                            canvasBounds, canvasBounds, canvasBounds,
+                            viewScale, canvasStart, canvasStart);
+                    g.dispose();
+
+                    String description = String.format("type = %d, viewScale = %.1f, canvasStart = %.1f",
+                            type, viewScale, canvasStart);
+                    assertThat(painted).as(description).isTrue();
+                    assertThat(maxChannelDiff(expected, actual, canvasBounds))
+                            .as(description)
+                            .isLessThanOrEqualTo(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReusedWhileTheCompositeDoesNotChange() {
+        BufferedImage composite = createTranslucentImage(100, 100, TYPE_INT_ARGB_PRE);
+        Rectangle canvasBounds = canvasBounds(composite, 1.0, 0);
+        Rectangle visiblePart = new Rectangle(0, 0, 50, 50);
+        Rectangle smallClip = new Rectangle(10, 10, 5, 5);
+        DisplayCache cache = new DisplayCache();
+
+        // the first full paint calculates the visible part with the margin
+        assertThat(paint(cache, composite, visiblePart, visiblePart, canvasBounds)).isTrue();
+        assertThat(cache.getNumCalculations()).isEqualTo(1);
+
+        // a scrolled paint with the same composite is only copied
+        assertThat(paint(cache, composite, new Rectangle(60, 60, 5, 5),
+                new Rectangle(20, 20, 50, 50), canvasBounds)).isTrue();
+        assertThat(cache.getNumCalculations()).isEqualTo(1);
+
+        // a small paint with a new composite is not cached...
+        BufferedImage changed = createTranslucentImage(100, 100, TYPE_INT_ARGB_PRE);
+        assertThat(paint(cache, changed, smallClip, visiblePart, canvasBounds)).isFalse();
+        assertThat(cache.getNumCalculations()).isEqualTo(1);
+
+        // ...but if the composite is the same in the next paint, it is
+        assertThat(paint(cache, changed, smallClip, visiblePart, canvasBounds)).isTrue();
+        assertThat(cache.getNumCalculations()).isEqualTo(2);
+
+        // a full repaint with a new composite is always cached
+        BufferedImage changedAgain = createTranslucentImage(100, 100, TYPE_INT_ARGB_PRE);
+        assertThat(paint(cache, changedAgain, visiblePart, visiblePart, canvasBounds)).isTrue();
+        assertThat(cache.getNumCalculations()).isEqualTo(3);
+    }
+
+    @Test
+    public void testRecalculatedAfterRelease() {
+        BufferedImage composite = createTranslucentImage(100, 100, TYPE_INT_ARGB_PRE);
+        Rectangle canvasBounds = canvasBounds(composite, 1.0, 0);
+        Rectangle visiblePart = new Rectangle(0, 0, 50, 50);
+        DisplayCache cache = new DisplayCache();
+
+        assertThat(paint(cache, composite, visiblePart, visiblePart, canvasBounds)).isTrue();
+        BufferedImage cached = cache.getImage();
+        assertThat(cached).isNotNull();
+
+        cache.release();
+        assertThat(cache.getImage()).isNull();
+
+        // a small paint after the release isn't cached...
+        Rectangle smallClip = new Rectangle(10, 10, 5, 5);
+        assertThat(paint(cache, composite, smallClip, visiblePart, canvasBounds)).isFalse();
+        assertThat(cache.getNumCalculations()).isEqualTo(1);
+
+        // ...but a full repaint recalculates the same image
+        assertThat(paint(cache, composite, visiblePart, visiblePart, canvasBounds)).isTrue();
+        assertThat(cache.getNumCalculations()).isEqualTo(2);
+        assertThat(maxChannelDiff(cached, cache.getImage(),
+                new Rectangle(0, 0, cached.getWidth(), cached.getHeight())))
+                .isEqualTo(0);
+    }
+
+    @Test
+    public void testNotUsedForHalfPixelCanvasStart() {
+        BufferedImage composite = createTranslucentImage(50, 50, TYPE_INT_ARGB_PRE);
+        Rectangle canvasBounds = canvasBounds(composite, 1.0, 7.5);
+        BufferedImage dest = new BufferedImage(CO_WIDTH, CO_HEIGHT, TYPE_INT_RGB);
+        Graphics2D g = dest.createGraphics();
+
+        boolean painted = new DisplayCache().paint(g, composite, canvasBounds,
+                canvasBounds, canvasBounds, 1.0, 7.5, 7.5);
+        g.dispose();
+
+        assertThat(painted).isFalse();
+    }
+
+    private static boolean paint(DisplayCache cache, BufferedImage composite,
+                                 Rectangle clip, Rectangle visiblePart, Rectangle canvasBounds) {
+        BufferedImage dest = new BufferedImage(CO_WIDTH, CO_HEIGHT, TYPE_INT_RGB);
+        Graphics2D g = dest.createGraphics();
+        g.setClip(clip);
+        boolean painted = cache.paint(g, composite, clip,
+                visiblePart, canvasBounds, 1.0, 0, 0);
+        g.dispose();
+        return painted;
+    }
+
+    private static Rectangle canvasBounds(BufferedImage composite, double viewScale, double canvasStart) {
+        Rectangle bounds = new Rectangle((int) canvasStart, (int) canvasStart,
+                (int) (composite.getWidth() * viewScale),
+                (int) (composite.getHeight() * viewScale));
+        return bounds.intersection(new Rectangle(0, 0, CO_WIDTH, CO_HEIGHT));
+    }
+
+    // the same steps as in ImageComponent.paintComponent without the cache
+    private static BufferedImage paintWithJava2D(BufferedImage composite, double viewScale,
+                                                 double canvasStart, Rectangle canvasBounds) {
+        BufferedImage img = new BufferedImage(CO_WIDTH, CO_HEIGHT, TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setClip(canvasBounds);
+        g.translate(canvasStart, canvasStart);
+        CheckerboardPainter painter = ImageUtils.createCheckerboardPainter();
+        painter.paint(g, null, canvasBounds.width, canvasBounds.height);
+        g.scale(viewScale, viewScale);
+        ImageUtils.drawImageWithClipping(g, composite);
+        g.dispose();
+        return img;
+    }
+
+    private BufferedImage createTranslucentImage(int width, int height, int type) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha;
+                if (x < width / 4) {
+                    alpha = 0;
+                } else if (x < width / 2) {
+                    alpha = 255;
+                } else {
+                    alpha = random.nextInt(256);
+                }
+                img.setRGB(x, y, alpha << 24 | random.nextInt(0x1_00_00_00));
+            }
+        }
+        if (type == TYPE_INT_ARGB) {
+            return img;
+        }
+        BufferedImage converted = new BufferedImage(width, height, type);
+        Graphics2D g = converted.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+
+    private static int maxChannelDiff(BufferedImage a, BufferedImage b, Rectangle area) {
+        int max = 0;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                int rgbA = a.getRGB(x, y);
+                int rgbB = b.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int diff = Math.abs(((rgbA >>> shift) & 0xFF) - ((rgbB >>> shift) & 0xFF));
+                    max = Math.max(max, diff);
+                }
+            }
+        }
+        return max;
+    }
+}
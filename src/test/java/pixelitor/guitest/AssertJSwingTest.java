@@ -814,6 +814,12 @@ public class AssertJSwingTest {
         thumbSizeCB.selectItem(3);
         thumbSizeCB.selectItem(0);
 
+        // Test "PNG Compression Level"
+        JComboBoxFixture pngCompressionCB = dialog.comboBox("pngCompressionCB");
+        int compressionIndex = pngCompressionCB.target().getSelectedIndex();
+        pngCompressionCB.selectItem(9);
+        pngCompressionCB.selectItem(compressionIndex);
+
         // Test "Undo/Redo Levels"
         JTextComponentFixture undoLevelsTF = dialog.textBox("undoLevelsTF");
         boolean undoWas5 = false;
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.headless;
+
+import org.junit.Test;
+import pixelitor.filters.Filter;
+import pixelitor.filters.Invert;
+import pixelitor.filters.ParametrizedFilter;
+import pixelitor.filters.gui.FilterParam;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.jhlabsproxies.JHGaussianBlur;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the parsing and filter lookup of the headless API
+ */
+public class BatchJobTest {
+    private static final Rectangle BOUNDS = new Rectangle(0, 0, 800, 600);
+
+    @Test
+    public void testFindFilters() {
+        // by menu name and by class name
+        assertThat(FilterFinder.create("Gaussian Blur")).isInstanceOf(JHGaussianBlur.class);
+        assertThat(FilterFinder.create("jhgaussianblur")).isInstanceOf(JHGaussianBlur.class);
+        assertThat(FilterFinder.create("invert")).isInstanceOf(Invert.class);
+
+        assertThat(FilterFinder.getFilterNames()).contains("Gaussian Blur");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFilter() {
+        FilterFinder.create("No Such Filter");
+    }
+
+    @Test
+    public void testFilterStep() {
+        FilterStep step = FilterStep.parse(" Gaussian Blur ; radius = 12.5 ");
+        assertThat(step.getFilterName()).isEqualTo("Gaussian Blur");
+        assertThat(step.getParams().get("radius")).isEqualTo("12.5");
+
+        Filter filter = step.createFilter(BOUNDS);
+        RangeParam radius = (RangeParam) findParam(filter, "Radius");
+        assertThat(radius.getValueAsDouble()).isEqualTo(12.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParamOutOfRange() {
+        FilterStep.parse("Gaussian Blur; Radius = 1000").createFilter(BOUNDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownParam() {
+        FilterStep.parse("Gaussian Blur; Size = 10").createFilter(BOUNDS);
+    }
+
+    @Test
+    public void testParseJob() {
+        File baseDir = new File("jobs");
+        BatchJob job = BatchJob.parse(Arrays.asList(
+                "# a comment",
+                "input = in",
+                "output = /tmp/out",
+                "format = png",
+                "",
+                "filter = Gaussian Blur; Radius = 5",
+                "filter = Invert"), baseDir);
+
+        assertThat(job.getOutputDir()).isEqualTo(new File("/tmp/out"));
+        assertThat(job.getSteps()).hasSize(2);
+        assertThat(job.getOutputFileFor(new File("in", "photo.jpg")))
+                .isEqualTo(new File("/tmp/out", "photo.png"));
+        assertThat(job.listInputFiles()).containsExactly(new File(baseDir, "in"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJobWithoutInput() {
+        BatchJob.parse(Arrays.asList("output = out"), null);
+    }
+
+    private static FilterParam findParam(Filter filter, String name) {
+        return ((ParametrizedFilter) filter).getParamSet().getParams().stream()
+                .filter(p -> p.getName().equals(name))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+}
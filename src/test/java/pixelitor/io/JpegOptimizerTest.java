@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link JpegOptimizer}
+ */
+public class JpegOptimizerTest {
+    @Test
+    public void testAlignToMCUs() {
+        JpegOptimizer optimizer = new JpegOptimizer(createImage(100, 60));
+
+        assertThat(optimizer.alignToMCUs(new Rectangle(37, 45, 30, 10)))
+                .isEqualTo(new Rectangle(32, 32, 48, 28));
+        // clipped to the image
+        assertThat(optimizer.alignToMCUs(new Rectangle(-10, 50, 200, 100)))
+                .isEqualTo(new Rectangle(0, 48, 100, 12));
+        assertThat(optimizer.alignToMCUs(new Rectangle(0, 0, 0, 0)).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testFindQuality() throws IOException {
+        JpegOptimizer optimizer = new JpegOptimizer(createImage(200, 150));
+        assertThat(optimizer.hasExactSizes()).isTrue();
+
+        int target = optimizer.calcSize(settings(55), true, () -> false);
+        int quality = optimizer.findQuality(target, false, () -> false);
+        assertThat(quality).isGreaterThanOrEqualTo(55);
+        assertThat(optimizer.calcSize(settings(quality), true, () -> false))
+                .isLessThanOrEqualTo(target);
+        if (quality < 100) {
+            assertThat(optimizer.calcSize(settings(quality + 1), true, () -> false))
+                    .isGreaterThan(target);
+        }
+
+        // too small for any quality
+        assertThat(optimizer.findQuality(100, false, () -> false)).isEqualTo(0);
+    }
+
+    @Test
+    public void testSizeEstimate() throws IOException {
+        JpegOptimizer optimizer = new JpegOptimizer(createImage(1600, 1200));
+        assertThat(optimizer.hasExactSizes()).isFalse();
+
+        for (int quality = 10; quality <= 90; quality += 40) {
+            int exact = optimizer.calcSize(settings(quality), true, () -> false);
+            int estimate = optimizer.calcSize(settings(quality), false, () -> false);
+            assertThat(Math.abs(estimate - exact)).isLessThan(exact / 5);
+        }
+    }
+
+    @Test
+    public void testSizeDeliveredAfterPreviewOnlyRequest() throws Exception {
+        JpegOptimizer optimizer = new JpegOptimizer(createImage(400, 300));
+        JpegSettings settings = settings(70);
+        int expectedSize = optimizer.calcSize(settings, true, () -> false);
+
+        BlockingQueue<JpegOptimizer.Preview> delivered = new LinkedBlockingQueue<>();
+        // a size request immediately superseded by a
+        // preview-only request, like when panning the preview
+        optimizer.requestPreview(settings, new Rectangle(0, 0, 100, 100),
+                true, delivered::add);
+        optimizer.requestPreview(settings, new Rectangle(50, 50, 100, 100),
+                false, delivered::add);
+
+        JpegOptimizer.Preview preview = delivered.poll(30, TimeUnit.SECONDS);
+        assertThat(preview).isNotNull();
+        assertThat(preview.getNumBytes()).isEqualTo(expectedSize);
+
+        // once the size is delivered, preview-only requests don't calculate it
+        optimizer.requestPreview(settings, new Rectangle(0, 0, 50, 50),
+                false, delivered::add);
+        preview = delivered.poll(30, TimeUnit.SECONDS);
+        assertThat(preview).isNotNull();
+        assertThat(preview.getNumBytes()).isEqualTo(-1);
+    }
+
+    private static JpegSettings settings(int quality) {
+        return new JpegSettings(quality / 100.0f, false);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, width, height, Color.ORANGE));
+        g.fillRect(0, 0, width, height);
+        Random random = new Random(42);
+        for (int i = 0; i < width * height / 500; i++) {
+            g.setColor(new Color(random.nextInt()));
+            g.fillOval(random.nextInt(width), random.nextInt(height),
+                    random.nextInt(60), random.nextInt(60));
+        }
+        g.dispose();
+        return img;
+    }
+}
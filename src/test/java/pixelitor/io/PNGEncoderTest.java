@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.io;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link PNGEncoder}
+ */
+public class PNGEncoderTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(42);
+        int[] types = {TYPE_INT_ARGB, TYPE_INT_RGB, TYPE_BYTE_GRAY};
+        for (int type : types) {
+            for (int level = PNGEncoder.MIN_COMPRESSION_LEVEL; level <= PNGEncoder.MAX_COMPRESSION_LEVEL; level += 3) {
+                // tall enough to be split into several bands
+                BufferedImage img = new BufferedImage(300, 700, type);
+                for (int y = 0; y < img.getHeight(); y++) {
+                    for (int x = 0; x < img.getWidth(); x++) {
+                        int rgb = random.nextInt(10) == 0 ? random.nextInt() : (x * y) * 0x010101;
+                        img.setRGB(x, y, rgb);
+                    }
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                PNGEncoder.write(img, out, level, ProgressTracker.NULL_TRACKER);
+                BufferedImage read = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+                assertThat(read.getWidth()).isEqualTo(img.getWidth());
+                assertThat(read.getHeight()).isEqualTo(img.getHeight());
+                for (int y = 0; y < img.getHeight(); y++) {
+                    for (int x = 0; x < img.getWidth(); x++) {
+                        assertThat(read.getRGB(x, y)).isEqualTo(img.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        byte[] data = new byte[100_000];
+        new Random(7).nextBytes(data);
+        int split = 65_537;
+
+        Adler32 whole = new Adler32();
+        whole.update(data, 0, data.length);
+        Adler32 first = new Adler32();
+        first.update(data, 0, split);
+        Adler32 second = new Adler32();
+        second.update(data, split, data.length - split);
+
+        long combined = PNGEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - split);
+        assertThat(combined).isEqualTo(whole.getValue());
+    }
+}
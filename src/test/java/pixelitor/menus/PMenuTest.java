@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.menus;
+
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the lazy menus of {@link PMenu}
+ */
+public class PMenuTest {
+    private static final KeyStroke KEY = KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0);
+
+    @Test
+    public void testLazyItemsCreatedWhenFirstShown() {
+        PMenu menu = PMenu.createLazy("Lazy");
+        menu.addAlwaysEnabledAction(new TestAction("First"));
+        menu.addSeparator();
+        menu.add(new JMenuItem("Second"));
+        menu.addAlwaysEnabledAction(new TestAction("Third"));
+
+        assertThat(menu.getItemCount()).isEqualTo(0);
+
+        menu.setPopupMenuVisible(false);
+        assertThat(menu.getItemCount()).isEqualTo(0);
+
+        menu.setPopupMenuVisible(true);
+        checkItems(menu);
+
+        // showing it again doesn't create the items again
+        menu.setPopupMenuVisible(false);
+        menu.setPopupMenuVisible(true);
+        checkItems(menu);
+
+        // items added later are added immediately
+        menu.addAlwaysEnabledAction(new TestAction("Fourth"));
+        assertThat(menu.getItemCount()).isEqualTo(5);
+        assertThat(menu.getItem(4).getText()).isEqualTo("Fourth");
+    }
+
+    private static void checkItems(PMenu menu) {
+        assertThat(menu.getItemCount()).isEqualTo(4);
+        assertThat(menu.getItem(0).getText()).isEqualTo("First");
+        assertThat(menu.getItem(1)).isNull(); // the separator
+        assertThat(menu.getItem(2).getText()).isEqualTo("Second");
+        assertThat(menu.getItem(3).getText()).isEqualTo("Third");
+    }
+
+    @Test
+    public void testNormalMenuItemsCreatedImmediately() {
+        PMenu menu = new PMenu("Normal");
+        menu.addAlwaysEnabledAction(new TestAction("First"), KEY);
+        menu.addAlwaysEnabledAction(new TestAction("Second"));
+
+        assertThat(menu.getItemCount()).isEqualTo(2);
+        assertThat(menu.getItem(0).getAccelerator()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void testLazyMenusRejectAccelerators() {
+        PMenu menu = PMenu.createLazy("Lazy");
+        checkRejected(() -> menu.addAlwaysEnabledAction(new TestAction("A"), KEY));
+        checkRejected(() -> menu.addActionWithKey(new TestAction("B"), KEY));
+        checkRejected(() -> menu.buildAction(new TestAction("C")).withKey(KEY).add());
+    }
+
+    private static void checkRejected(Runnable addWithKey) {
+        boolean rejected = false;
+        try {
+            addWithKey.run();
+        } catch (AssertionError e) {
+            rejected = true;
+        }
+        assertThat(rejected).isTrue();
+    }
+
+    private static class TestAction extends AbstractAction {
+        TestAction(String name) {
+            super(name);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import org.junit.Test;
+import pixelitor.utils.ImageUtils;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_4BYTE_ABGR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link SelectionMask}
+ */
+public class SelectionMaskTest {
+    // the two shapes overlap, and they extend over several tiles,
+    // and also to the negative coordinates
+    private static final Shape SHAPE_A = new Ellipse2D.Double(-20.3, 10.6, 150.2, 90.7);
+    private static final Shape SHAPE_B = AffineTransform.getRotateInstance(0.4, 90, 60)
+            .createTransformedShape(new Rectangle2D.Double(40.5, 20.2, 110.4, 70.8));
+
+    private static final Rectangle CHECKED_AREA = new Rectangle(-40, -20, 240, 170);
+
+    // Away from the edges of the input shapes the results can still
+    // differ a little from the rasterized Area, because an edge can
+    // cut off a sliver of a pixel which rounds to 0 or 255 in the input
+    private static final int TOLERANCE = 4;
+
+    private final Random random = new Random(11);
+
+    @Test
+    public void testAddMatchesArea() {
+        SelectionMask result = mask(SHAPE_A).add(mask(SHAPE_B));
+        Area area = new Area(SHAPE_A);
+        area.add(new Area(SHAPE_B));
+
+        checkAgainstArea(result, area, SHAPE_A, SHAPE_B);
+    }
+
+    @Test
+    public void testSubtractMatchesArea() {
+        SelectionMask result = mask(SHAPE_A).subtract(mask(SHAPE_B));
+        Area area = new Area(SHAPE_A);
+        area.subtract(new Area(SHAPE_B));
+
+        checkAgainstArea(result, area, SHAPE_A, SHAPE_B);
+    }
+
+    @Test
+    public void testIntersectMatchesArea() {
+        SelectionMask result = mask(SHAPE_A).intersect(mask(SHAPE_B));
+        Area area = new Area(SHAPE_A);
+        area.intersect(new Area(SHAPE_B));
+
+        checkAgainstArea(result, area, SHAPE_A, SHAPE_B);
+    }
+
+    @Test
+    public void testInvertMatchesArea() {
+        Rectangle canvas = new Rectangle(0, 0, 170, 130);
+        SelectionMask result = mask(SHAPE_A).invert(canvas);
+        Area area = new Area(canvas);
+        area.subtract(new Area(SHAPE_A));
+
+        checkAgainstArea(result, area, SHAPE_A, canvas);
+        assertThat(result.getBounds()).isEqualTo(canvas);
+    }
+
+    @Test
+    public void testGrowDistance() {
+        Rectangle rect = new Rectangle(30, 20, 40, 30);
+        SelectionMask grown = mask(rect).grow(5);
+
+        Rectangle expectedBounds = new Rectangle(rect);
+        expectedBounds.grow(5, 5);
+        assertThat(grown.getBounds()).isEqualTo(expectedBounds);
+
+        // in the middle of the sides, the edge moves exactly 5 pixels
+        assertThat(grown.getCoverage(rect.x - 5, 35)).isEqualTo(255);
+        assertThat(grown.getCoverage(rect.x - 6, 35)).isEqualTo(0);
+        assertThat(grown.getCoverage(50, rect.y + rect.height + 4)).isEqualTo(255);
+        assertThat(grown.getCoverage(50, rect.y + rect.height + 5)).isEqualTo(0);
+
+        // the corners are rounded
+        assertThat(grown.getCoverage(rect.x - 5, rect.y - 5)).isEqualTo(0);
+        assertThat(grown.getCoverage(rect.x - 3, rect.y - 3)).isEqualTo(255);
+
+        // a fractional distance gives a partially selected edge
+        SelectionMask halfGrown = mask(rect).grow(2.5);
+        assertThat(halfGrown.getCoverage(rect.x - 2, 35)).isEqualTo(255);
+        assertThat(halfGrown.getCoverage(rect.x - 3, 35)).isEqualTo(128);
+        assertThat(halfGrown.getCoverage(rect.x - 4, 35)).isEqualTo(0);
+    }
+
+    @Test
+    public void testShrinkDistance() {
+        Rectangle rect = new Rectangle(30, 20, 40, 30);
+        SelectionMask shrunk = mask(rect).shrink(5);
+
+        Rectangle expectedBounds = new Rectangle(rect);
+        expectedBounds.grow(-5, -5);
+        assertThat(shrunk.getBounds()).isEqualTo(expectedBounds);
+
+        assertThat(shrunk.getCoverage(rect.x + 4, 35)).isEqualTo(0);
+        assertThat(shrunk.getCoverage(rect.x + 5, 35)).isEqualTo(255);
+
+        // shrinking more than the half size removes everything
+        assertThat(mask(rect).shrink(16).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testFeatherDistance() {
+        Rectangle rect = new Rectangle(30, 20, 40, 30);
+        int radius = 4;
+        SelectionMask feathered = mask(rect).feather(radius);
+
+        int y = 35;
+        int lastCoverage = -1;
+        for (int x = rect.x - radius - 2; x <= rect.x + radius + 2; x++) {
+            int coverage = feathered.getCoverage(x, y);
+            // the signed distance of the pixel center from the edge
+            double edgeDist = x + 0.5 - rect.x;
+            if (edgeDist <= -radius) {
+                assertThat(coverage).as("x = %d", x).isEqualTo(0);
+            } else if (edgeDist >= radius) {
+                assertThat(coverage).as("x = %d", x).isEqualTo(255);
+            } else {
+                assertThat(coverage).as("x = %d", x).isGreaterThan(0);
+                assertThat(coverage).as("x = %d", x).isLessThan(255);
+            }
+            assertThat(coverage).as("x = %d", x).isGreaterThanOrEqualTo(lastCoverage);
+            lastCoverage = coverage;
+
+            // the falloff is symmetric around the original edge
+            int mirrorX = 2 * rect.x - 1 - x;
+            assertThat(coverage + feathered.getCoverage(mirrorX, y))
+                    .as("x = %d", x)
+                    .isEqualTo(255);
+        }
+    }
+
+    @Test
+    public void testOutlineRoundTrip() {
+        // a ring with a hole, and two squares touching only at a corner
+        Area area = new Area(new Ellipse2D.Double(10.3, 10.8, 80.4, 60.1));
+        area.subtract(new Area(new Ellipse2D.Double(30.7, 25.2, 30.5, 20.4)));
+        area.add(new Area(new Rectangle(100, 10, 10, 10)));
+        area.add(new Area(new Rectangle(110, 20, 10, 10)));
+        SelectionMask original = mask(area);
+
+        Shape outline = original.toOutline();
+        // copy the path, because the traced outline
+        // would return the original mask without rasterizing
+        SelectionMask traced = mask(new Path2D.Double(outline));
+
+        forEachPixel((x, y) -> {
+            int expected = original.getCoverage(x, y) >= 128 ? 255 : 0;
+            assertThat(traced.getCoverage(x, y))
+                    .as("x = %d, y = %d", x, y)
+                    .isEqualTo(expected);
+        });
+    }
+
+    @Test
+    public void testBlendMatchesSlowPath() {
+        SelectionMask mask = mask(SHAPE_A);
+        // the images are not aligned with each other or with the canvas
+        int destX = -10;
+        int destY = 5;
+        int newX = 3;
+        int newY = -7;
+
+        BufferedImage expected = createRandomImage(TYPE_4BYTE_ABGR, 150, 110);
+        BufferedImage newImg = createRandomImage(TYPE_4BYTE_ABGR, 160, 120);
+        BufferedImage origDest = copy(expected, TYPE_4BYTE_ABGR);
+        mask.blend(expected, destX, destY, newImg, newX, newY);
+
+        for (int destType : new int[]{TYPE_INT_ARGB, TYPE_INT_ARGB_PRE}) {
+            for (int newType : new int[]{TYPE_INT_ARGB, TYPE_INT_ARGB_PRE}) {
+                // sub-images, where the stride is larger than the width,
+                // and the first pixel is not at the start of the array
+                BufferedImage dest = copy(origDest, destType, 7, 3);
+                BufferedImage newSub = copy(newImg, newType, 5, 9);
+                assertThat(dest.getRaster().getSampleModelTranslateX()).isNotEqualTo(0);
+
+                mask.blend(dest, destX, destY, newSub, newX, newY);
+
+                // the premultiplied conversions lose some precision
+                int tolerance = destType == TYPE_INT_ARGB && newType == TYPE_INT_ARGB ? 0 : 2;
+                for (int y = 0; y < dest.getHeight(); y++) {
+                    for (int x = 0; x < dest.getWidth(); x++) {
+                        int diff = maxPremultipliedDiff(expected.getRGB(x, y), dest.getRGB(x, y));
+                        assertThat(diff)
+                                .as("destType = %d, newType = %d, x = %d, y = %d", destType, newType, x, y)
+                                .isLessThanOrEqualTo(tolerance);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBlendCoverageLimits() {
+        SelectionMask mask = mask(new Rectangle(10, 10, 20, 20));
+        BufferedImage dest = createRandomImage(TYPE_INT_ARGB, 50, 50);
+        BufferedImage orig = copy(dest, TYPE_INT_ARGB);
+        BufferedImage newImg = createRandomImage(TYPE_INT_ARGB, 50, 50);
+
+        mask.blend(dest, 0, 0, newImg, 0, 0);
+
+        // fully selected pixels are replaced, unselected ones are not touched
+        assertThat(dest.getRGB(15, 15)).isEqualTo(newImg.getRGB(15, 15));
+        assertThat(dest.getRGB(5, 15)).isEqualTo(orig.getRGB(5, 15));
+        assertThat(dest.getRGB(30, 30)).isEqualTo(orig.getRGB(30, 30));
+    }
+
+    private interface PixelCheck {
+        void check(int x, int y);
+    }
+
+    /**
+     * Compares the result of a mask operation with the rasterized
+     * result of the same Area operation. Where an input shape has a
+     * partially covered pixel, the coverage based operations can only
+     * approximate the result (for example if both edges cross the
+     * pixel), so there only the selected (at least 50%) state of the
+     * pixels is compared, and a few differences are allowed.
+     */
+    private static void checkAgainstArea(SelectionMask result, Area area,
+                                         Shape input1, Shape input2) {
+        SelectionMask mask1 = mask(input1);
+        SelectionMask mask2 = mask(input2);
+        SelectionMask expected = mask(area);
+        int[] numEdgePixels = {0};
+        int[] numDifferent = {0};
+        forEachPixel((x, y) -> {
+            int c1 = mask1.getCoverage(x, y);
+            int c2 = mask2.getCoverage(x, y);
+            int actual = result.getCoverage(x, y);
+            int exact = expected.getCoverage(x, y);
+            boolean edge = (c1 != 0 && c1 != 255) || (c2 != 0 && c2 != 255);
+            if (edge) {
+                numEdgePixels[0]++;
+                if ((actual >= 128) != (exact >= 128)) {
+                    numDifferent[0]++;
+                }
+            } else {
+                assertThat(Math.abs(actual - exact))
+                        .as("x = %d, y = %d", x, y)
+                        .isLessThanOrEqualTo(TOLERANCE);
+            }
+        });
+        assertThat(numEdgePixels[0]).isGreaterThan(100);
+        assertThat(numDifferent[0]).isLessThanOrEqualTo(numEdgePixels[0] / 100);
+    }
+
+    private static void forEachPixel(PixelCheck check) {
+        for (int y = CHECKED_AREA.y; y < CHECKED_AREA.y + CHECKED_AREA.height; y++) {
+            for (int x = CHECKED_AREA.x; x < CHECKED_AREA.x + CHECKED_AREA.width; x++) {
+                check.check(x, y);
+            }
+        }
+    }
+
+    private static SelectionMask mask(Shape shape) {
+        return SelectionMask.fromShape(shape);
+    }
+
+    private BufferedImage createRandomImage(int type, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = random.nextInt();
+                if (random.nextInt(4) == 0) {
+                    rgb |= 0xFF_00_00_00;
+                }
+                img.setRGB(x, y, rgb);
+            }
+        }
+        return img;
+    }
+
+    private static BufferedImage copy(BufferedImage src, int type) {
+        BufferedImage copy = new BufferedImage(src.getWidth(), src.getHeight(), type);
+        for (int y = 0; y < src.getHeight(); y++) {
+            for (int x = 0; x < src.getWidth(); x++) {
+                copy.setRGB(x, y, src.getRGB(x, y));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the image as a sub-image of a larger image
+     */
+    private static BufferedImage copy(BufferedImage src, int type, int marginX, int marginY) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage parent = new BufferedImage(width + 2 * marginX, height + 2 * marginY, type);
+        BufferedImage sub = parent.getSubimage(marginX, marginY, width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sub.setRGB(x, y, src.getRGB(x, y));
+            }
+        }
+        return sub;
+    }
+
+    private static int maxPremultipliedDiff(int rgb1, int rgb2) {
+        int p1 = ImageUtils.premultiply(rgb1);
+        int p2 = ImageUtils.premultiply(rgb2);
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            max = Math.max(max, Math.abs(((p1 >>> shift) & 0xFF) - ((p2 >>> shift) & 0xFF)));
+        }
+        return max;
+    }
+}
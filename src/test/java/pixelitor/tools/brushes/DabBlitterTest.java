@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.Test;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.AlphaComposite.DST_OUT;
+import static java.awt.AlphaComposite.SRC_OVER;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_STROKE_CONTROL;
+import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.RenderingHints.VALUE_STROKE_PURE;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the dabs blended by the {@link DabBlitter} look
+ * the same as the dabs drawn with Graphics2D
+ */
+public class DabBlitterTest {
+    private static final int SIZE = 200;
+    private static final double DIAMETER = 30;
+    private static final Color COLOR = new Color(200, 60, 30, 180);
+
+    @Test
+    public void testRoundDabs() {
+        for (int type : new int[]{TYPE_INT_ARGB, TYPE_INT_ARGB_PRE}) {
+            for (int rule : new int[]{SRC_OVER, DST_OUT}) {
+                assertThat(compare(type, rule, false, 0))
+                        .as("type = %d, rule = %d", type, rule)
+                        .isLessThan(0.5);
+            }
+        }
+    }
+
+    @Test
+    public void testDabsAtStampPositions() {
+        // no rounding is necessary, the results must be identical
+        for (int type : new int[]{TYPE_INT_ARGB, TYPE_INT_ARGB_PRE}) {
+            for (int rule : new int[]{SRC_OVER, DST_OUT}) {
+                assertThat(compare(type, rule, false, 0.125))
+                        .as("type = %d, rule = %d", type, rule)
+                        .isEqualTo(0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testRotatedDabs() {
+        for (int type : new int[]{TYPE_INT_ARGB, TYPE_INT_ARGB_PRE}) {
+            assertThat(compare(type, SRC_OVER, true, 0))
+                    .as("type = %d", type)
+                    .isLessThan(0.5);
+        }
+    }
+
+    /**
+     * Draws the same stroke of dabs with the blitter and with
+     * Graphics2D, and returns the mean difference of the channels
+     * over the pixels changed by the stroke. Only the rounding of
+     * the dab positions and angles should cause differences,
+     * because the blitter uses the same 8-bit arithmetic as Java2D.
+     */
+    private static double compare(int type, int rule, boolean rotated, double grid) {
+        BufferedImage blitted = createBackground(type);
+        BufferedImage drawn = createBackground(type);
+        BufferedImage background = createBackground(type);
+
+        AlphaComposite composite = AlphaComposite.getInstance(rule, 0.7f);
+        Graphics2D blitG = blitted.createGraphics();
+        blitG.setComposite(composite);
+        Graphics2D drawG = drawn.createGraphics();
+        drawG.setComposite(composite);
+        drawG.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        drawG.setRenderingHint(KEY_STROKE_CONTROL, VALUE_STROKE_PURE);
+        drawG.setColor(COLOR);
+
+        DabStampCache cache = new DabStampCache(
+                (g, cx, cy, theta) -> g.fill(createDab(cx, cy, theta)));
+        cache.setTip(rotated, DIAMETER);
+        DabBlitter blitter = DabBlitter.create(blitG, blitted);
+        assertThat(blitter).isNotNull();
+
+        // a curved stroke with dabs at fractional positions
+        for (int i = 0; i < 60; i++) {
+            double x = 30 + i * 2.37;
+            double y = 100 + 50 * Math.sin(i * 0.1);
+            if (grid > 0) {
+                x = Math.round(x / grid) * grid;
+                y = Math.round(y / grid) * grid;
+            }
+            double theta = rotated ? i * 0.13 : 0;
+
+            DabStamp stamp = cache.get(x, y, theta);
+            boolean blended = blitter.blendMask(stamp,
+                    cache.getAnchorX(), cache.getAnchorY(), COLOR.getRGB());
+            assertThat(blended).isTrue();
+
+            drawG.fill(createDab(x, y, theta));
+        }
+        blitG.dispose();
+        drawG.dispose();
+
+        double sumDiff = 0;
+        int numChanged = 0;
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int expected = drawn.getRGB(x, y);
+                if (expected == background.getRGB(x, y)) {
+                    continue;
+                }
+                int actual = blitted.getRGB(x, y);
+                // the colors are compared premultiplied, because the
+                // colors of almost transparent pixels are not visible
+                int expectedA = expected >>> 24;
+                int actualA = actual >>> 24;
+                sumDiff += Math.abs(expectedA - actualA);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int expectedC = ((expected >>> shift) & 0xFF) * expectedA;
+                    int actualC = ((actual >>> shift) & 0xFF) * actualA;
+                    sumDiff += Math.abs(expectedC - actualC) / 255.0;
+                }
+                numChanged++;
+            }
+        }
+        assertThat(numChanged).isGreaterThan(1000);
+        return sumDiff / (4.0 * numChanged);
+    }
+
+    private static Shape createDab(double cx, double cy, double theta) {
+        double r = DIAMETER / 2;
+        if (theta == 0) {
+            return new Ellipse2D.Double(cx - r, cy - r, DIAMETER, DIAMETER);
+        }
+        Shape square = new Rectangle2D.Double(cx - r, cy - r, DIAMETER, DIAMETER);
+        return AffineTransform.getRotateInstance(theta, cx, cy).createTransformedShape(square);
+    }
+
+    /**
+     * A background with opaque and semi-transparent parts
+     */
+    private static BufferedImage createBackground(int type) {
+        BufferedImage img = new BufferedImage(SIZE, SIZE, type);
+        Graphics2D g = img.createGraphics();
+        g.setColor(new Color(20, 120, 220));
+        g.fillRect(0, 0, SIZE, SIZE / 2);
+        g.setColor(new Color(240, 240, 40, 100));
+        g.fillRect(0, SIZE / 2, SIZE, SIZE / 2);
+        g.dispose();
+        return img;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.gradient;
+
+import org.junit.Test;
+import pixelitor.tools.util.ImDrag;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link GradientRenderer}
+ */
+public class GradientRendererTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 90;
+
+    @Test
+    public void testSameAsPaints() {
+        ImDrag imDrag = new ImDrag(40.3, 50.7, 85.2, 30.1);
+        Color startColor = new Color(255, 0, 0);
+        Color endColor = new Color(20, 40, 200, 100);
+        Color[] colors = {startColor, endColor};
+
+        for (GradientType type : GradientType.values()) {
+            for (CycleMethod cycleMethod : CycleMethod.values()) {
+                BufferedImage expected = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+                Graphics2D g = expected.createGraphics();
+                g.setPaint(type.createPaint(imDrag, colors, cycleMethod));
+                g.fillRect(0, 0, WIDTH, HEIGHT);
+                g.dispose();
+
+                BufferedImage rendered = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+                new GradientRenderer(type, imDrag, startColor, endColor, cycleMethod)
+                        .render(rendered, 1);
+
+                // the pixels exactly on a discontinuity can differ
+                int numDifferent = countDifferentPixels(expected, rendered, 4);
+                assertThat(numDifferent).isLessThan(WIDTH * HEIGHT / 100);
+            }
+        }
+    }
+
+    @Test
+    public void testLowResolutionMode() {
+        ImDrag imDrag = new ImDrag(10, 10, 100, 80);
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        new GradientRenderer(GradientType.LINEAR, imDrag,
+                Color.BLACK, Color.WHITE, CycleMethod.NO_CYCLE)
+                .render(img, GradientRenderer.LOW_RES_BLOCK_SIZE);
+
+        int blockSize = GradientRenderer.LOW_RES_BLOCK_SIZE;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int blockStart = img.getRGB(x - x % blockSize, y - y % blockSize);
+                assertThat(img.getRGB(x, y)).isEqualTo(blockStart);
+            }
+        }
+    }
+
+    private static int countDifferentPixels(BufferedImage a, BufferedImage b, int tolerance) {
+        int count = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int p1 = a.getRGB(x, y);
+                int p2 = b.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int diff = Math.abs(((p1 >>> shift) & 0xFF) - ((p2 >>> shift) & 0xFF));
+                    if (diff > tolerance) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.pen;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import pixelitor.Build;
+import pixelitor.Composition;
+import pixelitor.gui.View;
+import pixelitor.tools.util.DraggablePoint;
+
+import java.awt.Cursor;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the hit testing with the {@link HandleIndex} finds
+ * the same handles as checking all the anchors in the path order
+ */
+public class HandleIndexTest {
+    private static final int NUM_ANCHORS = 3000;
+    private static final int IMAGE_SIZE = 2000;
+
+    private final Random random = new Random(42);
+    private ZoomableView view;
+    private Path path;
+
+    @BeforeClass
+    public static void setupClass() {
+        Build.setTestingMode();
+    }
+
+    @Before
+    public void setUp() {
+        view = new ZoomableView();
+        Composition comp = Composition.createEmpty(IMAGE_SIZE, IMAGE_SIZE);
+        path = new Path(comp, false);
+
+        for (int s = 0; s < 2; s++) {
+            SubPath sp = path.startNewSubpath();
+            for (int i = 0; i < NUM_ANCHORS / 2; i++) {
+                AnchorPoint ap = new AnchorPoint(randomCoord(), randomCoord(), view, sp);
+                sp.addPoint(ap);
+                if (random.nextBoolean()) {
+                    ap.ctrlOut.setLocationOnlyForThis(ap.x + 20, ap.y - 10);
+                    ap.ctrlOut.afterMovingActionsForThis();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameHitsAsLinearSearch() {
+        checkRandomHits();
+
+        // the index follows the appended anchors without rebuilding
+        HandleIndex index = path.getHandleIndex();
+        SubPath last = path.getSubPath(1);
+        last.addPoint(new AnchorPoint(randomCoord(), randomCoord(), view, last));
+        assertThat(path.getHandleIndex()).isSameAs(index);
+        assertThat(index.getNumHandles()).isEqualTo(3 * (NUM_ANCHORS + 1));
+        checkRandomHits();
+    }
+
+    @Test
+    public void testZooming() {
+        checkRandomHits();
+        HandleIndex index = path.getHandleIndex();
+
+        for (double scale : new double[]{0.1, 0.5, 3.0, 1.0}) {
+            view.setScale(scale);
+            path.coCoordsChanged(view);
+            checkRandomHits();
+        }
+        assertThat(path.getHandleIndex()).isSameAs(index);
+    }
+
+    @Test
+    public void testMovingHandles() {
+        checkRandomHits();
+        HandleIndex index = path.getHandleIndex();
+
+        SubPath sp = path.getSubPath(0);
+        for (int i = 0; i < 100; i++) {
+            AnchorPoint ap = sp.getAnchor(random.nextInt(sp.getNumAnchors()));
+            DraggablePoint handle = random.nextBoolean() ? ap : ap.ctrlIn;
+            handle.setLocation(randomCoord(), randomCoord());
+        }
+        assertThat(path.getHandleIndex()).isSameAs(index);
+        checkRandomHits();
+    }
+
+    @Test
+    public void testDeletingAnchors() {
+        checkRandomHits();
+
+        SubPath sp = path.getSubPath(0);
+        for (int i = 0; i < 100; i++) {
+            sp.deletePoint(sp.getAnchor(random.nextInt(sp.getNumAnchors())));
+        }
+        assertThat(path.getHandleIndex()).isNull();
+        checkRandomHits();
+    }
+
+    private void checkRandomHits() {
+        int numHits = 0;
+        for (int i = 0; i < 2000; i++) {
+            // test near existing handles, because random points rarely hit anything
+            SubPath sp = path.getSubPath(random.nextInt(2));
+            AnchorPoint ap = sp.getAnchor(random.nextInt(sp.getNumAnchors()));
+            double x = ap.ctrlOut.x + random.nextInt(15) - 7;
+            double y = ap.ctrlOut.y + random.nextInt(15) - 7;
+            boolean altDown = random.nextBoolean();
+
+            DraggablePoint expected = linearSearch(x, y, altDown);
+            DraggablePoint found = path.handleWasHit(x, y, altDown, view);
+            assertThat(found).isSameAs(expected);
+            if (found != null) {
+                numHits++;
+            }
+        }
+        assertThat(numHits).isGreaterThan(100);
+    }
+
+    // the hit testing before the index was introduced
+    private DraggablePoint linearSearch(double x, double y, boolean altDown) {
+        for (int s = 0; s < path.getNumSubpaths(); s++) {
+            SubPath sp = path.getSubPath(s);
+            for (int i = 0; i < sp.getNumAnchors(); i++) {
+                DraggablePoint hit = sp.getAnchor(i).handleOrCtrlHandleWasHit(x, y, altDown);
+                if (hit != null) {
+                    return hit;
+                }
+            }
+        }
+        return null;
+    }
+
+    private double randomCoord() {
+        return random.nextDouble() * IMAGE_SIZE;
+    }
+
+    /**
+     * A view with a simple zooming, and with the
+     * image starting at (10, 10) in component space
+     */
+    private static class ZoomableView implements View {
+        private static final double OFFSET = 10;
+        private double scale = 1.0;
+
+        void setScale(double scale) {
+            this.scale = scale;
+        }
+
+        @Override
+        public double componentXToImageSpace(double coX) {
+            return (coX - OFFSET) / scale;
+        }
+
+        @Override
+        public double componentYToImageSpace(double coY) {
+            return (coY - OFFSET) / scale;
+        }
+
+        @Override
+        public Point2D componentToImageSpace(Point2D co) {
+            return new Point2D.Double(
+                    componentXToImageSpace(co.getX()),
+                    componentYToImageSpace(co.getY()));
+        }
+
+        @Override
+        public double imageXToComponentSpace(double imX) {
+            return imX * scale + OFFSET;
+        }
+
+        @Override
+        public double imageYToComponentSpace(double imY) {
+            return imY * scale + OFFSET;
+        }
+
+        @Override
+        public Point2D imageToComponentSpace(Point2D im) {
+            return new Point2D.Double(
+                    imageXToComponentSpace(im.getX()),
+                    imageYToComponentSpace(im.getY()));
+        }
+
+        @Override
+        public Rectangle2D componentToImageSpace(Rectangle co) {
+            return getComponentToImageTransform().createTransformedShape(co).getBounds2D();
+        }
+
+        @Override
+        public Rectangle imageToComponentSpace(Rectangle2D im) {
+            return getImageToComponentTransform().createTransformedShape(im).getBounds();
+        }
+
+        @Override
+        public AffineTransform getImageToComponentTransform() {
+            AffineTransform at = AffineTransform.getTranslateInstance(OFFSET, OFFSET);
+            at.scale(scale, scale);
+            return at;
+        }
+
+        @Override
+        public AffineTransform getComponentToImageTransform() {
+            AffineTransform at = AffineTransform.getScaleInstance(1 / scale, 1 / scale);
+            at.translate(-OFFSET, -OFFSET);
+            return at;
+        }
+
+        @Override
+        public void repaint() {
+        }
+
+        @Override
+        public Cursor getCursor() {
+            return Cursor.getDefaultCursor();
+        }
+
+        @Override
+        public void setCursor(Cursor cursor) {
+        }
+    }
+}
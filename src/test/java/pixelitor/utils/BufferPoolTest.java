@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BufferPool}
+ */
+public class BufferPoolTest {
+    @After
+    public void tearDown() {
+        BufferPool.clear();
+        BufferPool.setMaxIdleBytes(Runtime.getRuntime().maxMemory() / 16);
+    }
+
+    @Test
+    public void testSizeClasses() {
+        for (int length = 1; length < 100_000; length += 37) {
+            int capacity = BufferPool.capacityFor(length);
+            assertThat(capacity).isGreaterThanOrEqualTo(length);
+            // at most 50% is wasted above the minimal capacity
+            assertThat(capacity).isLessThanOrEqualTo(Math.max(1024, length * 3 / 2 + 1));
+            assertThat(BufferPool.sizeClassOf(capacity)).isEqualTo(capacity);
+        }
+    }
+
+    @Test
+    public void testArraysAreReused() {
+        int[] ints = BufferPool.leaseInts(5000);
+        assertThat(ints.length).isGreaterThanOrEqualTo(5000);
+        BufferPool.returnInts(ints);
+        assertThat(BufferPool.leaseInts(4500)).isSameAs(ints);
+
+        // an array that was not leased can also be given to the pool
+        float[] floats = new float[7000];
+        BufferPool.returnFloats(floats);
+        assertThat(BufferPool.leaseFloats(6000)).isSameAs(floats);
+        assertThat(BufferPool.leaseFloats(6000)).isNotSameAs(floats);
+    }
+
+    @Test
+    public void testImagesAreReusedAndCleared() {
+        BufferedImage img = BufferPool.leaseImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(5, 5, 0xFF_FF_00_00);
+        BufferPool.returnImage(img);
+
+        assertThat(BufferPool.leaseImage(10, 20, BufferedImage.TYPE_INT_ARGB)).isNotSameAs(img);
+        BufferedImage reused = BufferPool.leaseImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        assertThat(reused).isSameAs(img);
+        assertThat(reused.getRGB(5, 5)).isEqualTo(0);
+    }
+
+    @Test
+    public void testMemoryLimit() {
+        BufferPool.setMaxIdleBytes(10_000 * 4);
+        int[] first = new int[6000];
+        int[] second = new int[6000];
+        BufferPool.returnInts(first);
+        BufferPool.returnInts(second);
+
+        // the least recently returned array was evicted
+        assertThat(BufferPool.leaseInts(4000)).isSameAs(second);
+        assertThat(BufferPool.leaseInts(4000)).isNotSameAs(first);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+import pixelitor.utils.FloodFill.Region;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link FloodFill}
+ */
+public class FloodFillTest {
+    private static final int MATCHING = 0xFF_10_20_30;
+    private static final int OTHER = 0xFF_F0_E0_D0;
+
+    private final Random random = new Random(17);
+
+    @Test
+    public void testTolerance() {
+        IntPredicate matcher = FloodFill.similarTo(0xFF_64_64_64, 10);
+
+        assertThat(matcher.test(0xFF_64_64_64)).isTrue();
+        assertThat(matcher.test(0xFF_6E_5A_64)).isTrue(); // +10 and -10
+        assertThat(matcher.test(0xFF_6F_64_64)).isFalse(); // +11 in red
+        assertThat(matcher.test(0xFF_64_59_64)).isFalse(); // -11 in green
+        assertThat(matcher.test(0xFF_64_64_6F)).isFalse(); // +11 in blue
+        // the alpha is ignored
+        assertThat(matcher.test(0x00_64_64_64)).isTrue();
+        assertThat(matcher.test(0x80_6E_6E_6E)).isTrue();
+
+        // zero tolerance accepts only the same RGB
+        IntPredicate exact = FloodFill.similarTo(0xFF_64_64_64, 0);
+        assertThat(exact.test(0x00_64_64_64)).isTrue();
+        assertThat(exact.test(0xFF_64_64_65)).isFalse();
+    }
+
+    @Test
+    public void testContiguousMatchesReference() {
+        // the width is not a multiple of 64, so the
+        // rows start at different positions in the words
+        int width = 131;
+        int height = 77;
+        int[] pixels = createRandomBlobs(width, height);
+        IntPredicate matcher = FloodFill.similarTo(MATCHING, 0);
+
+        for (int i = 0; i < 20; i++) {
+            int seedX;
+            int seedY;
+            do {
+                seedX = random.nextInt(width);
+                seedY = random.nextInt(height);
+            } while (pixels[seedY * width + seedX] != MATCHING);
+            Region region = FloodFill.fillContiguous(pixels, width, height, seedX, seedY, matcher);
+            boolean[] expected = referenceContiguous(pixels, width, height, seedX, seedY, matcher);
+            assertSameRegion(region, expected, width, height);
+        }
+    }
+
+    @Test
+    public void testSpansAcrossWordBoundaries() {
+        // a horizontal band of matching pixels in the middle row,
+        // which starts and ends within words and covers whole words
+        int width = 300;
+        int height = 3;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, OTHER);
+        for (int x = 5; x < 290; x++) {
+            pixels[width + x] = MATCHING;
+        }
+
+        Region region = FloodFill.fillContiguous(pixels, width, height,
+                100, 1, FloodFill.similarTo(MATCHING, 0));
+
+        assertThat(region.getBounds()).isEqualTo(new Rectangle(5, 1, 285, 1));
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean expected = y == 1 && x >= 5 && x < 290;
+                assertThat(region.contains(x, y))
+                        .as("x = %d, y = %d", x, y)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSeedOutsideOrNotMatching() {
+        int[] pixels = {MATCHING, OTHER, MATCHING, OTHER};
+        IntPredicate matcher = FloodFill.similarTo(MATCHING, 0);
+
+        assertThat(FloodFill.fillContiguous(pixels, 2, 2, 1, 0, matcher).isEmpty()).isTrue();
+        assertThat(FloodFill.fillContiguous(pixels, 2, 2, -1, 0, matcher).isEmpty()).isTrue();
+        assertThat(FloodFill.fillContiguous(pixels, 2, 2, 0, 2, matcher).isEmpty()).isTrue();
+
+        // 4-connected: the diagonal neighbors are not in the region
+        int[] diagonal = {MATCHING, OTHER, OTHER, MATCHING};
+        Region region = FloodFill.fillContiguous(diagonal, 2, 2, 0, 0, matcher);
+        assertThat(region.contains(0, 0)).isTrue();
+        assertThat(region.contains(1, 1)).isFalse();
+    }
+
+    @Test
+    public void testGlobalMatchesReference() {
+        // large enough to be split into several chunks,
+        // with the chunk boundaries in the middle of the rows
+        int width = 701;
+        int height = 500;
+        int[] pixels = createRandomBlobs(width, height);
+        IntPredicate matcher = FloodFill.similarTo(MATCHING, 0);
+
+        Region region = FloodFill.fillGlobal(pixels, width, height, matcher);
+
+        boolean[] expected = new boolean[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            expected[i] = matcher.test(pixels[i]);
+        }
+        assertSameRegion(region, expected, width, height);
+    }
+
+    @Test
+    public void testGlobalBounds() {
+        int width = 150;
+        int height = 100;
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, OTHER);
+        pixels[20 * width + 130] = MATCHING;
+        pixels[70 * width + 3] = MATCHING;
+
+        Region region = FloodFill.fillGlobal(pixels, width, height, FloodFill.similarTo(MATCHING, 0));
+        assertThat(region.getBounds()).isEqualTo(new Rectangle(3, 20, 128, 51));
+
+        Region empty = FloodFill.fillGlobal(pixels, width, height, FloodFill.similarTo(0xFF_00_FF_00, 5));
+        assertThat(empty.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testFillAndCoverage() {
+        int width = 131;
+        int height = 77;
+        int[] pixels = createRandomBlobs(width, height);
+        Region region = FloodFill.fillGlobal(pixels, width, height, FloodFill.similarTo(MATCHING, 0));
+        Rectangle bounds = region.getBounds();
+
+        byte[] coverage = region.toCoverage();
+        assertThat(coverage.length).isEqualTo(bounds.width * bounds.height);
+        for (int y = 0; y < bounds.height; y++) {
+            for (int x = 0; x < bounds.width; x++) {
+                boolean covered = coverage[y * bounds.width + x] != 0;
+                assertThat(covered).isEqualTo(region.contains(bounds.x + x, bounds.y + y));
+            }
+        }
+
+        int[] filled = new int[width * height];
+        region.fill(filled, 7);
+        for (int i = 0; i < filled.length; i++) {
+            assertThat(filled[i] == 7).isEqualTo(pixels[i] == MATCHING);
+        }
+    }
+
+    /**
+     * Creates an image with random rectangles of the matching color,
+     * which form regions with holes and complex borders
+     */
+    private int[] createRandomBlobs(int width, int height) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, OTHER);
+        int numRects = width * height / 25;
+        for (int i = 0; i < numRects; i++) {
+            int rx = random.nextInt(width);
+            int ry = random.nextInt(height);
+            int rw = 1 + random.nextInt(12);
+            int rh = 1 + random.nextInt(4);
+            for (int y = ry; y < Math.min(height, ry + rh); y++) {
+                for (int x = rx; x < Math.min(width, rx + rw); x++) {
+                    pixels[y * width + x] = MATCHING;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * A simple breadth-first flood fill
+     */
+    private static boolean[] referenceContiguous(int[] pixels, int width, int height,
+                                                 int seedX, int seedY, IntPredicate matcher) {
+        boolean[] result = new boolean[pixels.length];
+        int seed = seedY * width + seedX;
+        if (!matcher.test(pixels[seed])) {
+            return result;
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        result[seed] = true;
+        queue.add(seed);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = index % width;
+            int y = index / width;
+            int[][] neighbors = {{x - 1, y}, {x + 1, y}, {x, y - 1}, {x, y + 1}};
+            for (int[] n : neighbors) {
+                if (n[0] < 0 || n[1] < 0 || n[0] >= width || n[1] >= height) {
+                    continue;
+                }
+                int ni = n[1] * width + n[0];
+                if (!result[ni] && matcher.test(pixels[ni])) {
+                    result[ni] = true;
+                    queue.add(ni);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameRegion(Region region, boolean[] expected, int width, int height) {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean in = expected[y * width + x];
+                assertThat(region.contains(x, y))
+                        .as("x = %d, y = %d", x, y)
+                        .isEqualTo(in);
+                if (in) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            assertThat(region.isEmpty()).isTrue();
+        } else {
+            assertThat(region.getBounds())
+                    .isEqualTo(new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1));
+        }
+    }
+}
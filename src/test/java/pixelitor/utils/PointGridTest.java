@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link PointGrid}
+ */
+public class PointGridTest {
+    @Test
+    public void testSameResultsAsLinearSearch() {
+        Random random = new Random(11);
+        for (Metric metric : Metric.values()) {
+            for (int numPoints : new int[]{1, 3, 40, 500}) {
+                int width = 1 + random.nextInt(200);
+                int height = 1 + random.nextInt(200);
+                int[] xCoords = new int[numPoints];
+                int[] yCoords = new int[numPoints];
+                for (int i = 0; i < numPoints; i++) {
+                    xCoords[i] = random.nextInt(width);
+                    yCoords[i] = random.nextInt(height);
+                }
+                PointGrid grid = new PointGrid(xCoords, yCoords, numPoints, width, height, metric);
+
+                for (int q = 0; q < 2000; q++) {
+                    // also test locations slightly outside the image
+                    double x = random.nextInt(width * 4) / 4.0 - 0.5;
+                    double y = random.nextInt(height * 4) / 4.0 - 0.5;
+
+                    int expected = 0;
+                    double minDist = metric.distanceDouble(xCoords[0], x, yCoords[0], y);
+                    for (int i = 1; i < numPoints; i++) {
+                        double dist = metric.distanceDouble(xCoords[i], x, yCoords[i], y);
+                        if (dist < minDist) {
+                            minDist = dist;
+                            expected = i;
+                        }
+                    }
+
+                    assertThat(grid.nearest(x, y)).isEqualTo(expected);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link StartupTimeline}
+ */
+public class StartupTimelineTest {
+    @Before
+    public void setUp() {
+        StartupTimeline.reset();
+    }
+
+    @After
+    public void tearDown() {
+        StartupTimeline.reset();
+    }
+
+    @Test
+    public void testNotStarted() {
+        StartupTimeline.phaseFinished("ignored");
+        assertThat(StartupTimeline.asText()).isEqualTo("No startup timeline was recorded");
+    }
+
+    @Test
+    public void testPhases() {
+        StartupTimeline.start();
+        StartupTimeline.phaseFinished("first phase");
+        StartupTimeline.phaseFinished("second phase");
+
+        String[] lines = StartupTimeline.asText().split("\\R");
+        assertThat(lines.length).isEqualTo(4);
+        assertThat(lines[0]).isEqualTo("Startup timeline:");
+        checkPhaseLine(lines[1], "first phase");
+        checkPhaseLine(lines[2], "second phase");
+        assertThat(lines[3]).isEqualTo("(the startup is not finished yet)");
+
+        // the total time is the sum of the phase times
+        double total = phaseMillis(lines[1]) + phaseMillis(lines[2]);
+        assertThat(Math.abs(totalMillis(lines[2]) - total)).isLessThanOrEqualTo(0.11);
+
+        StartupTimeline.finish("last phase");
+        StartupTimeline.phaseFinished("after the finish");
+
+        lines = StartupTimeline.asText().split("\\R");
+        assertThat(lines.length).isEqualTo(4);
+        checkPhaseLine(lines[3], "last phase");
+        assertThat(totalMillis(lines[3])).isGreaterThanOrEqualTo(totalMillis(lines[2]));
+    }
+
+    private static void checkPhaseLine(String line, String phaseName) {
+        // the name is padded to 32 characters, followed by
+        // the phase time and the time since the start
+        assertThat(line.startsWith(phaseName)).isTrue();
+        assertThat(line.substring(phaseName.length(), 32).trim()).isEqualTo("");
+        assertThat(line.matches(".{32} +\\d+[.,]\\d ms +\\d+[.,]\\d ms")).isTrue();
+    }
+
+    private static double phaseMillis(String line) {
+        return parseMillis(line.substring(32).trim().split(" +")[0]);
+    }
+
+    private static double totalMillis(String line) {
+        return parseMillis(line.substring(32).trim().split(" +")[2]);
+    }
+
+    private static double parseMillis(String s) {
+        return Double.parseDouble(s.replace(',', '.'));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.noise;
+
+import org.junit.Test;
+
+import java.util.function.LongFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests for the {@link SeededNoise} implementations
+ */
+public class SeededNoiseTest {
+    @SuppressWarnings("unchecked")
+    private static final LongFunction<SeededNoise>[] FACTORIES = new LongFunction[]{
+            (LongFunction<SeededNoise>) PerlinNoise::new,
+            (LongFunction<SeededNoise>) ImprovedPerlinNoise::new,
+            (LongFunction<SeededNoise>) LatticeValueNoise::new,
+    };
+
+    @Test
+    public void testSameSeedSameValues() {
+        for (LongFunction<SeededNoise> factory : FACTORIES) {
+            SeededNoise a = factory.apply(42);
+            SeededNoise b = factory.apply(42);
+            SeededNoise c = factory.apply(43);
+
+            boolean foundDifference = false;
+            for (int i = 0; i < 100; i++) {
+                float x = i * 0.37f - 10;
+                float y = i * 0.11f + 3;
+                float z = i * 0.23f;
+                assertThat(a.noise2(x, y)).isEqualTo(b.noise2(x, y));
+                assertThat(a.noise3(x, y, z)).isEqualTo(b.noise3(x, y, z));
+                if (a.noise2(x, y) != c.noise2(x, y)) {
+                    foundDifference = true;
+                }
+            }
+            assertThat(foundDifference).isTrue();
+        }
+    }
+
+    @Test
+    public void testRowsSameAsSingleValues() {
+        int length = 57;
+        float startX = -3.3f;
+        float stepX = 0.173f;
+        for (LongFunction<SeededNoise> factory : FACTORIES) {
+            SeededNoise noise = factory.apply(7);
+            float[] row = new float[length];
+            for (float y : new float[]{-2.5f, 0, 0.4f, 13.9f}) {
+                noise.noise2Row(row, length, startX, stepX, y);
+                for (int i = 0; i < length; i++) {
+                    assertThat(row[i]).isEqualTo(noise.noise2(startX + i * stepX, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFractalRowsSameAsSingleValues() {
+        SeededNoise noise = new PerlinNoise(3);
+        int length = 40;
+        float[] row = new float[length];
+        float[] tmp = new float[length];
+        Fractal.fbm2Row(noise, row, tmp, length, 0.5f, 0.25f, 2.0f, 4, 2.0f, 0.5f);
+        for (int i = 0; i < length; i++) {
+            float x = 0.5f + i * 0.25f;
+            float expected = noise.noise2(x, 2.0f)
+                    + 0.5f * noise.noise2(2 * x, 4.0f)
+                    + 0.25f * noise.noise2(4 * x, 8.0f)
+                    + 0.125f * noise.noise2(8 * x, 16.0f);
+            assertThat(row[i]).isCloseTo(expected, within(1.0e-5f));
+        }
+    }
+}